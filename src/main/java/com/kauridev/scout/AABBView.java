@@ -0,0 +1,175 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * An axis-aligned bounding volume backed by a region of a float array.
+ * <p>
+ * The minimum and maximum values of dimension <tt>d</tt> are stored at the indices <tt>offset + 2
+ * * d * stride</tt> and <tt>offset + (2 * d + 1) * stride</tt>, respectively. A stride of one
+ * describes a single packed volume. A larger stride describes one slot of a node whose bounds are
+ * stored contiguously per dimension.
+ * <p>
+ * Views are re-pointed during traversal and should not be retained by callers; use {@link #copy()}
+ * to obtain a stable volume.
+ *
+ * @author Eric Fritz
+ */
+final class AABBView implements AABB
+{
+	private float[] data;
+	private int offset;
+	private int stride;
+	private int dimensions;
+
+	/**
+	 * Creates a new AABBView backed by its own packed storage.
+	 *
+	 * @param dimensions The number of dimensions.
+	 */
+	public AABBView(int dimensions) {
+		this(new float[2 * dimensions], 0, 1, dimensions);
+	}
+
+	/**
+	 * Creates a new AABBView.
+	 *
+	 * @param data       The backing array.
+	 * @param offset     The index of the first minimum value.
+	 * @param stride     The distance between consecutive bounds of the volume.
+	 * @param dimensions The number of dimensions.
+	 */
+	public AABBView(float[] data, int offset, int stride, int dimensions) {
+		this.data = data;
+		this.offset = offset;
+		this.stride = stride;
+		this.dimensions = dimensions;
+	}
+
+	/**
+	 * Re-points this view at another region.
+	 *
+	 * @param data   The backing array.
+	 * @param offset The index of the first minimum value.
+	 * @param stride The distance between consecutive bounds of the volume.
+	 *
+	 * @return This view.
+	 */
+	public AABBView wrap(float[] data, int offset, int stride) {
+		this.data = data;
+		this.offset = offset;
+		this.stride = stride;
+
+		return this;
+	}
+
+	@Override
+	public AABB copy() {
+		float[] bounds = new float[2 * dimensions];
+
+		for (int i = 0; i < dimensions; i++) {
+			bounds[2 * i + 0] = getMinimum(i);
+			bounds[2 * i + 1] = getMaximum(i);
+		}
+
+		return new AABBView(bounds, 0, 1, dimensions);
+	}
+
+	@Override
+	public int getDimensions() {
+		return dimensions;
+	}
+
+	@Override
+	public float getMinimum(int dimension) {
+		if (dimension < 0 || dimension >= dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return data[offset + 2 * dimension * stride];
+	}
+
+	@Override
+	public float getMaximum(int dimension) {
+		if (dimension < 0 || dimension >= dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return data[offset + (2 * dimension + 1) * stride];
+	}
+
+	@Override
+	public void setBounds(int dimension, float minimum, float maximum) {
+		if (maximum < minimum || dimension < 0 || dimension >= dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		data[offset + 2 * dimension * stride] = minimum;
+		data[offset + (2 * dimension + 1) * stride] = maximum;
+	}
+
+	@Override
+	public float getExtent(int dimension) {
+		return getMaximum(dimension) - getMinimum(dimension);
+	}
+
+	@Override
+	public float getVolume() {
+		float volume = 1;
+
+		for (int i = 0; i < dimensions; i++) {
+			volume *= data[offset + (2 * i + 1) * stride] - data[offset + 2 * i * stride];
+		}
+
+		return volume;
+	}
+
+	@Override
+	public boolean contains(AABB aabb) {
+		if (aabb.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		for (int i = 0; i < dimensions; i++) {
+			if (data[offset + 2 * i * stride] > aabb.getMinimum(i) || data[offset + (2 * i + 1) * stride] < aabb.getMaximum(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean intersects(AABB aabb) {
+		if (aabb.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		for (int i = 0; i < dimensions; i++) {
+			if (data[offset + 2 * i * stride] > aabb.getMaximum(i) || data[offset + (2 * i + 1) * stride] < aabb.getMinimum(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * Common methods relating to bounding volumes stored in primitive arrays.
+ * <p>
+ * A <i>packed</i> volume occupies <tt>2 * dimensions</tt> consecutive values, holding the minimum
+ * and maximum of each dimension in turn. A <i>node</i> array holds the volumes of up to
+ * <tt>stride</tt> slots, with the minimum of dimension <tt>d</tt> of slot <tt>i</tt> at index
+ * <tt>2 * d * stride + i</tt> and the maximum at index <tt>(2 * d + 1) * stride + i</tt>.
+ *
+ * @author Eric Fritz
+ */
+final class Bounds
+{
+	private Bounds() {
+	}
+
+	/**
+	 * Converts a volume into its packed representation.
+	 *
+	 * @param volume The volume.
+	 *
+	 * @return A new packed volume.
+	 */
+	public static float[] pack(AABB volume) {
+		float[] packed = new float[2 * volume.getDimensions()];
+
+		for (int i = 0; i < volume.getDimensions(); i++) {
+			packed[2 * i + 0] = volume.getMinimum(i);
+			packed[2 * i + 1] = volume.getMaximum(i);
+		}
+
+		return packed;
+	}
+
+	/**
+	 * Copies a slot of a node array into a packed volume.
+	 */
+	public static void get(float[] bounds, int stride, int index, float[] volume, int offset, int dimensions) {
+		for (int j = 0; j < 2 * dimensions; j++) {
+			volume[offset + j] = bounds[j * stride + index];
+		}
+	}
+
+	/**
+	 * Copies a packed volume into a slot of a node array.
+	 */
+	public static void set(float[] bounds, int stride, int index, float[] volume, int offset, int dimensions) {
+		for (int j = 0; j < 2 * dimensions; j++) {
+			bounds[j * stride + index] = volume[offset + j];
+		}
+	}
+
+	/**
+	 * Copies one slot of a node array to another slot of the same array.
+	 */
+	public static void move(float[] bounds, int stride, int from, int to, int dimensions) {
+		for (int j = 0; j < 2 * dimensions; j++) {
+			bounds[j * stride + to] = bounds[j * stride + from];
+		}
+	}
+
+	/**
+	 * Computes the packed minimum bounding volume of the first <tt>count</tt> slots of a node array.
+	 */
+	public static void union(float[] bounds, int stride, int count, float[] volume, int offset, int dimensions) {
+		for (int j = 0; j < dimensions; j++) {
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+
+			for (int i = 0; i < count; i++) {
+				min = Math.min(min, bounds[2 * j * stride + i]);
+				max = Math.max(max, bounds[(2 * j + 1) * stride + i]);
+			}
+
+			volume[offset + 2 * j + 0] = min;
+			volume[offset + 2 * j + 1] = max;
+		}
+	}
+
+	/**
+	 * Sets a slot of a node array to the minimum bounding volume of the first <tt>count</tt> slots
+	 * of another node array.
+	 */
+	public static void fit(float[] bounds, int stride, int index, float[] child, int childStride, int count, int dimensions) {
+		for (int j = 0; j < dimensions; j++) {
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+
+			for (int i = 0; i < count; i++) {
+				min = Math.min(min, child[2 * j * childStride + i]);
+				max = Math.max(max, child[(2 * j + 1) * childStride + i]);
+			}
+
+			bounds[2 * j * stride + index] = min;
+			bounds[(2 * j + 1) * stride + index] = max;
+		}
+	}
+
+	/**
+	 * Minimally expands a slot of a node array so that it completely contains a packed volume.
+	 */
+	public static void expand(float[] bounds, int stride, int index, float[] volume, int dimensions) {
+		for (int j = 0; j < dimensions; j++) {
+			int min = 2 * j * stride + index;
+			int max = (2 * j + 1) * stride + index;
+
+			bounds[min] = Math.min(bounds[min], volume[2 * j]);
+			bounds[max] = Math.max(bounds[max], volume[2 * j + 1]);
+		}
+	}
+
+	/**
+	 * Determines whether a slot of a node array contains a packed volume.
+	 */
+	public static boolean contains(float[] bounds, int stride, int index, float[] volume, int dimensions) {
+		for (int j = 0; j < dimensions; j++) {
+			if (bounds[2 * j * stride + index] > volume[2 * j] || bounds[(2 * j + 1) * stride + index] < volume[2 * j + 1]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the slot of a node array whose volume requires the least enlargement to include a
+	 * packed volume. Ties are resolved by choosing the slot with the smallest resulting volume.
+	 */
+	public static int chooseSlot(float[] bounds, int stride, int count, float[] volume, int dimensions) {
+		int index = 0;
+		float bestArea = Float.POSITIVE_INFINITY;
+		float bestDiff = Float.POSITIVE_INFINITY;
+
+		for (int i = 0; i < count; i++) {
+			float area = 1;
+			float current = 1;
+
+			for (int j = 0; j < dimensions; j++) {
+				float min = bounds[2 * j * stride + i];
+				float max = bounds[(2 * j + 1) * stride + i];
+
+				area *= Math.max(max, volume[2 * j + 1]) - Math.min(min, volume[2 * j]);
+				current *= max - min;
+			}
+
+			float diff = area - current;
+
+			if (diff < bestDiff || (diff == bestDiff && area < bestArea)) {
+				index = i;
+				bestArea = area;
+				bestDiff = diff;
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Determines if two packed volumes intersect. Volumes which only touch are considered to
+	 * intersect.
+	 */
+	public static boolean intersects(float[] volumes1, int offset1, float[] volumes2, int offset2, int dimensions) {
+		for (int i = 0; i < dimensions; i++) {
+			if (volumes1[offset1 + 2 * i] > volumes2[offset2 + 2 * i + 1] || volumes2[offset2 + 2 * i] > volumes1[offset1 + 2 * i + 1]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the squared minimum distance between two packed volumes.
+	 */
+	public static float distanceSquared(float[] volumes1, int offset1, float[] volumes2, int offset2, int dimensions) {
+		float dist = 0;
+		for (int i = 0; i < dimensions; i++) {
+			float min1 = volumes1[offset1 + 2 * i];
+			float max1 = volumes1[offset1 + 2 * i + 1];
+			float min2 = volumes2[offset2 + 2 * i];
+			float max2 = volumes2[offset2 + 2 * i + 1];
+
+			if (max2 < min1) {
+				dist += (min1 - max2) * (min1 - max2);
+			} else if (min2 > max1) {
+				dist += (min2 - max1) * (min2 - max1);
+			}
+		}
+
+		return dist;
+	}
+
+	/**
+	 * Returns the amount of space occupied by a packed volume.
+	 */
+	public static float area(float[] volumes, int offset, int dimensions) {
+		float area = 1;
+		for (int i = 0; i < dimensions; i++) {
+			area *= volumes[offset + 2 * i + 1] - volumes[offset + 2 * i];
+		}
+
+		return area;
+	}
+
+	/**
+	 * Returns the sum of the extents of a packed volume.
+	 */
+	public static float margin(float[] volumes, int offset, int dimensions) {
+		float margin = 0;
+		for (int i = 0; i < dimensions; i++) {
+			margin += volumes[offset + 2 * i + 1] - volumes[offset + 2 * i];
+		}
+
+		return margin;
+	}
+
+	/**
+	 * Returns the amount of space occupied by the minimum bounding volume of two packed volumes.
+	 */
+	public static float unionArea(float[] volumes1, int offset1, float[] volumes2, int offset2, int dimensions) {
+		float area = 1;
+		for (int i = 0; i < dimensions; i++) {
+			float min = Math.min(volumes1[offset1 + 2 * i], volumes2[offset2 + 2 * i]);
+			float max = Math.max(volumes1[offset1 + 2 * i + 1], volumes2[offset2 + 2 * i + 1]);
+
+			area *= max - min;
+		}
+
+		return area;
+	}
+
+	/**
+	 * Returns half of the surface area of a packed volume (the sum of the areas of one face per
+	 * dimension). This is the half-perimeter in two dimensions, and the length in one dimension.
+	 */
+	public static float surface(float[] volumes, int offset, int dimensions) {
+		return unionSurface(volumes, offset, volumes, offset, dimensions);
+	}
+
+	/**
+	 * Returns half of the surface area of the minimum bounding volume of two packed volumes.
+	 */
+	public static float unionSurface(float[] volumes1, int offset1, float[] volumes2, int offset2, int dimensions) {
+		if (dimensions == 1) {
+			return Math.max(volumes1[offset1 + 1], volumes2[offset2 + 1]) - Math.min(volumes1[offset1], volumes2[offset2]);
+		}
+
+		float surface = 0;
+		for (int i = 0; i < dimensions; i++) {
+			float face = 1;
+			for (int j = 0; j < dimensions; j++) {
+				if (j != i) {
+					face *= Math.max(volumes1[offset1 + 2 * j + 1], volumes2[offset2 + 2 * j + 1]) - Math.min(volumes1[offset1 + 2 * j], volumes2[offset2 + 2 * j]);
+				}
+			}
+
+			surface += face;
+		}
+
+		return surface;
+	}
+
+	/**
+	 * Returns the amount of space occupied by the intersection of two packed volumes.
+	 */
+	public static float overlap(float[] volumes1, int offset1, float[] volumes2, int offset2, int dimensions) {
+		float area = 1;
+		for (int i = 0; i < dimensions; i++) {
+			float min = Math.max(volumes1[offset1 + 2 * i], volumes2[offset2 + 2 * i]);
+			float max = Math.min(volumes1[offset1 + 2 * i + 1], volumes2[offset2 + 2 * i + 1]);
+
+			if (max <= min) {
+				return 0;
+			}
+
+			area *= max - min;
+		}
+
+		return area;
+	}
+
+	/**
+	 * Minimally expands a packed volume so that it completely contains another packed volume.
+	 */
+	public static void include(float[] volume, int offset, float[] volumes, int other, int dimensions) {
+		for (int i = 0; i < dimensions; i++) {
+			volume[offset + 2 * i] = Math.min(volume[offset + 2 * i], volumes[other + 2 * i]);
+			volume[offset + 2 * i + 1] = Math.max(volume[offset + 2 * i + 1], volumes[other + 2 * i + 1]);
+		}
+	}
+
+	/**
+	 * Sets a packed volume to the empty volume, which is the identity of {@link #include}.
+	 */
+	public static void empty(float[] volume, int offset, int dimensions) {
+		for (int i = 0; i < dimensions; i++) {
+			volume[offset + 2 * i] = Float.POSITIVE_INFINITY;
+			volume[offset + 2 * i + 1] = Float.NEGATIVE_INFINITY;
+		}
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.SpatialIndex.Handle;
+import com.kauridev.scout.SpatialIndex.Snapshot;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe spatial-aware collection of elements, backed by a {@link SpatialIndex}.
+ * <p>
+ * Queries and joins hold a shared read lock, so any number of threads may query the index at
+ * once. Operations which modify the index hold an exclusive write lock, so that writers wait for
+ * the queries in progress to finish, and queries started while a writer is waiting wait for the
+ * writer. A query never observes a partially applied modification.
+ * <p>
+ * A handler may query the index again, but may not modify it: a modification attempted by a
+ * thread which is querying the index throws a {@link ConcurrentModificationException} rather than
+ * waiting for its own query to finish. Batches of updates are not supported.
+ *
+ * @author Eric Fritz
+ */
+public class ConcurrentSpatialIndex<E>
+{
+	/**
+	 * The source of the order in which the locks of two indices are acquired by a join.
+	 */
+	private final static AtomicLong SEQUENCE = new AtomicLong();
+
+	/**
+	 * The underlying index.
+	 */
+	private final SpatialIndex<E> index;
+
+	/**
+	 * The lock held while querying (read) or modifying (write) the underlying index.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * The position of this index in the order in which locks are acquired by a join.
+	 */
+	private final long order = SEQUENCE.getAndIncrement();
+
+	/**
+	 * Creates a new ConcurrentSpatialIndex with the default configuration.
+	 */
+	public ConcurrentSpatialIndex() {
+		this(new SpatialIndexConfig());
+	}
+
+	/**
+	 * Creates a new ConcurrentSpatialIndex.
+	 *
+	 * @param config The structural parameters of the index.
+	 *
+	 * @throws IllegalArgumentException If the configuration is invalid.
+	 */
+	public ConcurrentSpatialIndex(SpatialIndexConfig config) {
+		index = new SpatialIndex<>(config);
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching elements that satisfy the
+	 * query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, QueryResultHandler<E> handler) {
+		lock.readLock().lock();
+
+		try {
+			index.queryUnguarded(query, handler);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Performs a spatial join on the index with itself, visiting all of the matching element pairs
+	 * that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		query(this, query, handler);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another concurrent spatial index, visiting all of
+	 * the matching element pairs that satisfy the query criteria. Both indices are locked for
+	 * reading for the duration of the join, in an order shared by all joins, so that joins in
+	 * opposite directions cannot deadlock.
+	 *
+	 * @param other   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public <F> void query(ConcurrentSpatialIndex<F> other, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		ReentrantReadWriteLock.ReadLock first = order <= other.order ? lock.readLock() : other.lock.readLock();
+		ReentrantReadWriteLock.ReadLock second = order <= other.order ? other.lock.readLock() : lock.readLock();
+
+		first.lock();
+
+		try {
+			second.lock();
+
+			try {
+				index.queryUnguarded(other.index, query, handler);
+			} finally {
+				second.unlock();
+			}
+		} finally {
+			first.unlock();
+		}
+	}
+
+	/**
+	 * Returns an immutable view of the current contents of the index. See
+	 * {@link SpatialIndex#snapshot()}. The snapshot may be queried without holding the lock, and
+	 * may be released from any thread.
+	 *
+	 * @return A snapshot of the index.
+	 */
+	public Snapshot<E> snapshot() {
+		lockForWriting();
+
+		try {
+			return index.snapshot();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Inserts an object into the index. See {@link SpatialIndex#insert(Object, AABB)}.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 *
+	 * @return A handle which can be used to update or remove the object.
+	 */
+	public Handle<E> insert(E object, AABB volume) {
+		lockForWriting();
+
+		try {
+			return index.insert(object, volume);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Inserts a collection of objects into the index at once. See
+	 * {@link SpatialIndex#bulkLoad(Map)}.
+	 *
+	 * @param objects A map from each object to insert to its bounding volume.
+	 *
+	 * @return A handle for each inserted object, in the iteration order of <tt>objects</tt>.
+	 */
+	public List<Handle<E>> bulkLoad(Map<? extends E, ? extends AABB> objects) {
+		lockForWriting();
+
+		try {
+			return index.bulkLoad(objects);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all objects from the index. All outstanding handles become invalid.
+	 */
+	public void clear() {
+		lockForWriting();
+
+		try {
+			index.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates the bounds of an object in the index. If the object was not already in the index, no
+	 * action is performed.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 */
+	public void update(E object, AABB volume) {
+		update(object, volume, null);
+	}
+
+	/**
+	 * Updates the bounds of a moving object in the index. If the object was not already in the
+	 * index, no action is performed. See {@link SpatialIndex#update(Handle, AABB, float[])}.
+	 *
+	 * @param object       The object to update.
+	 * @param volume       The new (current) bounding volume of the object.
+	 * @param displacement The expected displacement of the object along each dimension before its
+	 *                     next update, or <tt>null</tt>.
+	 */
+	public void update(E object, AABB volume, float[] displacement) {
+		lockForWriting();
+
+		try {
+			index.update(object, volume, displacement);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates the bounds of the object referenced by a handle. If the object was already removed
+	 * from the index, no action is performed.
+	 *
+	 * @param handle The handle returned when the object was inserted.
+	 * @param volume The new (current) bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the handle was issued by another index.
+	 */
+	public void update(Handle<E> handle, AABB volume) {
+		update(handle, volume, null);
+	}
+
+	/**
+	 * Updates the bounds of a moving object referenced by a handle. If the object was already
+	 * removed from the index, no action is performed. See
+	 * {@link SpatialIndex#update(Handle, AABB, float[])}.
+	 *
+	 * @param handle       The handle returned when the object was inserted.
+	 * @param volume       The new (current) bounding volume of the object.
+	 * @param displacement The expected displacement of the object along each dimension before its
+	 *                     next update, or <tt>null</tt>.
+	 *
+	 * @throws IllegalArgumentException If the handle was issued by another index.
+	 */
+	public void update(Handle<E> handle, AABB volume, float[] displacement) {
+		lockForWriting();
+
+		try {
+			index.update(handle, volume, displacement);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Re-reads the volume of every object and recomputes the bounds of every node. See
+	 * {@link SpatialIndex#refit()}.
+	 */
+	public void refit() {
+		lockForWriting();
+
+		try {
+			index.refit();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuilds the tree if its overlap ratio exceeds a threshold. See
+	 * {@link SpatialIndex#rebuildIfDegraded(float)}.
+	 *
+	 * @param threshold The largest acceptable overlap ratio.
+	 *
+	 * @return <tt>true</tt> if the tree was rebuilt, <tt>false</tt> otherwise.
+	 */
+	public boolean rebuildIfDegraded(float threshold) {
+		lockForWriting();
+
+		try {
+			return index.rebuildIfDegraded(threshold);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes an object from the index.
+	 *
+	 * @param object The object to remove. If the object was not already in the index, no action is
+	 *               performed.
+	 */
+	public void remove(E object) {
+		lockForWriting();
+
+		try {
+			index.remove(object);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the object referenced by a handle from the index. The handle is no longer valid after
+	 * this call.
+	 *
+	 * @param handle The handle returned when the object was inserted. If the object was already
+	 *               removed from the index, no action is performed.
+	 *
+	 * @throws IllegalArgumentException If the handle was issued by another index.
+	 */
+	public void remove(Handle<E> handle) {
+		lockForWriting();
+
+		try {
+			index.remove(handle);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes dead entries from the tree until all dead entries are removed or the time budget is
+	 * exhausted. See {@link SpatialIndex#compact(long)}.
+	 *
+	 * @param nanos The time budget, in nanoseconds.
+	 *
+	 * @return <tt>true</tt> if no dead entries remain, <tt>false</tt> otherwise.
+	 */
+	public boolean compact(long nanos) {
+		lockForWriting();
+
+		try {
+			return index.compact(nanos);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Acquires the write lock, unless the current thread is querying the index. A thread holding
+	 * the read lock would otherwise wait forever for its own query to finish.
+	 */
+	private void lockForWriting() {
+		if (lock.getReadHoldCount() != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		lock.writeLock().lock();
+	}
+}
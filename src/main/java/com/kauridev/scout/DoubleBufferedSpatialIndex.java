@@ -0,0 +1,351 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pair of {@link SpatialIndex} buffers for applications in which a single thread modifies the
+ * index while other threads query it, such as a simulation which is stepped on one thread and
+ * queried by others.
+ * <p>
+ * Modifications are applied to the back buffer while queries are served from the front buffer,
+ * so queries never wait for the writer. A call to {@link #flip()} publishes the back buffer
+ * atomically: queries started afterwards observe every modification made before the flip, and
+ * queries already in progress finish on the retired buffer. The retired buffer is not discarded;
+ * it becomes the next back buffer and is brought up to date by replaying the modifications it
+ * missed. The writer does wait for this: its first modification or flip after a flip waits for
+ * the queries still reading the retired buffer to finish.
+ * <p>
+ * All of the methods which modify the index, and {@link #flip()}, must be called from the same
+ * thread (or with external synchronization). Queries may be performed from any thread, but a
+ * handler may not modify or flip the index: a modification attempted by a thread which is
+ * querying the index throws a {@link ConcurrentModificationException} rather than waiting for its
+ * own query to finish.
+ *
+ * @author Eric Fritz
+ */
+public class DoubleBufferedSpatialIndex<E>
+{
+	private static final int INSERT = 0;
+	private static final int UPDATE = 1;
+	private static final int REMOVE = 2;
+	private static final int CLEAR = 3;
+
+	/**
+	 * The buffer from which queries are served.
+	 */
+	private volatile Buffer<E> front;
+
+	/**
+	 * The buffer to which modifications are applied.
+	 */
+	private Buffer<E> back;
+
+	/**
+	 * The modifications applied to the back buffer since the buffers were last in sync. After a
+	 * flip, these are the modifications which the new back buffer has missed.
+	 */
+	private List<Operation<E>> log = new ArrayList<>();
+
+	/**
+	 * Whether the back buffer has missed the modifications in the log.
+	 */
+	private boolean stale = false;
+
+	/**
+	 * The number of queries of the index in progress on the current thread.
+	 */
+	private final ThreadLocal<int[]> traversals = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	/**
+	 * Creates a new DoubleBufferedSpatialIndex with the default configuration.
+	 */
+	public DoubleBufferedSpatialIndex() {
+		this(new SpatialIndexConfig());
+	}
+
+	/**
+	 * Creates a new DoubleBufferedSpatialIndex.
+	 *
+	 * @param config The structural parameters of both buffers.
+	 *
+	 * @throws IllegalArgumentException If the configuration is invalid.
+	 */
+	public DoubleBufferedSpatialIndex(SpatialIndexConfig config) {
+		front = new Buffer<>(new SpatialIndex<E>(config));
+		back = new Buffer<>(new SpatialIndex<E>(config));
+	}
+
+	/**
+	 * Performs a spatial query on the front buffer, visiting all of the matching elements that
+	 * satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, QueryResultHandler<E> handler) {
+		Buffer<E> buffer = acquire();
+
+		try {
+			buffer.index.queryUnguarded(query, handler);
+		} finally {
+			release(buffer);
+		}
+	}
+
+	/**
+	 * Performs a spatial join on the front buffer with itself, visiting all of the matching element
+	 * pairs that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		Buffer<E> buffer = acquire();
+
+		try {
+			buffer.index.queryUnguarded(buffer.index, query, handler);
+		} finally {
+			release(buffer);
+		}
+	}
+
+	/**
+	 * Performs a spatial join on the front buffers of this index and another double-buffered
+	 * index, visiting all of the matching element pairs that satisfy the query criteria.
+	 *
+	 * @param other   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public <F> void query(DoubleBufferedSpatialIndex<F> other, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		Buffer<E> buffer1 = acquire();
+
+		try {
+			Buffer<F> buffer2 = other.acquire();
+
+			try {
+				buffer1.index.queryUnguarded(buffer2.index, query, handler);
+			} finally {
+				other.release(buffer2);
+			}
+		} finally {
+			release(buffer1);
+		}
+	}
+
+	/**
+	 * Inserts an object into the back buffer.
+	 * <p>
+	 * The bounds of <tt>volume</tt> are copied, so that the same bounds are replayed on the other
+	 * buffer even if <tt>volume</tt> is modified in the meantime.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 */
+	public void insert(E object, AABB volume) {
+		apply(new Operation<>(INSERT, object, volume.copy(), null));
+	}
+
+	/**
+	 * Updates the bounds of an object in the back buffer. If the object was not already in the
+	 * index, no action is performed.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 */
+	public void update(E object, AABB volume) {
+		update(object, volume, null);
+	}
+
+	/**
+	 * Updates the bounds of a moving object in the back buffer. If the object was not already in
+	 * the index, no action is performed. See {@link SpatialIndex#update(SpatialIndex.Handle, AABB, float[])}.
+	 *
+	 * @param object       The object to update.
+	 * @param volume       The new (current) bounding volume of the object.
+	 * @param displacement The expected displacement of the object along each dimension before its
+	 *                     next update, or <tt>null</tt>.
+	 */
+	public void update(E object, AABB volume, float[] displacement) {
+		apply(new Operation<>(UPDATE, object, volume.copy(), displacement == null ? null : displacement.clone()));
+	}
+
+	/**
+	 * Removes an object from the back buffer. If the object was not already in the index, no
+	 * action is performed.
+	 *
+	 * @param object The object to remove.
+	 */
+	public void remove(E object) {
+		apply(new Operation<>(REMOVE, object, null, null));
+	}
+
+	/**
+	 * Removes all objects from the back buffer.
+	 */
+	public void clear() {
+		apply(new Operation<E>(CLEAR, null, null, null));
+	}
+
+	/**
+	 * Publishes the back buffer, so that queries started from now on observe every modification
+	 * made before the flip. The retired front buffer becomes the back buffer.
+	 * <p>
+	 * The modifications made since the previous flip are replayed on the retired buffer before it
+	 * is next modified (or flipped), which waits for the queries still reading it to finish.
+	 */
+	public void flip() {
+		checkTraversal();
+		sync();
+
+		Buffer<E> buffer = front;
+		front = back;
+		back = buffer;
+		stale = true;
+	}
+
+	/**
+	 * Returns the front buffer after registering the calling thread as one of its readers. A
+	 * reader which registers with a buffer that has just been retired tries again, so that the
+	 * writer never replays modifications on a buffer which is being read.
+	 */
+	private Buffer<E> acquire() {
+		while (true) {
+			Buffer<E> buffer = front;
+			buffer.readers.incrementAndGet();
+
+			if (buffer == front) {
+				traversals.get()[0]++;
+				return buffer;
+			}
+
+			buffer.readers.decrementAndGet();
+		}
+	}
+
+	private void release(Buffer<E> buffer) {
+		traversals.get()[0]--;
+		buffer.readers.decrementAndGet();
+	}
+
+	/**
+	 * Fails a modification attempted by a thread which is querying the index. The thread could
+	 * otherwise wait forever in {@link #sync()} for its own query to finish.
+	 */
+	private void checkTraversal() {
+		if (traversals.get()[0] != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+	}
+
+	private void apply(Operation<E> operation) {
+		checkTraversal();
+		sync();
+		operation.apply(back.index);
+
+		if (operation.type == CLEAR) {
+			// The modifications before a clear have no effect on the other buffer.
+			log.clear();
+		}
+
+		log.add(operation);
+	}
+
+	/**
+	 * Brings the back buffer up to date with the front buffer, if it is stale, by replaying the
+	 * modifications in the log once every query reading it has finished.
+	 */
+	private void sync() {
+		if (!stale) {
+			return;
+		}
+
+		while (back.readers.get() != 0) {
+			Thread.yield();
+		}
+
+		for (Operation<E> operation : log) {
+			operation.apply(back.index);
+		}
+
+		log.clear();
+		stale = false;
+	}
+
+	private static final class Buffer<E>
+	{
+		private final SpatialIndex<E> index;
+		private final AtomicInteger readers = new AtomicInteger();
+
+		private Buffer(SpatialIndex<E> index) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * A modification recorded so that it can be applied to both buffers.
+	 */
+	private static final class Operation<E>
+	{
+		private final int type;
+		private final E object;
+		private final AABB volume;
+		private final float[] displacement;
+
+		private Operation(int type, E object, AABB volume, float[] displacement) {
+			this.type = type;
+			this.object = object;
+			this.volume = volume;
+			this.displacement = displacement;
+		}
+
+		private void apply(SpatialIndex<E> index) {
+			switch (type) {
+				case INSERT:
+					index.insert(object, volume);
+					break;
+
+				case UPDATE:
+					index.update(object, volume, displacement);
+					break;
+
+				case REMOVE:
+					index.remove(object);
+					break;
+
+				case CLEAR:
+					index.clear();
+					break;
+			}
+		}
+	}
+}
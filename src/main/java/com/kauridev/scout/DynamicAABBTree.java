@@ -0,0 +1,749 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.Query.QueryResult;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A spatial-aware collection of elements backed by a dynamic binary bounding volume hierarchy.
+ * <p>
+ * Each object is stored in a leaf, and each internal node has exactly two children. A new leaf is
+ * paired with a sibling chosen by the surface area heuristic, which estimates the cost of
+ * traversing the tree by the total surface area of its nodes. After each insertion or removal,
+ * the nodes along the path to the root are refit and locally rotated whenever swapping a child
+ * with a grandchild reduces the surface area of the tree. Nodes are stored in flat arrays indexed
+ * by node number and are recycled through a free list.
+ * <p>
+ * As in {@link SpatialIndex}, the tree can store enlarged (fat) bounds for each object so that
+ * small movements do not restructure the tree. The exact bounds are kept alongside and are used
+ * to answer queries.
+ * <p>
+ * The index supports the same {@link Query queries} and {@link JoinQuery join queries} as
+ * {@link SpatialIndex}, so that the two can be exchanged without changing query code. Which of
+ * the two performs better depends on the workload; <tt>BackendBenchmark</tt> (in the test
+ * sources) compares them on insert-heavy and self-join-heavy workloads.
+ * <p>
+ * <b>Note that this implementation is not synchronized.</b> If multiple threads access the index
+ * concurrently, and at least one of the threads modifies the index structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * @author Eric Fritz
+ */
+public class DynamicAABBTree<E>
+{
+	/**
+	 * The node number used to denote the absence of a node.
+	 */
+	private final static int NULL = -1;
+
+	/**
+	 * The number of node slots allocated when the tree first grows.
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The number of values per node in {@link #links}.
+	 */
+	private final static int LINKS = 4;
+
+	/**
+	 * The positions of the parent, first child, second child, and height of a node within its
+	 * values in {@link #links}.
+	 */
+	private final static int PARENT = 0;
+	private final static int CHILD1 = 1;
+	private final static int CHILD2 = 2;
+	private final static int HEIGHT = 3;
+
+	/**
+	 * The distance by which the stored (fat) bounds of each leaf are enlarged, or zero if the
+	 * tree stores exact bounds only.
+	 */
+	private final float margin;
+
+	/**
+	 * The root node, or {@link #NULL} if the tree is empty.
+	 */
+	private int root = NULL;
+
+	/**
+	 * The first unused node slot, or {@link #NULL} if every slot is in use. Unused slots are
+	 * chained through their parent links.
+	 */
+	private int free = NULL;
+
+	/**
+	 * The number of node slots.
+	 */
+	private int capacity = 0;
+
+	/**
+	 * The number of dimensions of the indexed volumes. This value is zero until the first object is
+	 * inserted into the index.
+	 */
+	private int dimensions = 0;
+
+	/**
+	 * The packed volume of each node.
+	 */
+	private float[] bounds = new float[0];
+
+	/**
+	 * The exact packed volume of each leaf, or <tt>null</tt> if the tree stores exact bounds only.
+	 */
+	private float[] exact;
+
+	/**
+	 * The parent, children, and height of each node, {@link #LINKS} values per node. The children
+	 * of a leaf are {@link #NULL}, and the height of a leaf is zero.
+	 */
+	private int[] links = new int[0];
+
+	/**
+	 * The object stored in each leaf.
+	 */
+	private Object[] objects = new Object[0];
+
+	/**
+	 * An auxiliary map of objects to their leaves.
+	 */
+	private Map<E, Integer> leaves = new HashMap<>();
+
+	/**
+	 * The number of active traversals of the index. This field is used to forbid structural
+	 * modification operations on the index while it is being traversed, which may result in
+	 * undefined or exceptional behavior.
+	 */
+	private transient int traversalCount = 0;
+
+	/**
+	 * Creates a new DynamicAABBTree which stores exact bounds.
+	 */
+	public DynamicAABBTree() {
+		this(0);
+	}
+
+	/**
+	 * Creates a new DynamicAABBTree.
+	 *
+	 * @param margin The distance by which the stored bounds of each object are enlarged on every
+	 *               side. An update whose new bounds lie within the enlarged bounds does not
+	 *               restructure the tree.
+	 *
+	 * @throws IllegalArgumentException If the margin is negative.
+	 */
+	public DynamicAABBTree(float margin) {
+		if (!(margin >= 0)) {
+			throw new IllegalArgumentException("Margin must not be negative.");
+		}
+
+		this.margin = margin;
+
+		if (margin != 0) {
+			exact = new float[0];
+		}
+	}
+
+	/**
+	 * Returns the number of objects in the index.
+	 *
+	 * @return The number of objects in the index.
+	 */
+	public int size() {
+		return leaves.size();
+	}
+
+	/**
+	 * Returns the height of the tree. An empty tree, or a tree with a single object, has height
+	 * zero.
+	 *
+	 * @return The height of the tree.
+	 */
+	public int getHeight() {
+		return root == NULL ? 0 : links[root * LINKS + HEIGHT];
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching elements that satisfy the
+	 * query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, QueryResultHandler<E> handler) {
+		if (root == NULL) {
+			return;
+		}
+
+		traversalCount++;
+		query(query, handler, root, new AABBView(dimensions));
+		traversalCount--;
+	}
+
+	/**
+	 * Performs a spatial join on this index and itself, visiting all of the matching element pairs
+	 * that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		query(this, query, handler);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another dynamic AABB tree, visiting all of the
+	 * matching element pairs that satisfy the query criteria.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	@SuppressWarnings("unchecked")
+	public <F> void query(DynamicAABBTree<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		if (root == NULL || index.root == NULL) {
+			return;
+		}
+
+		traversalCount++;
+
+		if (index == this) {
+			join(query, (JoinQueryResultHandler<E, E>) handler, root, new AABBView(dimensions), new AABBView(dimensions));
+		} else {
+			this.<F>query(index, query, handler, root, index.root, new AABBView(dimensions), new AABBView(index.dimensions), false);
+		}
+
+		traversalCount--;
+	}
+
+	/**
+	 * Inserts an object into the index.
+	 * <p>
+	 * The bounds of <tt>volume</tt> are copied into the index. If <tt>volume</tt> is modified after
+	 * insertion, {@link #update(Object, AABB)} should be called in order to keep the index
+	 * well-formed.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the object is already in the index.
+	 */
+	public void insert(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (leaves.containsKey(object)) {
+			throw new IllegalArgumentException("Object is already in the index.");
+		}
+
+		float[] volumeBounds = toBounds(volume);
+
+		int leaf = allocate();
+		objects[leaf] = object;
+		setBounds(leaf, volumeBounds, fatten(volumeBounds));
+
+		insertLeaf(leaf);
+		leaves.put(object, leaf);
+	}
+
+	/**
+	 * Updates the bounds of an object in the index. If the object was not already in the index, no
+	 * action is performed.
+	 * <p>
+	 * If the new bounds lie within the stored (fat) bounds of the object, or within the bounds of
+	 * the object's parent node, the object's bounds are replaced in place. Otherwise, the object's
+	 * leaf is removed and inserted again.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 */
+	public void update(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Integer leaf = leaves.get(object);
+
+		if (leaf == null) {
+			return;
+		}
+
+		int size = 2 * dimensions;
+		int parent = links[leaf * LINKS + PARENT];
+		float[] volumeBounds = toBounds(volume);
+
+		if (exact != null && Bounds.contains(bounds, 1, leaf * size, volumeBounds, dimensions)) {
+			System.arraycopy(volumeBounds, 0, exact, leaf * size, size);
+			return;
+		}
+
+		float[] fat = fatten(volumeBounds);
+
+		if (parent == NULL || Bounds.contains(bounds, 1, parent * size, fat, dimensions)) {
+			setBounds(leaf, volumeBounds, fat);
+			return;
+		}
+
+		removeLeaf(leaf);
+		setBounds(leaf, volumeBounds, fat);
+		insertLeaf(leaf);
+	}
+
+	/**
+	 * Removes an object from the index.
+	 *
+	 * @param object The object to remove. If the object was not already in the index, no action is
+	 *               performed.
+	 */
+	public void remove(E object) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Integer leaf = leaves.remove(object);
+
+		if (leaf != null) {
+			removeLeaf(leaf);
+			release(leaf);
+		}
+	}
+
+	/**
+	 * Removes all objects from the index.
+	 */
+	public void clear() {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		for (int i = 0; i < capacity; i++) {
+			objects[i] = null;
+			links[i * LINKS + PARENT] = i + 1 < capacity ? i + 1 : NULL;
+		}
+
+		root = NULL;
+		free = capacity == 0 ? NULL : 0;
+		leaves.clear();
+	}
+
+	/**
+	 * Takes an unused node slot, growing the node arrays if necessary.
+	 */
+	private int allocate() {
+		if (free == NULL) {
+			int length = Math.max(INITIAL_CAPACITY, capacity * 2);
+
+			bounds = Arrays.copyOf(bounds, length * 2 * dimensions);
+			links = Arrays.copyOf(links, length * LINKS);
+			objects = Arrays.copyOf(objects, length);
+
+			if (exact != null) {
+				exact = Arrays.copyOf(exact, length * 2 * dimensions);
+			}
+
+			for (int i = capacity; i < length; i++) {
+				links[i * LINKS + PARENT] = i + 1 < length ? i + 1 : NULL;
+			}
+
+			free = capacity;
+			capacity = length;
+		}
+
+		int node = free;
+		free = links[node * LINKS + PARENT];
+
+		links[node * LINKS + PARENT] = NULL;
+		links[node * LINKS + CHILD1] = NULL;
+		links[node * LINKS + CHILD2] = NULL;
+		links[node * LINKS + HEIGHT] = 0;
+
+		return node;
+	}
+
+	private void release(int node) {
+		objects[node] = null;
+		links[node * LINKS + PARENT] = free;
+		free = node;
+	}
+
+	/**
+	 * Returns a packed volume enlarged by the margin on every side, or the volume itself if the
+	 * tree stores exact bounds only.
+	 */
+	private float[] fatten(float[] volume) {
+		if (exact == null) {
+			return volume;
+		}
+
+		float[] fat = new float[volume.length];
+
+		for (int i = 0; i < dimensions; i++) {
+			fat[2 * i + 0] = volume[2 * i + 0] - margin;
+			fat[2 * i + 1] = volume[2 * i + 1] + margin;
+		}
+
+		return fat;
+	}
+
+	/**
+	 * Sets the exact and stored bounds of a leaf.
+	 */
+	private void setBounds(int leaf, float[] volume, float[] fat) {
+		int size = 2 * dimensions;
+
+		if (exact != null) {
+			System.arraycopy(volume, 0, exact, leaf * size, size);
+		}
+
+		System.arraycopy(fat, 0, bounds, leaf * size, size);
+	}
+
+	private boolean isLeaf(int node) {
+		return links[node * LINKS + CHILD1] == NULL;
+	}
+
+	/**
+	 * Attaches a detached leaf to the tree as the sibling of the node which minimizes the increase
+	 * in surface area, then refits and rotates the ancestors of the leaf.
+	 */
+	private void insertLeaf(int leaf) {
+		if (root == NULL) {
+			root = leaf;
+			links[leaf * LINKS + PARENT] = NULL;
+			return;
+		}
+
+		int sibling = chooseSibling(leaf);
+		int oldParent = links[sibling * LINKS + PARENT];
+		int newParent = allocate();
+
+		links[newParent * LINKS + PARENT] = oldParent;
+		links[newParent * LINKS + CHILD1] = sibling;
+		links[newParent * LINKS + CHILD2] = leaf;
+		links[sibling * LINKS + PARENT] = newParent;
+		links[leaf * LINKS + PARENT] = newParent;
+
+		if (oldParent == NULL) {
+			root = newParent;
+		} else {
+			replaceChild(oldParent, sibling, newParent);
+		}
+
+		fit(newParent);
+		refitAncestors(oldParent);
+	}
+
+	/**
+	 * Detaches a leaf from the tree. The parent of the leaf is released and replaced by the leaf's
+	 * sibling, and the remaining ancestors are refit and rotated.
+	 */
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL;
+			return;
+		}
+
+		int parent = links[leaf * LINKS + PARENT];
+		int grandparent = links[parent * LINKS + PARENT];
+		int sibling = links[parent * LINKS + CHILD1] == leaf ? links[parent * LINKS + CHILD2] : links[parent * LINKS + CHILD1];
+
+		links[sibling * LINKS + PARENT] = grandparent;
+
+		if (grandparent == NULL) {
+			root = sibling;
+		} else {
+			replaceChild(grandparent, parent, sibling);
+		}
+
+		release(parent);
+		links[leaf * LINKS + PARENT] = NULL;
+		refitAncestors(grandparent);
+	}
+
+	/**
+	 * Finds a node which, when paired with the given leaf under a new parent, adds little surface
+	 * area to the tree. The cost of pairing with a node is the surface area of the new parent plus
+	 * the growth of each ancestor of the node. The search descends from the root into the child
+	 * with the smaller lower bound on the cost of any node beneath it, and stops once neither child
+	 * can improve on the best cost found so far.
+	 */
+	private int chooseSibling(int leaf) {
+		int size = 2 * dimensions;
+		int offset = leaf * size;
+		float leafSurface = Bounds.surface(bounds, offset, dimensions);
+
+		int node = root;
+		int best = root;
+		float bestCost = Bounds.unionSurface(bounds, root * size, bounds, offset, dimensions);
+		float inherited = 0;
+
+		while (!isLeaf(node)) {
+			inherited += Bounds.unionSurface(bounds, node * size, bounds, offset, dimensions) - Bounds.surface(bounds, node * size, dimensions);
+
+			int child1 = links[node * LINKS + CHILD1];
+			int child2 = links[node * LINKS + CHILD2];
+
+			float combined1 = Bounds.unionSurface(bounds, child1 * size, bounds, offset, dimensions);
+			float combined2 = Bounds.unionSurface(bounds, child2 * size, bounds, offset, dimensions);
+
+			if (combined1 + inherited < bestCost) {
+				best = child1;
+				bestCost = combined1 + inherited;
+			}
+
+			if (combined2 + inherited < bestCost) {
+				best = child2;
+				bestCost = combined2 + inherited;
+			}
+
+			float bound1 = isLeaf(child1) ? Float.POSITIVE_INFINITY : leafSurface + inherited + combined1 - Bounds.surface(bounds, child1 * size, dimensions);
+			float bound2 = isLeaf(child2) ? Float.POSITIVE_INFINITY : leafSurface + inherited + combined2 - Bounds.surface(bounds, child2 * size, dimensions);
+
+			if (Math.min(bound1, bound2) >= bestCost) {
+				break;
+			}
+
+			node = bound1 <= bound2 ? child1 : child2;
+		}
+
+		return best;
+	}
+
+	/**
+	 * Refits each node from the given node up to the root, rotating each node as it is refit.
+	 */
+	private void refitAncestors(int node) {
+		while (node != NULL) {
+			fit(node);
+			rotate(node);
+
+			node = links[node * LINKS + PARENT];
+		}
+	}
+
+	/**
+	 * Recomputes the bounds and height of an internal node from its children.
+	 */
+	private void fit(int node) {
+		int size = 2 * dimensions;
+		int child1 = links[node * LINKS + CHILD1];
+		int child2 = links[node * LINKS + CHILD2];
+
+		System.arraycopy(bounds, child1 * size, bounds, node * size, size);
+		Bounds.include(bounds, node * size, bounds, child2 * size, dimensions);
+
+		links[node * LINKS + HEIGHT] = 1 + Math.max(links[child1 * LINKS + HEIGHT], links[child2 * LINKS + HEIGHT]);
+	}
+
+	/**
+	 * Swaps a child of a node with a grandchild beneath the other child, if doing so reduces the
+	 * surface area of that other child. Of the (up to four) possible swaps, the one with the
+	 * greatest reduction is performed. The bounds of the node itself are unaffected.
+	 */
+	private void rotate(int node) {
+		int size = 2 * dimensions;
+		int b = links[node * LINKS + CHILD1];
+		int c = links[node * LINKS + CHILD2];
+
+		int swap1 = NULL;
+		int swap2 = NULL;
+		float gain = 0;
+
+		if (!isLeaf(c)) {
+			float surface = Bounds.surface(bounds, c * size, dimensions);
+			int f = links[c * LINKS + CHILD1];
+			int g = links[c * LINKS + CHILD2];
+
+			float gainF = surface - Bounds.unionSurface(bounds, b * size, bounds, g * size, dimensions);
+			float gainG = surface - Bounds.unionSurface(bounds, b * size, bounds, f * size, dimensions);
+
+			if (gainF > gain) {
+				gain = gainF;
+				swap1 = b;
+				swap2 = f;
+			}
+
+			if (gainG > gain) {
+				gain = gainG;
+				swap1 = b;
+				swap2 = g;
+			}
+		}
+
+		if (!isLeaf(b)) {
+			float surface = Bounds.surface(bounds, b * size, dimensions);
+			int d = links[b * LINKS + CHILD1];
+			int e = links[b * LINKS + CHILD2];
+
+			float gainD = surface - Bounds.unionSurface(bounds, c * size, bounds, e * size, dimensions);
+			float gainE = surface - Bounds.unionSurface(bounds, c * size, bounds, d * size, dimensions);
+
+			if (gainD > gain) {
+				gain = gainD;
+				swap1 = c;
+				swap2 = d;
+			}
+
+			if (gainE > gain) {
+				gain = gainE;
+				swap1 = c;
+				swap2 = e;
+			}
+		}
+
+		if (swap1 != NULL) {
+			int parent = links[swap2 * LINKS + PARENT];
+
+			replaceChild(node, swap1, swap2);
+			replaceChild(parent, swap2, swap1);
+
+			links[swap1 * LINKS + PARENT] = parent;
+			links[swap2 * LINKS + PARENT] = node;
+
+			fit(parent);
+			links[node * LINKS + HEIGHT] = 1 + Math.max(links[links[node * LINKS + CHILD1] * LINKS + HEIGHT], links[links[node * LINKS + CHILD2] * LINKS + HEIGHT]);
+		}
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		if (links[parent * LINKS + CHILD1] == oldChild) {
+			links[parent * LINKS + CHILD1] = newChild;
+		} else {
+			links[parent * LINKS + CHILD2] = newChild;
+		}
+	}
+
+	private AABBView wrap(AABBView view, int node) {
+		return view.wrap(bounds, node * 2 * dimensions, 1);
+	}
+
+	/**
+	 * Points a view at the exact bounds of a leaf.
+	 */
+	private AABBView wrapExact(AABBView view, int leaf) {
+		return view.wrap(exact != null ? exact : bounds, leaf * 2 * dimensions, 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean query(Query query, QueryResultHandler<E> handler, int node, AABBView view) {
+		if (isLeaf(node)) {
+			if (query.query(wrapExact(view, node), false) == QueryResult.PASS) {
+				return handler.handle((E) objects[node]);
+			}
+
+			return true;
+		}
+
+		QueryResult result = query.query(wrap(view, node), true);
+
+		if (result == QueryResult.FAIL) {
+			return true;
+		}
+
+		if (result == QueryResult.PASS) {
+			return visitAll(handler, node);
+		}
+
+		return query(query, handler, links[node * LINKS + CHILD1], view) && query(query, handler, links[node * LINKS + CHILD2], view);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean visitAll(QueryResultHandler<E> handler, int node) {
+		if (isLeaf(node)) {
+			return handler.handle((E) objects[node]);
+		}
+
+		return visitAll(handler, links[node * LINKS + CHILD1]) && visitAll(handler, links[node * LINKS + CHILD2]);
+	}
+
+	/**
+	 * Joins every pair of distinct leaves beneath a node with each other, by joining the two
+	 * subtrees of each internal node.
+	 */
+	private boolean join(JoinQuery query, JoinQueryResultHandler<E, E> handler, int node, AABBView view1, AABBView view2) {
+		if (isLeaf(node)) {
+			return true;
+		}
+
+		if (!join(query, handler, links[node * LINKS + CHILD1], view1, view2) || !join(query, handler, links[node * LINKS + CHILD2], view1, view2)) {
+			return false;
+		}
+
+		return this.<E>query(this, query, handler, links[node * LINKS + CHILD1], links[node * LINKS + CHILD2], view1, view2, !query.isSymmetric());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> boolean query(DynamicAABBTree<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler, int node1, int node2, AABBView view1, AABBView view2, boolean reverse) {
+		boolean leaf1 = isLeaf(node1);
+		boolean leaf2 = index.isLeaf(node2);
+
+		if (leaf1 && leaf2) {
+			wrapExact(view1, node1);
+			index.wrapExact(view2, node2);
+
+			if (query.query(view1, view2, false)) {
+				return handler.handle((E) objects[node1], (F) index.objects[node2]);
+			}
+
+			if (reverse && query.query(view2, view1, false)) {
+				return handler.handle((E) index.objects[node2], (F) objects[node1]);
+			}
+
+			return true;
+		}
+
+		wrap(view1, node1);
+		index.wrap(view2, node2);
+
+		if (!query.query(view1, view2, true) && !(reverse && query.query(view2, view1, true))) {
+			return true;
+		}
+
+		if (leaf2 || (!leaf1 && Bounds.surface(bounds, node1 * 2 * dimensions, dimensions) >= Bounds.surface(index.bounds, node2 * 2 * index.dimensions, index.dimensions))) {
+			return this.<F>query(index, query, handler, links[node1 * LINKS + CHILD1], node2, view1, view2, reverse) && this.<F>query(index, query, handler, links[node1 * LINKS + CHILD2], node2, view1, view2, reverse);
+		} else {
+			return this.<F>query(index, query, handler, node1, index.links[node2 * LINKS + CHILD1], view1, view2, reverse) && this.<F>query(index, query, handler, node1, index.links[node2 * LINKS + CHILD2], view1, view2, reverse);
+		}
+	}
+
+	private float[] toBounds(AABB volume) {
+		if (dimensions == 0) {
+			dimensions = volume.getDimensions();
+			bounds = new float[capacity * 2 * dimensions];
+
+			if (exact != null) {
+				exact = new float[bounds.length];
+			}
+		}
+
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return Bounds.pack(volume);
+	}
+}
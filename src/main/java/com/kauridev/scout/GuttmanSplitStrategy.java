@@ -0,0 +1,123 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * The common structure of the split strategies described in Guttman '84.
+ * <p>
+ * Two seed entries start the groups. The remaining entries are assigned one at a time to the group
+ * whose bounding volume requires the least enlargement to include them, resolving ties by smaller
+ * volume and then by fewer entries. Once a group needs every remaining entry to reach the minimum
+ * number of entries, the remaining entries are assigned to it.
+ *
+ * @author Eric Fritz
+ */
+abstract class GuttmanSplitStrategy implements SplitStrategy
+{
+	@Override
+	public void split(float[] volumes, int count, int dimensions, int minEntries, boolean[] assignment) {
+		int size = 2 * dimensions;
+		int[] seeds = pickSeeds(volumes, count, dimensions);
+
+		boolean[] assigned = new boolean[count];
+		float[] cover1 = new float[size];
+		float[] cover2 = new float[size];
+
+		System.arraycopy(volumes, seeds[0] * size, cover1, 0, size);
+		System.arraycopy(volumes, seeds[1] * size, cover2, 0, size);
+
+		assigned[seeds[0]] = true;
+		assigned[seeds[1]] = true;
+		assignment[seeds[0]] = false;
+		assignment[seeds[1]] = true;
+
+		int size1 = 1;
+		int size2 = 1;
+
+		for (int remaining = count - 2; remaining > 0; remaining--) {
+			if (size1 + remaining <= minEntries || size2 + remaining <= minEntries) {
+				boolean group = size2 + remaining <= minEntries;
+
+				for (int i = 0; i < count; i++) {
+					if (!assigned[i]) {
+						assignment[i] = group;
+					}
+				}
+
+				return;
+			}
+
+			int next = pickNext(volumes, count, dimensions, assigned, cover1, cover2);
+
+			float area1 = Bounds.area(cover1, 0, dimensions);
+			float area2 = Bounds.area(cover2, 0, dimensions);
+			float diff1 = Bounds.unionArea(cover1, 0, volumes, next * size, dimensions) - area1;
+			float diff2 = Bounds.unionArea(cover2, 0, volumes, next * size, dimensions) - area2;
+
+			boolean group;
+
+			if (diff1 != diff2) {
+				group = diff2 < diff1;
+			} else if (area1 != area2) {
+				group = area2 < area1;
+			} else {
+				group = size2 < size1;
+			}
+
+			assigned[next] = true;
+			assignment[next] = group;
+
+			if (group) {
+				Bounds.include(cover2, 0, volumes, next * size, dimensions);
+				size2++;
+			} else {
+				Bounds.include(cover1, 0, volumes, next * size, dimensions);
+				size1++;
+			}
+		}
+	}
+
+	/**
+	 * Chooses the two entries which start the groups.
+	 *
+	 * @param volumes    The packed volumes of the entries.
+	 * @param count      The number of entries.
+	 * @param dimensions The number of dimensions of each volume.
+	 *
+	 * @return The indices of two distinct entries.
+	 */
+	protected abstract int[] pickSeeds(float[] volumes, int count, int dimensions);
+
+	/**
+	 * Chooses the next entry to assign to a group.
+	 *
+	 * @param volumes    The packed volumes of the entries.
+	 * @param count      The number of entries.
+	 * @param dimensions The number of dimensions of each volume.
+	 * @param assigned   Whether each entry has already been assigned.
+	 * @param cover1     The packed bounding volume of the first group.
+	 * @param cover2     The packed bounding volume of the second group.
+	 *
+	 * @return The index of an unassigned entry.
+	 */
+	protected abstract int pickNext(float[] volumes, int count, int dimensions, boolean[] assigned, float[] cover1, float[] cover2);
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.Arrays;
+
+/**
+ * Orders packed volumes along a Hilbert space-filling curve.
+ * <p>
+ * The center of each volume is quantized onto a grid spanning the centers of all volumes, and the
+ * grid cells are ranked by their distance along the curve using Skilling's transposed encoding.
+ * The curve is resolved to 32 bits, split evenly between the dimensions.
+ *
+ * @author Eric Fritz
+ */
+final class HilbertCurve
+{
+	private HilbertCurve() {
+	}
+
+	/**
+	 * Orders a set of packed volumes by the Hilbert value of their centers.
+	 *
+	 * @param volumes    The packed volumes.
+	 * @param count      The number of volumes.
+	 * @param dimensions The dimensionality of each volume.
+	 * @param order      The array of <tt>count</tt> indices to fill, in curve order.
+	 */
+	public static void sort(float[] volumes, int count, int dimensions, int[] order) {
+		if (count == 0) {
+			return;
+		}
+
+		int bits = Math.max(1, Math.min(16, 32 / dimensions));
+		int cells = (1 << bits) - 1;
+
+		float[] minimum = new float[dimensions];
+		float[] scale = new float[dimensions];
+
+		for (int d = 0; d < dimensions; d++) {
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+
+			for (int i = 0; i < count; i++) {
+				float center = center(volumes, i, d, dimensions);
+				min = Math.min(min, center);
+				max = Math.max(max, center);
+			}
+
+			minimum[d] = min;
+			scale[d] = max > min ? cells / (max - min) : 0;
+		}
+
+		long[] keys = new long[count];
+		int[] axes = new int[dimensions];
+
+		for (int i = 0; i < count; i++) {
+			for (int d = 0; d < dimensions; d++) {
+				axes[d] = Math.max(0, Math.min(cells, (int) ((center(volumes, i, d, dimensions) - minimum[d]) * scale[d])));
+			}
+
+			long value = encode(axes, bits) & 0xffffffffL;
+			keys[i] = ((value - 0x80000000L) << 32) | i;
+		}
+
+		Arrays.sort(keys);
+
+		for (int i = 0; i < count; i++) {
+			order[i] = (int) keys[i];
+		}
+	}
+
+	private static float center(float[] volumes, int index, int dimension, int dimensions) {
+		int offset = index * 2 * dimensions + 2 * dimension;
+		return (volumes[offset] + volumes[offset + 1]) / 2;
+	}
+
+	/**
+	 * Returns the distance of a grid cell along the curve. The coordinates are transformed in place
+	 * into the transposed Hilbert index, whose bits are then interleaved.
+	 */
+	private static long encode(int[] axes, int bits) {
+		int n = axes.length;
+
+		for (int q = 1 << (bits - 1); q > 1; q >>= 1) {
+			int p = q - 1;
+
+			for (int i = 0; i < n; i++) {
+				if ((axes[i] & q) != 0) {
+					axes[0] ^= p;
+				} else {
+					int t = (axes[0] ^ axes[i]) & p;
+					axes[0] ^= t;
+					axes[i] ^= t;
+				}
+			}
+		}
+
+		for (int i = 1; i < n; i++) {
+			axes[i] ^= axes[i - 1];
+		}
+
+		int t = 0;
+		for (int q = 1 << (bits - 1); q > 1; q >>= 1) {
+			if ((axes[n - 1] & q) != 0) {
+				t ^= q - 1;
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			axes[i] ^= t;
+		}
+
+		long value = 0;
+
+		for (int b = bits - 1; b >= 0; b--) {
+			for (int i = 0; i < n; i++) {
+				value = (value << 1) | ((axes[i] >> b) & 1);
+			}
+		}
+
+		return value;
+	}
+}
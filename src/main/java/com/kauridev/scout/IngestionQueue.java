@@ -0,0 +1,308 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A front end for a {@link SpatialIndex} which accepts modifications from many threads and
+ * applies them from a single thread.
+ * <p>
+ * Producers may insert, update, and remove objects from any thread at any time. These
+ * modifications are placed on a lock-free queue, so producers never block, and are not visible
+ * in the index until {@link #apply()} is called. The thread which owns the index calls
+ * {@link #apply()} periodically (for instance, once per frame) to drain the queue. The
+ * modifications drained at once are coalesced per object before they are applied, so that an
+ * object which was updated several times is only moved to its latest position, and an object
+ * which was inserted and then removed never reaches the index.
+ * <p>
+ * An insertion replaces any entry of the object already in the index, whether it was inserted
+ * by an earlier call to {@link #apply()} or earlier in the same one, so an object inserted several
+ * times is stored once with its latest volume. Applying the same sequence directly to a
+ * {@link SpatialIndex} would instead store the object several times.
+ * <p>
+ * Volumes are checked when a modification is queued, so that a producer which passes a volume of
+ * the wrong dimensionality receives the exception, rather than the thread which applies the
+ * queue. The dimensionality is that of the index, or of the first queued volume if the index was
+ * empty when the queue was created.
+ * <p>
+ * The index should not be modified directly while producers are active, except by the thread
+ * which calls {@link #apply()}. Modifications of different objects may be applied in a different
+ * order than they were queued; modifications of the same object take effect in the order they
+ * were queued by the same thread.
+ *
+ * @author Eric Fritz
+ */
+public class IngestionQueue<E>
+{
+	private static final int INSERT = 0;
+	private static final int UPDATE = 1;
+	private static final int REMOVE = 2;
+
+	/**
+	 * The index to which modifications are applied.
+	 */
+	private final SpatialIndex<E> index;
+
+	/**
+	 * The modifications queued by producers.
+	 */
+	private final Queue<Operation<E>> queue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The net modification of each object drained by the current call to {@link #apply(int)}. The
+	 * map is reused by each call.
+	 */
+	private final Map<E, Change> changes = new LinkedHashMap<>();
+
+	/**
+	 * The dimensionality of queued volumes, or zero if it is not yet known.
+	 */
+	private final AtomicInteger dimensions;
+
+	/**
+	 * Creates a new IngestionQueue.
+	 *
+	 * @param index The index to which modifications are applied.
+	 */
+	public IngestionQueue(SpatialIndex<E> index) {
+		this.index = index;
+		this.dimensions = new AtomicInteger(index.getDimensions());
+	}
+
+	/**
+	 * Returns the index to which modifications are applied.
+	 *
+	 * @return The index.
+	 */
+	public SpatialIndex<E> getIndex() {
+		return index;
+	}
+
+	/**
+	 * Queues the insertion of an object. This method may be called from any thread.
+	 * <p>
+	 * The bounds of <tt>volume</tt> are copied, so <tt>volume</tt> may be reused once this method
+	 * returns.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume differs from that of the
+	 *                                  index.
+	 */
+	public void insert(E object, AABB volume) {
+		checkDimensions(volume, null);
+		queue.add(new Operation<>(INSERT, object, volume.copy(), null));
+	}
+
+	/**
+	 * Queues an update of the bounds of an object. This method may be called from any thread.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume differs from that of the
+	 *                                  index.
+	 */
+	public void update(E object, AABB volume) {
+		update(object, volume, null);
+	}
+
+	/**
+	 * Queues an update of the bounds of a moving object. This method may be called from any
+	 * thread. See {@link SpatialIndex#update(SpatialIndex.Handle, AABB, float[])}.
+	 *
+	 * @param object       The object to update.
+	 * @param volume       The new (current) bounding volume of the object.
+	 * @param displacement The expected displacement of the object along each dimension before its
+	 *                     next update, or <tt>null</tt>.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume differs from that of the
+	 *                                  index, or if the length of <tt>displacement</tt> differs from
+	 *                                  the dimensionality of the index.
+	 */
+	public void update(E object, AABB volume, float[] displacement) {
+		checkDimensions(volume, displacement);
+		queue.add(new Operation<>(UPDATE, object, volume.copy(), displacement == null ? null : displacement.clone()));
+	}
+
+	/**
+	 * Queues the removal of an object. This method may be called from any thread.
+	 *
+	 * @param object The object to remove.
+	 */
+	public void remove(E object) {
+		queue.add(new Operation<>(REMOVE, object, null, null));
+	}
+
+	/**
+	 * Applies every queued modification to the index. See {@link #apply(int)}.
+	 *
+	 * @return The number of modifications drained from the queue.
+	 */
+	public int apply() {
+		return apply(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Drains at most the given number of modifications from the queue and applies them to the
+	 * index. Modifications queued while this method runs may be left for the next call.
+	 * <p>
+	 * The drained modifications are first reduced to a single net change per object. Removals are
+	 * applied first, then insertions, and then the updates are applied as a single batch. This
+	 * method must only be called by one thread at a time, and not during a query of the index or
+	 * while a batch is in progress.
+	 *
+	 * @param limit The maximum number of modifications to drain.
+	 *
+	 * @return The number of modifications drained from the queue.
+	 */
+	public int apply(int limit) {
+		int count = 0;
+		int updates = 0;
+		Operation<E> operation;
+
+		while (count < limit && (operation = queue.poll()) != null) {
+			Change change = changes.get(operation.object);
+
+			if (change == null) {
+				changes.put(operation.object, change = new Change());
+			}
+
+			change.add(operation);
+			count++;
+		}
+
+		try {
+			for (Map.Entry<E, Change> entry : changes.entrySet()) {
+				if (entry.getValue().remove) {
+					index.remove(entry.getKey());
+				}
+			}
+
+			for (Map.Entry<E, Change> entry : changes.entrySet()) {
+				if (entry.getValue().then == INSERT) {
+					index.insert(entry.getKey(), entry.getValue().volume);
+				} else if (entry.getValue().then == UPDATE) {
+					updates++;
+				}
+			}
+
+			if (updates != 0) {
+				index.beginBatch();
+
+				try {
+					for (Map.Entry<E, Change> entry : changes.entrySet()) {
+						if (entry.getValue().then == UPDATE) {
+							index.update(entry.getKey(), entry.getValue().volume, entry.getValue().displacement);
+						}
+					}
+				} finally {
+					index.commit();
+				}
+			}
+		} finally {
+			changes.clear();
+		}
+
+		return count;
+	}
+
+	private void checkDimensions(AABB volume, float[] displacement) {
+		int n = volume.getDimensions();
+
+		if (!dimensions.compareAndSet(0, n) && dimensions.get() != n) {
+			throw new IllegalArgumentException();
+		}
+
+		if (displacement != null && displacement.length != n) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * A modification queued by a producer.
+	 */
+	private static final class Operation<E>
+	{
+		private final int type;
+		private final E object;
+		private final AABB volume;
+		private final float[] displacement;
+
+		private Operation(int type, E object, AABB volume, float[] displacement) {
+			this.type = type;
+			this.object = object;
+			this.volume = volume;
+			this.displacement = displacement;
+		}
+	}
+
+	/**
+	 * The net effect of the modifications of a single object: an optional removal, followed by
+	 * an optional insertion or update.
+	 */
+	private static final class Change
+	{
+		private static final int NOTHING = -1;
+
+		private boolean remove = false;
+		private int then = NOTHING;
+		private AABB volume;
+		private float[] displacement;
+
+		private void add(Operation<?> operation) {
+			switch (operation.type) {
+				case INSERT:
+					// Any entry of the object already in the index is replaced.
+					remove = true;
+					then = INSERT;
+					volume = operation.volume;
+					break;
+
+				case UPDATE:
+					if (then == NOTHING && remove) {
+						// The object has been removed, so the update has no effect.
+						return;
+					}
+
+					if (then == NOTHING) {
+						then = UPDATE;
+					}
+
+					volume = operation.volume;
+					displacement = operation.displacement;
+					break;
+
+				case REMOVE:
+					remove = true;
+					then = NOTHING;
+					break;
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * A handler for integer identifiers during a spatial join.
+ *
+ * @author Eric Fritz
+ */
+public interface IntJoinQueryResultHandler
+{
+	/**
+	 * Called during a spatial join for each pair of identifiers whose volumes match the query
+	 * criteria.
+	 * <p>
+	 * For asymmetric query criteria, <tt>id1</tt> and <tt>id2</tt> will be passed as actual
+	 * parameters in the correct order. This is critical if the two spatial indices being joined are
+	 * the same object. For example, during a {@link ContainsJoinQuery}, the volume of <tt>id1</tt>
+	 * will contain the volume of <tt>id2</tt>.
+	 *
+	 * @param id1 An identifier whose volume matched the query criteria.
+	 * @param id2 An identifier whose volume matched the query criteria.
+	 *
+	 * @return <tt>false</tt> to cancel the query, <tt>true</tt> otherwise.
+	 */
+	public boolean handle(int id1, int id2);
+}
@@ -0,0 +1,763 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.Query.QueryResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+/**
+ * A spatial-aware collection of non-negative integer identifiers.
+ * <p>
+ * This class implements the same R-tree variant as {@link SpatialIndex}, specialized for dense
+ * integer identifiers. Identifiers are stored unboxed in the leaves, and the leaf node and slot of
+ * each identifier are kept in arrays indexed by identifier instead of a hash map. Memory usage of
+ * these arrays is proportional to the largest identifier inserted into the index.
+ * <p>
+ * <b>Note that this implementation is not synchronized.</b> If multiple threads access the index
+ * concurrently, and at least one of the threads modifies the index structurally, it <i>must</i> be
+ * synchronized externally. A structural modification is a successful {@link #insert(int, AABB)
+ * insert}, {@link #update(int, AABB) update}, or {@link #remove(int) remove} operation.
+ *
+ * @author Eric Fritz
+ */
+public class IntSpatialIndex
+{
+	/**
+	 * The minimum number of objects a node can hold before underflow.
+	 */
+	private final int minEntries;
+
+	/**
+	 * The maximum number of objects a node can hold before overflow.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * The strategy used to divide the entries of an overflowing node.
+	 */
+	private final SplitStrategy splitStrategy;
+
+	/**
+	 * Whether an underfull node is merged with a sibling instead of being reinserted.
+	 */
+	private final boolean siblingMerging;
+
+	/**
+	 * The initial length of the identifier lookup arrays.
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The root node.
+	 */
+	private Node root;
+
+	/**
+	 * The level of the root node. Leaf nodes are at level zero.
+	 */
+	private int height = 0;
+
+	/**
+	 * The number of dimensions of the indexed volumes. This value is zero until the first
+	 * identifier is inserted into the index.
+	 */
+	private int dimensions = 0;
+
+	/**
+	 * The leaf node where each identifier is stored, or <tt>null</tt> if the identifier is not in
+	 * the index.
+	 */
+	private Node[] leaves = new Node[INITIAL_CAPACITY];
+
+	/**
+	 * The slot within its leaf node where each identifier is stored.
+	 */
+	private int[] slots = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The number of active traversals of the index. This field is used to forbid structural
+	 * modification operations on the index while it is being traversed, which may result in
+	 * undefined or exceptional behavior.
+	 */
+	private transient int traversalCount = 0;
+
+	/**
+	 * Creates a new IntSpatialIndex with the default configuration.
+	 */
+	public IntSpatialIndex() {
+		this(new SpatialIndexConfig());
+	}
+
+	/**
+	 * Creates a new IntSpatialIndex.
+	 *
+	 * @param config The structural parameters of the index.
+	 *
+	 * @throws IllegalArgumentException If the configuration is invalid, enables forced reinsertion
+	 *                                  or lazy deletion, or sets a bounds margin.
+	 */
+	public IntSpatialIndex(SpatialIndexConfig config) {
+		config.validate();
+
+		if (config.isForcedReinsertion()) {
+			throw new IllegalArgumentException("Forced reinsertion is not supported.");
+		}
+
+		if (config.getMargin() != 0) {
+			throw new IllegalArgumentException("Bounds margins are not supported.");
+		}
+
+		if (config.isLazyDeletion()) {
+			throw new IllegalArgumentException("Lazy deletion is not supported.");
+		}
+
+		minEntries = config.getMinEntries();
+		maxEntries = config.getMaxEntries();
+		splitStrategy = config.getSplitStrategy();
+		siblingMerging = config.isSiblingMerging();
+
+		root = new Node(true);
+	}
+
+	/**
+	 * Determines whether an identifier is in the index.
+	 *
+	 * @param id The identifier.
+	 *
+	 * @return <tt>true</tt> if the identifier is in the index, <tt>false</tt> otherwise.
+	 */
+	public boolean contains(int id) {
+		return id >= 0 && id < leaves.length && leaves[id] != null;
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching identifiers that satisfy
+	 * the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching identifier.
+	 */
+	public void query(Query query, IntQueryResultHandler handler) {
+		traversalCount++;
+		query(query, handler, root, new AABBView(dimensions));
+		traversalCount--;
+	}
+
+	/**
+	 * Performs a spatial join on the index with itself, visiting all of the matching identifier
+	 * pairs that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching pair.
+	 */
+	public void query(JoinQuery query, IntJoinQueryResultHandler handler) {
+		query(this, query, handler);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another spatial index, visiting all of the matching
+	 * identifier pairs that satisfy the query criteria.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching pair.
+	 */
+	public void query(IntSpatialIndex index, JoinQuery query, IntJoinQueryResultHandler handler) {
+		traversalCount++;
+		query(query, handler, root, index.root, new AABBView(dimensions), new AABBView(index.dimensions));
+		traversalCount--;
+	}
+
+	/**
+	 * Inserts an identifier into the index.
+	 * <p>
+	 * The bounds of <tt>volume</tt> are copied into the index. If <tt>volume</tt> is modified after
+	 * insertion, {@link #update(int, AABB)} should be called in order to keep the index
+	 * well-formed.
+	 *
+	 * @param id     The identifier to insert.
+	 * @param volume The bounding volume of the identifier.
+	 *
+	 * @throws IllegalArgumentException If the identifier is negative or already in the index.
+	 */
+	public void insert(int id, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (id < 0 || contains(id)) {
+			throw new IllegalArgumentException();
+		}
+
+		if (id >= leaves.length) {
+			int length = Math.max(id + 1, leaves.length * 2);
+
+			leaves = Arrays.copyOf(leaves, length);
+			slots = Arrays.copyOf(slots, length);
+		}
+
+		insert(id, null, toBounds(volume), 0);
+	}
+
+	/**
+	 * Updates the bounds of an identifier in the index. If the identifier was not already in the
+	 * index, no action is performed.
+	 *
+	 * @param id     The identifier to update.
+	 * @param volume The new (current) bounding volume of the identifier.
+	 */
+	public void update(int id, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (!contains(id)) {
+			return;
+		}
+
+		Node node = leaves[id];
+		float[] bounds = toBounds(volume);
+
+		if (node == root || node.parent.contains(node.index, bounds)) {
+			node.setBounds(slots[id], bounds, 0);
+			return;
+		}
+
+		remove(id);
+		insert(id, null, bounds, 0);
+	}
+
+	/**
+	 * Removes an identifier from the index.
+	 *
+	 * @param id The identifier to remove. If the identifier was not already in the index, no action
+	 *           is performed.
+	 */
+	public void remove(int id) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (!contains(id)) {
+			return;
+		}
+
+		Node node = leaves[id];
+		node.remove(slots[id]);
+
+		List<Node> orphans = new ArrayList<>();
+		List<Integer> levels = new ArrayList<>();
+
+		for (int level = 0; node != root; level++) {
+			Node parent = node.parent;
+
+			if (node.numEntries >= minEntries) {
+				parent.fit(node.index, node);
+			} else if (siblingMerging) {
+				rebalance(node);
+			} else {
+				parent.remove(node.index);
+				orphans.add(node);
+				levels.add(level);
+			}
+
+			node = parent;
+		}
+
+		while (!root.isLeaf && root.numEntries == 0) {
+			if (orphans.isEmpty()) {
+				root = new Node(true);
+				height = 0;
+			} else {
+				root = orphans.remove(orphans.size() - 1);
+				root.parent = null;
+				height = levels.remove(levels.size() - 1);
+			}
+		}
+
+		float[] bounds = new float[2 * dimensions];
+
+		for (int i = orphans.size() - 1; i >= 0; i--) {
+			Node orphan = orphans.get(i);
+
+			for (int j = 0; j < orphan.numEntries; j++) {
+				orphan.getBounds(j, bounds, 0);
+
+				if (orphan.isLeaf) {
+					insert(orphan.ids[j], null, bounds, 0);
+				} else {
+					insert(-1, orphan.children[j], bounds, levels.get(i));
+				}
+			}
+		}
+
+		while (!root.isLeaf && root.numEntries == 1) {
+			root = root.children[0];
+			root.parent = null;
+			height--;
+		}
+	}
+
+	/**
+	 * Inserts an identifier into a leaf, or a child node into a node at the given level.
+	 */
+	private void insert(int id, Node child, float[] bounds, int level) {
+		Node node1 = root;
+		Node node2;
+
+		for (int i = height; i > level; i--) {
+			int index = Bounds.chooseSlot(node1.bounds, maxEntries, node1.numEntries, bounds, dimensions);
+
+			node1.expand(index, bounds);
+			node1 = node1.children[index];
+		}
+
+		if (node1.numEntries + 1 <= maxEntries) {
+			if (node1.isLeaf) {
+				node1.add(bounds, 0, id);
+			} else {
+				node1.add(bounds, 0, child);
+			}
+
+			return;
+		} else {
+			node2 = splitNode(node1, bounds, id, child);
+		}
+
+		while (node1 != root && node2 != null) {
+			Node parent = node1.parent;
+			Node psplit = null;
+
+			parent.fit(node1.index, node1);
+
+			if (parent.numEntries + 1 <= maxEntries) {
+				parent.add(node2.getBounds(), 0, node2);
+			} else {
+				psplit = splitNode(parent, node2.getBounds(), -1, node2);
+			}
+
+			node1 = parent;
+			node2 = psplit;
+		}
+
+		if (node2 != null) {
+			root = new Node(false);
+			root.add(node1.getBounds(), 0, node1);
+			root.add(node2.getBounds(), 0, node2);
+			height++;
+		}
+	}
+
+	/**
+	 * Repairs an underfull node by merging it into the sibling whose bounds it enlarges least or,
+	 * if the two would not fit in a single node, by moving the entries of that sibling which
+	 * enlarge the node least into it. A node without siblings is left as is.
+	 */
+	private void rebalance(Node node) {
+		Node parent = node.parent;
+
+		int size = 2 * dimensions;
+		float[] volume = node.getBounds();
+		float[] bounds = new float[size];
+
+		Node sibling = null;
+		float best = Float.POSITIVE_INFINITY;
+
+		for (int i = 0; i < parent.numEntries; i++) {
+			if (i != node.index) {
+				parent.getBounds(i, bounds, 0);
+
+				float cost = Bounds.unionArea(volume, 0, bounds, 0, dimensions) - Bounds.area(bounds, 0, dimensions);
+
+				if (cost < best) {
+					best = cost;
+					sibling = parent.children[i];
+				}
+			}
+		}
+
+		if (sibling == null) {
+			if (node.numEntries == 0) {
+				parent.remove(node.index);
+			} else {
+				parent.fit(node.index, node);
+			}
+
+			return;
+		}
+
+		if (node.numEntries + sibling.numEntries <= maxEntries) {
+			parent.remove(node.index);
+
+			while (node.numEntries > 0) {
+				transfer(node, node.numEntries - 1, sibling, bounds);
+			}
+		} else {
+			while (node.numEntries < minEntries) {
+				int slot = -1;
+				best = Float.POSITIVE_INFINITY;
+
+				for (int i = 0; i < sibling.numEntries; i++) {
+					sibling.getBounds(i, bounds, 0);
+
+					float cost = Bounds.unionArea(volume, 0, bounds, 0, dimensions);
+
+					if (cost < best) {
+						best = cost;
+						slot = i;
+					}
+				}
+
+				sibling.getBounds(slot, bounds, 0);
+				Bounds.include(volume, 0, bounds, 0, dimensions);
+
+				transfer(sibling, slot, node, bounds);
+			}
+
+			parent.fit(node.index, node);
+		}
+
+		parent.fit(sibling.index, sibling);
+	}
+
+	/**
+	 * Moves an entry from one node to another node at the same level.
+	 */
+	private void transfer(Node from, int slot, Node to, float[] bounds) {
+		from.getBounds(slot, bounds, 0);
+
+		if (from.isLeaf) {
+			int id = from.ids[slot];
+
+			from.remove(slot);
+			to.add(bounds, 0, id);
+		} else {
+			Node child = from.children[slot];
+
+			from.remove(slot);
+			to.add(bounds, 0, child);
+		}
+	}
+
+	private boolean query(Query query, IntQueryResultHandler handler, Node node, AABBView view) {
+		float[] bounds = node.bounds;
+
+		if (node.isLeaf) {
+			for (int i = 0; i < node.numEntries; i++) {
+				if (query.query(view.wrap(bounds, i, maxEntries), false) == QueryResult.PASS) {
+					if (!handler.handle(node.ids[i])) {
+						return false;
+					}
+				}
+			}
+		} else {
+			for (int i = 0; i < node.numEntries; i++) {
+				QueryResult result = query.query(view.wrap(bounds, i, maxEntries), true);
+
+				if (result != QueryResult.FAIL) {
+					if (result == QueryResult.PASS) {
+						if (!visitAll(handler, node.children[i])) {
+							return false;
+						}
+					} else {
+						if (!query(query, handler, node.children[i], view)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean visitAll(IntQueryResultHandler handler, Node node) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				if (!handler.handle(node.ids[i])) {
+					return false;
+				}
+			} else {
+				if (!visitAll(handler, node.children[i])) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean query(JoinQuery query, IntJoinQueryResultHandler handler, Node node1, Node node2, AABBView view1, AABBView view2) {
+		if (node1.isLeaf && !node2.isLeaf) {
+			for (int i = 0; i < node2.numEntries; i++) {
+				if (!query(query, handler, node1, node2.children[i], view1, view2)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (node2.isLeaf && !node1.isLeaf) {
+			for (int i = 0; i < node1.numEntries; i++) {
+				if (!query(query, handler, node1.children[i], node2, view1, view2)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (!node1.isLeaf && !node2.isLeaf) {
+			return queryInternal(query, handler, node1, node2, view1, view2);
+		} else {
+			return queryExternal(query, handler, node1, node2, view1, view2);
+		}
+	}
+
+	private boolean queryInternal(JoinQuery query, IntJoinQueryResultHandler handler, Node node1, Node node2, AABBView view1, AABBView view2) {
+		int stride1 = node1.getStride();
+		int stride2 = node2.getStride();
+		boolean reverse = node1.getIndex() == node2.getIndex() && !query.isSymmetric();
+
+		for (int i = 0; i < node1.numEntries; i++) {
+			int k = node1 == node2 ? i : 0;
+
+			for (int j = k; j < node2.numEntries; j++) {
+				view1.wrap(node1.bounds, i, stride1);
+				view2.wrap(node2.bounds, j, stride2);
+
+				if (query.query(view1, view2, true) || (reverse && query.query(view2, view1, true))) {
+					if (!query(query, handler, node1.children[i], node2.children[j], view1, view2)) {
+						return false;
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean queryExternal(JoinQuery query, IntJoinQueryResultHandler handler, Node node1, Node node2, AABBView view1, AABBView view2) {
+		int stride1 = node1.getStride();
+		int stride2 = node2.getStride();
+		boolean reverse = node1.getIndex() == node2.getIndex() && !query.isSymmetric();
+
+		for (int i = 0; i < node1.numEntries; i++) {
+			int k = node1 == node2 ? i + 1 : 0;
+
+			view1.wrap(node1.bounds, i, stride1);
+
+			for (int j = k; j < node2.numEntries; j++) {
+				view2.wrap(node2.bounds, j, stride2);
+
+				if (query.query(view1, view2, false)) {
+					if (!handler.handle(node1.ids[i], node2.ids[j])) {
+						return false;
+					}
+				} else {
+					if (reverse) {
+						if (query.query(view2, view1, false)) {
+							if (!handler.handle(node2.ids[j], node1.ids[i])) {
+								return false;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private Node splitNode(Node oldNode, float[] volume, int id, Node child) {
+		int size = 2 * dimensions;
+		int count = oldNode.numEntries + 1;
+
+		float[] volumes = new float[count * size];
+		int[] ids = oldNode.isLeaf ? new int[count] : null;
+		Node[] children = oldNode.isLeaf ? null : new Node[count];
+		boolean[] assignment = new boolean[count];
+
+		for (int i = 0; i < oldNode.numEntries; i++) {
+			oldNode.getBounds(i, volumes, i * size);
+
+			if (oldNode.isLeaf) {
+				ids[i] = oldNode.ids[i];
+			} else {
+				children[i] = oldNode.children[i];
+			}
+		}
+
+		System.arraycopy(volume, 0, volumes, oldNode.numEntries * size, size);
+
+		if (oldNode.isLeaf) {
+			ids[oldNode.numEntries] = id;
+		} else {
+			children[oldNode.numEntries] = child;
+		}
+
+		split(volumes, count, assignment);
+
+		oldNode.numEntries = 0;
+
+		Node newNode = new Node(oldNode.isLeaf);
+
+		for (int i = 0; i < count; i++) {
+			Node node = assignment[i] ? newNode : oldNode;
+
+			if (oldNode.isLeaf) {
+				node.add(volumes, i * size, ids[i]);
+			} else {
+				node.add(volumes, i * size, children[i]);
+			}
+		}
+
+		if (!oldNode.isLeaf) {
+			Arrays.fill(oldNode.children, oldNode.numEntries, maxEntries, null);
+		}
+
+		return newNode;
+	}
+
+	private void split(float[] volumes, int count, boolean[] assignment) {
+		splitStrategy.split(volumes, count, dimensions, minEntries, assignment);
+
+		int moved = 0;
+		for (int i = 0; i < count; i++) {
+			if (assignment[i]) {
+				moved++;
+			}
+		}
+
+		if (moved == 0 || moved == count) {
+			throw new IllegalStateException("Split strategy produced an empty node.");
+		}
+	}
+
+	private float[] toBounds(AABB volume) {
+		if (dimensions == 0) {
+			dimensions = volume.getDimensions();
+			root = new Node(true);
+		}
+
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return Bounds.pack(volume);
+	}
+
+	private class Node
+	{
+		private Node parent;
+		private int index;
+		private boolean isLeaf;
+		private int numEntries;
+		private float[] bounds = new float[2 * dimensions * maxEntries];
+		private int[] ids;
+		private Node[] children;
+
+		public Node(boolean isLeaf) {
+			this.isLeaf = isLeaf;
+
+			if (isLeaf) {
+				ids = new int[maxEntries];
+			} else {
+				children = new Node[maxEntries];
+			}
+		}
+
+		public IntSpatialIndex getIndex() {
+			return IntSpatialIndex.this;
+		}
+
+		public int getStride() {
+			return isLeaf ? ids.length : children.length;
+		}
+
+		public void add(float[] volume, int offset, int id) {
+			setBounds(numEntries, volume, offset);
+			ids[numEntries] = id;
+			leaves[id] = this;
+			slots[id] = numEntries;
+			numEntries++;
+		}
+
+		public void add(float[] volume, int offset, Node node) {
+			setBounds(numEntries, volume, offset);
+			children[numEntries] = node;
+			node.parent = this;
+			node.index = numEntries;
+			numEntries++;
+		}
+
+		public void remove(int slot) {
+			if (isLeaf) {
+				leaves[ids[slot]] = null;
+			}
+
+			numEntries--;
+
+			Bounds.move(bounds, maxEntries, numEntries, slot, dimensions);
+
+			if (isLeaf) {
+				ids[slot] = ids[numEntries];
+				slots[ids[slot]] = slot;
+			} else {
+				children[slot] = children[numEntries];
+				children[slot].index = slot;
+				children[numEntries] = null;
+			}
+		}
+
+		public void getBounds(int slot, float[] volume, int offset) {
+			Bounds.get(bounds, maxEntries, slot, volume, offset, dimensions);
+		}
+
+		public void setBounds(int slot, float[] volume, int offset) {
+			Bounds.set(bounds, maxEntries, slot, volume, offset, dimensions);
+		}
+
+		public float[] getBounds() {
+			float[] volume = new float[2 * dimensions];
+			Bounds.union(bounds, maxEntries, numEntries, volume, 0, dimensions);
+
+			return volume;
+		}
+
+		public void fit(int slot, Node node) {
+			Bounds.fit(bounds, maxEntries, slot, node.bounds, maxEntries, node.numEntries, dimensions);
+		}
+
+		public void expand(int slot, float[] volume) {
+			Bounds.expand(bounds, maxEntries, slot, volume, dimensions);
+		}
+
+		public boolean contains(int slot, float[] volume) {
+			return Bounds.contains(bounds, maxEntries, slot, volume, dimensions);
+		}
+	}
+}
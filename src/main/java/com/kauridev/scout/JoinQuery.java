@@ -37,6 +37,9 @@ public interface JoinQuery
 	 * the minimum bounding volume of a group of objects. In this case, the query criteria should be
 	 * relaxed, and the return value should reflect the possibility that subsequent queries on pairs
 	 * of sub-volumes (one from <tt>volume1</tt> and one from <tt>volume2</tt>) may match.
+	 * <p>
+	 * The index may pass transient views of its internal storage as <tt>volume1</tt> and
+	 * <tt>volume2</tt>. The volumes should not be modified or retained after this method returns.
 	 *
 	 * @param volume1 The first volume.
 	 * @param volume2 The second volume.
@@ -0,0 +1,175 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * A split strategy which partitions entries using <tt>k-means</tt> clustering.
+ * <p>
+ * Two random seeds form the initial groups, and the remaining entries are assigned to the closest
+ * seed. Entries are then moved between groups towards the closer (volume-weighted) group center
+ * until the assignment is stable or the iteration limit is reached. This strategy does not enforce
+ * the minimum number of entries per group.
+ * <p>
+ * This is the default split strategy.
+ *
+ * @author Eric Fritz
+ */
+public class KMeansSplitStrategy implements SplitStrategy
+{
+	/**
+	 * The maximum number of iterations of the k-means clustering algorithm to perform.
+	 */
+	private final int maxIterations;
+
+	/**
+	 * Creates a new KMeansSplitStrategy which performs at most eight iterations.
+	 */
+	public KMeansSplitStrategy() {
+		this(8);
+	}
+
+	/**
+	 * Creates a new KMeansSplitStrategy.
+	 *
+	 * @param maxIterations The maximum number of clustering iterations to perform.
+	 */
+	public KMeansSplitStrategy(int maxIterations) {
+		if (maxIterations < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.maxIterations = maxIterations;
+	}
+
+	@Override
+	public void split(float[] volumes, int count, int dimensions, int minEntries, boolean[] assignment) {
+		int size = 2 * dimensions;
+
+		int[] group1 = new int[count];
+		int[] group2 = new int[count];
+
+		int seed1 = (int) (Math.random() * count);
+		int seed2;
+
+		do {
+			seed2 = (int) (Math.random() * count);
+		} while (seed1 == seed2);
+
+		group1[0] = seed1;
+		group2[0] = seed2;
+
+		int size1 = 1;
+		int size2 = 1;
+
+		for (int i = 0; i < count; i++) {
+			if (i == seed1 || i == seed2) {
+				continue;
+			}
+
+			float dist1 = Bounds.distanceSquared(volumes, i * size, volumes, seed1 * size, dimensions);
+			float dist2 = Bounds.distanceSquared(volumes, i * size, volumes, seed2 * size, dimensions);
+
+			if (dist1 < dist2) {
+				group1[size1++] = i;
+			} else {
+				group2[size2++] = i;
+			}
+		}
+
+		float[] median1 = new float[size];
+		float[] median2 = new float[size];
+
+		for (int k = 0; k < maxIterations; k++) {
+			adjustMedian(median1, volumes, group1, size1, dimensions);
+			adjustMedian(median2, volumes, group2, size2, dimensions);
+
+			int n = moveToGroup(volumes, group1, size1, group2, size2, median1, median2, dimensions);
+
+			size1 -= n;
+			size2 += n;
+
+			int m = moveToGroup(volumes, group2, size2, group1, size1, median2, median1, dimensions);
+
+			size1 += m;
+			size2 -= m;
+
+			if (n == 0 && m == 0) {
+				break;
+			}
+		}
+
+		for (int i = 0; i < size1; i++) {
+			assignment[group1[i]] = false;
+		}
+
+		for (int i = 0; i < size2; i++) {
+			assignment[group2[i]] = true;
+		}
+	}
+
+	private static void adjustMedian(float[] median, float[] volumes, int[] group, int size, int dimensions) {
+		float totalmass = 0;
+		float[] centers = new float[dimensions];
+
+		for (int i = 0; i < size; i++) {
+			int offset = group[i] * 2 * dimensions;
+
+			float mass = 1;
+			for (int j = 0; j < dimensions; j++) {
+				mass *= volumes[offset + 2 * j + 1] - volumes[offset + 2 * j];
+			}
+
+			for (int j = 0; j < dimensions; j++) {
+				centers[j] += (volumes[offset + 2 * j] + volumes[offset + 2 * j + 1]) / 2 * mass;
+			}
+
+			totalmass += mass;
+		}
+
+		for (int j = 0; j < dimensions; j++) {
+			median[2 * j + 0] = centers[j] / totalmass;
+			median[2 * j + 1] = centers[j] / totalmass;
+		}
+	}
+
+	private static int moveToGroup(float[] volumes, int[] group1, int size1, int[] group2, int size2, float[] median1, float[] median2, int dimensions) {
+		int i = 0;
+		int transfers = 0;
+
+		while (i < size1 - transfers && size1 - transfers > 1) {
+			float dist1 = Bounds.distanceSquared(volumes, group1[i] * 2 * dimensions, median1, 0, dimensions);
+			float dist2 = Bounds.distanceSquared(volumes, group1[i] * 2 * dimensions, median2, 0, dimensions);
+
+			if (dist2 < dist1) {
+				group2[size2 + transfers] = group1[i];
+
+				transfers++;
+
+				group1[i] = group1[size1 - transfers];
+			} else {
+				i++;
+			}
+		}
+
+		return transfers;
+	}
+}
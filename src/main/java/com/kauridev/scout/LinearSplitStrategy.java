@@ -0,0 +1,94 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * A split strategy implementing the linear-cost algorithm of Guttman '84.
+ * <p>
+ * The seeds are the pair of entries with the greatest separation along any dimension, normalized
+ * by the extent of all entries along that dimension. The remaining entries are assigned in order.
+ *
+ * @author Eric Fritz
+ */
+public class LinearSplitStrategy extends GuttmanSplitStrategy
+{
+	@Override
+	protected int[] pickSeeds(float[] volumes, int count, int dimensions) {
+		int size = 2 * dimensions;
+		int[] seeds = {0, 1};
+		float best = Float.NEGATIVE_INFINITY;
+
+		for (int j = 0; j < dimensions; j++) {
+			int highestLow = 0;
+			int lowestHigh = 0;
+
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+
+			for (int i = 0; i < count; i++) {
+				float lo = volumes[i * size + 2 * j];
+				float hi = volumes[i * size + 2 * j + 1];
+
+				if (lo > volumes[highestLow * size + 2 * j]) {
+					highestLow = i;
+				}
+
+				if (hi < volumes[lowestHigh * size + 2 * j + 1]) {
+					lowestHigh = i;
+				}
+
+				min = Math.min(min, lo);
+				max = Math.max(max, hi);
+			}
+
+			if (highestLow == lowestHigh) {
+				lowestHigh = highestLow == 0 ? 1 : 0;
+			}
+
+			float width = max - min;
+			float separation = volumes[highestLow * size + 2 * j] - volumes[lowestHigh * size + 2 * j + 1];
+
+			if (width > 0) {
+				separation /= width;
+			}
+
+			if (separation > best) {
+				best = separation;
+				seeds[0] = lowestHigh;
+				seeds[1] = highestLow;
+			}
+		}
+
+		return seeds;
+	}
+
+	@Override
+	protected int pickNext(float[] volumes, int count, int dimensions, boolean[] assigned, float[] cover1, float[] cover2) {
+		for (int i = 0; i < count; i++) {
+			if (!assigned[i]) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * A loose quadtree over a bounded two-dimensional world. Each node has four children.
+ *
+ * @author Eric Fritz
+ * @see LooseTree
+ */
+public class LooseQuadtree<E> extends LooseTree<E>
+{
+	/**
+	 * Creates a new LooseQuadtree with the default maximum depth.
+	 *
+	 * @param world The bounds of the world.
+	 */
+	public LooseQuadtree(AABB2 world) {
+		this(world, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Creates a new LooseQuadtree.
+	 *
+	 * @param world    The bounds of the world.
+	 * @param maxDepth The depth of the deepest level of the tree.
+	 *
+	 * @throws IllegalArgumentException If the world is empty or unbounded along any dimension, or
+	 *                                  if the maximum depth is negative or too large.
+	 */
+	public LooseQuadtree(AABB2 world, int maxDepth) {
+		super(world, maxDepth);
+	}
+}
@@ -0,0 +1,721 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.Query.QueryResult;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A spatial-aware collection of elements backed by a loose tree, which divides a bounded world in
+ * half along every dimension at each level: a quadtree in two dimensions, and an octree in three.
+ * <p>
+ * Each node of the tree covers a cell of the world, and its <i>loose bounds</i> are the cell
+ * enlarged by half of the cell size on every side. An object is stored in a single node: the node
+ * at the deepest level whose cells are at least as large as the object, whose cell contains the
+ * center of the object. The loose bounds of that node contain the object. The depth of an object
+ * therefore follows directly from its size, and objects are never split between nodes. Updating
+ * an object which stays within the same cell only overwrites its bounds. Objects which are larger
+ * than the world, or whose center lies outside of the world, are kept in a separate list which is
+ * scanned by every query.
+ * <p>
+ * Queries descend through the nodes whose loose bounds may match the query. When the loose bounds
+ * of a node {@link QueryResult#PASS pass} a query, every object below the node is visited without
+ * being tested. The index supports the same {@link Query queries} and
+ * {@link JoinQuery join queries} as {@link SpatialIndex}.
+ * <p>
+ * <b>Note that this implementation is not synchronized.</b> If multiple threads access the index
+ * concurrently, and at least one of the threads modifies the index structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * @author Eric Fritz
+ * @see LooseQuadtree
+ * @see LooseOctree
+ */
+public abstract class LooseTree<E>
+{
+	/**
+	 * The default maximum depth of the tree.
+	 */
+	public final static int DEFAULT_MAX_DEPTH = 8;
+
+	/**
+	 * The largest maximum depth supported by the cell coordinates.
+	 */
+	private final static int MAX_DEPTH = 30;
+
+	/**
+	 * The number of dimensions of the world.
+	 */
+	private final int dimensions;
+
+	/**
+	 * The depth of the deepest level of the tree.
+	 */
+	private final int maxDepth;
+
+	/**
+	 * The packed bounds of the world.
+	 */
+	private final float[] world;
+
+	/**
+	 * The root node, which covers the world.
+	 */
+	private Node root;
+
+	/**
+	 * The objects which are larger than the world, or whose center lies outside of the world. This
+	 * node has no loose bounds and no children.
+	 */
+	private Node outliers;
+
+	/**
+	 * An auxiliary map of objects to their entries.
+	 */
+	private Map<E, Entry> entries = new HashMap<>();
+
+	/**
+	 * The number of active traversals of the index. This field is used to forbid structural
+	 * modification operations on the index while it is being traversed, which may result in
+	 * undefined or exceptional behavior.
+	 */
+	private transient int traversalCount = 0;
+
+	/**
+	 * Creates a new LooseTree.
+	 *
+	 * @param world    The bounds of the world.
+	 * @param maxDepth The depth of the deepest level of the tree.
+	 *
+	 * @throws IllegalArgumentException If the world is empty or unbounded along any dimension, or
+	 *                                  if the maximum depth is negative or too large.
+	 */
+	LooseTree(AABB world, int maxDepth) {
+		if (maxDepth < 0 || maxDepth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Maximum depth must be between 0 and " + MAX_DEPTH + ".");
+		}
+
+		for (int i = 0; i < world.getDimensions(); i++) {
+			float extent = world.getExtent(i);
+
+			if (!(extent > 0) || Float.isInfinite(extent)) {
+				throw new IllegalArgumentException("World must have a positive and finite extent.");
+			}
+		}
+
+		this.dimensions = world.getDimensions();
+		this.maxDepth = maxDepth;
+		this.world = Bounds.pack(world);
+
+		clear();
+	}
+
+	/**
+	 * Returns the depth of the deepest level of the tree.
+	 *
+	 * @return The maximum depth.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the number of objects in the index.
+	 *
+	 * @return The number of objects in the index.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching elements that satisfy the
+	 * query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, QueryResultHandler<E> handler) {
+		traversalCount++;
+
+		AABBView view = new AABBView(dimensions);
+
+		if (query(query, handler, outliers, false, view)) {
+			query(query, handler, root, view);
+		}
+
+		traversalCount--;
+	}
+
+	/**
+	 * Performs a spatial join on this index and itself, visiting all of the matching element pairs
+	 * that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		traversalCount++;
+
+		AABBView view1 = new AABBView(dimensions);
+		AABBView view2 = new AABBView(dimensions);
+		boolean reverse = !query.isSymmetric();
+
+		if (join(query, handler, root, view1, view2, reverse) && join(query, handler, outliers, view1, view2, reverse)) {
+			for (int i = 0; i < outliers.count; i++) {
+				if (!this.<E>join(query, handler, outliers, i, true, root, view1, view2, reverse)) {
+					break;
+				}
+			}
+		}
+
+		traversalCount--;
+	}
+
+	/**
+	 * Performs a spatial join on this index and another loose tree, visiting all of the matching
+	 * element pairs that satisfy the query criteria.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 *
+	 * @throws IllegalArgumentException If the indices have a different number of dimensions.
+	 */
+	public <F> void query(LooseTree<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		if (index == this) {
+			@SuppressWarnings("unchecked")
+			JoinQueryResultHandler<E, E> h = (JoinQueryResultHandler<E, E>) handler;
+			query(query, h);
+			return;
+		}
+
+		if (index.dimensions != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		traversalCount++;
+
+		AABBView view1 = new AABBView(dimensions);
+		AABBView view2 = new AABBView(dimensions);
+
+		boolean result = this.<F>join(query, handler, root, true, index.root, true, view1, view2, false) && this.<F>join(query, handler, outliers, false, index.outliers, false, view1, view2, false);
+
+		for (int i = 0; result && i < outliers.count; i++) {
+			result = this.<F>join(query, handler, outliers, i, true, index.root, view1, view2, false);
+		}
+
+		for (int i = 0; result && i < index.outliers.count; i++) {
+			result = this.<F>join(query, handler, index.outliers, i, false, root, view1, view2, false);
+		}
+
+		traversalCount--;
+	}
+
+	/**
+	 * Inserts an object into the index.
+	 * <p>
+	 * The bounds of <tt>volume</tt> are copied into the index. If <tt>volume</tt> is modified after
+	 * insertion, {@link #update(Object, AABB)} should be called in order to keep the index
+	 * well-formed.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the object is already in the index, or if the volume does
+	 *                                  not have the same number of dimensions as the world.
+	 */
+	public void insert(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (entries.containsKey(object)) {
+			throw new IllegalArgumentException("Object is already in the index.");
+		}
+
+		float[] bounds = toBounds(volume);
+		int[] coordinates = new int[dimensions];
+
+		Entry entry = new Entry(object);
+		locate(bounds, coordinates).add(entry, bounds);
+		entries.put(object, entry);
+	}
+
+	/**
+	 * Updates the bounds of an object in the index. If the object was not already in the index, no
+	 * action is performed. The object is moved to another node only if its size or the cell
+	 * containing its center has changed.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 */
+	public void update(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Entry entry = entries.get(object);
+
+		if (entry == null) {
+			return;
+		}
+
+		float[] bounds = toBounds(volume);
+		int[] coordinates = new int[dimensions];
+		int depth = place(bounds, coordinates);
+		Node node = entry.node;
+
+		if (depth == -1 ? node == outliers : node != outliers && node.depth == depth && Arrays.equals(node.coordinates, coordinates)) {
+			System.arraycopy(bounds, 0, node.bounds, entry.slot * bounds.length, bounds.length);
+		} else {
+			node.remove(entry.slot);
+			release(node);
+			(depth == -1 ? outliers : node(depth, coordinates)).add(entry, bounds);
+		}
+	}
+
+	/**
+	 * Removes an object from the index.
+	 *
+	 * @param object The object to remove. If the object was not already in the index, no action is
+	 *               performed.
+	 */
+	public void remove(E object) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Entry entry = entries.remove(object);
+
+		if (entry != null) {
+			Node node = entry.node;
+
+			node.remove(entry.slot);
+			release(node);
+		}
+	}
+
+	/**
+	 * Removes all objects from the index.
+	 */
+	public void clear() {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		root = new Node(null, 0, 0, new int[dimensions], loosen(0, new int[dimensions]));
+		outliers = new Node(null, 0, 0, null, null);
+		entries.clear();
+	}
+
+	/**
+	 * Returns the depth of the node in which a packed volume belongs, and stores the coordinates
+	 * of its cell, or returns <tt>-1</tt> if the volume belongs in the outlier list. The depth is
+	 * the deepest level whose cells are at least as large as the volume along every dimension. If
+	 * rounding leaves the volume outside of the loose bounds of the node, a shallower node is used.
+	 */
+	private int place(float[] bounds, int[] coordinates) {
+		int depth = maxDepth;
+
+		for (int i = 0; i < dimensions; i++) {
+			double size = (double) world[2 * i + 1] - world[2 * i];
+			double extent = (double) bounds[2 * i + 1] - bounds[2 * i];
+			double center = ((double) bounds[2 * i] + bounds[2 * i + 1]) / 2;
+
+			if (!(extent <= size) || !(center >= world[2 * i] && center <= world[2 * i + 1])) {
+				return -1;
+			}
+
+			if (extent > 0) {
+				depth = Math.min(depth, Math.getExponent(size / extent));
+			}
+		}
+
+		for (; depth >= 0; depth--) {
+			for (int i = 0; i < dimensions; i++) {
+				double size = ((double) world[2 * i + 1] - world[2 * i]) / (1 << depth);
+				double center = ((double) bounds[2 * i] + bounds[2 * i + 1]) / 2;
+
+				coordinates[i] = (int) Math.min((1 << depth) - 1, Math.floor((center - world[2 * i]) / size));
+			}
+
+			if (Bounds.contains(loosen(depth, coordinates), 1, 0, bounds, dimensions)) {
+				return depth;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the node in which a packed volume belongs, creating it and its ancestors if
+	 * necessary.
+	 */
+	private Node locate(float[] bounds, int[] coordinates) {
+		int depth = place(bounds, coordinates);
+		return depth == -1 ? outliers : node(depth, coordinates);
+	}
+
+	/**
+	 * Returns the node covering a cell at a given depth, creating it and its ancestors if
+	 * necessary.
+	 */
+	private Node node(int depth, int[] coordinates) {
+		Node node = root;
+
+		for (int level = 1; level <= depth; level++) {
+			int shift = depth - level;
+			int index = 0;
+
+			for (int i = 0; i < dimensions; i++) {
+				index |= ((coordinates[i] >> shift) & 1) << i;
+			}
+
+			if (node.children == null) {
+				node.children = new Node[1 << dimensions];
+			}
+
+			Node child = node.children[index];
+
+			if (child == null) {
+				int[] c = new int[dimensions];
+
+				for (int i = 0; i < dimensions; i++) {
+					c[i] = coordinates[i] >> shift;
+				}
+
+				child = new Node(node, index, level, c, loosen(level, c));
+				node.children[index] = child;
+				node.childCount++;
+			}
+
+			node = child;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Removes a node, and each of its ancestors in turn, if it has become empty.
+	 */
+	private void release(Node node) {
+		while (node != root && node != outliers && node.count == 0 && node.childCount == 0) {
+			Node parent = node.parent;
+
+			parent.children[node.index] = null;
+			parent.childCount--;
+			node = parent;
+		}
+	}
+
+	/**
+	 * Computes the loose bounds of a cell: the cell enlarged by half of the cell size on every
+	 * side, rounded outward.
+	 */
+	private float[] loosen(int depth, int[] coordinates) {
+		float[] volume = new float[2 * dimensions];
+
+		for (int i = 0; i < dimensions; i++) {
+			double size = ((double) world[2 * i + 1] - world[2 * i]) / (1 << depth);
+			double min = world[2 * i] + coordinates[i] * size;
+
+			volume[2 * i + 0] = Math.nextAfter((float) (min - size / 2), Double.NEGATIVE_INFINITY);
+			volume[2 * i + 1] = Math.nextUp((float) (min + size * 3 / 2));
+		}
+
+		return volume;
+	}
+
+	private boolean query(Query query, QueryResultHandler<E> handler, Node node, AABBView view) {
+		QueryResult result = query.query(view.wrap(node.loose, 0, 1), true);
+
+		if (result == QueryResult.FAIL) {
+			return true;
+		}
+
+		if (result == QueryResult.PASS) {
+			return visitAll(handler, node);
+		}
+
+		if (!query(query, handler, node, false, view)) {
+			return false;
+		}
+
+		if (node.children != null) {
+			for (Node child : node.children) {
+				if (child != null && !query(query, handler, child, view)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean query(Query query, QueryResultHandler<E> handler, Node node, boolean pass, AABBView view) {
+		for (int i = 0; i < node.count; i++) {
+			if (pass || query.query(view.wrap(node.bounds, 2 * dimensions * i, 1), false) == QueryResult.PASS) {
+				if (!handler.handle((E) node.entries[i].object)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean visitAll(QueryResultHandler<E> handler, Node node) {
+		if (!query(null, handler, node, true, null)) {
+			return false;
+		}
+
+		if (node.children != null) {
+			for (Node child : node.children) {
+				if (child != null && !visitAll(handler, child)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Joins the objects below a node with each other: the objects of the node with each other and
+	 * with the objects below its children, the objects below each child with each other, and the
+	 * objects below each pair of children with each other.
+	 */
+	private boolean join(JoinQuery query, JoinQueryResultHandler<E, E> handler, Node node, AABBView view1, AABBView view2, boolean reverse) {
+		for (int i = 0; i < node.count; i++) {
+			for (int j = i + 1; j < node.count; j++) {
+				if (!this.<E>joinPair(query, handler, node, i, node, j, view1, view2, reverse)) {
+					return false;
+				}
+			}
+		}
+
+		if (node.children == null) {
+			return true;
+		}
+
+		for (int i = 0; i < node.children.length; i++) {
+			Node child = node.children[i];
+
+			if (child == null) {
+				continue;
+			}
+
+			if (!this.<E>join(query, handler, node, false, child, true, view1, view2, reverse) || !join(query, handler, child, view1, view2, reverse)) {
+				return false;
+			}
+
+			for (int j = i + 1; j < node.children.length; j++) {
+				if (node.children[j] != null && !this.<E>join(query, handler, child, true, node.children[j], true, view1, view2, reverse)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Joins the objects of a node of this index (and the objects below it, if <tt>all1</tt> is
+	 * set) with the objects of a node of another index (and the objects below it, if <tt>all2</tt>
+	 * is set). The two nodes must not be the same node, nor one below the other.
+	 */
+	private <F> boolean join(JoinQuery query, JoinQueryResultHandler<E, F> handler, Node node1, boolean all1, Node node2, boolean all2, AABBView view1, AABBView view2, boolean reverse) {
+		if ((!all1 && node1.count == 0) || (!all2 && node2.count == 0)) {
+			return true;
+		}
+
+		if (node1.loose != null && node2.loose != null) {
+			view1.wrap(node1.loose, 0, 1);
+			view2.wrap(node2.loose, 0, 1);
+
+			if (!query.query(view1, view2, true) && !(reverse && query.query(view2, view1, true))) {
+				return true;
+			}
+		}
+
+		for (int i = 0; i < node1.count; i++) {
+			for (int j = 0; j < node2.count; j++) {
+				if (!this.<F>joinPair(query, handler, node1, i, node2, j, view1, view2, reverse)) {
+					return false;
+				}
+			}
+		}
+
+		all1 &= node1.children != null;
+		all2 &= node2.children != null;
+
+		boolean expand1 = all1 && (!all2 || node1.depth <= node2.depth);
+
+		if (expand1 || (all1 && node2.count != 0)) {
+			for (Node child : node1.children) {
+				if (child != null && !this.<F>join(query, handler, child, true, node2, expand1 && all2, view1, view2, reverse)) {
+					return false;
+				}
+			}
+		}
+
+		if (!expand1 || node1.count != 0) {
+			if (all2) {
+				for (Node child : node2.children) {
+					if (child != null && !this.<F>join(query, handler, node1, !expand1 && all1, child, true, view1, view2, reverse)) {
+						return false;
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Joins a single outlier with the objects below a node of the other index, which is the
+	 * second index of the join if <tt>first</tt> is set and the first index otherwise. The nodes
+	 * are matched against the bounds of the outlier itself.
+	 */
+	private <F> boolean join(JoinQuery query, JoinQueryResultHandler<E, F> handler, Node outliers, int slot, boolean first, Node node, AABBView view1, AABBView view2, boolean reverse) {
+		(first ? view1 : view2).wrap(outliers.bounds, 2 * dimensions * slot, 1);
+		(first ? view2 : view1).wrap(node.loose, 0, 1);
+
+		if (!query.query(view1, view2, true) && !(reverse && query.query(view2, view1, true))) {
+			return true;
+		}
+
+		for (int i = 0; i < node.count; i++) {
+			if (!(first ? this.<F>joinPair(query, handler, outliers, slot, node, i, view1, view2, reverse) : this.<F>joinPair(query, handler, node, i, outliers, slot, view1, view2, reverse))) {
+				return false;
+			}
+		}
+
+		if (node.children != null) {
+			for (Node child : node.children) {
+				if (child != null && !this.<F>join(query, handler, outliers, slot, first, child, view1, view2, reverse)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> boolean joinPair(JoinQuery query, JoinQueryResultHandler<E, F> handler, Node node1, int slot1, Node node2, int slot2, AABBView view1, AABBView view2, boolean reverse) {
+		view1.wrap(node1.bounds, 2 * dimensions * slot1, 1);
+		view2.wrap(node2.bounds, 2 * dimensions * slot2, 1);
+
+		if (query.query(view1, view2, false)) {
+			return handler.handle((E) node1.entries[slot1].object, (F) node2.entries[slot2].object);
+		}
+
+		if (reverse && query.query(view2, view1, false)) {
+			return handler.handle((E) node2.entries[slot2].object, (F) node1.entries[slot1].object);
+		}
+
+		return true;
+	}
+
+	private float[] toBounds(AABB volume) {
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return Bounds.pack(volume);
+	}
+
+	/**
+	 * An object and its position in the index.
+	 */
+	private static class Entry
+	{
+		private Object object;
+		private Node node;
+		private int slot;
+
+		public Entry(Object object) {
+			this.object = object;
+		}
+	}
+
+	/**
+	 * A node of the tree, or the outlier list. The bounds of the entries are packed one after
+	 * another into a single array.
+	 */
+	private static class Node
+	{
+		private Node parent;
+		private int index;
+		private int depth;
+		private int[] coordinates;
+		private float[] loose;
+		private Node[] children;
+		private int childCount;
+		private Entry[] entries;
+		private float[] bounds;
+		private int count;
+
+		public Node(Node parent, int index, int depth, int[] coordinates, float[] loose) {
+			this.parent = parent;
+			this.index = index;
+			this.depth = depth;
+			this.coordinates = coordinates;
+			this.loose = loose;
+		}
+
+		public void add(Entry entry, float[] volume) {
+			if (entries == null) {
+				entries = new Entry[4];
+				bounds = new float[entries.length * volume.length];
+			}
+
+			if (count == entries.length) {
+				entries = Arrays.copyOf(entries, count * 2);
+				bounds = Arrays.copyOf(bounds, count * 2 * volume.length);
+			}
+
+			System.arraycopy(volume, 0, bounds, count * volume.length, volume.length);
+
+			entry.node = this;
+			entry.slot = count;
+			entries[count++] = entry;
+		}
+
+		public void remove(int slot) {
+			int size = bounds.length / entries.length;
+
+			count--;
+
+			System.arraycopy(bounds, count * size, bounds, slot * size, size);
+			entries[slot] = entries[count];
+			entries[slot].slot = slot;
+			entries[count] = null;
+		}
+	}
+}
@@ -0,0 +1,797 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.Query.QueryResult;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A spatial-aware collection of objects moving at constant velocities.
+ * <p>
+ * This class implements a time-parameterized R-tree (TPR-tree). Each object is stored as its
+ * bounding volume at the <i>reference time</i> of the index together with its velocity, so that
+ * its bounds at any time <tt>t</tt> are its reference bounds translated by its velocity times
+ * <tt>t</tt> minus the reference time. Each node stores the union of its children's reference
+ * bounds together with the minimum and maximum velocity of its children along each dimension, so
+ * that the node bounds at any time conservatively enclose the bounds of its children at that
+ * time. Queries are answered "as of" a given time, and objects need only be updated when their
+ * velocity changes.
+ * <p>
+ * Node bounds grow as the query time moves away from the reference time. Calling
+ * {@link #rebase(float)} periodically moves the reference time forward and tightens the node
+ * bounds.
+ * <p>
+ * <b>Note that this implementation is not synchronized.</b> If multiple threads access the index
+ * concurrently, and at least one of the threads modifies the index structurally, it <i>must</i> be
+ * synchronized externally. A structural modification is a successful {@link #insert(Object, AABB,
+ * float[], float) insert}, {@link #update(Object, AABB, float[], float) update}, {@link
+ * #remove(Object) remove}, or {@link #rebase(float) rebase} operation.
+ *
+ * @author Eric Fritz
+ */
+public class MovingSpatialIndex<E>
+{
+	/**
+	 * The minimum number of objects a node can hold before underflow.
+	 */
+	private final int minEntries;
+
+	/**
+	 * The maximum number of objects a node can hold before overflow.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * The strategy used to divide the entries of an overflowing node.
+	 */
+	private final SplitStrategy splitStrategy;
+
+	/**
+	 * The length of time after an insertion over which the placement of the inserted object is
+	 * optimized. Subtrees are chosen and nodes are split by comparing bounds at the middle of this
+	 * interval.
+	 */
+	private final float horizon;
+
+	/**
+	 * The root node.
+	 */
+	private Node root;
+
+	/**
+	 * The number of dimensions of the indexed volumes. This value is zero until the first object is
+	 * inserted into the index.
+	 */
+	private int dimensions = 0;
+
+	/**
+	 * The time at which the stored bounds of all objects and nodes are expressed.
+	 */
+	private float referenceTime = 0;
+
+	/**
+	 * The latest time given to a modification of the index. Objects which are reinserted after a
+	 * removal are placed as of this time.
+	 */
+	private float currentTime = 0;
+
+	/**
+	 * An auxiliary map of objects to their leaf entries.
+	 */
+	private Map<E, Entry<E>> leafMap = new HashMap<>();
+
+	/**
+	 * The number of active traversals of the index. This field is used to forbid structural
+	 * modification operations on the index while it is being traversed, which may result in
+	 * undefined or exceptional behavior.
+	 */
+	private transient int traversalCount = 0;
+
+	/**
+	 * Creates a new MovingSpatialIndex with the default configuration and a horizon of one time
+	 * unit.
+	 */
+	public MovingSpatialIndex() {
+		this(new SpatialIndexConfig(), 1);
+	}
+
+	/**
+	 * Creates a new MovingSpatialIndex.
+	 *
+	 * @param config  The structural parameters of the index.
+	 * @param horizon The length of time after an insertion over which the placement of the object
+	 *                is optimized. This should be about the length of time between updates.
+	 *
+	 * @throws IllegalArgumentException If the configuration is invalid, enables forced reinsertion
+	 *                                  or lazy deletion, or sets a bounds margin, or if the horizon
+	 *                                  is negative.
+	 */
+	public MovingSpatialIndex(SpatialIndexConfig config, float horizon) {
+		config.validate();
+
+		if (config.isForcedReinsertion()) {
+			throw new IllegalArgumentException("Forced reinsertion is not supported.");
+		}
+
+		if (config.getMargin() != 0) {
+			throw new IllegalArgumentException("Bounds margins are not supported.");
+		}
+
+		if (config.isLazyDeletion()) {
+			throw new IllegalArgumentException("Lazy deletion is not supported.");
+		}
+
+		if (!(horizon >= 0)) {
+			throw new IllegalArgumentException("Horizon must not be negative.");
+		}
+
+		minEntries = config.getMinEntries();
+		maxEntries = config.getMaxEntries();
+		splitStrategy = config.getSplitStrategy();
+		this.horizon = horizon;
+
+		root = new Node(true);
+	}
+
+	/**
+	 * Returns the time at which the stored bounds of the index are expressed.
+	 *
+	 * @return The reference time.
+	 */
+	public float getReferenceTime() {
+		return referenceTime;
+	}
+
+	/**
+	 * Performs a spatial query on the index as of the given time, visiting all of the matching
+	 * elements that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param time    The time at which to match the objects' bounds.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, float time, QueryResultHandler<E> handler) {
+		traversalCount++;
+		query(query, handler, root, time - referenceTime, new float[2 * dimensions], new AABBView(dimensions));
+		traversalCount--;
+	}
+
+	/**
+	 * Performs a spatial join on this index and itself as of the given time, visiting all of the
+	 * matching element pairs that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param time    The time at which to match the objects' bounds.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, float time, JoinQueryResultHandler<E, E> handler) {
+		query(this, query, time, handler);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another moving spatial index as of the given time,
+	 * visiting all of the matching element pairs that satisfy the query criteria.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param time    The time at which to match the objects' bounds.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public <F> void query(MovingSpatialIndex<F> index, JoinQuery query, float time, JoinQueryResultHandler<E, F> handler) {
+		Extrapolation e1 = new Extrapolation(time - referenceTime, dimensions);
+		Extrapolation e2 = new Extrapolation(time - index.referenceTime, index.dimensions);
+
+		traversalCount++;
+		this.<F>query(query, handler, root, index.root, e1, e2);
+		traversalCount--;
+	}
+
+	/**
+	 * Inserts a moving object into the index.
+	 *
+	 * @param object   The object to insert.
+	 * @param volume   The bounding volume of the object at time <tt>time</tt>.
+	 * @param velocity The velocity of the object along each dimension.
+	 * @param time     The time at which the object has bounds <tt>volume</tt>.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume or the velocity differs
+	 *                                  from that of the index.
+	 */
+	public void insert(E object, AABB volume, float[] velocity, float time) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		float[] bounds = toBounds(volume);
+		float[] velocities = toVelocities(velocity);
+
+		Entry<E> entry = new Entry<>(object);
+		currentTime = time;
+
+		translate(bounds, velocities, referenceTime - time);
+		insert(entry, bounds, velocities);
+		leafMap.put(object, entry);
+	}
+
+	/**
+	 * Updates the bounds and velocity of an object in the index. If the object was not already in
+	 * the index, no action is performed. An object need only be updated when its velocity changes.
+	 *
+	 * @param object   The object to update.
+	 * @param volume   The bounding volume of the object at time <tt>time</tt>.
+	 * @param velocity The new velocity of the object along each dimension.
+	 * @param time     The time at which the object has bounds <tt>volume</tt>.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume or the velocity differs
+	 *                                  from that of the index.
+	 */
+	public void update(E object, AABB volume, float[] velocity, float time) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Entry<E> entry = leafMap.get(object);
+
+		if (entry == null) {
+			return;
+		}
+
+		float[] bounds = toBounds(volume);
+		float[] velocities = toVelocities(velocity);
+
+		currentTime = time;
+
+		translate(bounds, velocities, referenceTime - time);
+		delete(entry);
+		insert(entry, bounds, velocities);
+	}
+
+	/**
+	 * Removes an object from the index.
+	 *
+	 * @param object The object to remove. If the object was not already in the index, no action is
+	 *               performed.
+	 */
+	public void remove(E object) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Entry<E> entry = leafMap.remove(object);
+
+		if (entry != null) {
+			delete(entry);
+		}
+	}
+
+	/**
+	 * Moves the reference time of the index. The stored bounds of every object are translated to
+	 * the new reference time, and the bounds of every node are recomputed from its children. This
+	 * takes time linear in the size of the index.
+	 *
+	 * @param time The new reference time.
+	 */
+	public void rebase(float time) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		rebase(root, time - referenceTime);
+		referenceTime = time;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void rebase(Node node, float dt) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				for (int j = 0; j < 2 * dimensions; j++) {
+					node.bounds[j * maxEntries + i] += node.velocities[j * maxEntries + i] * dt;
+				}
+			} else {
+				rebase((Node) node.entries[i], dt);
+				node.fit(i, (Node) node.entries[i]);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void insert(Object entry, float[] bounds, float[] velocities) {
+		float dt = currentTime + horizon / 2 - referenceTime;
+		float[] volume = new float[2 * dimensions];
+
+		extrapolate(bounds, velocities, 1, 0, dt, volume, 1, 0, dimensions);
+
+		Node node1 = root;
+		Node node2;
+
+		while (!node1.isLeaf) {
+			int index = chooseChildIndex(node1, volume, dt);
+
+			node1.expand(index, bounds, velocities);
+			node1 = (Node) node1.entries[index];
+		}
+
+		node2 = add(node1, bounds, velocities, entry, dt);
+
+		while (node1 != root && node2 != null) {
+			Node parent = node1.parent;
+
+			parent.fit(node1.index, node1);
+
+			node2 = add(parent, node2.getBounds(), node2.getVelocities(), node2, dt);
+			node1 = parent;
+		}
+
+		if (node2 != null) {
+			root = new Node(false);
+			root.add(node1.getBounds(), 0, node1.getVelocities(), 0, node1);
+			root.add(node2.getBounds(), 0, node2.getVelocities(), 0, node2);
+		}
+	}
+
+	/**
+	 * Adds an entry to a node, splitting the node if it overflows.
+	 *
+	 * @return The node created by a split, or <tt>null</tt> if the node was not split.
+	 */
+	private Node add(Node node, float[] bounds, float[] velocities, Object entry, float dt) {
+		if (node.numEntries < maxEntries) {
+			node.add(bounds, 0, velocities, 0, entry);
+			return null;
+		}
+
+		int size = 2 * dimensions;
+		int count = node.numEntries + 1;
+
+		float[] allBounds = new float[count * size];
+		float[] allVelocities = new float[count * size];
+		float[] volumes = new float[count * size];
+		Object[] entries = new Object[count];
+		boolean[] assignment = new boolean[count];
+
+		for (int i = 0; i < node.numEntries; i++) {
+			Bounds.get(node.bounds, maxEntries, i, allBounds, i * size, dimensions);
+			Bounds.get(node.velocities, maxEntries, i, allVelocities, i * size, dimensions);
+			entries[i] = node.entries[i];
+		}
+
+		System.arraycopy(bounds, 0, allBounds, node.numEntries * size, size);
+		System.arraycopy(velocities, 0, allVelocities, node.numEntries * size, size);
+		entries[node.numEntries] = entry;
+
+		for (int i = 0; i < count; i++) {
+			extrapolate(allBounds, allVelocities, 1, i * size, dt, volumes, 1, i * size, dimensions);
+		}
+
+		split(volumes, count, assignment);
+
+		node.clear();
+
+		Node newNode = new Node(node.isLeaf);
+
+		for (int i = 0; i < count; i++) {
+			(assignment[i] ? newNode : node).add(allBounds, i * size, allVelocities, i * size, entries[i]);
+		}
+
+		return newNode;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void delete(Entry<E> entry) {
+		Node node = entry.leaf;
+		node.remove(entry.slot);
+
+		Queue<Node> queue = new LinkedList<>();
+
+		while (node != root) {
+			Node parent = node.parent;
+
+			if (node.numEntries < minEntries) {
+				parent.remove(node.index);
+				queue.add(node);
+			} else {
+				parent.fit(node.index, node);
+			}
+
+			node = parent;
+		}
+
+		if (!root.isLeaf && root.numEntries == 0) {
+			root = new Node(true);
+		}
+
+		float[] bounds = new float[2 * dimensions];
+		float[] velocities = new float[2 * dimensions];
+
+		for (Node n : queue) {
+			reinsert(n, bounds, velocities);
+		}
+
+		if (!root.isLeaf && root.numEntries == 1) {
+			root = (Node) root.entries[0];
+			root.parent = null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void reinsert(Node node, float[] bounds, float[] velocities) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				Bounds.get(node.bounds, maxEntries, i, bounds, 0, dimensions);
+				Bounds.get(node.velocities, maxEntries, i, velocities, 0, dimensions);
+				insert(node.entries[i], bounds, velocities);
+			} else {
+				reinsert((Node) node.entries[i], bounds, velocities);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean query(Query query, QueryResultHandler<E> handler, Node node, float dt, float[] volume, AABBView view) {
+		view.wrap(volume, 0, 1);
+
+		for (int i = 0; i < node.numEntries; i++) {
+			extrapolate(node.bounds, node.velocities, maxEntries, i, dt, volume, 1, 0, dimensions);
+
+			if (node.isLeaf) {
+				if (query.query(view, false) == QueryResult.PASS) {
+					if (!handler.handle(((Entry<E>) node.entries[i]).object)) {
+						return false;
+					}
+				}
+			} else {
+				QueryResult result = query.query(view, true);
+
+				if (result != QueryResult.FAIL) {
+					if (result == QueryResult.PASS) {
+						if (!visitAll(handler, (Node) node.entries[i])) {
+							return false;
+						}
+					} else {
+						if (!query(query, handler, (Node) node.entries[i], dt, volume, view)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean visitAll(QueryResultHandler<E> handler, Node node) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				if (!handler.handle(((Entry<E>) node.entries[i]).object)) {
+					return false;
+				}
+			} else {
+				if (!visitAll(handler, (Node) node.entries[i])) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> boolean query(JoinQuery query, JoinQueryResultHandler<E, F> handler, MovingSpatialIndex<E>.Node node1, MovingSpatialIndex<F>.Node node2, Extrapolation e1, Extrapolation e2) {
+		if (node1.isLeaf && !node2.isLeaf) {
+			for (int i = 0; i < node2.numEntries; i++) {
+				if (!query(query, handler, node1, (MovingSpatialIndex<F>.Node) node2.entries[i], e1, e2)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (node2.isLeaf && !node1.isLeaf) {
+			for (int i = 0; i < node1.numEntries; i++) {
+				if (!query(query, handler, (MovingSpatialIndex<E>.Node) node1.entries[i], node2, e1, e2)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (!node1.isLeaf && !node2.isLeaf) {
+			return this.<F>queryInternal(query, handler, node1, node2, e1, e2);
+		} else {
+			return this.<F>queryExternal(query, handler, node1, node2, e1, e2);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> boolean queryInternal(JoinQuery query, JoinQueryResultHandler<E, F> handler, MovingSpatialIndex<E>.Node node1, MovingSpatialIndex<F>.Node node2, Extrapolation e1, Extrapolation e2) {
+		boolean reverse = node1.getIndex() == node2.getIndex() && !query.isSymmetric();
+
+		for (int i = 0; i < node1.numEntries; i++) {
+			int k = node1 == node2 ? i : 0;
+
+			for (int j = k; j < node2.numEntries; j++) {
+				AABB view1 = e1.extrapolate(node1, i);
+				AABB view2 = e2.extrapolate(node2, j);
+
+				if (query.query(view1, view2, true) || (reverse && query.query(view2, view1, true))) {
+					if (!this.<F>query(query, handler, (MovingSpatialIndex<E>.Node) node1.entries[i], (MovingSpatialIndex<F>.Node) node2.entries[j], e1, e2)) {
+						return false;
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> boolean queryExternal(JoinQuery query, JoinQueryResultHandler<E, F> handler, MovingSpatialIndex<E>.Node node1, MovingSpatialIndex<F>.Node node2, Extrapolation e1, Extrapolation e2) {
+		boolean reverse = node1.getIndex() == node2.getIndex() && !query.isSymmetric();
+
+		for (int i = 0; i < node1.numEntries; i++) {
+			int k = node1 == node2 ? i + 1 : 0;
+
+			AABB view1 = e1.extrapolate(node1, i);
+
+			for (int j = k; j < node2.numEntries; j++) {
+				AABB view2 = e2.extrapolate(node2, j);
+
+				E o1 = ((Entry<E>) node1.entries[i]).object;
+				F o2 = ((Entry<F>) node2.entries[j]).object;
+
+				if (query.query(view1, view2, false)) {
+					if (!handler.handle(o1, o2)) {
+						return false;
+					}
+				} else {
+					if (reverse) {
+						if (query.query(view2, view1, false)) {
+							if (!handler.handle((E) o2, (F) o1)) {
+								return false;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private int chooseChildIndex(Node node, float[] volume, float dt) {
+		float[] bounds = new float[node.bounds.length];
+
+		for (int i = 0; i < node.numEntries; i++) {
+			extrapolate(node.bounds, node.velocities, maxEntries, i, dt, bounds, maxEntries, i, dimensions);
+		}
+
+		return Bounds.chooseSlot(bounds, maxEntries, node.numEntries, volume, dimensions);
+	}
+
+	private void split(float[] volumes, int count, boolean[] assignment) {
+		splitStrategy.split(volumes, count, dimensions, minEntries, assignment);
+
+		int moved = 0;
+		for (int i = 0; i < count; i++) {
+			if (assignment[i]) {
+				moved++;
+			}
+		}
+
+		if (moved == 0 || moved == count) {
+			throw new IllegalStateException("Split strategy produced an empty node.");
+		}
+	}
+
+	/**
+	 * Translates a packed volume by a packed velocity over the given length of time.
+	 */
+	private void translate(float[] bounds, float[] velocities, float dt) {
+		for (int i = 0; i < 2 * dimensions; i++) {
+			bounds[i] += velocities[i] * dt;
+		}
+	}
+
+	/**
+	 * Computes the bounds of an entry at the given offset from the reference time. The bounds and
+	 * velocities are read from slot <tt>index</tt> of arrays with the given stride, and written to
+	 * slot <tt>volumeIndex</tt> of <tt>volume</tt>. A packed volume is a slot of stride one whose
+	 * index is the start of the volume. The minimum bound moves with the minimum velocity when
+	 * looking forward in time and with the maximum velocity when looking backward (and conversely
+	 * for the maximum bound), so that a node's bounds enclose its children's at all times.
+	 */
+	private static void extrapolate(float[] bounds, float[] velocities, int stride, int index, float dt, float[] volume, int volumeStride, int volumeIndex, int dimensions) {
+		for (int d = 0; d < dimensions; d++) {
+			int min = 2 * d * stride + index;
+			int max = (2 * d + 1) * stride + index;
+
+			float vmin = dt >= 0 ? velocities[min] : velocities[max];
+			float vmax = dt >= 0 ? velocities[max] : velocities[min];
+
+			volume[2 * d * volumeStride + volumeIndex] = bounds[min] + vmin * dt;
+			volume[(2 * d + 1) * volumeStride + volumeIndex] = bounds[max] + vmax * dt;
+		}
+	}
+
+	private float[] toBounds(AABB volume) {
+		if (dimensions == 0) {
+			dimensions = volume.getDimensions();
+			root = new Node(true);
+		}
+
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return Bounds.pack(volume);
+	}
+
+	private float[] toVelocities(float[] velocity) {
+		if (velocity.length != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		float[] velocities = new float[2 * dimensions];
+
+		for (int i = 0; i < dimensions; i++) {
+			velocities[2 * i + 0] = velocity[i];
+			velocities[2 * i + 1] = velocity[i];
+		}
+
+		return velocities;
+	}
+
+	/**
+	 * The leaf entry of an object, which records the leaf node and slot where it is stored.
+	 */
+	private static final class Entry<E>
+	{
+		private final E object;
+		private MovingSpatialIndex<E>.Node leaf;
+		private int slot;
+
+		private Entry(E object) {
+			this.object = object;
+		}
+	}
+
+	/**
+	 * A reusable view of the bounds of node entries as of a fixed time.
+	 */
+	private static final class Extrapolation
+	{
+		private final float dt;
+		private final int dimensions;
+		private final float[] volume;
+		private final AABBView view;
+
+		private Extrapolation(float dt, int dimensions) {
+			this.dt = dt;
+			this.dimensions = dimensions;
+			this.volume = new float[2 * dimensions];
+			this.view = new AABBView(volume, 0, 1, dimensions);
+		}
+
+		private AABB extrapolate(MovingSpatialIndex<?>.Node node, int index) {
+			MovingSpatialIndex.extrapolate(node.bounds, node.velocities, node.entries.length, index, dt, volume, 1, 0, dimensions);
+			return view;
+		}
+	}
+
+	private class Node
+	{
+		private Node parent;
+		private int index;
+		private boolean isLeaf;
+		private int numEntries;
+		private float[] bounds = new float[2 * dimensions * maxEntries];
+		private float[] velocities = new float[2 * dimensions * maxEntries];
+		private Object[] entries = new Object[maxEntries];
+
+		public Node(boolean isLeaf) {
+			this.isLeaf = isLeaf;
+		}
+
+		public MovingSpatialIndex<E> getIndex() {
+			return MovingSpatialIndex.this;
+		}
+
+		@SuppressWarnings("unchecked")
+		public void add(float[] volume, int offset, float[] velocity, int velocityOffset, Object object) {
+			Bounds.set(bounds, maxEntries, numEntries, volume, offset, dimensions);
+			Bounds.set(velocities, maxEntries, numEntries, velocity, velocityOffset, dimensions);
+
+			if (isLeaf) {
+				Entry<E> entry = (Entry<E>) object;
+				entry.leaf = this;
+				entry.slot = numEntries;
+			} else {
+				Node node = (Node) object;
+				node.parent = this;
+				node.index = numEntries;
+			}
+
+			entries[numEntries++] = object;
+		}
+
+		@SuppressWarnings("unchecked")
+		public void remove(int slot) {
+			if (isLeaf) {
+				((Entry<E>) entries[slot]).leaf = null;
+			}
+
+			numEntries--;
+
+			Bounds.move(bounds, maxEntries, numEntries, slot, dimensions);
+			Bounds.move(velocities, maxEntries, numEntries, slot, dimensions);
+			entries[slot] = entries[numEntries];
+			entries[numEntries] = null;
+
+			if (slot < numEntries) {
+				if (isLeaf) {
+					((Entry<E>) entries[slot]).slot = slot;
+				} else {
+					((Node) entries[slot]).index = slot;
+				}
+			}
+		}
+
+		public void clear() {
+			for (int i = 0; i < numEntries; i++) {
+				entries[i] = null;
+			}
+
+			numEntries = 0;
+		}
+
+		public float[] getBounds() {
+			float[] volume = new float[2 * dimensions];
+			Bounds.union(bounds, maxEntries, numEntries, volume, 0, dimensions);
+
+			return volume;
+		}
+
+		public float[] getVelocities() {
+			float[] velocity = new float[2 * dimensions];
+			Bounds.union(velocities, maxEntries, numEntries, velocity, 0, dimensions);
+
+			return velocity;
+		}
+
+		public void fit(int index, Node node) {
+			Bounds.fit(bounds, maxEntries, index, node.bounds, maxEntries, node.numEntries, dimensions);
+			Bounds.fit(velocities, maxEntries, index, node.velocities, maxEntries, node.numEntries, dimensions);
+		}
+
+		public void expand(int index, float[] volume, float[] velocity) {
+			Bounds.expand(bounds, maxEntries, index, volume, dimensions);
+			Bounds.expand(velocities, maxEntries, index, velocity, dimensions);
+		}
+	}
+}
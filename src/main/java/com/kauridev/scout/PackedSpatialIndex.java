@@ -0,0 +1,412 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.Query.QueryResult;
+import java.util.Map;
+
+/**
+ * An immutable spatial-aware collection of objects.
+ * <p>
+ * This class implements a packed Hilbert R-tree, intended for large sets of objects which do not
+ * move once loaded. Objects are sorted by the Hilbert value of their centers and grouped into full
+ * leaves, which are grouped in turn until a single root remains. The volumes of all objects and
+ * nodes are stored in a single flat array, level by level, and the children of a node are located
+ * by their position rather than by reference. There are no parent pointers, no object-to-leaf map,
+ * and no unused slots.
+ * <p>
+ * The index supports the same {@link Query queries} and {@link JoinQuery join queries} as
+ * {@link SpatialIndex}. As the index cannot be modified, it may be queried by multiple threads
+ * concurrently.
+ *
+ * @author Eric Fritz
+ */
+public class PackedSpatialIndex<E>
+{
+	/**
+	 * The default number of children of each node.
+	 */
+	private final static int DEFAULT_NODE_SIZE = 16;
+
+	/**
+	 * The number of children of each node (the last node of each level may have fewer).
+	 */
+	private final int nodeSize;
+
+	/**
+	 * The number of dimensions of the indexed volumes, or zero if the index is empty.
+	 */
+	private final int dimensions;
+
+	/**
+	 * The indexed objects, in Hilbert order.
+	 */
+	private final Object[] objects;
+
+	/**
+	 * The packed volumes of the objects, followed by the packed volumes of the nodes of each level
+	 * from the leaves up to the root.
+	 */
+	private final float[] bounds;
+
+	/**
+	 * The position of the first volume of each level within {@link #bounds}, where level zero holds
+	 * the objects. The last value is the total number of volumes.
+	 */
+	private final int[] levels;
+
+	/**
+	 * Creates a new PackedSpatialIndex with the default node size.
+	 *
+	 * @param objects A map from each object to its bounding volume.
+	 */
+	public PackedSpatialIndex(Map<? extends E, ? extends AABB> objects) {
+		this(objects, DEFAULT_NODE_SIZE);
+	}
+
+	/**
+	 * Creates a new PackedSpatialIndex.
+	 *
+	 * @param objects  A map from each object to its bounding volume.
+	 * @param nodeSize The number of children of each node.
+	 *
+	 * @throws IllegalArgumentException If the node size is less than two, or if the volumes differ
+	 *                                  in dimensionality.
+	 */
+	@SuppressWarnings("unchecked")
+	public PackedSpatialIndex(Map<? extends E, ? extends AABB> objects, int nodeSize) {
+		this((E[]) keys(objects), values(objects), nodeSize);
+	}
+
+	/**
+	 * Creates a new PackedSpatialIndex with the default node size.
+	 *
+	 * @param objects The objects to index.
+	 * @param volumes The bounding volume of each object.
+	 *
+	 * @throws IllegalArgumentException If the arrays differ in length, or if the volumes differ in
+	 *                                  dimensionality.
+	 */
+	public PackedSpatialIndex(E[] objects, AABB[] volumes) {
+		this(objects, volumes, DEFAULT_NODE_SIZE);
+	}
+
+	/**
+	 * Creates a new PackedSpatialIndex.
+	 *
+	 * @param objects  The objects to index.
+	 * @param volumes  The bounding volume of each object.
+	 * @param nodeSize The number of children of each node.
+	 *
+	 * @throws IllegalArgumentException If the node size is less than two, if the arrays differ in
+	 *                                  length, or if the volumes differ in dimensionality.
+	 */
+	public PackedSpatialIndex(E[] objects, AABB[] volumes, int nodeSize) {
+		if (nodeSize < 2) {
+			throw new IllegalArgumentException("Node size must be at least two.");
+		}
+
+		if (objects.length != volumes.length) {
+			throw new IllegalArgumentException("Objects and volumes differ in length.");
+		}
+
+		int count = objects.length;
+
+		this.nodeSize = nodeSize;
+		this.dimensions = count == 0 ? 0 : volumes[0].getDimensions();
+		this.objects = new Object[count];
+
+		int size = 2 * dimensions;
+		float[] packed = new float[count * size];
+
+		for (int i = 0; i < count; i++) {
+			if (volumes[i].getDimensions() != dimensions) {
+				throw new IllegalArgumentException();
+			}
+
+			for (int d = 0; d < dimensions; d++) {
+				packed[i * size + 2 * d + 0] = volumes[i].getMinimum(d);
+				packed[i * size + 2 * d + 1] = volumes[i].getMaximum(d);
+			}
+		}
+
+		int numLevels = 1;
+		int total = count;
+
+		for (int n = count; n > 1 || numLevels == 1; numLevels++) {
+			n = (n + nodeSize - 1) / nodeSize;
+			total += n;
+		}
+
+		levels = new int[numLevels + 1];
+		bounds = new float[total * size];
+
+		int[] order = new int[count];
+		HilbertCurve.sort(packed, count, dimensions, order);
+
+		for (int i = 0; i < count; i++) {
+			this.objects[i] = objects[order[i]];
+			System.arraycopy(packed, order[i] * size, bounds, i * size, size);
+		}
+
+		levels[1] = count;
+
+		for (int level = 1; level < numLevels; level++) {
+			int position = levels[level];
+
+			for (int child = levels[level - 1]; child < levels[level]; child += nodeSize, position++) {
+				Bounds.empty(bounds, position * size, dimensions);
+
+				for (int i = child; i < Math.min(child + nodeSize, levels[level]); i++) {
+					Bounds.include(bounds, position * size, bounds, i * size, dimensions);
+				}
+			}
+
+			levels[level + 1] = position;
+		}
+	}
+
+	/**
+	 * Returns the number of objects in the index.
+	 *
+	 * @return The number of objects in the index.
+	 */
+	public int size() {
+		return objects.length;
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching elements that satisfy the
+	 * query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, QueryResultHandler<E> handler) {
+		if (objects.length != 0) {
+			query(query, handler, root(), levels.length - 2, new AABBView(dimensions));
+		}
+	}
+
+	/**
+	 * Performs a spatial join on this index and itself, visiting all of the matching element pairs
+	 * that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		query(this, query, handler);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another packed spatial index, visiting all of the
+	 * matching element pairs that satisfy the query criteria.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public <F> void query(PackedSpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		if (objects.length != 0 && index.objects.length != 0) {
+			this.<F>query(index, query, handler, root(), levels.length - 2, index.root(), index.levels.length - 2, new AABBView(dimensions), new AABBView(index.dimensions));
+		}
+	}
+
+	private static Object[] keys(Map<?, ? extends AABB> objects) {
+		Object[] keys = new Object[objects.size()];
+
+		int i = 0;
+		for (Object key : objects.keySet()) {
+			keys[i++] = key;
+		}
+
+		return keys;
+	}
+
+	private static AABB[] values(Map<?, ? extends AABB> objects) {
+		AABB[] values = new AABB[objects.size()];
+
+		int i = 0;
+		for (Object key : objects.keySet()) {
+			values[i++] = objects.get(key);
+		}
+
+		return values;
+	}
+
+	private int root() {
+		return levels[levels.length - 1] - 1;
+	}
+
+	/**
+	 * Returns the position of the first child of a node.
+	 */
+	private int first(int node, int level) {
+		return levels[level - 1] + (node - levels[level]) * nodeSize;
+	}
+
+	/**
+	 * Returns the position following the last child of a node.
+	 */
+	private int last(int node, int level) {
+		return Math.min(first(node, level) + nodeSize, levels[level]);
+	}
+
+	private AABBView wrap(AABBView view, int position) {
+		return view.wrap(bounds, position * 2 * dimensions, 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean query(Query query, QueryResultHandler<E> handler, int node, int level, AABBView view) {
+		if (level == 1) {
+			for (int i = first(node, level); i < last(node, level); i++) {
+				if (query.query(wrap(view, i), false) == QueryResult.PASS) {
+					if (!handler.handle((E) objects[i])) {
+						return false;
+					}
+				}
+			}
+		} else {
+			for (int i = first(node, level); i < last(node, level); i++) {
+				QueryResult result = query.query(wrap(view, i), true);
+
+				if (result != QueryResult.FAIL) {
+					if (result == QueryResult.PASS) {
+						if (!visitAll(handler, i, level - 1)) {
+							return false;
+						}
+					} else {
+						if (!query(query, handler, i, level - 1, view)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Visits every object beneath a node. As each level is stored in curve order, these objects
+	 * are contiguous.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean visitAll(QueryResultHandler<E> handler, int node, int level) {
+		int start = node;
+		int end = node + 1;
+
+		for (int l = level; l > 0; l--) {
+			start = first(start, l);
+			end = last(end - 1, l);
+		}
+
+		for (int i = start; i < end; i++) {
+			if (!handler.handle((E) objects[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private <F> boolean query(PackedSpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler, int node1, int level1, int node2, int level2, AABBView view1, AABBView view2) {
+		if (level1 == 1 && level2 != 1) {
+			for (int i = index.first(node2, level2); i < index.last(node2, level2); i++) {
+				if (!query(index, query, handler, node1, level1, i, level2 - 1, view1, view2)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (level2 == 1 && level1 != 1) {
+			for (int i = first(node1, level1); i < last(node1, level1); i++) {
+				if (!query(index, query, handler, i, level1 - 1, node2, level2, view1, view2)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (level1 != 1 && level2 != 1) {
+			return this.<F>queryInternal(index, query, handler, node1, level1, node2, level2, view1, view2);
+		} else {
+			return this.<F>queryExternal(index, query, handler, node1, node2, view1, view2);
+		}
+	}
+
+	private <F> boolean queryInternal(PackedSpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler, int node1, int level1, int node2, int level2, AABBView view1, AABBView view2) {
+		boolean reverse = index == this && !query.isSymmetric();
+
+		for (int i = first(node1, level1); i < last(node1, level1); i++) {
+			int k = index == this && node1 == node2 ? i : index.first(node2, level2);
+
+			for (int j = k; j < index.last(node2, level2); j++) {
+				wrap(view1, i);
+				index.wrap(view2, j);
+
+				if (query.query(view1, view2, true) || (reverse && query.query(view2, view1, true))) {
+					if (!this.<F>query(index, query, handler, i, level1 - 1, j, level2 - 1, view1, view2)) {
+						return false;
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> boolean queryExternal(PackedSpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler, int node1, int node2, AABBView view1, AABBView view2) {
+		boolean reverse = index == this && !query.isSymmetric();
+
+		for (int i = first(node1, 1); i < last(node1, 1); i++) {
+			int k = index == this && node1 == node2 ? i + 1 : index.first(node2, 1);
+
+			wrap(view1, i);
+
+			for (int j = k; j < index.last(node2, 1); j++) {
+				index.wrap(view2, j);
+
+				if (query.query(view1, view2, false)) {
+					if (!handler.handle((E) objects[i], (F) index.objects[j])) {
+						return false;
+					}
+				} else {
+					if (reverse) {
+						if (query.query(view2, view1, false)) {
+							if (!handler.handle((E) index.objects[j], (F) objects[i])) {
+								return false;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * A split strategy implementing the quadratic-cost algorithm of Guttman '84.
+ * <p>
+ * The seeds are the pair of entries which would waste the most space if grouped together. The next
+ * entry assigned is always the one with the greatest preference for one group over the other.
+ *
+ * @author Eric Fritz
+ */
+public class QuadraticSplitStrategy extends GuttmanSplitStrategy
+{
+	@Override
+	protected int[] pickSeeds(float[] volumes, int count, int dimensions) {
+		int size = 2 * dimensions;
+		int[] seeds = {0, 1};
+		float worst = Float.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < count; i++) {
+			float area = Bounds.area(volumes, i * size, dimensions);
+
+			for (int j = i + 1; j < count; j++) {
+				float waste = Bounds.unionArea(volumes, i * size, volumes, j * size, dimensions) - area - Bounds.area(volumes, j * size, dimensions);
+
+				if (waste > worst) {
+					worst = waste;
+					seeds[0] = i;
+					seeds[1] = j;
+				}
+			}
+		}
+
+		return seeds;
+	}
+
+	@Override
+	protected int pickNext(float[] volumes, int count, int dimensions, boolean[] assigned, float[] cover1, float[] cover2) {
+		int size = 2 * dimensions;
+		int next = -1;
+		float best = Float.NEGATIVE_INFINITY;
+
+		float area1 = Bounds.area(cover1, 0, dimensions);
+		float area2 = Bounds.area(cover2, 0, dimensions);
+
+		for (int i = 0; i < count; i++) {
+			if (assigned[i]) {
+				continue;
+			}
+
+			float diff1 = Bounds.unionArea(cover1, 0, volumes, i * size, dimensions) - area1;
+			float diff2 = Bounds.unionArea(cover2, 0, volumes, i * size, dimensions) - area2;
+
+			if (Math.abs(diff1 - diff2) > best) {
+				best = Math.abs(diff1 - diff2);
+				next = i;
+			}
+		}
+
+		return next;
+	}
+}
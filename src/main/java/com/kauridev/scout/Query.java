@@ -45,6 +45,9 @@ public interface Query
 	 * <p>
 	 * Otherwise, it should return {@link QueryResult#PASS} if the query criteria was matched
 	 * completely, or {@link QueryResult#FAIL} if the query criteria was not matched completely.
+	 * <p>
+	 * The index may pass a transient view of its internal storage as <tt>volume</tt>. The volume
+	 * should not be modified or retained after this method returns.
 	 *
 	 * @param volume  The volume.
 	 * @param partial Whether to allow partial matches.
@@ -0,0 +1,140 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * A split strategy implementing the topological split of the R*-tree (Beckmann et al. '90).
+ * <p>
+ * For each dimension, the entries are sorted by their lower and by their upper bounds, and every
+ * division of the sorted entries into two groups of at least the minimum size is considered. The
+ * split dimension is the one whose divisions have the smallest total margin (sum of extents), and
+ * the division along that dimension with the least overlap between the groups is chosen, resolving
+ * ties by smaller total volume. The result is deterministic and tends to produce square, minimally
+ * overlapping nodes.
+ *
+ * @author Eric Fritz
+ */
+public class RStarSplitStrategy implements SplitStrategy
+{
+	@Override
+	public void split(float[] volumes, int count, int dimensions, int minEntries, boolean[] assignment) {
+		int size = 2 * dimensions;
+		int min = Math.max(1, Math.min(minEntries, count / 2));
+
+		int[] order = new int[count];
+		float[] prefix = new float[count * size];
+		float[] suffix = new float[count * size];
+
+		int bestAxis = 0;
+		float bestMargin = Float.POSITIVE_INFINITY;
+
+		for (int j = 0; j < dimensions; j++) {
+			float margin = 0;
+
+			for (int upper = 0; upper <= 1; upper++) {
+				sort(order, volumes, count, dimensions, j, upper == 1);
+				bound(order, volumes, count, dimensions, prefix, suffix);
+
+				for (int k = min; k <= count - min; k++) {
+					margin += Bounds.margin(prefix, (k - 1) * size, dimensions) + Bounds.margin(suffix, k * size, dimensions);
+				}
+			}
+
+			if (margin < bestMargin) {
+				bestAxis = j;
+				bestMargin = margin;
+			}
+		}
+
+		boolean bestUpper = false;
+		int bestIndex = min;
+		float bestOverlap = Float.POSITIVE_INFINITY;
+		float bestArea = Float.POSITIVE_INFINITY;
+
+		for (int upper = 0; upper <= 1; upper++) {
+			sort(order, volumes, count, dimensions, bestAxis, upper == 1);
+			bound(order, volumes, count, dimensions, prefix, suffix);
+
+			for (int k = min; k <= count - min; k++) {
+				float overlap = Bounds.overlap(prefix, (k - 1) * size, suffix, k * size, dimensions);
+				float area = Bounds.area(prefix, (k - 1) * size, dimensions) + Bounds.area(suffix, k * size, dimensions);
+
+				if (overlap < bestOverlap || (overlap == bestOverlap && area < bestArea)) {
+					bestUpper = upper == 1;
+					bestIndex = k;
+					bestOverlap = overlap;
+					bestArea = area;
+				}
+			}
+		}
+
+		sort(order, volumes, count, dimensions, bestAxis, bestUpper);
+
+		for (int i = 0; i < count; i++) {
+			assignment[order[i]] = i >= bestIndex;
+		}
+	}
+
+	private static void sort(int[] order, float[] volumes, int count, int dimensions, int axis, boolean upper) {
+		int size = 2 * dimensions;
+		int key1 = 2 * axis + (upper ? 1 : 0);
+		int key2 = 2 * axis + (upper ? 0 : 1);
+
+		for (int i = 0; i < count; i++) {
+			int entry = i;
+			int j = i;
+
+			while (j > 0) {
+				int other = order[j - 1];
+
+				float a = volumes[entry * size + key1];
+				float b = volumes[other * size + key1];
+
+				if (a > b || (a == b && volumes[entry * size + key2] >= volumes[other * size + key2])) {
+					break;
+				}
+
+				order[j] = other;
+				j--;
+			}
+
+			order[j] = entry;
+		}
+	}
+
+	private static void bound(int[] order, float[] volumes, int count, int dimensions, float[] prefix, float[] suffix) {
+		int size = 2 * dimensions;
+
+		System.arraycopy(volumes, order[0] * size, prefix, 0, size);
+		System.arraycopy(volumes, order[count - 1] * size, suffix, (count - 1) * size, size);
+
+		for (int i = 1; i < count; i++) {
+			System.arraycopy(prefix, (i - 1) * size, prefix, i * size, size);
+			Bounds.include(prefix, i * size, volumes, order[i] * size, dimensions);
+		}
+
+		for (int i = count - 2; i >= 0; i--) {
+			System.arraycopy(suffix, (i + 1) * size, suffix, i * size, size);
+			Bounds.include(suffix, i * size, volumes, order[i] * size, dimensions);
+		}
+	}
+}
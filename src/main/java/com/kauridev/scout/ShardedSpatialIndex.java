@@ -0,0 +1,645 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.Query.QueryResult;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe spatial-aware collection of elements, partitioned into shards which can be
+ * modified in parallel.
+ * <p>
+ * The world is divided into a uniform grid of regions, each with its own {@link SpatialIndex}
+ * and lock. An object is stored in the shard whose region contains the center of its bounds
+ * (objects outside of the world are stored in the nearest shard), and migrates to another shard
+ * when an update moves its center into another region. Modifications of objects in different
+ * shards do not wait for each other.
+ * <p>
+ * Each shard tracks bounds which contain every object it stores. The bounds grow when an object
+ * enters the shard, and shrink to the bounds of its tree when an object leaves it. A query locks,
+ * for reading, only the shards whose bounds do not fail the query, and a join only considers the
+ * pairs of shards whose bounds match the join query. The shards used by a query or join are
+ * locked at once, so a migrating object is never missed or reported twice.
+ * <p>
+ * Modifications of the same object must not be made by several threads at once. A handler may
+ * neither query nor modify the index: a query or modification attempted by a thread which is
+ * querying the index throws a {@link ConcurrentModificationException}. A nested query would lock
+ * shards out of order while holding others, and could deadlock with a migration.
+ *
+ * @author Eric Fritz
+ */
+public class ShardedSpatialIndex<E>
+{
+	/**
+	 * The source of the order in which the shards of two indices are locked by a join.
+	 */
+	private final static AtomicLong SEQUENCE = new AtomicLong();
+
+	/**
+	 * The packed bounds of the world.
+	 */
+	private final float[] world;
+
+	/**
+	 * The number of dimensions of the world.
+	 */
+	private final int dimensions;
+
+	/**
+	 * The number of regions along each dimension.
+	 */
+	private final int divisions;
+
+	/**
+	 * The shards, in the order in which they are locked.
+	 */
+	private final Shard<E>[] shards;
+
+	/**
+	 * A map from each object to the shard in which it is stored.
+	 */
+	private final Map<E, Shard<E>> shardMap = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of queries of the index in progress on the current thread.
+	 */
+	private final ThreadLocal<int[]> traversals = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	/**
+	 * The position of this index in the order in which shards are locked by a join.
+	 */
+	private final long order = SEQUENCE.getAndIncrement();
+
+	/**
+	 * Creates a new ShardedSpatialIndex whose shards have the default configuration.
+	 *
+	 * @param world     The region of space which is divided among the shards.
+	 * @param divisions The number of regions along each dimension of the world.
+	 *
+	 * @throws IllegalArgumentException If <tt>divisions</tt> is not positive.
+	 */
+	public ShardedSpatialIndex(AABB world, int divisions) {
+		this(world, divisions, new SpatialIndexConfig());
+	}
+
+	/**
+	 * Creates a new ShardedSpatialIndex. The world is divided into <tt>divisions</tt> regions
+	 * along each dimension, for a total of <tt>divisions<sup>d</sup></tt> shards.
+	 *
+	 * @param world     The region of space which is divided among the shards.
+	 * @param divisions The number of regions along each dimension of the world.
+	 * @param config    The structural parameters of each shard.
+	 *
+	 * @throws IllegalArgumentException If <tt>divisions</tt> is not positive, or if the
+	 *                                  configuration is invalid.
+	 */
+	@SuppressWarnings("unchecked")
+	public ShardedSpatialIndex(AABB world, int divisions, SpatialIndexConfig config) {
+		if (divisions < 1) {
+			throw new IllegalArgumentException("Number of divisions must be positive.");
+		}
+
+		this.world = Bounds.pack(world);
+		this.dimensions = world.getDimensions();
+		this.divisions = divisions;
+
+		int count = 1;
+
+		for (int i = 0; i < dimensions; i++) {
+			count *= divisions;
+		}
+
+		shards = (Shard<E>[]) new Shard<?>[count];
+
+		for (int i = 0; i < count; i++) {
+			shards[i] = new Shard<>(new SpatialIndex<E>(config), dimensions, i);
+		}
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return The number of shards.
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching elements that satisfy the
+	 * query criteria. Only the shards whose bounds do not fail the query are searched.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, QueryResultHandler<E> handler) {
+		checkNesting();
+
+		boolean[] locked = lockForReading(query);
+		traversals.get()[0]++;
+
+		try {
+			for (int i = 0; i < shards.length; i++) {
+				if (locked[i] && !shards[i].index.queryUnguarded(query, handler)) {
+					break;
+				}
+			}
+		} finally {
+			traversals.get()[0]--;
+			unlock(locked);
+		}
+	}
+
+	/**
+	 * Performs a spatial join on the index with itself, visiting all of the matching element pairs
+	 * that satisfy the query criteria. Each shard is joined with itself and with every other shard
+	 * whose bounds match the query.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		checkNesting();
+		lockAllForReading();
+		traversals.get()[0]++;
+
+		try {
+			join(query, handler);
+		} finally {
+			traversals.get()[0]--;
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Performs a spatial join on this index and another sharded spatial index, visiting all of the
+	 * matching element pairs that satisfy the query criteria. Every shard of both indices is locked
+	 * for reading for the duration of the join, in an order shared by all joins.
+	 *
+	 * @param other   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	@SuppressWarnings("unchecked")
+	public <F> void query(ShardedSpatialIndex<F> other, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		if (other == this) {
+			query(query, (JoinQueryResultHandler<E, E>) handler);
+			return;
+		}
+
+		checkNesting();
+		other.checkNesting();
+
+		ShardedSpatialIndex<?> first = order < other.order ? this : other;
+		ShardedSpatialIndex<?> second = order < other.order ? other : this;
+
+		first.lockAllForReading();
+
+		try {
+			second.lockAllForReading();
+			traversals.get()[0]++;
+			other.traversals.get()[0]++;
+
+			try {
+				join(other, query, handler);
+			} finally {
+				other.traversals.get()[0]--;
+				traversals.get()[0]--;
+				second.unlockAll();
+			}
+		} finally {
+			first.unlockAll();
+		}
+	}
+
+	/**
+	 * Inserts an object into the shard whose region contains the center of its bounds.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume differs from that of the
+	 *                                  world.
+	 */
+	public void insert(E object, AABB volume) {
+		float[] bounds = toBounds(volume);
+		Shard<E> shard = shards[locate(bounds)];
+
+		lockForWriting(shard);
+
+		try {
+			shard.include(bounds);
+			shard.index.insert(object, volume);
+			shardMap.put(object, shard);
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates the bounds of an object in the index. If the object was not already in the index, no
+	 * action is performed.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume differs from that of the
+	 *                                  world.
+	 */
+	public void update(E object, AABB volume) {
+		update(object, volume, null);
+	}
+
+	/**
+	 * Updates the bounds of a moving object in the index. If the object was not already in the
+	 * index, no action is performed. If the center of the object has moved into the region of
+	 * another shard, the object migrates to that shard while both shards are locked. See
+	 * {@link SpatialIndex#update(SpatialIndex.Handle, AABB, float[])}.
+	 *
+	 * @param object       The object to update.
+	 * @param volume       The new (current) bounding volume of the object.
+	 * @param displacement The expected displacement of the object along each dimension before its
+	 *                     next update, or <tt>null</tt>.
+	 *
+	 * @throws IllegalArgumentException If the dimensionality of the volume differs from that of the
+	 *                                  world.
+	 */
+	public void update(E object, AABB volume, float[] displacement) {
+		float[] bounds = toBounds(volume);
+		Shard<E> from = shardMap.get(object);
+
+		if (from == null) {
+			return;
+		}
+
+		Shard<E> to = shards[locate(bounds)];
+
+		if (from == to) {
+			lockForWriting(from);
+
+			try {
+				from.include(bounds);
+				from.index.update(object, volume, displacement);
+			} finally {
+				from.lock.writeLock().unlock();
+			}
+
+			return;
+		}
+
+		Shard<E> first = from.position < to.position ? from : to;
+		Shard<E> second = from.position < to.position ? to : from;
+
+		lockForWriting(first);
+
+		try {
+			second.lock.writeLock().lock();
+
+			try {
+				from.index.remove(object);
+				from.shrink();
+				to.include(bounds);
+				to.index.insert(object, volume);
+
+				if (displacement != null) {
+					to.index.update(object, volume, displacement);
+				}
+
+				shardMap.put(object, to);
+			} finally {
+				second.lock.writeLock().unlock();
+			}
+		} finally {
+			first.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes an object from the index. If the object was not already in the index, no action is
+	 * performed.
+	 *
+	 * @param object The object to remove.
+	 */
+	public void remove(E object) {
+		Shard<E> shard = shardMap.get(object);
+
+		if (shard == null) {
+			return;
+		}
+
+		lockForWriting(shard);
+
+		try {
+			shard.index.remove(object);
+			shard.shrink();
+			shardMap.remove(object);
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all objects from the index.
+	 */
+	public void clear() {
+		checkTraversal();
+
+		for (Shard<E> shard : shards) {
+			shard.lock.writeLock().lock();
+		}
+
+		try {
+			for (Shard<E> shard : shards) {
+				shard.index.clear();
+				shard.reset();
+			}
+
+			shardMap.clear();
+		} finally {
+			for (Shard<E> shard : shards) {
+				shard.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	private void join(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		JoinQuery reverse = query.isSymmetric() ? null : new ExclusiveReverseQuery(query);
+
+		AABBView view1 = new AABBView(dimensions);
+		AABBView view2 = new AABBView(dimensions);
+
+		for (int i = 0; i < shards.length; i++) {
+			if (shards[i].isEmpty()) {
+				continue;
+			}
+
+			if (!shards[i].index.queryUnguarded(shards[i].index, query, handler)) {
+				return;
+			}
+
+			for (int j = i + 1; j < shards.length; j++) {
+				if (shards[j].isEmpty()) {
+					continue;
+				}
+
+				view1.wrap(shards[i].bounds, 0, 1);
+				view2.wrap(shards[j].bounds, 0, 1);
+
+				if (query.query(view1, view2, true)) {
+					if (!shards[i].index.queryUnguarded(shards[j].index, query, handler)) {
+						return;
+					}
+				}
+
+				// A pair matching only in reverse is reported in reverse, as by a self join of a
+				// single index, unless it was already reported in order.
+
+				if (reverse != null && query.query(view2, view1, true)) {
+					if (!shards[j].index.queryUnguarded(shards[i].index, reverse, handler)) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private <F> void join(ShardedSpatialIndex<F> other, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		AABBView view1 = new AABBView(dimensions);
+		AABBView view2 = new AABBView(other.dimensions);
+
+		for (Shard<E> shard1 : shards) {
+			if (shard1.isEmpty()) {
+				continue;
+			}
+
+			for (Shard<F> shard2 : other.shards) {
+				if (shard2.isEmpty()) {
+					continue;
+				}
+
+				view1.wrap(shard1.bounds, 0, 1);
+				view2.wrap(shard2.bounds, 0, 1);
+
+				if (query.query(view1, view2, true)) {
+					if (!shard1.index.queryUnguarded(shard2.index, query, handler)) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Locks, for reading, every shard whose bounds do not fail the query. Once the shards are
+	 * locked, the bounds of the remaining shards are checked again, as an object may have entered
+	 * one of them in the meantime; if so, the shards are unlocked and chosen again.
+	 *
+	 * @return Whether each shard has been locked.
+	 */
+	private boolean[] lockForReading(Query query) {
+		AABBView view = new AABBView(dimensions);
+		boolean[] locked = new boolean[shards.length];
+
+		while (true) {
+			for (int i = 0; i < shards.length; i++) {
+				locked[i] = matches(query, shards[i], view);
+
+				if (locked[i]) {
+					shards[i].lock.readLock().lock();
+				}
+			}
+
+			boolean valid = true;
+
+			for (int i = 0; i < shards.length && valid; i++) {
+				valid = locked[i] || !matches(query, shards[i], view);
+			}
+
+			if (valid) {
+				return locked;
+			}
+
+			unlock(locked);
+		}
+	}
+
+	private boolean matches(Query query, Shard<E> shard, AABBView view) {
+		return !shard.isEmpty() && query.query(view.wrap(shard.bounds, 0, 1), true) != QueryResult.FAIL;
+	}
+
+	private void unlock(boolean[] locked) {
+		for (int i = 0; i < shards.length; i++) {
+			if (locked[i]) {
+				shards[i].lock.readLock().unlock();
+			}
+		}
+	}
+
+	private void lockAllForReading() {
+		for (Shard<E> shard : shards) {
+			shard.lock.readLock().lock();
+		}
+	}
+
+	private void unlockAll() {
+		for (Shard<E> shard : shards) {
+			shard.lock.readLock().unlock();
+		}
+	}
+
+	private void lockForWriting(Shard<E> shard) {
+		checkTraversal();
+		shard.lock.writeLock().lock();
+	}
+
+	/**
+	 * Fails a modification attempted by a thread which is querying the index, rather than waiting
+	 * for its own query to finish.
+	 */
+	private void checkTraversal() {
+		if (traversals.get()[0] != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+	}
+
+	/**
+	 * Fails a query attempted by a thread which is already querying the index. The shards held by
+	 * the outer query would not be locked in order with those of the nested query.
+	 */
+	private void checkNesting() {
+		if (traversals.get()[0] != 0) {
+			throw new ConcurrentModificationException("Index cannot be queried during traversal.");
+		}
+	}
+
+	/**
+	 * Returns the position of the shard whose region contains the center of a packed volume. The
+	 * center is clamped to the world.
+	 */
+	private int locate(float[] bounds) {
+		int position = 0;
+
+		for (int i = 0; i < dimensions; i++) {
+			float center = (bounds[2 * i] + bounds[2 * i + 1]) / 2;
+			float fraction = (center - world[2 * i]) / (world[2 * i + 1] - world[2 * i]);
+
+			int cell = (int) Math.floor(fraction * divisions);
+			position = position * divisions + Math.max(0, Math.min(divisions - 1, cell));
+		}
+
+		return position;
+	}
+
+	private float[] toBounds(AABB volume) {
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return Bounds.pack(volume);
+	}
+
+	/**
+	 * A region of the world, along with the index and the lock of the objects in it.
+	 */
+	private static final class Shard<E>
+	{
+		private final SpatialIndex<E> index;
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final int dimensions;
+		private final int position;
+
+		/**
+		 * Bounds which contain every object stored in the shard. The array is replaced rather than
+		 * modified, under the write lock, so that it can be read without locking the shard.
+		 */
+		private volatile float[] bounds;
+
+		private Shard(SpatialIndex<E> index, int dimensions, int position) {
+			this.index = index;
+			this.dimensions = dimensions;
+			this.position = position;
+
+			reset();
+		}
+
+		private boolean isEmpty() {
+			return bounds[0] > bounds[1];
+		}
+
+		private void include(float[] volume) {
+			if (!Bounds.contains(bounds, 1, 0, volume, dimensions)) {
+				float[] copy = bounds.clone();
+				Bounds.include(copy, 0, volume, 0, dimensions);
+				bounds = copy;
+			}
+		}
+
+		/**
+		 * Recomputes the bounds from the tree, once an object has left the shard.
+		 */
+		private void shrink() {
+			bounds = index.getBounds();
+		}
+
+		private void reset() {
+			float[] empty = new float[2 * dimensions];
+			Bounds.empty(empty, 0, dimensions);
+			bounds = empty;
+		}
+	}
+
+	/**
+	 * A join query which matches a pair of objects only if the wrapped query matches the pair, but
+	 * not the pair in reverse.
+	 */
+	private static final class ExclusiveReverseQuery implements JoinQuery
+	{
+		private final JoinQuery query;
+
+		private ExclusiveReverseQuery(JoinQuery query) {
+			this.query = query;
+		}
+
+		@Override
+		public boolean query(AABB volume1, AABB volume2, boolean partial) {
+			if (partial) {
+				return query.query(volume1, volume2, true);
+			}
+
+			return query.query(volume1, volume2, false) && !query.query(volume2, volume1, false);
+		}
+
+		@Override
+		public boolean isSymmetric() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.Arrays;
+
+/**
+ * Sort-Tile-Recursive packing of packed volumes into groups of nodes.
+ * <p>
+ * The volumes are sorted by the center of their first dimension and cut into slabs, each of
+ * which is recursively sorted and cut along the next dimension. Slabs along the last dimension
+ * are cut into groups of <tt>maxEntries</tt> volumes, so that every group except possibly the
+ * last of each slab is full. A short final group borrows from its predecessor so that it holds
+ * at least <tt>minEntries</tt> volumes.
+ *
+ * @author Eric Fritz
+ */
+final class SortTileRecursive
+{
+	private SortTileRecursive() {
+	}
+
+	/**
+	 * Orders a set of packed volumes into groups.
+	 *
+	 * @param volumes    The packed volumes.
+	 * @param count      The number of volumes.
+	 * @param dimensions The dimensionality of each volume.
+	 * @param minEntries The minimum size of a group (unless there is only one group).
+	 * @param maxEntries The maximum size of a group.
+	 * @param order      The array of <tt>count</tt> indices to fill, in group order.
+	 * @param ends       The array (of at least <tt>count</tt> values) to fill with the exclusive
+	 *                   end of each group within <tt>order</tt>.
+	 *
+	 * @return The number of groups.
+	 */
+	public static int tile(float[] volumes, int count, int dimensions, int minEntries, int maxEntries, int[] order, int[] ends) {
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+
+		return tile(volumes, dimensions, minEntries, maxEntries, order, 0, count, 0, ends, 0);
+	}
+
+	private static int tile(float[] volumes, int dimensions, int minEntries, int maxEntries, int[] order, int from, int to, int dimension, int[] ends, int groups) {
+		int count = to - from;
+
+		if (count <= maxEntries) {
+			ends[groups++] = to;
+			return groups;
+		}
+
+		sort(volumes, dimensions, order, from, to, dimension);
+
+		if (dimension == dimensions - 1) {
+			for (int start = from; start < to; start += maxEntries) {
+				ends[groups++] = Math.min(start + maxEntries, to);
+			}
+
+			if (to - ends[groups - 2] < minEntries) {
+				ends[groups - 2] = to - minEntries;
+			}
+
+			return groups;
+		}
+
+		int pages = (count + maxEntries - 1) / maxEntries;
+		int slabs = (int) Math.ceil(Math.pow(pages, 1.0 / (dimensions - dimension)));
+		int slabSize = maxEntries * ((pages + slabs - 1) / slabs);
+
+		for (int start = from; start < to;) {
+			int end = to - (start + slabSize) < maxEntries ? to : start + slabSize;
+			groups = tile(volumes, dimensions, minEntries, maxEntries, order, start, end, dimension + 1, ends, groups);
+			start = end;
+		}
+
+		return groups;
+	}
+
+	/**
+	 * Sorts a range of indices by the center of their volumes along a dimension. The indices are
+	 * packed with an order-preserving encoding of their sort key so that a primitive sort can be
+	 * used.
+	 */
+	private static void sort(float[] volumes, int dimensions, int[] order, int from, int to, int dimension) {
+		long[] keys = new long[to - from];
+
+		for (int i = from; i < to; i++) {
+			int offset = order[i] * 2 * dimensions + 2 * dimension;
+			int bits = Float.floatToIntBits(volumes[offset] + volumes[offset + 1]);
+
+			keys[i - from] = ((long) (bits ^ ((bits >> 31) & 0x7fffffff)) << 32) | (order[i] & 0xffffffffL);
+		}
+
+		Arrays.sort(keys);
+
+		for (int i = from; i < to; i++) {
+			order[i] = (int) keys[i - from];
+		}
+	}
+}
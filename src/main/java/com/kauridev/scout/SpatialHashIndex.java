@@ -0,0 +1,912 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import com.kauridev.scout.Query.QueryResult;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A spatial-aware collection of elements backed by a hashed uniform grid.
+ * <p>
+ * Space is divided into cubic cells of a fixed size, and each object is stored in the single cell
+ * which contains the center of its bounds. Only occupied cells are stored, in a hash table keyed
+ * by cell coordinates. An object is never stored in more than one cell, so objects which span
+ * several cells are never reported twice. Instead, each cell is treated as a group whose bounds
+ * are the cell enlarged by half of the cell size on every side, which contains every object in
+ * the cell whose extent is at most the cell size. Larger objects, and objects too far from the
+ * origin to be addressed by a cell, are kept in a separate list which is scanned by every query.
+ * <p>
+ * Updating an object only moves it between cells when its center crosses a cell boundary, which
+ * takes constant time. The grid works best when objects are similar in size and the cell size is
+ * chosen to be about the size of the largest object. Queries narrow the block of occupied cells
+ * to the cells which may match, by a binary search on each side of each dimension, and then visit
+ * the cells of that block. The index
+ * supports the same {@link Query queries} and {@link JoinQuery join queries} as
+ * {@link SpatialIndex}, in up to three dimensions.
+ * <p>
+ * <b>Note that this implementation is not synchronized.</b> If multiple threads access the index
+ * concurrently, and at least one of the threads modifies the index structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * @author Eric Fritz
+ */
+public class SpatialHashIndex<E>
+{
+	/**
+	 * The number of bits of a cell key used for the coordinate of each dimension.
+	 */
+	private final static int BITS = 21;
+
+	/**
+	 * The magnitude bound of a cell coordinate.
+	 */
+	private final static int LIMIT = 1 << (BITS - 1);
+
+	/**
+	 * The maximum number of dimensions supported by the cell keys.
+	 */
+	private final static int MAX_DIMENSIONS = 3;
+
+	/**
+	 * The initial length of the cell table.
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The edge length of each cell.
+	 */
+	private final float cellSize;
+
+	/**
+	 * The number of dimensions of the indexed volumes. This value is zero until the first object is
+	 * inserted into the index.
+	 */
+	private int dimensions = 0;
+
+	/**
+	 * The occupied cells, chained by hash.
+	 */
+	private Cell[] table = new Cell[INITIAL_CAPACITY];
+
+	/**
+	 * The number of occupied cells.
+	 */
+	private int cellCount = 0;
+
+	/**
+	 * The smallest and largest coordinate of any cell occupied since the index was created or
+	 * cleared, along each dimension.
+	 */
+	private int[] low;
+	private int[] high;
+
+	/**
+	 * The objects which are too large, or too far from the origin, to be stored in a cell.
+	 */
+	private Cell overflow = new Cell(0, null);
+
+	/**
+	 * An auxiliary map of objects to their entries.
+	 */
+	private Map<E, Entry> entries = new HashMap<>();
+
+	/**
+	 * The number of active traversals of the index. This field is used to forbid structural
+	 * modification operations on the index while it is being traversed, which may result in
+	 * undefined or exceptional behavior.
+	 */
+	private transient int traversalCount = 0;
+
+	/**
+	 * Creates a new SpatialHashIndex.
+	 *
+	 * @param cellSize The edge length of each cell.
+	 *
+	 * @throws IllegalArgumentException If the cell size is not positive.
+	 */
+	public SpatialHashIndex(float cellSize) {
+		if (!(cellSize > 0) || Float.isInfinite(cellSize)) {
+			throw new IllegalArgumentException("Cell size must be positive.");
+		}
+
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Returns the edge length of each cell.
+	 *
+	 * @return The cell size.
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Returns the number of objects in the index.
+	 *
+	 * @return The number of objects in the index.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching elements that satisfy the
+	 * query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(Query query, QueryResultHandler<E> handler) {
+		traversalCount++;
+		query(query, handler, new AABBView(dimensions));
+		traversalCount--;
+	}
+
+	/**
+	 * Performs a spatial join on this index and itself, visiting all of the matching element pairs
+	 * that satisfy the query criteria.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		query(this, query, handler);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another spatial hash index, visiting all of the
+	 * matching element pairs that satisfy the query criteria.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public <F> void query(SpatialHashIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		traversalCount++;
+		this.<F>join(index, query, handler, new AABBView(dimensions), new AABBView(index.dimensions));
+		traversalCount--;
+	}
+
+	/**
+	 * Inserts an object into the index.
+	 * <p>
+	 * The bounds of <tt>volume</tt> are copied into the index. If <tt>volume</tt> is modified after
+	 * insertion, {@link #update(Object, AABB)} should be called in order to keep the index
+	 * well-formed.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the object is already in the index, or if the volume has
+	 *                                  more than three dimensions.
+	 */
+	public void insert(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (entries.containsKey(object)) {
+			throw new IllegalArgumentException("Object is already in the index.");
+		}
+
+		float[] bounds = toBounds(volume);
+
+		Entry entry = new Entry(object);
+		locate(bounds).add(entry, bounds);
+		entries.put(object, entry);
+	}
+
+	/**
+	 * Updates the bounds of an object in the index. If the object was not already in the index, no
+	 * action is performed. The object is moved to another cell only if the center of its bounds
+	 * has moved into that cell.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 */
+	public void update(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Entry entry = entries.get(object);
+
+		if (entry == null) {
+			return;
+		}
+
+		float[] bounds = toBounds(volume);
+		Cell cell = entry.cell;
+		long key = key(bounds);
+
+		if (cell == overflow ? key != -1 : key != cell.key) {
+			cell.remove(entry.slot);
+			release(cell);
+			locate(bounds).add(entry, bounds);
+		} else {
+			System.arraycopy(bounds, 0, cell.bounds, entry.slot * bounds.length, bounds.length);
+		}
+	}
+
+	/**
+	 * Removes an object from the index.
+	 *
+	 * @param object The object to remove. If the object was not already in the index, no action is
+	 *               performed.
+	 */
+	public void remove(E object) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Entry entry = entries.remove(object);
+
+		if (entry != null) {
+			Cell cell = entry.cell;
+
+			cell.remove(entry.slot);
+			release(cell);
+		}
+	}
+
+	/**
+	 * Removes all objects from the index.
+	 */
+	public void clear() {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		table = new Cell[INITIAL_CAPACITY];
+		cellCount = 0;
+		overflow = new Cell(0, null);
+		entries.clear();
+		low = null;
+		high = null;
+	}
+
+	/**
+	 * Returns the key of the cell containing the center of a packed volume, or <tt>-1</tt> if the
+	 * volume belongs in the overflow list. The coordinates of a cell are packed into its key from
+	 * the first dimension down, so that keys are ordered as their coordinates are.
+	 */
+	private long key(float[] bounds) {
+		long key = 0;
+
+		for (int i = 0; i < dimensions; i++) {
+			if (!(bounds[2 * i + 1] - bounds[2 * i] <= cellSize)) {
+				return -1;
+			}
+
+			double coordinate = Math.floor(((double) bounds[2 * i] + bounds[2 * i + 1]) / 2 / cellSize);
+
+			if (!(coordinate >= -LIMIT && coordinate < LIMIT)) {
+				return -1;
+			}
+
+			key |= ((long) coordinate + LIMIT) << (BITS * (MAX_DIMENSIONS - 1 - i));
+		}
+
+		return key;
+	}
+
+	private long key(int[] coordinates) {
+		long key = 0;
+
+		for (int i = 0; i < dimensions; i++) {
+			key |= ((long) coordinates[i] + LIMIT) << (BITS * (MAX_DIMENSIONS - 1 - i));
+		}
+
+		return key;
+	}
+
+	/**
+	 * Computes the coordinates of the cell containing the center of a packed volume, saturating at
+	 * the bounds of an integer.
+	 */
+	private void locate(float[] bounds, int[] coordinates) {
+		for (int i = 0; i < dimensions; i++) {
+			coordinates[i] = (int) Math.floor(((double) bounds[2 * i] + bounds[2 * i + 1]) / 2 / cellSize);
+		}
+	}
+
+	/**
+	 * Hashes a cell key. The coordinates of all but the last dimension are scrambled, and the last
+	 * coordinate is added to the result, so that a row of cells along the last dimension falls into
+	 * consecutive buckets of the table.
+	 */
+	private int hash(long key) {
+		long bits = key >>> (BITS * (MAX_DIMENSIONS - dimensions));
+		long h = (bits >>> BITS) * 0x9E3779B97F4A7C15L;
+
+		return (int) (h >>> 32) + (int) (bits & ((1L << BITS) - 1));
+	}
+
+	private Cell find(long key) {
+		for (Cell cell = table[hash(key) & (table.length - 1)]; cell != null; cell = cell.next) {
+			if (cell.key == key) {
+				return cell;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the cell in which a packed volume belongs, creating the cell if necessary.
+	 */
+	private Cell locate(float[] bounds) {
+		long key = key(bounds);
+
+		if (key == -1) {
+			return overflow;
+		}
+
+		Cell cell = find(key);
+
+		if (cell != null) {
+			return cell;
+		}
+
+		if (cellCount + 1 > table.length * 3 / 4) {
+			Cell[] old = table;
+			table = new Cell[old.length * 2];
+
+			for (Cell c : old) {
+				while (c != null) {
+					Cell next = c.next;
+					int index = hash(c.key) & (table.length - 1);
+
+					c.next = table[index];
+					table[index] = c;
+					c = next;
+				}
+			}
+		}
+
+		int[] coordinates = new int[dimensions];
+
+		for (int i = 0; i < dimensions; i++) {
+			coordinates[i] = (int) ((key >>> (BITS * (MAX_DIMENSIONS - 1 - i))) & ((1L << BITS) - 1)) - LIMIT;
+		}
+
+		if (low == null) {
+			low = coordinates.clone();
+			high = coordinates.clone();
+		}
+
+		for (int i = 0; i < dimensions; i++) {
+			low[i] = Math.min(low[i], coordinates[i]);
+			high[i] = Math.max(high[i], coordinates[i]);
+		}
+
+		cell = new Cell(key, coordinates);
+
+		int index = hash(key) & (table.length - 1);
+		cell.next = table[index];
+		table[index] = cell;
+		cellCount++;
+
+		return cell;
+	}
+
+	/**
+	 * Removes a cell from the table if it has become empty.
+	 */
+	private void release(Cell cell) {
+		if (cell.count != 0 || cell == overflow) {
+			return;
+		}
+
+		int index = hash(cell.key) & (table.length - 1);
+
+		if (table[index] == cell) {
+			table[index] = cell.next;
+		} else {
+			Cell prev = table[index];
+
+			while (prev.next != cell) {
+				prev = prev.next;
+			}
+
+			prev.next = cell.next;
+		}
+
+		cellCount--;
+	}
+
+	/**
+	 * Returns the occupied cells ordered by key, so that cells visited one after another are
+	 * near each other in space and share most of their neighbors.
+	 */
+	private Cell[] sorted() {
+		Cell[] cells = new Cell[cellCount];
+		int count = 0;
+
+		for (Cell cell : table) {
+			for (; cell != null; cell = cell.next) {
+				cells[count++] = cell;
+			}
+		}
+
+		Arrays.sort(cells, new Comparator<Cell>() {
+			@Override
+			public int compare(Cell cell1, Cell cell2) {
+				return Long.compare(cell1.key, cell2.key);
+			}
+		});
+
+		return cells;
+	}
+
+	/**
+	 * Computes the group bounds of a block of cells: the cells enlarged by half of the cell size on
+	 * every side, rounded outward.
+	 */
+	private void loosen(int[] lo, int[] hi, float[] volume) {
+		for (int i = 0; i < dimensions; i++) {
+			volume[2 * i + 0] = Math.nextAfter((lo[i] - 0.5f) * cellSize, Double.NEGATIVE_INFINITY);
+			volume[2 * i + 1] = Math.nextUp((hi[i] + 1.5f) * cellSize);
+		}
+	}
+
+	/**
+	 * Narrows a block of cells to the smallest block containing every cell whose group bounds may
+	 * pass the probe, and then visits each occupied cell of the block whose group bounds pass the
+	 * probe. The sides of the block are found by a galloping search outward from the cell given by
+	 * <tt>hint</tt> (or from the middle of the block, if <tt>hint</tt> is <tt>null</tt>), followed by
+	 * a binary search. The cells are found by key if the block holds fewer cells than the table,
+	 * and by scanning the table otherwise.
+	 */
+	private boolean search(Probe probe, int[] lo, int[] hi, int[] hint, float[] volume) {
+		loosen(lo, hi, volume);
+
+		if (probe.test(volume) == QueryResult.FAIL) {
+			return true;
+		}
+
+		for (int i = 0; i < dimensions; i++) {
+			int min = lo[i];
+			int max = hi[i];
+			int start = hint == null ? min + (max - min) / 2 : Math.max(min, Math.min(max, hint[i]));
+
+			min = edge(probe, lo, hi, volume, i, start, min - 1, max, min, max) + 1;
+			start = Math.max(min, start);
+			max = edge(probe, lo, hi, volume, i, start, max + 1, min, min, max) - 1;
+
+			lo[i] = min;
+			hi[i] = max;
+		}
+
+		long cells = 1;
+
+		for (int i = 0; i < dimensions; i++) {
+			cells *= (long) hi[i] - lo[i] + 1;
+		}
+
+		if (cells > cellCount) {
+			for (Cell cell : table) {
+				for (; cell != null; cell = cell.next) {
+					if (contains(lo, hi, cell.coordinates) && !visit(probe, cell, volume)) {
+						return false;
+					}
+				}
+			}
+
+			return true;
+		}
+
+		int[] coordinates = lo.clone();
+
+		while (true) {
+			Cell cell = find(key(coordinates));
+
+			if (cell != null && !visit(probe, cell, volume)) {
+				return false;
+			}
+
+			int i = dimensions - 1;
+
+			for (; i >= 0; i--) {
+				if (++coordinates[i] <= hi[i]) {
+					break;
+				}
+
+				coordinates[i] = lo[i];
+			}
+
+			if (i < 0) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Finds the edge of the cells which may pass the probe along one side of a block. If
+	 * <tt>fail</tt> is below <tt>pass</tt>, this is the greatest coordinate for which the cells from
+	 * the bottom of the block up to the coordinate all fail; otherwise it is the least coordinate for
+	 * which the cells from the coordinate up to the top of the block all fail.
+	 */
+	private int edge(Probe probe, int[] lo, int[] hi, float[] volume, int axis, int start, int fail, int pass, int min, int max) {
+		int sign = fail < pass ? 1 : -1;
+		int m = start - sign;
+		boolean outward = false;
+
+		if ((m - fail) * sign > 0) {
+			outward = !fails(probe, lo, hi, volume, axis, m, sign, min, max);
+
+			if (outward) {
+				pass = m;
+			} else {
+				fail = m;
+			}
+		}
+
+		for (int step = 1; ; step *= 2) {
+			m = outward ? pass - sign * step : fail + sign * step;
+
+			if ((m - fail) * sign <= 0 || (pass - m) * sign <= 0) {
+				break;
+			}
+
+			if (fails(probe, lo, hi, volume, axis, m, sign, min, max)) {
+				fail = m;
+
+				if (outward) {
+					break;
+				}
+			} else {
+				pass = m;
+
+				if (!outward) {
+					break;
+				}
+			}
+		}
+
+		while ((pass - fail) * sign > 1) {
+			m = fail + (pass - fail) / 2;
+
+			if (fails(probe, lo, hi, volume, axis, m, sign, min, max)) {
+				fail = m;
+			} else {
+				pass = m;
+			}
+		}
+
+		lo[axis] = min;
+		hi[axis] = max;
+
+		return fail;
+	}
+
+	private boolean fails(Probe probe, int[] lo, int[] hi, float[] volume, int axis, int m, int sign, int min, int max) {
+		lo[axis] = sign > 0 ? min : m;
+		hi[axis] = sign > 0 ? m : max;
+		loosen(lo, hi, volume);
+
+		return probe.test(volume) == QueryResult.FAIL;
+	}
+
+	private boolean contains(int[] lo, int[] hi, int[] coordinates) {
+		for (int i = 0; i < dimensions; i++) {
+			if (coordinates[i] < lo[i] || coordinates[i] > hi[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean visit(Probe probe, Cell cell, float[] volume) {
+		loosen(cell.coordinates, cell.coordinates, volume);
+		QueryResult result = probe.test(volume);
+
+		return result == QueryResult.FAIL || probe.visit(cell, result);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean query(final Query query, final QueryResultHandler<E> handler, final AABBView view) {
+		Cell cell = overflow;
+
+		for (int i = 0; i < cell.count; i++) {
+			if (query.query(view.wrap(cell.bounds, 2 * dimensions * i, 1), false) == QueryResult.PASS) {
+				if (!handler.handle((E) cell.entries[i].object)) {
+					return false;
+				}
+			}
+		}
+
+		if (cellCount == 0) {
+			return true;
+		}
+
+		Probe probe = new Probe() {
+			@Override
+			public QueryResult test(float[] volume) {
+				return query.query(view.wrap(volume, 0, 1), true);
+			}
+
+			@Override
+			public boolean visit(Cell cell, QueryResult result) {
+				return query(query, handler, cell, result == QueryResult.PASS, view);
+			}
+		};
+
+		return search(probe, low.clone(), high.clone(), null, new float[2 * dimensions]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean query(Query query, QueryResultHandler<E> handler, Cell cell, boolean pass, AABBView view) {
+		for (int i = 0; i < cell.count; i++) {
+			if (pass || query.query(view.wrap(cell.bounds, 2 * dimensions * i, 1), false) == QueryResult.PASS) {
+				if (!handler.handle((E) cell.entries[i].object)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Joins every group of this index (each occupied cell, and each overflow object on its own)
+	 * with the groups of the other index. The cells of this index are matched by the union of the
+	 * bounds of their entries, which is tighter than the group bounds of the cell and so matches
+	 * fewer neighboring cells. In a self join, each pair of groups is joined once, by joining a
+	 * cell only with cells of greater key and, for overflow objects, with every cell and with the
+	 * overflow objects which follow it.
+	 */
+	private <F> boolean join(SpatialHashIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler, AABBView view1, AABBView view2) {
+		boolean self = index == this;
+		boolean reverse = self && !query.isSymmetric();
+
+		JoinProbe<F> probe = new JoinProbe<>(query, handler, view1, view2, reverse);
+		probe.volume = new float[2 * dimensions];
+
+		int[] lo = new int[index.dimensions];
+		int[] hi = new int[index.dimensions];
+		int[] hint = new int[index.dimensions];
+		float[] scratch = new float[2 * index.dimensions];
+
+		for (Cell cell : sorted()) {
+			Bounds.empty(probe.volume, 0, dimensions);
+
+			for (int i = 0; i < cell.count; i++) {
+				Bounds.include(probe.volume, 0, cell.bounds, 2 * dimensions * i, dimensions);
+			}
+
+			for (int i = 0; i < cell.count; i++) {
+				if (!this.<F>join(query, handler, cell, i, self ? cell : index.overflow, self ? i + 1 : 0, view1, view2, reverse)) {
+					return false;
+				}
+			}
+
+			if (index.cellCount != 0) {
+				System.arraycopy(index.low, 0, lo, 0, lo.length);
+				System.arraycopy(index.high, 0, hi, 0, hi.length);
+
+				if (self) {
+					lo[0] = cell.coordinates[0];
+				}
+
+				probe.cell = cell;
+				probe.slot = -1;
+				probe.after = self ? cell.key : -1;
+				index.locate(probe.volume, hint);
+
+				if (!index.search(probe, lo, hi, hint, scratch)) {
+					return false;
+				}
+			}
+		}
+
+		for (int i = 0; i < overflow.count; i++) {
+			if (!this.<F>join(query, handler, overflow, i, index.overflow, self ? i + 1 : 0, view1, view2, reverse)) {
+				return false;
+			}
+
+			if (index.cellCount != 0) {
+				System.arraycopy(index.low, 0, lo, 0, lo.length);
+				System.arraycopy(index.high, 0, hi, 0, hi.length);
+
+				probe.cell = overflow;
+				probe.slot = i;
+				probe.after = -1;
+				System.arraycopy(overflow.bounds, 2 * dimensions * i, probe.volume, 0, probe.volume.length);
+				index.locate(probe.volume, hint);
+
+				if (!index.search(probe, lo, hi, hint, scratch)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Joins the entries of a cell of this index (or a single entry, if <tt>slot</tt> is not
+	 * negative) with the entries of a cell of another index, starting from the given position.
+	 */
+	private <F> boolean join(JoinQuery query, JoinQueryResultHandler<E, F> handler, Cell cell, int slot, Cell other, int start, AABBView view1, AABBView view2, boolean reverse) {
+		int first = slot < 0 ? 0 : slot;
+		int last = slot < 0 ? cell.count : slot + 1;
+
+		for (int i = first; i < last; i++) {
+			for (int j = start; j < other.count; j++) {
+				if (!this.<F>joinPair(query, handler, cell, i, other, j, view1, view2, reverse)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> boolean joinPair(JoinQuery query, JoinQueryResultHandler<E, F> handler, Cell cell1, int slot1, Cell cell2, int slot2, AABBView view1, AABBView view2, boolean reverse) {
+		view1.wrap(cell1.bounds, 2 * view1.getDimensions() * slot1, 1);
+		view2.wrap(cell2.bounds, 2 * view2.getDimensions() * slot2, 1);
+
+		if (query.query(view1, view2, false)) {
+			return handler.handle((E) cell1.entries[slot1].object, (F) cell2.entries[slot2].object);
+		}
+
+		if (reverse && query.query(view2, view1, false)) {
+			return handler.handle((E) cell2.entries[slot2].object, (F) cell1.entries[slot1].object);
+		}
+
+		return true;
+	}
+
+	private float[] toBounds(AABB volume) {
+		if (dimensions == 0) {
+			if (volume.getDimensions() > MAX_DIMENSIONS) {
+				throw new IllegalArgumentException("At most three dimensions are supported.");
+			}
+
+			dimensions = volume.getDimensions();
+		}
+
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		return Bounds.pack(volume);
+	}
+
+	/**
+	 * A test of the group bounds of blocks of cells, and the action to take on each matching cell.
+	 */
+	private static abstract class Probe
+	{
+		public abstract QueryResult test(float[] volume);
+
+		public abstract boolean visit(Cell cell, QueryResult result);
+	}
+
+	/**
+	 * Matches the cells of another index against a cell (or a single overflow entry) of this
+	 * index.
+	 */
+	private class JoinProbe<F> extends Probe
+	{
+		private JoinQuery query;
+		private JoinQueryResultHandler<E, F> handler;
+		private AABBView view1;
+		private AABBView view2;
+		private boolean reverse;
+
+		private Cell cell;
+		private int slot;
+		private float[] volume;
+		private long after;
+
+		public JoinProbe(JoinQuery query, JoinQueryResultHandler<E, F> handler, AABBView view1, AABBView view2, boolean reverse) {
+			this.query = query;
+			this.handler = handler;
+			this.view1 = view1;
+			this.view2 = view2;
+			this.reverse = reverse;
+		}
+
+		@Override
+		public QueryResult test(float[] volume) {
+			view1.wrap(this.volume, 0, 1);
+			view2.wrap(volume, 0, 1);
+
+			return query.query(view1, view2, true) || (reverse && query.query(view2, view1, true)) ? QueryResult.PARTIAL : QueryResult.FAIL;
+		}
+
+		@Override
+		public boolean visit(Cell other, QueryResult result) {
+			return other.key <= after || SpatialHashIndex.this.<F>join(query, handler, cell, slot, other, 0, view1, view2, reverse);
+		}
+	}
+
+	/**
+	 * An object and its position in the index.
+	 */
+	private static class Entry
+	{
+		private Object object;
+		private Cell cell;
+		private int slot;
+
+		public Entry(Object object) {
+			this.object = object;
+		}
+	}
+
+	/**
+	 * An occupied cell of the grid, or the overflow list. The bounds of the entries are packed
+	 * one after another into a single array.
+	 */
+	private static class Cell
+	{
+		private long key;
+		private int[] coordinates;
+		private Cell next;
+		private Entry[] entries = new Entry[4];
+		private float[] bounds;
+		private int count;
+
+		public Cell(long key, int[] coordinates) {
+			this.key = key;
+			this.coordinates = coordinates;
+		}
+
+		public void add(Entry entry, float[] volume) {
+			if (bounds == null) {
+				bounds = new float[entries.length * volume.length];
+			}
+
+			if (count == entries.length) {
+				entries = Arrays.copyOf(entries, count * 2);
+				bounds = Arrays.copyOf(bounds, count * 2 * volume.length);
+			}
+
+			System.arraycopy(volume, 0, bounds, count * volume.length, volume.length);
+
+			entry.cell = this;
+			entry.slot = count;
+			entries[count++] = entry;
+		}
+
+		public void remove(int slot) {
+			int size = bounds.length / entries.length;
+
+			count--;
+
+			System.arraycopy(bounds, count * size, bounds, slot * size, size);
+			entries[slot] = entries[count];
+			entries[slot].slot = slot;
+			entries[count] = null;
+		}
+	}
+}
@@ -22,22 +22,40 @@
 package com.kauridev.scout;
 
 import com.kauridev.scout.Query.QueryResult;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A spatial-aware collection of elements.
  * <p>
  * This class implements an R-tree variant designed for efficient traversal and efficient
- * common-case updates.
+ * common-case updates. The bounds of the entries of each node are stored in a single primitive
+ * array, grouped by dimension, so that scanning a node touches contiguous memory.
  * <p>
  * <b>Note that this implementation is not synchronized.</b> If multiple threads access the index
  * concurrently, and at least one of the threads modifies the index structurally, it <i>must</i> be
  * synchronized externally. A structural modification is a successful {@link #insert(Object, AABB)
  * insert}, {@link #update(Object, AABB) update}, or {@link #remove(Object) remove} operation.
+ * <p>
+ * Each insertion returns a {@link Handle} which tracks the leaf node and slot of the object. The
+ * handle-based {@link #update(Handle, AABB) update} and {@link #remove(Handle) remove} operations
+ * locate the object in constant time without a hash lookup or a scan of the leaf.
+ * <p>
+ * A {@link #snapshot() snapshot} is an immutable view of the index which may be queried from
+ * other threads, without locking, while the index continues to be modified.
  *
  * @author Eric Fritz
  */
@@ -46,18 +64,55 @@ public class SpatialIndex<E>
 	/**
 	 * The minimum number of objects a node can hold before underflow.
 	 */
-	private final static int MIN_OBJECTS_PER_NODE = 3;
+	private final int minEntries;
 
 	/**
 	 * The maximum number of objects a node can hold before overflow.
 	 */
-	private final static int MAX_OBJECTS_PER_NODE = 8;
+	private final int maxEntries;
+
+	/**
+	 * The strategy used to divide the entries of an overflowing node.
+	 */
+	private final SplitStrategy splitStrategy;
+
+	/**
+	 * The fraction of the entries of an overflowing node which are reinserted when forced
+	 * reinsertion is enabled.
+	 */
+	private final static float REINSERT_FRACTION = 0.3f;
+
+	/**
+	 * The minimum number of entries, estimated from the height of a subtree, for which the subtree
+	 * is searched by a parallel query as more than one task.
+	 */
+	private final static int PARALLEL_THRESHOLD = 4096;
+
+	/**
+	 * Whether the entries of an overflowing node are reinserted before the node is split.
+	 */
+	private final boolean forcedReinsertion;
+
+	/**
+	 * The distance by which the stored (fat) bounds of each object are enlarged, or zero if the
+	 * index stores exact bounds only.
+	 */
+	private final float margin;
+
+	/**
+	 * The multiple of an object's displacement by which its fat bounds are extended.
+	 */
+	private final float displacementFactor;
 
 	/**
-	 * The maximum number of iterations of the k-means clustering algorithm to perform during node
-	 * overflow operations.
+	 * Whether removed objects are marked dead and left in the tree until compaction.
 	 */
-	private final static int MAX_SPLIT_ITERATIONS = 8;
+	private final boolean lazyDeletion;
+
+	/**
+	 * Whether an underfull node is merged with a sibling instead of being reinserted.
+	 */
+	private final boolean siblingMerging;
 
 	/**
 	 * The root node.
@@ -65,10 +120,21 @@ public class SpatialIndex<E>
 	private Node root;
 
 	/**
-	 * An auxiliary map of objects to the leaf node where they are stored. This allows for
-	 * constant-time retrieval in the case of updates and deletions.
+	 * The level of the root node. Leaf nodes are at level zero.
+	 */
+	private int height = 0;
+
+	/**
+	 * The number of dimensions of the indexed volumes. This value is zero until the first object is
+	 * inserted into the index.
+	 */
+	private int dimensions = 0;
+
+	/**
+	 * An auxiliary map of objects to their handles. This allows for constant-time retrieval in the
+	 * case of object-keyed updates and deletions.
 	 */
-	private Map<E, Node> leafMap = new HashMap<>();
+	private Map<E, Handle<E>> leafMap = new HashMap<>();
 
 	/**
 	 * The number of active traversals of the index. This field is used to forbid structural
@@ -78,9 +144,58 @@ public class SpatialIndex<E>
 	private transient int traversalCount = 0;
 
 	/**
-	 * Creates a new SpatialIndex.
+	 * The updates recorded since the current batch began, or <tt>null</tt> if no batch is in
+	 * progress.
+	 */
+	private Map<Handle<E>, Move> batch;
+
+	/**
+	 * The handles of dead entries which remain in the tree, in order of removal.
+	 */
+	private Queue<Handle<E>> tombstones = new LinkedList<>();
+
+	/**
+	 * The version given to nodes created from now on. This value is incremented by each snapshot.
+	 */
+	private int epoch = 0;
+
+	/**
+	 * The version below which nodes may be shared with a snapshot. Such nodes are never modified;
+	 * they are copied, along with the path to them from the root, when they must change.
+	 */
+	private int sealed = 0;
+
+	/**
+	 * The number of snapshots which have not been released.
+	 */
+	private final AtomicInteger snapshots = new AtomicInteger();
+
+	/**
+	 * Creates a new SpatialIndex with the default configuration.
 	 */
 	public SpatialIndex() {
+		this(new SpatialIndexConfig());
+	}
+
+	/**
+	 * Creates a new SpatialIndex.
+	 *
+	 * @param config The structural parameters of the index.
+	 *
+	 * @throws IllegalArgumentException If the configuration is invalid.
+	 */
+	public SpatialIndex(SpatialIndexConfig config) {
+		config.validate();
+
+		minEntries = config.getMinEntries();
+		maxEntries = config.getMaxEntries();
+		splitStrategy = config.getSplitStrategy();
+		forcedReinsertion = config.isForcedReinsertion();
+		margin = config.getMargin();
+		displacementFactor = config.getDisplacementFactor();
+		lazyDeletion = config.isLazyDeletion();
+		siblingMerging = config.isSiblingMerging();
+
 		root = new Node(true);
 	}
 
@@ -93,10 +208,47 @@ public class SpatialIndex<E>
 	 */
 	public void query(Query query, QueryResultHandler<E> handler) {
 		traversalCount++;
-		query(query, handler, root);
+		query(query, handler, root, new AABBView(dimensions));
 		traversalCount--;
 	}
 
+	/**
+	 * Performs a spatial query on the index using the threads of a shared {@link ForkJoinPool}.
+	 * See {@link #parallelQuery(Query, QueryResultHandler, ForkJoinPool)}.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The thread-safe handler to call for each matching element.
+	 */
+	public void parallelQuery(Query query, QueryResultHandler<E> handler) {
+		parallelQuery(query, handler, DefaultPool.POOL);
+	}
+
+	/**
+	 * Performs a spatial query on the index, visiting all of the matching elements that satisfy the
+	 * query criteria, using the threads of the given pool. This is worthwhile for queries which
+	 * visit a large part of a large index.
+	 * <p>
+	 * Subtrees which partially match the query are searched by separate tasks, as are subtrees
+	 * which match the query entirely. Small subtrees are searched by a single task. The handler may
+	 * be called by several threads at once, in no particular order, and must be thread-safe. Once
+	 * the handler returns <tt>false</tt>, no further calls to the handler are started, and the query
+	 * returns once the calls in progress have finished. The index must not be modified until the
+	 * query returns.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The thread-safe handler to call for each matching element.
+	 * @param pool    The pool whose threads search the index.
+	 */
+	public void parallelQuery(Query query, QueryResultHandler<E> handler, ForkJoinPool pool) {
+		traversalCount++;
+
+		try {
+			pool.invoke(new QueryTask(query, new ParallelHandler<>(handler), root, height, false));
+		} finally {
+			traversalCount--;
+		}
+	}
+
 	/**
 	 * Performs a spatial join on the index with itself, visiting all of the matching element pairs
 	 * that satisfy the query criteria.
@@ -118,63 +270,249 @@ public class SpatialIndex<E>
 	 */
 	public <F> void query(SpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
 		traversalCount++;
-		this.<F>query(query, handler, root, index.root);
+		this.<F>query(query, handler, root, index.root, new AABBView(dimensions), new AABBView(index.dimensions));
 		traversalCount--;
 	}
 
+	/**
+	 * Performs a spatial join on the index with itself using the threads of a shared
+	 * {@link ForkJoinPool}. See
+	 * {@link #parallelQuery(SpatialIndex, JoinQuery, JoinQueryResultHandler, ForkJoinPool)}.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The thread-safe handler to call for each matching element.
+	 */
+	public void parallelQuery(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		parallelQuery(this, query, handler, DefaultPool.POOL);
+	}
+
+	/**
+	 * Performs a spatial join on the index with itself using the threads of the given pool. See
+	 * {@link #parallelQuery(SpatialIndex, JoinQuery, JoinQueryResultHandler, ForkJoinPool)}.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The thread-safe handler to call for each matching element.
+	 * @param pool    The pool whose threads search the index.
+	 */
+	public void parallelQuery(JoinQuery query, JoinQueryResultHandler<E, E> handler, ForkJoinPool pool) {
+		parallelQuery(this, query, handler, pool);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another spatial index using the threads of a
+	 * shared {@link ForkJoinPool}. See
+	 * {@link #parallelQuery(SpatialIndex, JoinQuery, JoinQueryResultHandler, ForkJoinPool)}.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The thread-safe handler to call for each matching element.
+	 */
+	public <F> void parallelQuery(SpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		parallelQuery(index, query, handler, DefaultPool.POOL);
+	}
+
+	/**
+	 * Performs a spatial join on this index and another spatial index, visiting all of the matching
+	 * element pairs that satisfy the query criteria, using the threads of the given pool.
+	 * <p>
+	 * Each pair of large subtrees whose bounds match the query is joined by a separate task; pairs
+	 * of small subtrees are joined by a single task. Pairs are reported exactly as by
+	 * {@link #query(SpatialIndex, JoinQuery, JoinQueryResultHandler)}, but the handler may be
+	 * called by several threads at once, in no particular order, and must be thread-safe. Once the
+	 * handler returns <tt>false</tt>, no further calls to the handler are started. Neither index
+	 * may be modified until the join returns.
+	 *
+	 * @param index   The other spatial index.
+	 * @param query   The spatial query.
+	 * @param handler The thread-safe handler to call for each matching element.
+	 * @param pool    The pool whose threads search the indices.
+	 */
+	public <F> void parallelQuery(SpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler, ForkJoinPool pool) {
+		traversalCount++;
+
+		try {
+			pool.invoke(new JoinTask<F>(query, new ParallelJoinHandler<>(handler), root, index.root, height, index.height));
+		} finally {
+			traversalCount--;
+		}
+	}
+
+	/**
+	 * Returns an immutable view of the current contents of the index, in constant time.
+	 * <p>
+	 * The snapshot shares the nodes of the tree with the index. From then on, the index copies a
+	 * shared node, and the path from the root to it, before modifying it, so that the snapshot is
+	 * unaffected by later modifications. A snapshot may be queried from any thread, at the same
+	 * time as the index is modified, until it is {@link Snapshot#release() released}. Once every
+	 * snapshot has been released, the index no longer copies nodes.
+	 *
+	 * @return A snapshot of the index.
+	 */
+	public Snapshot<E> snapshot() {
+		snapshots.incrementAndGet();
+		sealed = ++epoch;
+
+		return new Snapshot<>(this, root, dimensions);
+	}
+
+	/**
+	 * Performs a spatial query without registering a traversal of the index, so that several
+	 * threads may query the index at once. The caller must ensure that the index is not modified
+	 * until the query returns.
+	 *
+	 * @return <tt>false</tt> if the handler halted the traversal.
+	 */
+	boolean queryUnguarded(Query query, QueryResultHandler<E> handler) {
+		return query(query, handler, root, new AABBView(dimensions));
+	}
+
+	/**
+	 * Performs a spatial join without registering a traversal of either index. See
+	 * {@link #queryUnguarded(Query, QueryResultHandler)}.
+	 *
+	 * @return <tt>false</tt> if the handler halted the traversal.
+	 */
+	<F> boolean queryUnguarded(SpatialIndex<F> index, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+		return this.<F>query(query, handler, root, index.root, new AABBView(dimensions), new AABBView(index.dimensions));
+	}
+
+	/**
+	 * Returns the dimensionality of the index, or zero if no object has been inserted yet.
+	 */
+	int getDimensions() {
+		return dimensions;
+	}
+
+	/**
+	 * Returns the packed bounds of the root of the tree, which contain every object in the index
+	 * (and any dead entries awaiting compaction). The bounds are empty if the tree is empty.
+	 */
+	float[] getBounds() {
+		return root.getBounds();
+	}
+
 	/**
 	 * Inserts an object into the index.
 	 * <p>
-	 * If <tt>volume</tt> is modified after insertion, {@link #update(Object, AABB)} should be
-	 * called in order to keep the index well-formed.
+	 * The bounds of <tt>volume</tt> are copied into the index. If <tt>volume</tt> is modified after
+	 * insertion, {@link #update(Handle, AABB)} or {@link #refit()} should be called in order to keep
+	 * the index well-formed.
 	 *
 	 * @param object The object to insert.
 	 * @param volume The bounding volume of the object.
+	 *
+	 * @return A handle which can be used to update or remove the object.
 	 */
-	@SuppressWarnings("unchecked")
-	public void insert(E object, AABB volume) {
+	public Handle<E> insert(E object, AABB volume) {
 		if (traversalCount != 0) {
 			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
 		}
 
-		Node node1 = root;
-		Node node2;
+		Handle<E> handle = new Handle<>(object, volume);
+		insert(handle, fatten(handle, toBounds(volume), null), 0, reinsertionLevels());
+		leafMap.put(object, handle);
+
+		return handle;
+	}
 
-		while (!node1.isLeaf) {
-			int index = chooseChildIndex(node1, volume);
+	/**
+	 * Inserts a collection of objects into the index at once.
+	 * <p>
+	 * The index is rebuilt from scratch using Sort-Tile-Recursive packing of the given objects
+	 * together with any objects already in the index, producing full leaves with little overlap.
+	 * This is much faster than inserting each object in turn, and the resulting tree is generally
+	 * faster to query. Handles to objects already in the index remain valid.
+	 *
+	 * @param objects A map from each object to insert to its bounding volume.
+	 *
+	 * @return A handle for each inserted object, in the iteration order of <tt>objects</tt>.
+	 */
+	public List<Handle<E>> bulkLoad(Map<? extends E, ? extends AABB> objects) {
+		List<E> keys = new ArrayList<>(objects.size());
+		List<AABB> volumes = new ArrayList<>(objects.size());
 
-			AABBUtil.expand(node1.volumes[index], volume);
-			node1 = (Node) node1.entries[index];
+		for (Map.Entry<? extends E, ? extends AABB> entry : objects.entrySet()) {
+			keys.add(entry.getKey());
+			volumes.add(entry.getValue());
 		}
 
-		if (node1.numEntries + 1 <= MAX_OBJECTS_PER_NODE) {
-			node1.add(volume, object);
-			return;
-		} else {
-			node2 = splitNode(node1, volume, object);
+		return bulkLoad(keys, volumes);
+	}
+
+	/**
+	 * Inserts a collection of objects into the index at once. See {@link #bulkLoad(Map)}.
+	 *
+	 * @param objects The objects to insert.
+	 * @param volumes The bounding volume of each object.
+	 *
+	 * @return A handle for each inserted object, in order.
+	 *
+	 * @throws IllegalArgumentException If the arrays differ in length.
+	 */
+	public List<Handle<E>> bulkLoad(E[] objects, AABB[] volumes) {
+		if (objects.length != volumes.length) {
+			throw new IllegalArgumentException("Objects and volumes differ in length.");
 		}
 
-		while (node1 != root && node2 != null) {
-			Node parent = node1.parent;
-			Node psplit = null;
+		return bulkLoad(Arrays.asList(objects), Arrays.asList(volumes));
+	}
 
-			updateVolumes(parent, node1);
+	private List<Handle<E>> bulkLoad(List<? extends E> objects, List<? extends AABB> volumes) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
 
-			if (parent.numEntries + 1 <= MAX_OBJECTS_PER_NODE) {
-				parent.add(getVolumeForNode(node2), node2);
-			} else {
-				psplit = splitNode(parent, getVolumeForNode(node2), node2);
-			}
+		float[][] packed = new float[volumes.size()][];
 
-			node1 = parent;
-			node2 = psplit;
+		for (int i = 0; i < packed.length; i++) {
+			packed[i] = toBounds(volumes.get(i));
 		}
 
-		if (node2 != null) {
-			root = new Node(false);
-			root.add(getVolumeForNode(node1), node1);
-			root.add(getVolumeForNode(node2), node2);
+		int size = 2 * dimensions;
+		int count = count(root) + packed.length;
+
+		Object[] entries = new Object[count];
+		float[] bounds = new float[count * size];
+
+		int existing = collect(root, entries, bounds, 0);
+		List<Handle<E>> handles = new ArrayList<>(packed.length);
+
+		for (int i = 0; i < packed.length; i++) {
+			Handle<E> handle = new Handle<>(objects.get(i), volumes.get(i));
+			handles.add(handle);
+
+			entries[existing + i] = handle;
+			System.arraycopy(fatten(handle, packed[i], null), 0, bounds, (existing + i) * size, size);
 		}
+
+		build(entries, bounds, existing + packed.length);
+
+		for (Handle<E> handle : handles) {
+			leafMap.put(handle.object, handle);
+		}
+
+		return handles;
+	}
+
+	/**
+	 * Removes all objects from the index. All outstanding handles become invalid.
+	 */
+	public void clear() {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		invalidate(root);
+
+		root = new Node(true);
+		height = 0;
+		leafMap.clear();
+
+		if (batch != null) {
+			batch.clear();
+		}
+
+		tombstones.clear();
 	}
 
 	/**
@@ -185,99 +523,785 @@ public class SpatialIndex<E>
 	 * @param volume The new (current) bounding volume of the object.
 	 */
 	public void update(E object, AABB volume) {
+		update(object, volume, null);
+	}
+
+	/**
+	 * Updates the bounds of a moving object in the index. If the object was not already in the
+	 * index, no action is performed. See {@link #update(Handle, AABB, float[])}.
+	 *
+	 * @param object       The object to update.
+	 * @param volume       The new (current) bounding volume of the object.
+	 * @param displacement The expected displacement of the object along each dimension before its
+	 *                     next update, or <tt>null</tt>.
+	 */
+	public void update(E object, AABB volume, float[] displacement) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Handle<E> handle = leafMap.get(object);
+
+		if (handle != null) {
+			update(handle, volume, displacement);
+		}
+	}
+
+	/**
+	 * Updates the bounds of the object referenced by a handle. If the object was already removed
+	 * from the index, no action is performed.
+	 *
+	 * @param handle The handle returned when the object was inserted.
+	 * @param volume The new (current) bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the handle was issued by another index.
+	 */
+	public void update(Handle<E> handle, AABB volume) {
+		update(handle, volume, null);
+	}
+
+	/**
+	 * Updates the bounds of a moving object referenced by a handle. If the object was already
+	 * removed from the index, no action is performed.
+	 * <p>
+	 * If the index was configured with a {@link SpatialIndexConfig#setMargin(float) margin} and the
+	 * new bounds lie within the object's fat bounds, only the exact bounds of the object are
+	 * replaced. Otherwise, new fat bounds are computed from the new bounds, enlarged by the margin
+	 * and extended by a multiple of <tt>displacement</tt> in the direction of movement, and the
+	 * object is moved within the tree if necessary. Without a margin, <tt>displacement</tt> is
+	 * ignored.
+	 *
+	 * @param handle       The handle returned when the object was inserted.
+	 * @param volume       The new (current) bounding volume of the object.
+	 * @param displacement The expected displacement of the object along each dimension before its
+	 *                     next update, or <tt>null</tt>.
+	 *
+	 * @throws IllegalArgumentException If the handle was issued by another index, or if the length
+	 *                                  of <tt>displacement</tt> differs from the dimensionality of
+	 *                                  the index.
+	 */
+	public void update(Handle<E> handle, AABB volume, float[] displacement) {
 		if (traversalCount != 0) {
 			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
 		}
 
-		Node node = leafMap.get(object);
+		Node node = getLeaf(handle);
 
 		if (node == null) {
 			return;
 		}
 
-		if (node != root) {
-			Node parent = node.parent;
+		float[] bounds = toBounds(volume);
 
-			for (int i = 0; i < parent.numEntries; i++) {
-				if (parent.entries[i] == node) {
-					if (!parent.volumes[i].contains(volume)) {
-						break;
-					}
+		if (displacement != null && displacement.length != dimensions) {
+			throw new IllegalArgumentException();
+		}
 
-					for (int j = 0; j < node.numEntries; j++) {
-						if (node.entries[j] == object) {
-							node.volumes[j] = volume;
-							return;
-						}
-					}
-				}
-			}
+		handle.volume = volume;
+
+		if (batch != null) {
+			batch.put(handle, new Move(bounds, displacement));
+			return;
 		}
 
-		remove(object);
-		insert(object, volume);
+		bounds = moveInPlace(handle, bounds, displacement);
+
+		if (bounds != null) {
+			delete(handle);
+			insert(handle, bounds, 0, reinsertionLevels());
+		}
 	}
 
 	/**
-	 * Removes an object from the index.
+	 * Re-reads the volume of every object and recomputes the bounds of every node.
+	 * <p>
+	 * The index retains the volume most recently given for each object. An application whose
+	 * objects mutate their own volumes in place may call this method once per frame instead of
+	 * updating each object. The tree is refit in a single bottom-up pass without moving any
+	 * object between nodes, so its quality degrades as objects drift away from their original
+	 * neighbors; see {@link #rebuildIfDegraded(float)}.
 	 *
-	 * @param object The object to remove. If the object was not already in the index, no action is
-	 *               performed.
+	 * @throws IllegalArgumentException If the dimensionality of a volume has changed.
+	 * @throws IllegalStateException    If a batch is in progress.
 	 */
-	@SuppressWarnings("unchecked")
-	public void remove(E object) {
+	public void refit() {
 		if (traversalCount != 0) {
 			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
 		}
 
-		Node node = leafMap.get(object);
+		if (batch != null) {
+			throw new IllegalStateException("A batch is in progress.");
+		}
+
+		refit(writable(root), new float[2 * dimensions]);
+	}
 
-		if (node == null) {
-			return;
+	/**
+	 * Returns the ratio of the total pairwise overlap between the children of each internal node to
+	 * the total volume of those children. A freshly built tree has a low ratio, which rises as
+	 * objects move without restructuring the tree.
+	 *
+	 * @return The overlap ratio of the tree.
+	 */
+	public float getOverlapRatio() {
+		float[] totals = new float[2];
+		measure(root, new float[2 * dimensions * maxEntries], totals);
+
+		return totals[1] == 0 ? 0 : totals[0] / totals[1];
+	}
+
+	/**
+	 * Rebuilds the tree with Sort-Tile-Recursive packing if its {@link #getOverlapRatio() overlap
+	 * ratio} exceeds a threshold. Handles remain valid.
+	 *
+	 * @param threshold The largest acceptable overlap ratio.
+	 *
+	 * @return <tt>true</tt> if the tree was rebuilt, <tt>false</tt> otherwise.
+	 */
+	public boolean rebuildIfDegraded(float threshold) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
 		}
 
-		node.remove(object);
+		if (getOverlapRatio() <= threshold) {
+			return false;
+		}
 
-		Queue<Node> queue = new LinkedList<>();
+		int count = count(root);
 
-		while (node != root) {
-			Node parent = node.parent;
+		Object[] entries = new Object[count];
+		float[] bounds = new float[count * 2 * dimensions];
 
-			if (node.numEntries < MIN_OBJECTS_PER_NODE) {
-				parent.remove(node);
-				queue.add(node);
-			} else {
-				updateVolumes(parent, node);
-			}
+		build(entries, bounds, collect(root, entries, bounds, 0));
+		return true;
+	}
 
-			node = parent;
+	/**
+	 * Begins a batch of updates. Until {@link #commit()} is called, updates are recorded rather
+	 * than applied, and queries observe the bounds of objects as they were before the batch. Only
+	 * the last update of each object within a batch takes effect. Insertions and removals are
+	 * applied immediately.
+	 *
+	 * @throws IllegalStateException If a batch is already in progress.
+	 */
+	public void beginBatch() {
+		if (batch != null) {
+			throw new IllegalStateException("A batch is already in progress.");
 		}
 
-		if (!root.isLeaf && root.numEntries == 0) {
-			root.isLeaf = true;
+		batch = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Applies the updates recorded since {@link #beginBatch()}.
+	 * <p>
+	 * Objects whose new bounds remain within their node are updated in place. The remaining
+	 * objects are detached from their leaves, the affected nodes are condensed and refit once from
+	 * the leaves up, and the detached objects are then inserted again in Hilbert order of their
+	 * new bounds, so that consecutive insertions descend similar paths.
+	 *
+	 * @throws IllegalStateException If no batch is in progress.
+	 */
+	@SuppressWarnings("unchecked")
+	public void commit() {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
 		}
 
-		for (Node n : queue) {
-			reinsert(n);
+		if (batch == null) {
+			throw new IllegalStateException("No batch is in progress.");
 		}
 
-		if (!root.isLeaf && root.numEntries == 1) {
+		Map<Handle<E>, Move> moves = batch;
+		batch = null;
+
+		List<Handle<E>> handles = new ArrayList<>();
+		List<float[]> volumes = new ArrayList<>();
+		List<Set<Node>> dirty = new ArrayList<>();
+
+		for (Map.Entry<Handle<E>, Move> entry : moves.entrySet()) {
+			Handle<E> handle = entry.getKey();
+			float[] bounds = moveInPlace(handle, entry.getValue().bounds, entry.getValue().displacement);
+
+			if (bounds != null) {
+				Node node = writable(handle.leaf);
+				node.remove(handle.slot);
+				markDirty(dirty, 0, node);
+
+				handles.add(handle);
+				volumes.add(bounds);
+			}
+		}
+
+		for (int level = 0; level < dirty.size(); level++) {
+			for (Node node : dirty.get(level)) {
+				if (node == root) {
+					continue;
+				}
+
+				Node parent = node.parent;
+
+				if (node.numEntries < minEntries) {
+					parent.remove(node.index);
+					detach(node, handles, volumes);
+				} else {
+					parent.fit(node.index, node);
+				}
+
+				markDirty(dirty, level + 1, parent);
+			}
+		}
+
+		if (!root.isLeaf && root.numEntries == 0) {
+			root = new Node(true);
+			height = 0;
+		}
+
+		int size = 2 * dimensions;
+		int count = handles.size();
+
+		float[] packed = new float[count * size];
+		int[] order = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(volumes.get(i), 0, packed, i * size, size);
+		}
+
+		HilbertCurve.sort(packed, count, dimensions, order);
+
+		for (int i = 0; i < count; i++) {
+			insert(handles.get(order[i]), volumes.get(order[i]), 0, reinsertionLevels());
+		}
+
+		while (!root.isLeaf && root.numEntries == 1) {
 			root = (Node) root.entries[0];
 			root.parent = null;
+			height--;
 		}
 	}
 
+	/**
+	 * Removes an object from the index.
+	 *
+	 * @param object The object to remove. If the object was not already in the index, no action is
+	 *               performed.
+	 */
+	public void remove(E object) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Handle<E> handle = leafMap.get(object);
+
+		if (handle != null) {
+			remove(handle);
+		}
+	}
+
+	/**
+	 * Removes the object referenced by a handle from the index. The handle is no longer valid after
+	 * this call.
+	 *
+	 * @param handle The handle returned when the object was inserted. If the object was already
+	 *               removed from the index, no action is performed.
+	 *
+	 * @throws IllegalArgumentException If the handle was issued by another index.
+	 */
+	public void remove(Handle<E> handle) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (getLeaf(handle) == null) {
+			return;
+		}
+
+		if (leafMap.get(handle.object) == handle) {
+			leafMap.remove(handle.object);
+		}
+
+		if (batch != null) {
+			batch.remove(handle);
+		}
+
+		if (lazyDeletion) {
+			Node node = writable(handle.leaf);
+
+			handle.dead = true;
+			node.dead[handle.slot] = true;
+			node.deadCount++;
+			tombstones.add(handle);
+		} else {
+			delete(handle);
+		}
+	}
+
+	/**
+	 * Removes all dead entries from the tree, condensing it as necessary. If lazy deletion is
+	 * disabled, no action is performed.
+	 */
+	public void compact() {
+		compact(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Removes dead entries from the tree, in order of removal, until all dead entries are removed
+	 * or the time budget is exhausted. At least one dead entry is removed if any remain. If lazy
+	 * deletion is disabled, no action is performed.
+	 *
+	 * @param nanos The time budget, in nanoseconds.
+	 *
+	 * @return <tt>true</tt> if no dead entries remain, <tt>false</tt> otherwise.
+	 */
+	public boolean compact(long nanos) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		long start = System.nanoTime();
+
+		while (!tombstones.isEmpty()) {
+			Handle<E> handle = tombstones.remove();
+
+			if (handle.leaf != null) {
+				delete(handle);
+			}
+
+			if (System.nanoTime() - start >= nanos) {
+				break;
+			}
+		}
+
+		return tombstones.isEmpty();
+	}
+
+	/**
+	 * Returns the number of dead entries awaiting compaction.
+	 *
+	 * @return The number of dead entries.
+	 */
+	public int getTombstoneCount() {
+		return tombstones.size();
+	}
+
+	/**
+	 * Applies new bounds to an object if it can remain in its leaf without restructuring the tree.
+	 *
+	 * @return <tt>null</tt> if the object was updated in place, or the bounds with which the object
+	 *         must be inserted again.
+	 */
+	private float[] moveInPlace(Handle<E> handle, float[] bounds, float[] displacement) {
+		Node node = handle.leaf;
+
+		if (margin != 0 && node.contains(handle.slot, bounds)) {
+			handle.exact = bounds;
+			writable(node).setExactBounds(handle.slot, bounds);
+			return null;
+		}
+
+		bounds = fatten(handle, bounds, displacement);
+
+		if (node == root || node.parent.contains(node.index, bounds)) {
+			node = writable(node);
+			node.setBounds(handle.slot, bounds, 0);
+			node.setExactBounds(handle.slot, handle.exact);
+			return null;
+		}
+
+		return bounds;
+	}
+
+	private void markDirty(List<Set<Node>> dirty, int level, Node node) {
+		if (dirty.size() == level) {
+			dirty.add(new LinkedHashSet<Node>());
+		}
+
+		dirty.get(level).add(node);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void refit(Node node, float[] bounds) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				Handle<E> handle = node.handles[i];
+				AABB volume = handle.volume;
+
+				if (volume.getDimensions() != dimensions) {
+					throw new IllegalArgumentException();
+				}
+
+				for (int j = 0; j < dimensions; j++) {
+					bounds[2 * j + 0] = volume.getMinimum(j);
+					bounds[2 * j + 1] = volume.getMaximum(j);
+				}
+
+				if (margin != 0) {
+					System.arraycopy(bounds, 0, handle.exact, 0, bounds.length);
+					node.setExactBounds(i, bounds);
+
+					if (!node.contains(i, bounds)) {
+						node.setBounds(i, fatten(handle, handle.exact, null), 0);
+					}
+				} else {
+					node.setBounds(i, bounds, 0);
+				}
+			} else {
+				refit(writable((Node) node.entries[i]), bounds);
+				node.fit(i, (Node) node.entries[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of objects beneath a node.
+	 */
+	@SuppressWarnings("unchecked")
+	private int count(Node node) {
+		if (node.isLeaf) {
+			return node.numEntries;
+		}
+
+		int count = 0;
+		for (int i = 0; i < node.numEntries; i++) {
+			count += count((Node) node.entries[i]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Accumulates the pairwise overlap and total volume of the children of every internal node
+	 * beneath (and including) a node.
+	 */
+	@SuppressWarnings("unchecked")
+	private void measure(Node node, float[] volumes, float[] totals) {
+		if (node.isLeaf) {
+			return;
+		}
+
+		int size = 2 * dimensions;
+
+		for (int i = 0; i < node.numEntries; i++) {
+			node.getBounds(i, volumes, i * size);
+		}
+
+		for (int i = 0; i < node.numEntries; i++) {
+			totals[1] += Bounds.area(volumes, i * size, dimensions);
+
+			for (int j = i + 1; j < node.numEntries; j++) {
+				totals[0] += Bounds.overlap(volumes, i * size, volumes, j * size, dimensions);
+			}
+		}
+
+		for (int i = 0; i < node.numEntries; i++) {
+			measure((Node) node.entries[i], volumes, totals);
+		}
+	}
+
+	/**
+	 * Collects the handles and bounds of every object beneath a detached node.
+	 */
+	@SuppressWarnings("unchecked")
+	private void detach(Node node, List<Handle<E>> handles, List<float[]> volumes) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				float[] bounds = new float[2 * dimensions];
+				node.getBounds(i, bounds, 0);
+
+				handles.add(node.handles[i]);
+				volumes.add(bounds);
+			} else {
+				detach((Node) node.entries[i], handles, volumes);
+			}
+		}
+	}
+
+	private Node getLeaf(Handle<E> handle) {
+		if (handle.leaf != null && handle.leaf.getIndex() != this) {
+			throw new IllegalArgumentException("Handle belongs to another index.");
+		}
+
+		return handle.dead ? null : handle.leaf;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void insert(Object entry, float[] bounds, int level, boolean[] reinserted) {
+		Node node1 = writable(root);
+		Node node2;
+
+		for (int i = height; i > level; i--) {
+			int index = chooseChildIndex(node1, bounds);
+
+			node1.expand(index, bounds);
+			node1 = writable((Node) node1.entries[index]);
+		}
+
+		node2 = add(node1, bounds, entry, level, reinserted);
+
+		while (node1 != root && node2 != null) {
+			Node parent = node1.parent;
+
+			parent.fit(node1.index, node1);
+
+			node2 = add(parent, node2.getBounds(), node2, ++level, reinserted);
+			node1 = parent;
+		}
+
+		if (node2 != null) {
+			root = new Node(false);
+			root.add(node1.getBounds(), 0, node1);
+			root.add(node2.getBounds(), 0, node2);
+			height++;
+		}
+	}
+
+	/**
+	 * Adds an entry to a node at the given level. If the node overflows, either a portion of its
+	 * entries are reinserted (at most once per level and insertion), or the node is split.
+	 *
+	 * @return The node created by a split, or <tt>null</tt> if the node was not split.
+	 */
+	private Node add(Node node, float[] bounds, Object entry, int level, boolean[] reinserted) {
+		if (node.numEntries + 1 <= maxEntries) {
+			node.add(bounds, 0, entry);
+			return null;
+		}
+
+		if (reinserted != null && node != root && level < reinserted.length && !reinserted[level]) {
+			reinserted[level] = true;
+			reinsertEntries(node, bounds, entry, level, reinserted);
+			return null;
+		}
+
+		return splitNode(node, bounds, entry);
+	}
+
+	/**
+	 * Removes the entries of an overflowing node whose centers are farthest from the center of the
+	 * node, and inserts them again starting from the closest.
+	 */
+	private void reinsertEntries(Node node, float[] volume, Object object, int level, boolean[] reinserted) {
+		int size = 2 * dimensions;
+		int count = node.numEntries + 1;
+
+		float[] volumes = new float[count * size];
+		Object[] entries = new Object[count];
+
+		gather(node, volume, object, volumes, entries);
+
+		float[] center = new float[size];
+		Bounds.empty(center, 0, dimensions);
+
+		for (int i = 0; i < count; i++) {
+			Bounds.include(center, 0, volumes, i * size, dimensions);
+		}
+
+		float[] distances = new float[count];
+		int[] order = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < dimensions; j++) {
+				float d = (volumes[i * size + 2 * j] + volumes[i * size + 2 * j + 1]) - (center[2 * j] + center[2 * j + 1]);
+				distances[i] += d * d;
+			}
+
+			int k = i;
+			while (k > 0 && distances[order[k - 1]] < distances[i]) {
+				order[k] = order[k - 1];
+				k--;
+			}
+
+			order[k] = i;
+		}
+
+		int p = Math.max(1, Math.min(Math.round(REINSERT_FRACTION * maxEntries), count - minEntries));
+
+		node.clear();
+
+		for (int i = p; i < count; i++) {
+			node.add(volumes, order[i] * size, entries[order[i]]);
+		}
+
+		for (Node n = node; n != root; n = n.parent) {
+			n.parent.fit(n.index, n);
+		}
+
+		float[] bounds = new float[size];
+
+		for (int i = p - 1; i >= 0; i--) {
+			System.arraycopy(volumes, order[i] * size, bounds, 0, size);
+			insert(entries[order[i]], bounds, level, reinserted);
+		}
+	}
+
+	/**
+	 * Returns a fresh record of the levels at which forced reinsertion has occurred during a single
+	 * insertion, or <tt>null</tt> if forced reinsertion is disabled.
+	 */
+	private boolean[] reinsertionLevels() {
+		return forcedReinsertion ? new boolean[height + 1] : null;
+	}
+
+	/**
+	 * Removes an entry from its leaf and condenses the tree. Underfull nodes on the path to the
+	 * root are either merged with a sibling or detached; the entries of a detached node are then
+	 * inserted again at the node's level, so that its subtrees are kept intact.
+	 */
+	@SuppressWarnings("unchecked")
+	private void delete(Handle<E> handle) {
+		Node node = writable(handle.leaf);
+		node.remove(handle.slot);
+
+		List<Node> orphans = new ArrayList<>();
+		List<Integer> levels = new ArrayList<>();
+
+		for (int level = 0; node != root; level++) {
+			Node parent = node.parent;
+
+			if (node.numEntries >= minEntries) {
+				parent.fit(node.index, node);
+			} else if (siblingMerging) {
+				rebalance(node);
+			} else {
+				parent.remove(node.index);
+				orphans.add(node);
+				levels.add(level);
+			}
+
+			node = parent;
+		}
+
+		while (!root.isLeaf && root.numEntries == 0) {
+			if (orphans.isEmpty()) {
+				root = new Node(true);
+				height = 0;
+			} else {
+				root = orphans.remove(orphans.size() - 1);
+				root.parent = null;
+				height = levels.remove(levels.size() - 1);
+			}
+		}
+
+		float[] bounds = new float[2 * dimensions];
+
+		for (int i = orphans.size() - 1; i >= 0; i--) {
+			Node orphan = orphans.get(i);
+
+			for (int j = 0; j < orphan.numEntries; j++) {
+				orphan.getBounds(j, bounds, 0);
+				insert(orphan.isLeaf ? orphan.handles[j] : orphan.entries[j], bounds, levels.get(i), reinsertionLevels());
+			}
+		}
+
+		while (!root.isLeaf && root.numEntries == 1) {
+			root = (Node) root.entries[0];
+			root.parent = null;
+			height--;
+		}
+	}
+
+	/**
+	 * Repairs an underfull node by merging it into the sibling whose bounds it enlarges least or,
+	 * if the two would not fit in a single node, by moving the entries of that sibling which
+	 * enlarge the node least into it. A node without siblings is left as is.
+	 */
+	@SuppressWarnings("unchecked")
+	private void rebalance(Node node) {
+		Node parent = node.parent;
+
+		int size = 2 * dimensions;
+		float[] volume = node.getBounds();
+		float[] bounds = new float[size];
+
+		Node sibling = null;
+		float best = Float.POSITIVE_INFINITY;
+
+		for (int i = 0; i < parent.numEntries; i++) {
+			if (i != node.index) {
+				parent.getBounds(i, bounds, 0);
+
+				float cost = Bounds.unionArea(volume, 0, bounds, 0, dimensions) - Bounds.area(bounds, 0, dimensions);
+
+				if (cost < best) {
+					best = cost;
+					sibling = (Node) parent.entries[i];
+				}
+			}
+		}
+
+		if (sibling == null) {
+			if (node.numEntries == 0) {
+				parent.remove(node.index);
+			} else {
+				parent.fit(node.index, node);
+			}
+
+			return;
+		}
+
+		sibling = writable(sibling);
+
+		if (node.numEntries + sibling.numEntries <= maxEntries) {
+			parent.remove(node.index);
+
+			while (node.numEntries > 0) {
+				transfer(node, node.numEntries - 1, sibling, bounds);
+			}
+		} else {
+			while (node.numEntries < minEntries) {
+				int slot = -1;
+				best = Float.POSITIVE_INFINITY;
+
+				for (int i = 0; i < sibling.numEntries; i++) {
+					sibling.getBounds(i, bounds, 0);
+
+					float cost = Bounds.unionArea(volume, 0, bounds, 0, dimensions);
+
+					if (cost < best) {
+						best = cost;
+						slot = i;
+					}
+				}
+
+				sibling.getBounds(slot, bounds, 0);
+				Bounds.include(volume, 0, bounds, 0, dimensions);
+
+				transfer(sibling, slot, node, bounds);
+			}
+
+			parent.fit(node.index, node);
+		}
+
+		parent.fit(sibling.index, sibling);
+	}
+
+	/**
+	 * Moves an entry from one node to another node at the same level.
+	 */
+	private void transfer(Node from, int slot, Node to, float[] bounds) {
+		Object entry = from.isLeaf ? from.handles[slot] : from.entries[slot];
+
+		from.getBounds(slot, bounds, 0);
+		from.remove(slot);
+		to.add(bounds, 0, entry);
+	}
+
 	@SuppressWarnings("unchecked")
-	private boolean query(Query query, QueryResultHandler<E> handler, Node node) {
-		for (int i = 0; i < node.numEntries; i++) {
-			if (node.isLeaf) {
-				if (query.query(node.volumes[i], false) == QueryResult.PASS) {
+	private boolean query(Query query, QueryResultHandler<E> handler, Node node, AABBView view) {
+		float[] bounds = node.isLeaf ? node.getExactBounds() : node.bounds;
+		int stride = node.entries.length;
+
+		if (node.isLeaf) {
+			for (int i = 0; i < node.numEntries; i++) {
+				if (query.query(view.wrap(bounds, i, stride), false) == QueryResult.PASS && !node.isDead(i)) {
 					if (!handler.handle((E) node.entries[i])) {
 						return false;
 					}
 				}
-			} else {
-				QueryResult result = query.query(node.volumes[i], true);
+			}
+		} else {
+			for (int i = 0; i < node.numEntries; i++) {
+				QueryResult result = query.query(view.wrap(bounds, i, stride), true);
 
 				if (result != QueryResult.FAIL) {
 					if (result == QueryResult.PASS) {
@@ -285,7 +1309,7 @@ public class SpatialIndex<E>
 							return false;
 						}
 					} else {
-						if (!query(query, handler, (Node) node.entries[i])) {
+						if (!query(query, handler, (Node) node.entries[i], view)) {
 							return false;
 						}
 					}
@@ -300,7 +1324,7 @@ public class SpatialIndex<E>
 	private boolean visitAll(QueryResultHandler<E> handler, Node node) {
 		for (int i = 0; i < node.numEntries; i++) {
 			if (node.isLeaf) {
-				if (!handler.handle((E) node.entries[i])) {
+				if (!node.isDead(i) && !handler.handle((E) node.entries[i])) {
 					return false;
 				}
 			} else {
@@ -314,10 +1338,10 @@ public class SpatialIndex<E>
 	}
 
 	@SuppressWarnings("unchecked")
-	private <F> boolean query(JoinQuery query, JoinQueryResultHandler<E, F> handler, SpatialIndex<E>.Node node1, SpatialIndex<F>.Node node2) {
+	private <F> boolean query(JoinQuery query, JoinQueryResultHandler<E, F> handler, SpatialIndex<E>.Node node1, SpatialIndex<F>.Node node2, AABBView view1, AABBView view2) {
 		if (node1.isLeaf && !node2.isLeaf) {
 			for (int i = 0; i < node2.numEntries; i++) {
-				if (!query(query, handler, node1, (SpatialIndex<F>.Node) node2.entries[i])) {
+				if (!query(query, handler, node1, (SpatialIndex<F>.Node) node2.entries[i], view1, view2)) {
 					return false;
 				}
 			}
@@ -327,7 +1351,7 @@ public class SpatialIndex<E>
 
 		if (node2.isLeaf && !node1.isLeaf) {
 			for (int i = 0; i < node1.numEntries; i++) {
-				if (!query(query, handler, (SpatialIndex<E>.Node) node1.entries[i], node2)) {
+				if (!query(query, handler, (SpatialIndex<E>.Node) node1.entries[i], node2, view1, view2)) {
 					return false;
 				}
 			}
@@ -336,20 +1360,27 @@ public class SpatialIndex<E>
 		}
 
 		if (!node1.isLeaf && !node2.isLeaf) {
-			return this.<F>queryInternal(query, handler, node1, node2);
+			return this.<F>queryInternal(query, handler, node1, node2, view1, view2);
 		} else {
-			return this.<F>queryExternal(query, handler, node1, node2);
+			return this.<F>queryExternal(query, handler, node1, node2, view1, view2);
 		}
 	}
 
 	@SuppressWarnings("unchecked")
-	private <F> boolean queryInternal(JoinQuery query, JoinQueryResultHandler<E, F> handler, SpatialIndex<E>.Node node1, SpatialIndex<F>.Node node2) {
+	private <F> boolean queryInternal(JoinQuery query, JoinQueryResultHandler<E, F> handler, SpatialIndex<E>.Node node1, SpatialIndex<F>.Node node2, AABBView view1, AABBView view2) {
+		int stride1 = node1.entries.length;
+		int stride2 = node2.entries.length;
+		boolean reverse = node1.getIndex() == node2.getIndex() && !query.isSymmetric();
+
 		for (int i = 0; i < node1.numEntries; i++) {
 			int k = node1 == node2 ? i : 0;
 
 			for (int j = k; j < node2.numEntries; j++) {
-				if (query.query(node1.volumes[i], node2.volumes[j], true)) {
-					if (!this.<F>query(query, handler, (SpatialIndex<E>.Node) node1.entries[i], (SpatialIndex<F>.Node) node2.entries[j])) {
+				view1.wrap(node1.bounds, i, stride1);
+				view2.wrap(node2.bounds, j, stride2);
+
+				if (query.query(view1, view2, true) || (reverse && query.query(view2, view1, true))) {
+					if (!this.<F>query(query, handler, (SpatialIndex<E>.Node) node1.entries[i], (SpatialIndex<F>.Node) node2.entries[j], view1, view2)) {
 						return false;
 					}
 				}
@@ -360,18 +1391,34 @@ public class SpatialIndex<E>
 	}
 
 	@SuppressWarnings("unchecked")
-	private <F> boolean queryExternal(JoinQuery query, JoinQueryResultHandler<E, F> handler, SpatialIndex<E>.Node node1, SpatialIndex<F>.Node node2) {
+	private <F> boolean queryExternal(JoinQuery query, JoinQueryResultHandler<E, F> handler, SpatialIndex<E>.Node node1, SpatialIndex<F>.Node node2, AABBView view1, AABBView view2) {
+		int stride1 = node1.entries.length;
+		int stride2 = node2.entries.length;
+		boolean reverse = node1.getIndex() == node2.getIndex() && !query.isSymmetric();
+
 		for (int i = 0; i < node1.numEntries; i++) {
 			int k = node1 == node2 ? i + 1 : 0;
 
+			if (node1.isDead(i)) {
+				continue;
+			}
+
+			view1.wrap(node1.getExactBounds(), i, stride1);
+
 			for (int j = k; j < node2.numEntries; j++) {
-				if (query.query(node1.volumes[i], node2.volumes[j], false)) {
+				if (node2.isDead(j)) {
+					continue;
+				}
+
+				view2.wrap(node2.getExactBounds(), j, stride2);
+
+				if (query.query(view1, view2, false)) {
 					if (!handler.handle((E) node1.entries[i], (F) node2.entries[j])) {
 						return false;
 					}
 				} else {
-					if (node1 == node2 && !query.isSymmetric()) {
-						if (query.query(node2.volumes[j], node1.volumes[i], false)) {
+					if (reverse) {
+						if (query.query(view2, view1, false)) {
 							if (!handler.handle((E) node2.entries[j], (F) node1.entries[i])) {
 								return false;
 							}
@@ -384,263 +1431,751 @@ public class SpatialIndex<E>
 		return true;
 	}
 
-	private int chooseChildIndex(Node node, AABB volume) {
-		int index = 0;
-		float bestArea = Float.POSITIVE_INFINITY;
-		float bestDiff = Float.POSITIVE_INFINITY;
+	/**
+	 * Returns a version of a node which may be modified. If the node may be shared with a
+	 * snapshot, it is replaced in the tree by a copy, after the same is done for its parent, and
+	 * the copy is returned. The children (or the handles) of the copy are pointed at it.
+	 */
+	@SuppressWarnings("unchecked")
+	private Node writable(Node node) {
+		if (node.version >= sealed) {
+			return node;
+		}
+
+		if (snapshots.get() == 0) {
+			sealed = 0;
+			return node;
+		}
 
-		for (int i = 0; i < node.numEntries; i++) {
-			float area = 1;
+		Node copy = new Node(node);
 
-			for (int j = 0; j < volume.getDimensions(); j++) {
-				float min = Math.min(node.volumes[i].getMinimum(j), volume.getMinimum(j));
-				float max = Math.max(node.volumes[i].getMaximum(j), volume.getMaximum(j));
+		if (node == root) {
+			root = copy;
+		} else {
+			copy.parent = writable(node.parent);
+			copy.parent.entries[node.index] = copy;
+		}
 
-				area *= max - min;
+		for (int i = 0; i < copy.numEntries; i++) {
+			if (copy.isLeaf) {
+				copy.handles[i].leaf = copy;
+			} else {
+				((Node) copy.entries[i]).parent = copy;
 			}
+		}
 
-			float diff = area - node.volumes[i].getVolume();
+		return copy;
+	}
 
-			if (diff < bestDiff || (diff == bestDiff && area < bestArea)) {
-				index = i;
-				bestArea = area;
-				bestDiff = diff;
-			}
+	/**
+	 * Returns an upper bound on the number of entries of a subtree of the given height, capped at
+	 * {@link #PARALLEL_THRESHOLD}.
+	 */
+	private static int estimateSize(int level, int maxEntries) {
+		int size = maxEntries;
+
+		for (int i = 0; i < level && size < PARALLEL_THRESHOLD; i++) {
+			size *= maxEntries;
 		}
 
-		return index;
+		return size;
 	}
 
-	private Node splitNode(Node oldNode, AABB volume, Object object) {
-		AABB[] volumes1 = new AABB[MAX_OBJECTS_PER_NODE];
-		AABB[] volumes2 = new AABB[MAX_OBJECTS_PER_NODE];
+	private int chooseChildIndex(Node node, float[] volume) {
+		return Bounds.chooseSlot(node.bounds, node.entries.length, node.numEntries, volume, dimensions);
+	}
 
-		Object[] entries1 = new Object[MAX_OBJECTS_PER_NODE];
-		Object[] entries2 = new Object[MAX_OBJECTS_PER_NODE];
+	private Node splitNode(Node oldNode, float[] volume, Object object) {
+		int size = 2 * dimensions;
+		int count = oldNode.numEntries + 1;
 
-		int seed1 = (int) (Math.random() * MAX_OBJECTS_PER_NODE);
-		int seed2;
+		float[] volumes = new float[count * size];
+		Object[] entries = new Object[count];
+		boolean[] assignment = new boolean[count];
 
-		do {
-			seed2 = (int) (Math.random() * MAX_OBJECTS_PER_NODE);
-		} while (seed1 == seed2);
+		gather(oldNode, volume, object, volumes, entries);
 
-		volumes1[0] = oldNode.volumes[seed1];
-		entries1[0] = oldNode.entries[seed1];
-		volumes2[0] = oldNode.volumes[seed2];
-		entries2[0] = oldNode.entries[seed2];
+		split(volumes, count, assignment);
 
-		int size1 = 1;
-		int size2 = 1;
+		oldNode.clear();
 
-		{
-			double dist1 = AABBUtil.distanceSquared(volume, volumes1[0]);
-			double dist2 = AABBUtil.distanceSquared(volume, volumes2[0]);
+		Node newNode = new Node(oldNode.isLeaf);
 
-			if (dist1 < dist2) {
-				volumes1[size1] = volume;
-				entries1[size1] = object;
-				size1++;
+		for (int i = 0; i < count; i++) {
+			if (assignment[i]) {
+				newNode.add(volumes, i * size, entries[i]);
 			} else {
-				volumes2[size2] = volume;
-				entries2[size2] = object;
-				size2++;
+				oldNode.add(volumes, i * size, entries[i]);
 			}
 		}
 
-		for (int i = 0; i < oldNode.numEntries; i++) {
-			if (i == seed1 || i == seed2) {
-				continue;
+		return newNode;
+	}
+
+	/**
+	 * Copies the packed volumes and entries of a node, followed by an additional entry, into the
+	 * given arrays. The entries of a leaf node are copied as handles.
+	 */
+	private void gather(Node node, float[] volume, Object object, float[] volumes, Object[] entries) {
+		int size = 2 * dimensions;
+
+		for (int i = 0; i < node.numEntries; i++) {
+			node.getBounds(i, volumes, i * size);
+			entries[i] = node.isLeaf ? node.handles[i] : node.entries[i];
+		}
+
+		System.arraycopy(volume, 0, volumes, node.numEntries * size, size);
+		entries[node.numEntries] = object;
+	}
+
+	private void split(float[] volumes, int count, boolean[] assignment) {
+		splitStrategy.split(volumes, count, dimensions, minEntries, assignment);
+
+		int moved = 0;
+		for (int i = 0; i < count; i++) {
+			if (assignment[i]) {
+				moved++;
 			}
+		}
+
+		if (moved == 0 || moved == count) {
+			throw new IllegalStateException("Split strategy produced an empty node.");
+		}
+	}
 
-			double dist1 = AABBUtil.distanceSquared(oldNode.volumes[i], volumes1[0]);
-			double dist2 = AABBUtil.distanceSquared(oldNode.volumes[i], volumes2[0]);
+	/**
+	 * Copies the handles and packed volumes of every object beneath a node into the given arrays,
+	 * starting at the given index.
+	 *
+	 * @return The index following the last copied object.
+	 */
+	@SuppressWarnings("unchecked")
+	private int collect(Node node, Object[] entries, float[] volumes, int count) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				if (node.isDead(i)) {
+					node.handles[i].leaf = null;
+					continue;
+				}
 
-			if (dist1 < dist2) {
-				volumes1[size1] = oldNode.volumes[i];
-				entries1[size1] = oldNode.entries[i];
-				size1++;
+				node.getBounds(i, volumes, count * 2 * dimensions);
+				entries[count++] = node.handles[i];
 			} else {
-				volumes2[size2] = oldNode.volumes[i];
-				entries2[size2] = oldNode.entries[i];
-				size2++;
+				count = collect((Node) node.entries[i], entries, volumes, count);
 			}
 		}
 
-		oldNode.clear();
+		return count;
+	}
 
-		Node newNode = new Node(oldNode.isLeaf);
+	/**
+	 * Detaches the handles of every object beneath a node.
+	 */
+	@SuppressWarnings("unchecked")
+	private void invalidate(Node node) {
+		for (int i = 0; i < node.numEntries; i++) {
+			if (node.isLeaf) {
+				node.handles[i].leaf = null;
+			} else {
+				invalidate((Node) node.entries[i]);
+			}
+		}
+	}
 
-		partitionEntries(oldNode, newNode, volumes1, volumes2, entries1, entries2, size1, size2);
+	/**
+	 * Replaces the tree with one packed bottom-up from the given handles and volumes. Each level is
+	 * tiled into nodes with Sort-Tile-Recursive packing until a single root remains.
+	 */
+	@SuppressWarnings("unchecked")
+	private void build(Object[] entries, float[] volumes, int count) {
+		int size = 2 * dimensions;
 
-		return newNode;
-	}
+		tombstones.clear();
+		int[] order = new int[count];
+		int[] ends = new int[count];
+
+		root = new Node(true);
+		height = 0;
 
-	private void partitionEntries(Node oldNode, Node newNode, AABB[] volumes1, AABB[] volumes2, Object[] entries1, Object[] entries2, int size1, int size2) {
-		AABB median1 = volumes1[0].copy();
-		AABB median2 = volumes2[0].copy();
+		if (count <= maxEntries) {
+			for (int i = 0; i < count; i++) {
+				root.add(volumes, i * size, entries[i]);
+			}
 
-		int iterations = 0;
-		while (iterations < MAX_SPLIT_ITERATIONS) {
-			adjustMedian(median1, volumes1, size1);
-			adjustMedian(median2, volumes2, size2);
+			return;
+		}
 
-			int n = moveToGroup(volumes1, entries1, size1, volumes2, entries2, size2, median1, median2);
+		while (count > 1) {
+			int groups = SortTileRecursive.tile(volumes, count, dimensions, minEntries, maxEntries, order, ends);
 
-			size1 -= n;
-			size2 += n;
+			Object[] nodes = new Object[groups];
+			float[] bounds = new float[groups * size];
 
-			int m = moveToGroup(volumes2, entries2, size2, volumes1, entries1, size1, median2, median1);
+			for (int i = 0, j = 0; i < groups; i++) {
+				Node node = new Node(height == 0);
 
-			size1 += m;
-			size2 -= m;
+				for (; j < ends[i]; j++) {
+					node.add(volumes, order[j] * size, entries[order[j]]);
+				}
 
-			if (n == 0 && m == 0) {
-				break;
+				Bounds.union(node.bounds, maxEntries, node.numEntries, bounds, i * size, dimensions);
+				nodes[i] = node;
 			}
 
-			iterations++;
+			entries = nodes;
+			volumes = bounds;
+			count = groups;
+			height++;
+		}
+
+		root = (Node) entries[0];
+		root.parent = null;
+		height--;
+	}
+
+	/**
+	 * Records the exact bounds of an object in its handle and returns the bounds to store in the
+	 * tree. If the index has no margin, these are the exact bounds themselves.
+	 */
+	private float[] fatten(Handle<E> handle, float[] bounds, float[] displacement) {
+		if (margin == 0) {
+			return bounds;
+		}
+
+		float[] fat = new float[bounds.length];
+
+		for (int i = 0; i < dimensions; i++) {
+			float extension = displacement == null ? 0 : displacement[i] * displacementFactor;
+
+			fat[2 * i + 0] = bounds[2 * i + 0] - margin + Math.min(extension, 0);
+			fat[2 * i + 1] = bounds[2 * i + 1] + margin + Math.max(extension, 0);
+		}
+
+		handle.exact = bounds;
+		return fat;
+	}
+
+	private float[] toBounds(AABB volume) {
+		if (dimensions == 0) {
+			dimensions = volume.getDimensions();
+			root = new Node(true);
+		}
+
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
 		}
 
-		for (int i = 0; i < size1; i++) {
-			oldNode.add(volumes1[i], entries1[i]);
+		return Bounds.pack(volume);
+	}
+
+	/**
+	 * A reference to an object stored in a {@link SpatialIndex}.
+	 * <p>
+	 * A handle records the leaf node and slot where its object is stored, and is kept up to date as
+	 * the index is restructured. A handle is only valid for the index which issued it, and becomes
+	 * invalid once its object is removed.
+	 */
+	public static final class Handle<E>
+	{
+		private final E object;
+		private SpatialIndex<E>.Node leaf;
+		private int slot;
+		private float[] exact;
+		private AABB volume;
+		private boolean dead;
+
+		private Handle(E object, AABB volume) {
+			this.object = object;
+			this.volume = volume;
 		}
 
-		for (int i = 0; i < size2; i++) {
-			newNode.add(volumes2[i], entries2[i]);
+		/**
+		 * Returns the object referenced by this handle.
+		 *
+		 * @return The object referenced by this handle.
+		 */
+		public E getObject() {
+			return object;
 		}
 	}
 
-	private void adjustMedian(AABB median, AABB[] volumes, int size) {
-		float totalmass = 0;
-		float[] centers = new float[median.getDimensions()];
+	/**
+	 * An immutable view of the contents of a {@link SpatialIndex} at the time the snapshot was
+	 * taken.
+	 * <p>
+	 * A snapshot may be queried by any number of threads at once, without locking, while the
+	 * index is modified. A handler may modify the index, which does not affect the snapshot. A
+	 * snapshot should be released once it is no longer needed, so that the index can stop copying
+	 * the nodes it shares with the snapshot, and must not be queried after it is released.
+	 */
+	public static final class Snapshot<E>
+	{
+		private final SpatialIndex<E> index;
+		private final SpatialIndex<E>.Node root;
+		private final int dimensions;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Snapshot(SpatialIndex<E> index, SpatialIndex<E>.Node root, int dimensions) {
+			this.index = index;
+			this.root = root;
+			this.dimensions = dimensions;
+		}
+
+		/**
+		 * Performs a spatial query on the snapshot, visiting all of the matching elements that
+		 * satisfy the query criteria.
+		 *
+		 * @param query   The spatial query.
+		 * @param handler The handler to call for each matching element.
+		 *
+		 * @throws IllegalStateException If the snapshot has been released.
+		 */
+		public void query(Query query, QueryResultHandler<E> handler) {
+			checkReleased();
+			index.query(query, handler, root, new AABBView(dimensions));
+		}
 
-		for (int i = 0; i < size; i++) {
-			float mass = volumes[i].getVolume();
+		/**
+		 * Performs a spatial join on the snapshot with itself, visiting all of the matching element
+		 * pairs that satisfy the query criteria.
+		 *
+		 * @param query   The spatial query.
+		 * @param handler The handler to call for each matching element.
+		 *
+		 * @throws IllegalStateException If the snapshot has been released.
+		 */
+		public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+			query(this, query, handler);
+		}
 
-			for (int j = 0; j < median.getDimensions(); j++) {
-				centers[j] += AABBUtil.getCenter(volumes[i], j) * mass;
+		/**
+		 * Performs a spatial join on this snapshot and a snapshot of another spatial index,
+		 * visiting all of the matching element pairs that satisfy the query criteria.
+		 *
+		 * @param other   The other snapshot.
+		 * @param query   The spatial query.
+		 * @param handler The handler to call for each matching element.
+		 *
+		 * @throws IllegalArgumentException If the other snapshot is a different snapshot of the same
+		 *                                  index, whose nodes may be shared with this snapshot.
+		 * @throws IllegalStateException    If either snapshot has been released.
+		 */
+		public <F> void query(Snapshot<F> other, JoinQuery query, JoinQueryResultHandler<E, F> handler) {
+			if (other != this && other.index == (Object) index) {
+				throw new IllegalArgumentException("Snapshots of the same index cannot be joined.");
 			}
 
-			totalmass += mass;
+			checkReleased();
+			other.checkReleased();
+			index.<F>query(query, handler, root, other.root, new AABBView(dimensions), new AABBView(other.dimensions));
+		}
+
+		/**
+		 * Releases the snapshot. Releasing a snapshot more than once has no effect.
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				index.snapshots.decrementAndGet();
+			}
 		}
 
-		for (int j = 0; j < median.getDimensions(); j++) {
-			median.setBounds(j, centers[j] / totalmass, centers[j] / totalmass);
+		private void checkReleased() {
+			if (released.get()) {
+				throw new IllegalStateException("Snapshot has been released.");
+			}
 		}
 	}
 
-	private int moveToGroup(AABB[] volumes1, Object[] entries1, int size1, AABB[] volumes2, Object[] entries2, int size2, AABB median1, AABB median2) {
-		int i = 0;
-		int transfers = 0;
+	/**
+	 * A task which searches a subtree for a parallel query. The children of a large subtree are
+	 * searched by subtasks; a small subtree is searched sequentially.
+	 */
+	private final class QueryTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Query query;
+		private final ParallelHandler<E> handler;
+		private final Node node;
+		private final int level;
+		private final boolean all;
+
+		private QueryTask(Query query, ParallelHandler<E> handler, Node node, int level, boolean all) {
+			this.query = query;
+			this.handler = handler;
+			this.node = node;
+			this.level = level;
+			this.all = all;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void compute() {
+			if (handler.stopped) {
+				return;
+			}
+
+			if (node.isLeaf || isSmall()) {
+				if (all) {
+					visitAll(handler, node);
+				} else {
+					query(query, handler, node, new AABBView(dimensions));
+				}
 
-		while (i < size1 - transfers && size1 - transfers > 1) {
-			float dist1 = AABBUtil.distanceSquared(volumes1[i], median1);
-			float dist2 = AABBUtil.distanceSquared(volumes1[i], median2);
+				return;
+			}
 
-			if (dist2 < dist1) {
-				volumes2[size2 + transfers] = volumes1[i];
-				entries2[size2 + transfers] = entries1[i];
+			AABBView view = new AABBView(dimensions);
+			List<QueryTask> tasks = new ArrayList<>();
 
-				transfers++;
+			for (int i = 0; i < node.numEntries; i++) {
+				QueryResult result = all ? QueryResult.PASS : query.query(view.wrap(node.bounds, i, node.entries.length), true);
 
-				volumes1[i] = volumes1[size1 - transfers];
-				entries1[i] = entries1[size1 - transfers];
-			} else {
-				i++;
+				if (result != QueryResult.FAIL) {
+					tasks.add(new QueryTask(query, handler, (Node) node.entries[i], level - 1, result == QueryResult.PASS));
+				}
 			}
+
+			invokeAll(tasks);
 		}
 
-		return transfers;
+		private boolean isSmall() {
+			return estimateSize(level, maxEntries) < PARALLEL_THRESHOLD;
+		}
 	}
 
-	private boolean updateVolumes(Node parent, Node node) {
-		for (int i = 0; i < parent.numEntries; i++) {
-			if (parent.entries[i] == node) {
-				parent.volumes[i] = getVolumeForNode(node);
-				return true;
+	/**
+	 * A task which joins a pair of subtrees for a parallel join. The matching pairs of children of
+	 * large subtrees are joined by subtasks, following the same descent as the sequential join; a
+	 * pair of small subtrees is joined sequentially.
+	 */
+	private final class JoinTask<F> extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final JoinQuery query;
+		private final ParallelJoinHandler<E, F> handler;
+		private final Node node1;
+		private final SpatialIndex<F>.Node node2;
+		private final int level1;
+		private final int level2;
+
+		private JoinTask(JoinQuery query, ParallelJoinHandler<E, F> handler, Node node1, SpatialIndex<F>.Node node2, int level1, int level2) {
+			this.query = query;
+			this.handler = handler;
+			this.node1 = node1;
+			this.node2 = node2;
+			this.level1 = level1;
+			this.level2 = level2;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void compute() {
+			if (handler.stopped) {
+				return;
+			}
+
+			if (isSmall() || (node1.isLeaf && node2.isLeaf)) {
+				SpatialIndex.this.<F>query(query, handler, node1, node2, new AABBView(dimensions), new AABBView(node2.getIndex().dimensions));
+				return;
+			}
+
+			List<JoinTask<F>> tasks = new ArrayList<>();
+
+			if (node1.isLeaf) {
+				for (int i = 0; i < node2.numEntries; i++) {
+					tasks.add(new JoinTask<>(query, handler, node1, (SpatialIndex<F>.Node) node2.entries[i], level1, level2 - 1));
+				}
+			} else if (node2.isLeaf) {
+				for (int i = 0; i < node1.numEntries; i++) {
+					tasks.add(new JoinTask<>(query, handler, (Node) node1.entries[i], node2, level1 - 1, level2));
+				}
+			} else {
+				AABBView view1 = new AABBView(dimensions);
+				AABBView view2 = new AABBView(node2.getIndex().dimensions);
+				boolean reverse = node1.getIndex() == node2.getIndex() && !query.isSymmetric();
+
+				for (int i = 0; i < node1.numEntries; i++) {
+					int k = node1 == node2 ? i : 0;
+
+					for (int j = k; j < node2.numEntries; j++) {
+						view1.wrap(node1.bounds, i, node1.entries.length);
+						view2.wrap(node2.bounds, j, node2.entries.length);
+
+						if (query.query(view1, view2, true) || (reverse && query.query(view2, view1, true))) {
+							tasks.add(new JoinTask<>(query, handler, (Node) node1.entries[i], (SpatialIndex<F>.Node) node2.entries[j], level1 - 1, level2 - 1));
+						}
+					}
+				}
 			}
+
+			invokeAll(tasks);
 		}
 
-		return false;
+		private boolean isSmall() {
+			return estimateSize(level1, maxEntries) + estimateSize(level2, node2.getIndex().maxEntries) < PARALLEL_THRESHOLD;
+		}
 	}
 
-	private AABB getVolumeForNode(Node node) {
-		AABB volume = node.volumes[0].copy();
+	/**
+	 * A handler shared by the tasks of a parallel query, which stops the query once the handler it
+	 * wraps returns <tt>false</tt>.
+	 */
+	private static final class ParallelHandler<E> implements QueryResultHandler<E>
+	{
+		private final QueryResultHandler<E> handler;
+		private volatile boolean stopped = false;
 
-		for (int i = 1; i < node.numEntries; i++) {
-			AABBUtil.expand(volume, node.volumes[i]);
+		private ParallelHandler(QueryResultHandler<E> handler) {
+			this.handler = handler;
 		}
 
-		return volume;
+		@Override
+		public boolean handle(E object) {
+			if (stopped) {
+				return false;
+			}
+
+			if (!handler.handle(object)) {
+				stopped = true;
+				return false;
+			}
+
+			return true;
+		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private void reinsert(Node node) {
-		if (node.isLeaf) {
-			for (int i = 0; i < node.numEntries; i++) {
-				insert((E) node.entries[i], node.volumes[i]);
+	/**
+	 * A join handler shared by the tasks of a parallel join, which stops the join once the handler
+	 * it wraps returns <tt>false</tt>.
+	 */
+	private static final class ParallelJoinHandler<E, F> implements JoinQueryResultHandler<E, F>
+	{
+		private final JoinQueryResultHandler<E, F> handler;
+		private volatile boolean stopped = false;
+
+		private ParallelJoinHandler(JoinQueryResultHandler<E, F> handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public boolean handle(E object1, F object2) {
+			if (stopped) {
+				return false;
 			}
-		} else {
-			for (int i = 0; i < node.numEntries; i++) {
-				reinsert((Node) node.entries[i]);
+
+			if (!handler.handle(object1, object2)) {
+				stopped = true;
+				return false;
 			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * The pool used by parallel queries which are not given one, created on first use.
+	 */
+	private static final class DefaultPool
+	{
+		private static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
+	/**
+	 * An update recorded during a batch.
+	 */
+	private static final class Move
+	{
+		private final float[] bounds;
+		private final float[] displacement;
+
+		private Move(float[] bounds, float[] displacement) {
+			this.bounds = bounds;
+			this.displacement = displacement;
 		}
 	}
 
 	private class Node
 	{
 		private Node parent;
+		private int index;
 		private boolean isLeaf;
 		private int numEntries;
-		private AABB[] volumes = new AABB[MAX_OBJECTS_PER_NODE];
-		private Object[] entries = new Object[MAX_OBJECTS_PER_NODE];
+		private float[] bounds;
+		private Object[] entries;
+		private Handle<E>[] handles;
+		private float[] exact;
+		private boolean[] dead;
+		private int deadCount;
+		private final int version = epoch;
 
+		@SuppressWarnings("unchecked")
 		public Node(boolean isLeaf) {
 			this.isLeaf = isLeaf;
+
+			bounds = new float[2 * dimensions * maxEntries];
+			entries = new Object[maxEntries];
+
+			if (isLeaf) {
+				handles = (Handle<E>[]) new Handle<?>[maxEntries];
+
+				if (margin != 0) {
+					exact = new float[bounds.length];
+				}
+
+				if (lazyDeletion) {
+					dead = new boolean[maxEntries];
+				}
+			}
+		}
+
+		/**
+		 * Creates a copy of a node which shares its children (or the handles of its objects).
+		 */
+		public Node(Node node) {
+			parent = node.parent;
+			index = node.index;
+			isLeaf = node.isLeaf;
+			numEntries = node.numEntries;
+			bounds = node.bounds.clone();
+			entries = node.entries.clone();
+			handles = node.handles == null ? null : node.handles.clone();
+			exact = node.exact == null ? null : node.exact.clone();
+			dead = node.dead == null ? null : node.dead.clone();
+			deadCount = node.deadCount;
+		}
+
+		public SpatialIndex<E> getIndex() {
+			return SpatialIndex.this;
 		}
 
 		@SuppressWarnings("unchecked")
-		public void add(AABB volume, Object object) {
-			volumes[numEntries] = volume;
-			entries[numEntries] = object;
-			numEntries++;
+		public void add(float[] volume, int offset, Object object) {
+			setBounds(numEntries, volume, offset);
 
 			if (isLeaf) {
-				leafMap.put((E) object, this);
+				Handle<E> handle = (Handle<E>) object;
+				handle.leaf = this;
+				handle.slot = numEntries;
+
+				handles[numEntries] = handle;
+				entries[numEntries] = handle.object;
+
+				if (handle.dead) {
+					dead[numEntries] = true;
+					deadCount++;
+				}
+
+				setExactBounds(numEntries, handle.exact);
 			} else {
-				((Node) object).parent = this;
+				Node node = (Node) object;
+				node.parent = this;
+				node.index = numEntries;
+
+				entries[numEntries] = node;
 			}
+
+			numEntries++;
 		}
 
-		public void remove(Object object) {
-			for (int i = 0; i < numEntries; i++) {
-				if (entries[i] == object) {
-					if (isLeaf) {
-						leafMap.remove(object);
-					}
+		@SuppressWarnings("unchecked")
+		public void remove(int slot) {
+			if (isLeaf) {
+				handles[slot].leaf = null;
+			}
 
-					numEntries--;
-					volumes[i] = volumes[numEntries];
-					entries[i] = entries[numEntries];
+			numEntries--;
 
-					volumes[numEntries] = null;
-					entries[numEntries] = null;
+			if (dead != null) {
+				if (dead[slot]) {
+					deadCount--;
 				}
+
+				dead[slot] = dead[numEntries];
+				dead[numEntries] = false;
+			}
+
+			Bounds.move(bounds, entries.length, numEntries, slot, dimensions);
+			entries[slot] = entries[numEntries];
+
+			if (exact != null) {
+				Bounds.move(exact, entries.length, numEntries, slot, dimensions);
+			}
+			entries[numEntries] = null;
+
+			if (isLeaf) {
+				handles[slot] = handles[numEntries];
+				handles[slot].slot = slot;
+				handles[numEntries] = null;
+			} else if (slot < numEntries) {
+				((Node) entries[slot]).index = slot;
 			}
 		}
 
 		public void clear() {
 			for (int i = 0; i < numEntries; i++) {
+				entries[i] = null;
+
 				if (isLeaf) {
-					leafMap.remove(entries[i]);
+					handles[i] = null;
 				}
-
-				volumes[i] = null;
-				entries[i] = null;
 			}
 
 			numEntries = 0;
+			deadCount = 0;
+
+			if (dead != null) {
+				Arrays.fill(dead, false);
+			}
+		}
+
+		/**
+		 * Returns <tt>true</tt> if the given slot of a leaf holds a dead entry.
+		 */
+		public boolean isDead(int index) {
+			return deadCount != 0 && dead[index];
+		}
+
+		public void getBounds(int index, float[] volume, int offset) {
+			Bounds.get(bounds, entries.length, index, volume, offset, dimensions);
+		}
+
+		public void setBounds(int index, float[] volume, int offset) {
+			Bounds.set(bounds, entries.length, index, volume, offset, dimensions);
+		}
+
+		/**
+		 * Returns the bounds used to match the entries of a leaf against a query. These are the
+		 * exact bounds of each object if the index stores fat bounds, or the node bounds otherwise.
+		 */
+		public float[] getExactBounds() {
+			return exact != null ? exact : bounds;
+		}
+
+		public void setExactBounds(int index, float[] volume) {
+			if (exact != null) {
+				Bounds.set(exact, entries.length, index, volume, 0, dimensions);
+			}
+		}
+
+		public float[] getBounds() {
+			float[] volume = new float[2 * dimensions];
+			Bounds.union(bounds, entries.length, numEntries, volume, 0, dimensions);
+
+			return volume;
+		}
+
+		public void fit(int index, Node node) {
+			Bounds.fit(bounds, entries.length, index, node.bounds, node.entries.length, node.numEntries, dimensions);
+		}
+
+		public void expand(int index, float[] volume) {
+			Bounds.expand(bounds, entries.length, index, volume, dimensions);
+		}
+
+		public boolean contains(int index, float[] volume) {
+			return Bounds.contains(bounds, entries.length, index, volume, dimensions);
 		}
 	}
 }
@@ -0,0 +1,297 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * Structural parameters of a spatial index.
+ * <p>
+ * A configuration is read when an index is created. Modifying a configuration afterwards has no
+ * effect on existing indices.
+ *
+ * <pre>
+ * SpatialIndex&lt;E&gt; index = new SpatialIndex&lt;&gt;(new SpatialIndexConfig().setMaxEntries(32).setMinEntries(12));
+ * </pre>
+ *
+ * @author Eric Fritz
+ * @see SpatialIndex#SpatialIndex(SpatialIndexConfig)
+ * @see IntSpatialIndex#IntSpatialIndex(SpatialIndexConfig)
+ */
+public class SpatialIndexConfig
+{
+	/**
+	 * The minimum number of objects a node can hold before underflow.
+	 */
+	private int minEntries = 3;
+
+	/**
+	 * The maximum number of objects a node can hold before overflow.
+	 */
+	private int maxEntries = 8;
+
+	/**
+	 * The strategy used to divide the entries of an overflowing node.
+	 */
+	private SplitStrategy splitStrategy = new KMeansSplitStrategy();
+
+	/**
+	 * Whether the entries of an overflowing node are reinserted before the node is split.
+	 */
+	private boolean forcedReinsertion = false;
+
+	/**
+	 * The distance by which the stored bounds of each object are enlarged on every side.
+	 */
+	private float margin = 0;
+
+	/**
+	 * The multiple of an object's displacement by which its stored bounds are extended.
+	 */
+	private float displacementFactor = 2;
+
+	/**
+	 * Whether removed objects are marked dead and left in the tree until compaction.
+	 */
+	private boolean lazyDeletion = false;
+
+	/**
+	 * Whether an underfull node is merged with a sibling instead of being reinserted.
+	 */
+	private boolean siblingMerging = false;
+
+	/**
+	 * Returns the minimum number of entries a node can hold before underflow.
+	 *
+	 * @return The minimum number of entries per node.
+	 */
+	public int getMinEntries() {
+		return minEntries;
+	}
+
+	/**
+	 * Sets the minimum number of entries a node can hold before underflow. This value must be
+	 * positive and at most half of the maximum number of entries. The default value is 3.
+	 *
+	 * @param minEntries The minimum number of entries per node.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setMinEntries(int minEntries) {
+		this.minEntries = minEntries;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of entries a node can hold before overflow.
+	 *
+	 * @return The maximum number of entries per node.
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Sets the maximum number of entries (the fanout) a node can hold before overflow. This value
+	 * must be at least 2. The default value is 8.
+	 *
+	 * @param maxEntries The maximum number of entries per node.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		return this;
+	}
+
+	/**
+	 * Returns the strategy used to divide the entries of an overflowing node.
+	 *
+	 * @return The split strategy.
+	 */
+	public SplitStrategy getSplitStrategy() {
+		return splitStrategy;
+	}
+
+	/**
+	 * Sets the strategy used to divide the entries of an overflowing node. The default strategy is
+	 * a {@link KMeansSplitStrategy}. An {@link RStarSplitStrategy} produces less overlap between
+	 * nodes at a somewhat higher insertion cost.
+	 *
+	 * @param splitStrategy The split strategy.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setSplitStrategy(SplitStrategy splitStrategy) {
+		this.splitStrategy = splitStrategy;
+		return this;
+	}
+
+	/**
+	 * Returns whether R*-style forced reinsertion is enabled.
+	 *
+	 * @return <tt>true</tt> if forced reinsertion is enabled, <tt>false</tt> otherwise.
+	 */
+	public boolean isForcedReinsertion() {
+		return forcedReinsertion;
+	}
+
+	/**
+	 * Enables or disables R*-style forced reinsertion. When enabled, the first overflow at each
+	 * level of the tree during an insertion removes the 30% of the node's entries farthest from
+	 * the node's center and inserts them again, instead of splitting the node. This keeps
+	 * incrementally built trees closer to the quality of a freshly built tree at the cost of more
+	 * expensive insertions. Forced reinsertion is disabled by default, and is only supported by
+	 * {@link SpatialIndex}.
+	 *
+	 * @param forcedReinsertion Whether forced reinsertion is enabled.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setForcedReinsertion(boolean forcedReinsertion) {
+		this.forcedReinsertion = forcedReinsertion;
+		return this;
+	}
+
+	/**
+	 * Returns the distance by which the stored bounds of each object are enlarged.
+	 *
+	 * @return The bounds margin.
+	 */
+	public float getMargin() {
+		return margin;
+	}
+
+	/**
+	 * Sets the distance by which the stored bounds of each object are enlarged on every side. When
+	 * positive, the index keeps an enlarged (fat) copy of each object's bounds for the structure of
+	 * the tree, alongside the exact bounds used to answer queries. An update whose new bounds lie
+	 * within the object's fat bounds only replaces the exact bounds, so small movements do not
+	 * restructure the tree. Larger margins absorb more movement at the cost of more overlap between
+	 * nodes. This value must not be negative. The default value is 0 (disabled). Margins are only
+	 * supported by {@link SpatialIndex}.
+	 *
+	 * @param margin The bounds margin.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setMargin(float margin) {
+		this.margin = margin;
+		return this;
+	}
+
+	/**
+	 * Returns the multiple of an object's displacement by which its fat bounds are extended.
+	 *
+	 * @return The displacement factor.
+	 */
+	public float getDisplacementFactor() {
+		return displacementFactor;
+	}
+
+	/**
+	 * Sets the multiple of an object's displacement by which its fat bounds are extended in the
+	 * direction of movement, when a displacement is given to {@link SpatialIndex#update(SpatialIndex.Handle,
+	 * AABB, float[])}. This has no effect unless a margin is set. This value must not be negative.
+	 * The default value is 2.
+	 *
+	 * @param displacementFactor The displacement factor.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setDisplacementFactor(float displacementFactor) {
+		this.displacementFactor = displacementFactor;
+		return this;
+	}
+
+	/**
+	 * Returns whether lazy deletion is enabled.
+	 *
+	 * @return <tt>true</tt> if lazy deletion is enabled, <tt>false</tt> otherwise.
+	 */
+	public boolean isLazyDeletion() {
+		return lazyDeletion;
+	}
+
+	/**
+	 * Enables or disables lazy deletion. When enabled, removing an object only marks its entry
+	 * dead: queries skip dead entries, and the tree is not condensed until {@link
+	 * SpatialIndex#compact()} or {@link SpatialIndex#compact(long)} is called. This spreads the cost
+	 * of removing many objects at once over time. Lazy deletion is disabled by default, and is only
+	 * supported by {@link SpatialIndex}.
+	 *
+	 * @param lazyDeletion Whether lazy deletion is enabled.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setLazyDeletion(boolean lazyDeletion) {
+		this.lazyDeletion = lazyDeletion;
+		return this;
+	}
+
+	/**
+	 * Returns whether underfull nodes are merged with a sibling instead of being reinserted.
+	 *
+	 * @return <tt>true</tt> if sibling merging is enabled, <tt>false</tt> otherwise.
+	 */
+	public boolean isSiblingMerging() {
+		return siblingMerging;
+	}
+
+	/**
+	 * Enables or disables sibling merging. By default, a node which underflows after a removal is
+	 * detached from the tree and its entries are inserted again at their original level. When
+	 * sibling merging is enabled, the node is instead merged into the sibling it enlarges least
+	 * or, if the two together would overflow, takes entries from that sibling until it is full
+	 * enough. This bounds the cost of a removal to the nodes along a single path at the expense of
+	 * somewhat looser nodes. Sibling merging is disabled by default.
+	 *
+	 * @param siblingMerging Whether sibling merging is enabled.
+	 *
+	 * @return This configuration.
+	 */
+	public SpatialIndexConfig setSiblingMerging(boolean siblingMerging) {
+		this.siblingMerging = siblingMerging;
+		return this;
+	}
+
+	/**
+	 * Ensures the parameters of this configuration are consistent.
+	 *
+	 * @throws IllegalArgumentException If a parameter is out of range.
+	 */
+	void validate() {
+		if (maxEntries < 2) {
+			throw new IllegalArgumentException("Nodes must hold at least two entries.");
+		}
+
+		if (minEntries < 1 || minEntries > maxEntries / 2) {
+			throw new IllegalArgumentException("Minimum entries must be between 1 and half of the maximum entries.");
+		}
+
+		if (splitStrategy == null) {
+			throw new IllegalArgumentException("Split strategy must not be null.");
+		}
+
+		if (!(margin >= 0) || !(displacementFactor >= 0)) {
+			throw new IllegalArgumentException("Margin and displacement factor must not be negative.");
+		}
+	}
+}
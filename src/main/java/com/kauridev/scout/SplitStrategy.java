@@ -0,0 +1,50 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+/**
+ * Defines how the entries of an overflowing node are divided between two nodes.
+ * <p>
+ * The volumes of the entries are passed in packed form: the volume of entry <tt>i</tt> occupies
+ * the <tt>2 * dimensions</tt> values starting at index <tt>2 * dimensions * i</tt>, holding the
+ * minimum and maximum of each dimension in turn.
+ * <p>
+ * Implementations must be stateless or otherwise safe to share between indices.
+ *
+ * @author Eric Fritz
+ * @see SpatialIndexConfig#setSplitStrategy(SplitStrategy)
+ */
+public interface SplitStrategy
+{
+	/**
+	 * Partitions a set of entries into two groups. Both groups must be non-empty, and should hold
+	 * at least <tt>minEntries</tt> entries each.
+	 *
+	 * @param volumes    The packed volumes of the entries. This array must not be modified.
+	 * @param count      The number of entries.
+	 * @param dimensions The number of dimensions of each volume.
+	 * @param minEntries The minimum number of entries per node.
+	 * @param assignment Receives <tt>false</tt> for each entry which remains in the original node,
+	 *                   and <tt>true</tt> for each entry which is moved to the new node.
+	 */
+	public void split(float[] volumes, int count, int dimensions, int minEntries, boolean[] assignment);
+}
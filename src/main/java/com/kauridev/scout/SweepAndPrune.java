@@ -0,0 +1,751 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A broad phase which maintains the set of pairs of objects whose bounds intersect.
+ * <p>
+ * The minimum and maximum of every object along each dimension are kept in a sorted list of
+ * endpoints per dimension. Two objects intersect exactly when their intervals overlap in every
+ * dimension, and the intervals of two objects begin or stop overlapping in a dimension only when
+ * an endpoint of one passes an endpoint of the other. Insertions, updates, and removals are only
+ * recorded as they are made. The next join restores the order of each list with an insertion
+ * sort, and adds or removes a pair from the set of intersecting pairs as the sort swaps its
+ * endpoints. When objects move by small amounts between joins, few endpoints change places, and
+ * the cost of a join is close to linear in the number of objects and intersecting pairs. Inserting
+ * many objects at once instead rebuilds the lists and the set of pairs from scratch.
+ * <p>
+ * Unlike {@link SpatialIndex}, only self joins are supported, and only intersecting pairs are
+ * ever considered. The join query is evaluated on each intersecting pair of objects, so an
+ * {@link IntersectionJoinQuery} or an {@link AllJoinQuery} reports every intersecting pair, and a
+ * {@link ContainsJoinQuery} or a {@link ContainedJoinQuery} reports those pairs for which one
+ * object contains the other. Queries which may match disjoint volumes, such as a
+ * {@link DistanceJoinQuery} with a positive distance, will miss those pairs.
+ * <p>
+ * <b>Note that this implementation is not synchronized.</b> If multiple threads access the
+ * structure concurrently, and at least one of the threads modifies it structurally, it <i>must</i>
+ * be synchronized externally.
+ *
+ * @author Eric Fritz
+ */
+public class SweepAndPrune<E>
+{
+	/**
+	 * The initial number of object slots.
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The number of dimensions of the indexed volumes. This value is zero until the first object is
+	 * inserted.
+	 */
+	private int dimensions = 0;
+
+	/**
+	 * The object in each slot, or <tt>null</tt> if the slot is free or its object has been removed
+	 * since the last join.
+	 */
+	private Object[] objects = new Object[INITIAL_CAPACITY];
+
+	/**
+	 * The packed bounds of the object in each slot.
+	 */
+	private float[] bounds;
+
+	/**
+	 * The number of slots which have ever been used, and the slots below that number which are
+	 * free.
+	 */
+	private int slotCount = 0;
+	private int[] free = new int[INITIAL_CAPACITY];
+	private int freeCount = 0;
+
+	/**
+	 * An auxiliary map of objects to their slots.
+	 */
+	private Map<E, Integer> slots = new HashMap<>();
+
+	/**
+	 * The endpoint lists of each dimension. The endpoint at index <tt>k</tt> of dimension
+	 * <tt>d</tt> has the value <tt>values[d][k]</tt>, and is the minimum (if the low bit of
+	 * <tt>tags[d][k]</tt> is clear) or the maximum (if it is set) of the object in slot
+	 * <tt>tags[d][k] >> 1</tt>. At equal values, minimums are ordered before maximums, so that
+	 * touching intervals overlap.
+	 */
+	private float[][] values;
+	private int[][] tags;
+
+	/**
+	 * The number of endpoints in each list.
+	 */
+	private int endpointCount = 0;
+
+	/**
+	 * The slots inserted since the last join, whose endpoints are not yet in the lists.
+	 */
+	private int[] pending = new int[INITIAL_CAPACITY];
+	private int pendingCount = 0;
+
+	/**
+	 * The slots removed since the last join, which are not yet free.
+	 */
+	private int[] removed = new int[INITIAL_CAPACITY];
+	private int removedCount = 0;
+
+	/**
+	 * Whether an object has been updated since the last join.
+	 */
+	private boolean moved = false;
+
+	/**
+	 * The pairs of slots whose objects intersect, as of the last join.
+	 */
+	private PairSet pairs = new PairSet();
+
+	/**
+	 * The number of active traversals. This field is used to forbid structural modification
+	 * operations while the pairs are being visited, which may result in undefined or exceptional
+	 * behavior.
+	 */
+	private transient int traversalCount = 0;
+
+	/**
+	 * Creates a new SweepAndPrune.
+	 */
+	public SweepAndPrune() {
+	}
+
+	/**
+	 * Returns the number of objects.
+	 *
+	 * @return The number of objects.
+	 */
+	public int size() {
+		return slots.size();
+	}
+
+	/**
+	 * Performs a spatial join on the objects and themselves, visiting all of the intersecting
+	 * element pairs that satisfy the query criteria. Each unordered pair is visited at most once.
+	 *
+	 * @param query   The spatial query.
+	 * @param handler The handler to call for each matching element.
+	 */
+	public void query(JoinQuery query, JoinQueryResultHandler<E, E> handler) {
+		if (traversalCount == 0) {
+			sort();
+		}
+
+		traversalCount++;
+		join(query, handler, new AABBView(dimensions), new AABBView(dimensions));
+		traversalCount--;
+	}
+
+	/**
+	 * Inserts an object.
+	 * <p>
+	 * The bounds of <tt>volume</tt> are copied. If <tt>volume</tt> is modified after insertion,
+	 * {@link #update(Object, AABB)} should be called in order to keep the pairs accurate.
+	 *
+	 * @param object The object to insert.
+	 * @param volume The bounding volume of the object.
+	 *
+	 * @throws IllegalArgumentException If the object has already been inserted, or if the volume
+	 *                                  does not have the same dimensions as the other objects.
+	 */
+	public void insert(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		if (slots.containsKey(object)) {
+			throw new IllegalArgumentException("Object is already in the index.");
+		}
+
+		if (dimensions == 0) {
+			dimensions = volume.getDimensions();
+			bounds = new float[2 * dimensions * objects.length];
+			values = new float[dimensions][2 * objects.length];
+			tags = new int[dimensions][2 * objects.length];
+		}
+
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		int slot = allocate();
+		objects[slot] = object;
+		write(slot, volume);
+		slots.put(object, slot);
+
+		if (pendingCount == pending.length) {
+			pending = Arrays.copyOf(pending, pendingCount * 2);
+		}
+
+		pending[pendingCount++] = slot;
+	}
+
+	/**
+	 * Updates the bounds of an object. If the object was not already inserted, no action is
+	 * performed. The pairs of the object are brought up to date by the next join.
+	 *
+	 * @param object The object to update.
+	 * @param volume The new (current) bounding volume of the object.
+	 */
+	public void update(E object, AABB volume) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Integer slot = slots.get(object);
+
+		if (slot == null) {
+			return;
+		}
+
+		if (volume.getDimensions() != dimensions) {
+			throw new IllegalArgumentException();
+		}
+
+		write(slot, volume);
+		moved = true;
+	}
+
+	/**
+	 * Removes an object.
+	 *
+	 * @param object The object to remove. If the object was not already inserted, no action is
+	 *               performed.
+	 */
+	public void remove(E object) {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		Integer slot = slots.remove(object);
+
+		if (slot == null) {
+			return;
+		}
+
+		objects[slot] = null;
+
+		if (removedCount == removed.length) {
+			removed = Arrays.copyOf(removed, removedCount * 2);
+		}
+
+		removed[removedCount++] = slot;
+	}
+
+	/**
+	 * Removes all objects.
+	 */
+	public void clear() {
+		if (traversalCount != 0) {
+			throw new ConcurrentModificationException("Index cannot be modified during traversal.");
+		}
+
+		dimensions = 0;
+		objects = new Object[INITIAL_CAPACITY];
+		bounds = null;
+		slotCount = 0;
+		free = new int[INITIAL_CAPACITY];
+		freeCount = 0;
+		slots.clear();
+		values = null;
+		tags = null;
+		endpointCount = 0;
+		pending = new int[INITIAL_CAPACITY];
+		pendingCount = 0;
+		removed = new int[INITIAL_CAPACITY];
+		removedCount = 0;
+		moved = false;
+		pairs = new PairSet();
+	}
+
+	/**
+	 * Returns a free slot, growing the slot arrays if necessary.
+	 */
+	private int allocate() {
+		if (freeCount != 0) {
+			return free[--freeCount];
+		}
+
+		if (slotCount == objects.length) {
+			int capacity = objects.length * 2;
+
+			objects = Arrays.copyOf(objects, capacity);
+			bounds = Arrays.copyOf(bounds, 2 * dimensions * capacity);
+			free = Arrays.copyOf(free, capacity);
+
+			for (int i = 0; i < dimensions; i++) {
+				values[i] = Arrays.copyOf(values[i], 2 * capacity);
+				tags[i] = Arrays.copyOf(tags[i], 2 * capacity);
+			}
+		}
+
+		return slotCount++;
+	}
+
+	private void write(int slot, AABB volume) {
+		int offset = 2 * dimensions * slot;
+
+		for (int i = 0; i < dimensions; i++) {
+			bounds[offset + 2 * i] = volume.getMinimum(i);
+			bounds[offset + 2 * i + 1] = volume.getMaximum(i);
+		}
+	}
+
+	/**
+	 * Brings the endpoint lists and the set of intersecting pairs up to date with the changes made
+	 * since the last join.
+	 */
+	private void sort() {
+		if (removedCount != 0) {
+			purge();
+		}
+
+		int objectCount = endpointCount / 2;
+
+		// Sorting each new endpoint into place may pass every other endpoint, which is slower than
+		// sorting from scratch once more than a few objects are inserted at once.
+
+		if (pendingCount > 2 * (32 - Integer.numberOfLeadingZeros(objectCount))) {
+			rebuild();
+		} else if (pendingCount != 0 || moved) {
+			for (int i = 0; i < pendingCount; i++) {
+				for (int j = 0; j < dimensions; j++) {
+					tags[j][endpointCount] = pending[i] << 1;
+					tags[j][endpointCount + 1] = pending[i] << 1 | 1;
+				}
+
+				endpointCount += 2;
+			}
+
+			for (int i = 0; i < dimensions; i++) {
+				refresh(i);
+
+				if (!insertionSort(i)) {
+					rebuild();
+					break;
+				}
+			}
+		}
+
+		pendingCount = 0;
+		moved = false;
+	}
+
+	/**
+	 * Drops the endpoints and pairs of removed objects, and frees their slots.
+	 */
+	private void purge() {
+		int count = 0;
+
+		for (int i = 0; i < pendingCount; i++) {
+			if (objects[pending[i]] != null) {
+				pending[count++] = pending[i];
+			}
+		}
+
+		pendingCount = count;
+
+		// Dropping endpoints from a sorted list leaves it sorted.
+
+		for (int i = 0; i < dimensions; i++) {
+			float[] v = values[i];
+			int[] t = tags[i];
+			count = 0;
+
+			for (int k = 0; k < endpointCount; k++) {
+				if (objects[t[k] >> 1] != null) {
+					v[count] = v[k];
+					t[count++] = t[k];
+				}
+			}
+		}
+
+		endpointCount = count;
+
+		pairs.retain(objects);
+
+		for (int i = 0; i < removedCount; i++) {
+			free[freeCount++] = removed[i];
+		}
+
+		removedCount = 0;
+	}
+
+	/**
+	 * Copies the current bounds of each object into the endpoint list of a dimension.
+	 */
+	private void refresh(int dimension) {
+		float[] v = values[dimension];
+		int[] t = tags[dimension];
+		int offset = 2 * dimension;
+		int stride = 2 * dimensions;
+
+		for (int k = 0; k < endpointCount; k++) {
+			v[k] = bounds[(t[k] >> 1) * stride + offset + (t[k] & 1)];
+		}
+	}
+
+	/**
+	 * Restores the order of the endpoint list of a dimension. Each endpoint moves towards the
+	 * front of the list past the larger endpoints before it. When a minimum passes a maximum of
+	 * another object, the intervals of the two objects begin to overlap in this dimension, and the
+	 * pair is added if the objects now intersect. When a maximum passes a minimum of another
+	 * object, the intervals stop overlapping, and the pair is removed.
+	 * <p>
+	 * Every object has been given its final bounds before sorting, so the pair set is correct once
+	 * every list has been sorted: the last swap of two endpoints decides whether the intervals of
+	 * their objects overlap in that dimension, and a pair is only ever added if its objects
+	 * intersect in every dimension.
+	 * <p>
+	 * If the objects have moved so far that the sort needs more swaps than sorting from scratch
+	 * would take comparisons, the sort is abandoned, leaving the list and the pair set to be
+	 * rebuilt.
+	 *
+	 * @return <tt>false</tt> if the sort was abandoned, <tt>true</tt> otherwise.
+	 */
+	private boolean insertionSort(int dimension) {
+		float[] v = values[dimension];
+		int[] t = tags[dimension];
+		long budget = (long) endpointCount * (32 - Integer.numberOfLeadingZeros(endpointCount));
+
+		for (int i = 1; i < endpointCount; i++) {
+			float value = v[i];
+			int tag = t[i];
+			int j = i - 1;
+
+			while (j >= 0 && (v[j] > value || v[j] == value && (t[j] & 1) > (tag & 1))) {
+				if (--budget < 0) {
+					return false;
+				}
+
+				int other = t[j];
+
+				if ((tag & 1) == 0 && (other & 1) == 1) {
+					if ((tag >> 1) != (other >> 1) && intersects(tag >> 1, other >> 1)) {
+						pairs.add(tag >> 1, other >> 1);
+					}
+				} else if ((tag & 1) == 1 && (other & 1) == 0) {
+					pairs.remove(tag >> 1, other >> 1);
+				}
+
+				v[j + 1] = v[j];
+				t[j + 1] = other;
+				j--;
+			}
+
+			v[j + 1] = value;
+			t[j + 1] = tag;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sorts the endpoint lists of every object from scratch, and recomputes the set of
+	 * intersecting pairs by sweeping the list of the first dimension.
+	 */
+	private void rebuild() {
+		int count = 0;
+		int[] live = new int[slots.size()];
+
+		for (int i = 0; i < slotCount; i++) {
+			if (objects[i] != null) {
+				live[count++] = i;
+			}
+		}
+
+		endpointCount = 2 * count;
+		long[] keys = new long[endpointCount];
+
+		for (int i = 0; i < dimensions; i++) {
+			for (int k = 0; k < count; k++) {
+				int offset = 2 * dimensions * live[k] + 2 * i;
+
+				keys[2 * k] = key(bounds[offset], live[k] << 1);
+				keys[2 * k + 1] = key(bounds[offset + 1], live[k] << 1 | 1);
+			}
+
+			Arrays.sort(keys);
+
+			for (int k = 0; k < endpointCount; k++) {
+				tags[i][k] = (int) (keys[k] & 0x7FFFFFFF) << 1 | (int) (keys[k] >>> 31) & 1;
+			}
+
+			refresh(i);
+		}
+
+		pairs = new PairSet();
+
+		if (dimensions == 0) {
+			return;
+		}
+
+		// The objects whose intervals in the first dimension contain the current endpoint, with a
+		// copy of their bounds so that they can be tested without visiting each of their slots, and
+		// the index of each object in that list.
+
+		int stride = 2 * dimensions;
+		int[] active = new int[count];
+		float[] activeBounds = new float[stride * count];
+		int[] index = new int[slotCount];
+		int activeCount = 0;
+
+		int[] t = tags[0];
+
+		for (int k = 0; k < endpointCount; k++) {
+			int slot = t[k] >> 1;
+
+			if ((t[k] & 1) == 0) {
+				for (int i = 0; i < activeCount; i++) {
+					if (Bounds.intersects(bounds, stride * slot, activeBounds, stride * i, dimensions)) {
+						pairs.add(slot, active[i]);
+					}
+				}
+
+				System.arraycopy(bounds, stride * slot, activeBounds, stride * activeCount, stride);
+				index[slot] = activeCount;
+				active[activeCount++] = slot;
+			} else {
+				int last = active[--activeCount];
+				System.arraycopy(activeBounds, stride * activeCount, activeBounds, stride * index[slot], stride);
+				active[index[slot]] = last;
+				index[last] = index[slot];
+			}
+		}
+	}
+
+	/**
+	 * Returns a sort key for an endpoint, which orders endpoints by value and then minimums before
+	 * maximums.
+	 */
+	private static long key(float value, int tag) {
+		int bits = Float.floatToIntBits(value + 0.0f);
+		bits ^= (bits >> 31) & 0x7FFFFFFF;
+
+		return (long) bits << 32 | (long) (tag & 1) << 31 | tag >> 1;
+	}
+
+	private boolean intersects(int slot1, int slot2) {
+		return Bounds.intersects(bounds, 2 * dimensions * slot1, bounds, 2 * dimensions * slot2, dimensions);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void join(JoinQuery query, JoinQueryResultHandler<E, E> handler, AABBView view1, AABBView view2) {
+		boolean reverse = !query.isSymmetric();
+		long[] keys = pairs.keys;
+
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == 0) {
+				continue;
+			}
+
+			int slot1 = (int) (keys[i] >>> 32);
+			int slot2 = (int) keys[i];
+
+			view1.wrap(bounds, 2 * dimensions * slot1, 1);
+			view2.wrap(bounds, 2 * dimensions * slot2, 1);
+
+			if (query.query(view1, view2, false)) {
+				if (!handler.handle((E) objects[slot1], (E) objects[slot2])) {
+					return;
+				}
+			} else if (reverse && query.query(view2, view1, false)) {
+				if (!handler.handle((E) objects[slot2], (E) objects[slot1])) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A set of unordered pairs of distinct slots, stored as the smaller slot in the high word and
+	 * the larger slot in the low word of a key. The keys are stored in an open-addressed table with
+	 * linear probing. A pair of distinct slots never has a zero key, which marks an empty entry.
+	 * <p>
+	 * Most of the pairs removed by an endpoint swap are not in the set, as the intervals of the two
+	 * objects only overlapped in one dimension. The set counts the pairs of each slot, and keeps a
+	 * compact bit set of the slots with at least one pair, so that most of those removals return
+	 * without probing the table.
+	 */
+	private static class PairSet
+	{
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private int shift = 64 - 4;
+		private int size = 0;
+
+		private int[] counts = new int[INITIAL_CAPACITY];
+		private long[] paired = new long[1];
+
+		public void add(int slot1, int slot2) {
+			if (2 * (size + 1) > keys.length) {
+				resize(keys.length * 2);
+			}
+
+			long key = key(slot1, slot2);
+			int mask = keys.length - 1;
+			int i = index(key);
+
+			while (keys[i] != 0) {
+				if (keys[i] == key) {
+					return;
+				}
+
+				i = (i + 1) & mask;
+			}
+
+			keys[i] = key;
+			size++;
+			count(slot1, 1);
+			count(slot2, 1);
+		}
+
+		public void remove(int slot1, int slot2) {
+			if (!isPaired(slot1) || !isPaired(slot2)) {
+				return;
+			}
+
+			long key = key(slot1, slot2);
+			int mask = keys.length - 1;
+			int i = index(key);
+
+			while (keys[i] != key) {
+				if (keys[i] == 0) {
+					return;
+				}
+
+				i = (i + 1) & mask;
+			}
+
+			// Shift back each later key of the probe sequence which may be stored in the vacated
+			// entry, so that no key is separated from its home entry by an empty entry.
+
+			for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+				if (((j - index(keys[j])) & mask) >= ((j - i) & mask)) {
+					keys[i] = keys[j];
+					i = j;
+				}
+			}
+
+			keys[i] = 0;
+			size--;
+			count(slot1, -1);
+			count(slot2, -1);
+		}
+
+		/**
+		 * Removes every pair one of whose slots has no object.
+		 */
+		public void retain(Object[] objects) {
+			long[] old = keys;
+			int count = 0;
+
+			for (int i = 0; i < old.length; i++) {
+				if (old[i] != 0 && objects[(int) (old[i] >>> 32)] != null && objects[(int) old[i]] != null) {
+					old[count++] = old[i];
+				}
+			}
+
+			int capacity = INITIAL_CAPACITY;
+
+			while (2 * count > capacity) {
+				capacity *= 2;
+			}
+
+			keys = new long[capacity];
+			shift = 64 - Integer.numberOfTrailingZeros(capacity);
+			size = 0;
+			Arrays.fill(counts, 0);
+			Arrays.fill(paired, 0);
+
+			for (int i = 0; i < count; i++) {
+				insert(old[i]);
+				count((int) (old[i] >>> 32), 1);
+				count((int) old[i], 1);
+			}
+		}
+
+		private void resize(int capacity) {
+			long[] old = keys;
+
+			keys = new long[capacity];
+			shift = 64 - Integer.numberOfTrailingZeros(capacity);
+			size = 0;
+
+			for (int i = 0; i < old.length; i++) {
+				if (old[i] != 0) {
+					insert(old[i]);
+				}
+			}
+		}
+
+		private void insert(long key) {
+			int mask = keys.length - 1;
+			int i = index(key);
+
+			while (keys[i] != 0) {
+				i = (i + 1) & mask;
+			}
+
+			keys[i] = key;
+			size++;
+		}
+
+		private void count(int slot, int delta) {
+			if (slot >= counts.length) {
+				int capacity = Math.max(counts.length * 2, slot + 1);
+
+				counts = Arrays.copyOf(counts, capacity);
+				paired = Arrays.copyOf(paired, (capacity + 63) >> 6);
+			}
+
+			counts[slot] += delta;
+
+			if (counts[slot] == 0) {
+				paired[slot >> 6] &= ~(1L << slot);
+			} else {
+				paired[slot >> 6] |= 1L << slot;
+			}
+		}
+
+		private boolean isPaired(int slot) {
+			return (slot >> 6) < paired.length && (paired[slot >> 6] & 1L << slot) != 0;
+		}
+
+		private int index(long key) {
+			return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+		}
+
+		private static long key(int slot1, int slot2) {
+			return slot1 < slot2 ? (long) slot1 << 32 | slot2 : (long) slot2 << 32 | slot1;
+		}
+	}
+}
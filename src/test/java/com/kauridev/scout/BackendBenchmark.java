@@ -0,0 +1,341 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.Random;
+
+/**
+ * Compares {@link SpatialIndex}, {@link DynamicAABBTree}, {@link SpatialHashIndex}, and
+ * {@link LooseQuadtree} on insert-heavy, query-heavy, and self-join-heavy workloads.
+ * <p>
+ * This is not a unit test. After <tt>mvn test-compile</tt>, run it with <tt>java -cp
+ * target/classes:target/test-classes com.kauridev.scout.BackendBenchmark [entities [world
+ * size]]</tt>. The insert workload builds the index one object at a time and then replaces every
+ * object with a new one elsewhere. The query workload performs radius queries around random
+ * points. The join workload moves every object a small step and then joins the index with itself,
+ * for a number of frames, as a physics broad-phase would. Each backend is measured over several
+ * rounds and the last round is reported, allowing the earlier rounds to warm up the JIT. Backends
+ * suffixed with <tt>+m</tt> store bounds enlarged by a margin. A small world size packs the
+ * objects densely, which favors {@link SpatialHashIndex}.
+ *
+ * @author Eric Fritz
+ */
+public class BackendBenchmark
+{
+	private static final int ROUNDS = 4;
+
+	private static final int FRAMES = 20;
+
+	private static final float DEFAULT_WORLD_SIZE = 2000;
+
+	private static final float OBJECT_SIZE = 2;
+
+	private static final float STEP_SIZE = 1;
+
+	private static final float MARGIN = 1;
+
+	private static final float CELL_SIZE = 2 * OBJECT_SIZE;
+
+	private static final int QUERIES = 10000;
+
+	private static final float QUERY_RADIUS = 10;
+
+	private static final String[] BACKENDS = {"SpatialIndex", "DynamicAABBTree", "SpatialIndex+m", "DynamicAABBTree+m", "SpatialHashIndex", "LooseQuadtree"};
+
+	public static void main(String[] args) {
+		int entities = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		float worldSize = args.length > 1 ? Float.parseFloat(args[1]) : DEFAULT_WORLD_SIZE;
+
+		System.out.println(String.format("%d entities, %d frames, world size %.0f", entities, FRAMES, worldSize));
+		System.out.println(String.format("%18s %14s %14s %14s %14s %14s", "backend", "insert ns/op", "churn ns/op", "query ns/op", "update ns/op", "join ms/frame"));
+
+		for (int backend = 0; backend < BACKENDS.length; backend++) {
+			long[] result = null;
+
+			for (int round = 0; round < ROUNDS; round++) {
+				result = run(create(backend, worldSize), entities, worldSize);
+			}
+
+			System.out.println(String.format("%18s %14d %14d %14d %14d %14d", BACKENDS[backend], result[0] / entities, result[1] / entities, result[2] / QUERIES, result[3] / (entities * FRAMES), result[4] / (1000000L * FRAMES)));
+		}
+	}
+
+	private static Backend create(int backend, float worldSize) {
+		float margin = backend >= 2 ? MARGIN : 0;
+
+		if (backend == 4) {
+			return new HashBackend(new SpatialHashIndex<Object>(CELL_SIZE));
+		}
+
+		if (backend == 5) {
+			return new LooseBackend(new LooseQuadtree<Object>(new AABB2(0, 0, worldSize, worldSize)));
+		}
+
+		if (backend % 2 == 0) {
+			return new RTreeBackend(new SpatialIndex<Object>(new SpatialIndexConfig().setMargin(margin)));
+		} else {
+			return new TreeBackend(new DynamicAABBTree<Object>(margin));
+		}
+	}
+
+	private static long[] run(Backend index, int entities, float worldSize) {
+		Random random = new Random(1);
+
+		Object[] objects = new Object[entities];
+		float[] x = new float[entities];
+		float[] y = new float[entities];
+
+		for (int i = 0; i < entities; i++) {
+			objects[i] = new Object();
+			x[i] = random.nextFloat() * worldSize;
+			y[i] = random.nextFloat() * worldSize;
+		}
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < entities; i++) {
+			index.insert(objects[i], new AABB2(x[i], y[i], OBJECT_SIZE, OBJECT_SIZE));
+		}
+
+		long insert = System.nanoTime() - start;
+
+		start = System.nanoTime();
+
+		for (int i = 0; i < entities; i++) {
+			index.remove(objects[i]);
+
+			objects[i] = new Object();
+			x[i] = random.nextFloat() * worldSize;
+			y[i] = random.nextFloat() * worldSize;
+
+			index.insert(objects[i], new AABB2(x[i], y[i], OBJECT_SIZE, OBJECT_SIZE));
+		}
+
+		long churn = System.nanoTime() - start;
+
+		final int[] matches = new int[1];
+		QueryResultHandler<Object> visitor = new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object object) {
+				matches[0]++;
+				return true;
+			}
+		};
+
+		start = System.nanoTime();
+
+		for (int i = 0; i < QUERIES; i++) {
+			float qx = random.nextFloat() * worldSize;
+			float qy = random.nextFloat() * worldSize;
+
+			index.query(new DistanceQuery(new AABB2(qx, qy, 0, 0), QUERY_RADIUS), visitor);
+		}
+
+		long query = System.nanoTime() - start;
+		long update = 0;
+		long join = 0;
+
+		final int[] pairs = new int[1];
+		JoinQueryResultHandler<Object, Object> handler = new JoinQueryResultHandler<Object, Object>() {
+			@Override
+			public boolean handle(Object object1, Object object2) {
+				pairs[0]++;
+				return true;
+			}
+		};
+
+		for (int frame = 0; frame < FRAMES; frame++) {
+			for (int i = 0; i < entities; i++) {
+				x[i] += (random.nextFloat() - 0.5f) * 2 * STEP_SIZE;
+				y[i] += (random.nextFloat() - 0.5f) * 2 * STEP_SIZE;
+			}
+
+			start = System.nanoTime();
+
+			for (int i = 0; i < entities; i++) {
+				index.update(objects[i], new AABB2(x[i], y[i], OBJECT_SIZE, OBJECT_SIZE));
+			}
+
+			update += System.nanoTime() - start;
+			start = System.nanoTime();
+
+			index.join(new IntersectionJoinQuery(), handler);
+
+			join += System.nanoTime() - start;
+		}
+
+		if (matches[0] < 0 || pairs[0] < 0) {
+			throw new IllegalStateException();
+		}
+
+		return new long[] {insert, churn, query, update, join};
+	}
+
+	private interface Backend
+	{
+		public void insert(Object object, AABB volume);
+
+		public void update(Object object, AABB volume);
+
+		public void remove(Object object);
+
+		public void query(Query query, QueryResultHandler<Object> handler);
+
+		public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler);
+	}
+
+	private static class RTreeBackend implements Backend
+	{
+		private SpatialIndex<Object> index;
+
+		public RTreeBackend(SpatialIndex<Object> index) {
+			this.index = index;
+		}
+
+		@Override
+		public void insert(Object object, AABB volume) {
+			index.insert(object, volume);
+		}
+
+		@Override
+		public void update(Object object, AABB volume) {
+			index.update(object, volume);
+		}
+
+		@Override
+		public void remove(Object object) {
+			index.remove(object);
+		}
+
+		@Override
+		public void query(Query query, QueryResultHandler<Object> handler) {
+			index.query(query, handler);
+		}
+
+		@Override
+		public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler) {
+			index.query(query, handler);
+		}
+	}
+
+	private static class TreeBackend implements Backend
+	{
+		private DynamicAABBTree<Object> index;
+
+		public TreeBackend(DynamicAABBTree<Object> index) {
+			this.index = index;
+		}
+
+		@Override
+		public void insert(Object object, AABB volume) {
+			index.insert(object, volume);
+		}
+
+		@Override
+		public void update(Object object, AABB volume) {
+			index.update(object, volume);
+		}
+
+		@Override
+		public void remove(Object object) {
+			index.remove(object);
+		}
+
+		@Override
+		public void query(Query query, QueryResultHandler<Object> handler) {
+			index.query(query, handler);
+		}
+
+		@Override
+		public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler) {
+			index.query(query, handler);
+		}
+	}
+
+	private static class HashBackend implements Backend
+	{
+		private SpatialHashIndex<Object> index;
+
+		public HashBackend(SpatialHashIndex<Object> index) {
+			this.index = index;
+		}
+
+		@Override
+		public void insert(Object object, AABB volume) {
+			index.insert(object, volume);
+		}
+
+		@Override
+		public void update(Object object, AABB volume) {
+			index.update(object, volume);
+		}
+
+		@Override
+		public void remove(Object object) {
+			index.remove(object);
+		}
+
+		@Override
+		public void query(Query query, QueryResultHandler<Object> handler) {
+			index.query(query, handler);
+		}
+
+		@Override
+		public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler) {
+			index.query(query, handler);
+		}
+	}
+
+	private static class LooseBackend implements Backend
+	{
+		private LooseTree<Object> index;
+
+		public LooseBackend(LooseTree<Object> index) {
+			this.index = index;
+		}
+
+		@Override
+		public void insert(Object object, AABB volume) {
+			index.insert(object, volume);
+		}
+
+		@Override
+		public void update(Object object, AABB volume) {
+			index.update(object, volume);
+		}
+
+		@Override
+		public void remove(Object object) {
+			index.remove(object);
+		}
+
+		@Override
+		public void query(Query query, QueryResultHandler<Object> handler) {
+			index.query(query, handler);
+		}
+
+		@Override
+		public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler) {
+			index.query(query, handler);
+		}
+	}
+}
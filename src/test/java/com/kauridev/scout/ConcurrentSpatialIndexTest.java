@@ -0,0 +1,217 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Eric Fritz
+ */
+public class ConcurrentSpatialIndexTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void testQuery() {
+		Random random = new Random(1);
+		ConcurrentSpatialIndex<Object> index = new ConcurrentSpatialIndex<>();
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			index.insert(o, volume);
+			expected.insert(o, volume);
+		}
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(index, new DistanceQuery(query, 3)), getVisited(expected, new DistanceQuery(query, 3)));
+		}
+
+		ensureSameSymmetric(getVisited(index, index, new IntersectionJoinQuery()), getVisited(expected, expected, new IntersectionJoinQuery()));
+	}
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+
+		ConcurrentSpatialIndex<Object> index1 = new ConcurrentSpatialIndex<>();
+		ConcurrentSpatialIndex<Object> index2 = new ConcurrentSpatialIndex<>();
+		SpatialIndex<Object> expected1 = new SpatialIndex<>();
+		SpatialIndex<Object> expected2 = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			index1.insert(o, volume);
+			expected1.insert(o, volume);
+		}
+
+		for (int i = 0; i < ENTITIES / 3; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 10);
+
+			index2.insert(o, volume);
+			expected2.insert(o, volume);
+		}
+
+		ensureSame(getVisited(index1, index2, new DistanceJoinQuery(1)), getVisited(expected1, expected2, new DistanceJoinQuery(1)));
+		ensureSame(getVisited(index2, index1, new ContainedJoinQuery()), getVisited(expected2, expected1, new ContainedJoinQuery()));
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testModificationDuringQuery() {
+		final ConcurrentSpatialIndex<Object> index = new ConcurrentSpatialIndex<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+
+		index.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				index.remove(o);
+				return true;
+			}
+		});
+	}
+
+	@Test
+	public void testSnapshot() {
+		ConcurrentSpatialIndex<Object> index = new ConcurrentSpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		SpatialIndex.Snapshot<Object> snapshot = index.snapshot();
+		index.clear();
+
+		final List<Object> visited = new ArrayList<>();
+
+		snapshot.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				return visited.add(o);
+			}
+		});
+
+		snapshot.release();
+
+		assertEquals(ENTITIES, visited.size());
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentQueries() throws InterruptedException {
+		final ConcurrentSpatialIndex<Object> index = new ConcurrentSpatialIndex<>();
+		final List<SpatialIndex.Handle<Object>> handles = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			handles.add(index.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1)));
+		}
+
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AABB world = new AABB2(-10, -10, 120, 120);
+
+		Thread[] threads = new Thread[THREADS];
+
+		for (int t = 0; t < THREADS; t++) {
+			final boolean writer = t == 0;
+
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random();
+
+						for (int k = 0; k < 200; k++) {
+							if (writer) {
+								// Objects only move within the world, so every query of the world
+								// should see all of them.
+
+								for (SpatialIndex.Handle<Object> handle : handles) {
+									index.update(handle, new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+								}
+							} else {
+								assertEquals(ENTITIES, getVisited(index, new IntersectionQuery(world)).size());
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		assertEquals(ENTITIES + 1, getVisited(index, new AllQuery()).size());
+	}
+
+	private <T> List<T> getVisited(ConcurrentSpatialIndex<T> index, Query query) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o);
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(ConcurrentSpatialIndex<T> index1, ConcurrentSpatialIndex<T> index2, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -69,6 +69,28 @@ public class ContainsJoinQueryTest extends QueryTest
 		ensureSame(getVisited(index, index, new ContainsJoinQuery()), expected);
 	}
 
+	@Test
+	public void testOneIndexSeparateLeaves() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		List<Pair<Object>> expected = new ArrayList<>();
+
+		Object[] objects = new Object[ENTITIES];
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(objects[i] = new Object(), new AABB2(5 * i + 1, 1, 3, 3));
+		}
+
+		Object o;
+		for (int j = 0; j < ENTITIES / 20; j++) {
+			index.insert(o = new Object(), new AABB2(100 * j, 0, 100, 5));
+
+			for (int i = 20 * j; i < 20 * j + 20; i++) {
+				expected.add(new Pair<>(o, objects[i]));
+			}
+		}
+
+		ensureSame(getVisited(index, index, new ContainsJoinQuery()), expected);
+	}
+
 	@Test
 	public void testTwoIndices() {
 		SpatialIndex<Object> index1 = new SpatialIndex<>();
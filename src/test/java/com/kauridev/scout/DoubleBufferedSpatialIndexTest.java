@@ -0,0 +1,240 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Eric Fritz
+ */
+public class DoubleBufferedSpatialIndexTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void testFlip() {
+		DoubleBufferedSpatialIndex<Object> index = new DoubleBufferedSpatialIndex<>();
+		Object o = new Object();
+
+		index.insert(o, new AABB2(0, 0, 1, 1));
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+
+		index.flip();
+		assertEquals(1, getVisited(index, new AllQuery()).size());
+
+		index.update(o, new AABB2(10, 10, 1, 1));
+		assertEquals(1, getVisited(index, new IntersectionQuery(new AABB2(0, 0, 2, 2))).size());
+
+		index.flip();
+		assertEquals(0, getVisited(index, new IntersectionQuery(new AABB2(0, 0, 2, 2))).size());
+		assertEquals(1, getVisited(index, new IntersectionQuery(new AABB2(10, 10, 2, 2))).size());
+
+		index.remove(o);
+		index.flip();
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+	}
+
+	@Test
+	public void testReplay() {
+		Random random = new Random(1);
+		DoubleBufferedSpatialIndex<Object> index = new DoubleBufferedSpatialIndex<>();
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+		List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+		}
+
+		for (int frame = 0; frame < 20; frame++) {
+			if (frame == 10) {
+				index.clear();
+				expected.clear();
+			}
+
+			for (int i = 0; i < ENTITIES / 10; i++) {
+				Object o = objects.get(random.nextInt(ENTITIES));
+				AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+				int op = random.nextInt(3);
+
+				if (op == 0) {
+					index.remove(o);
+					expected.remove(o);
+				} else if (op == 1) {
+					index.update(o, volume);
+					expected.update(o, volume);
+				} else {
+					index.remove(o);
+					expected.remove(o);
+					index.insert(o, volume);
+					expected.insert(o, volume);
+				}
+
+				// The index must have copied the volume.
+				volume.setBounds(0, -1000, -999);
+			}
+
+			// Alternate frames are served by each buffer, so both must match.
+
+			index.flip();
+
+			for (int k = 0; k < 10; k++) {
+				AABB query = new AABB2(k * 10, k * 5, 20, 20);
+				ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			}
+
+			ensureSameSymmetric(getVisited(index, new IntersectionJoinQuery()), getVisited(expected, expected, new IntersectionJoinQuery()));
+		}
+	}
+
+	@Test(timeout = 60000, expected = ConcurrentModificationException.class)
+	public void testModificationDuringQuery() {
+		final DoubleBufferedSpatialIndex<Object> index = new DoubleBufferedSpatialIndex<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.flip();
+
+		// The back buffer is stale, so the modification would otherwise wait for this query.
+
+		index.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				index.remove(o);
+				return true;
+			}
+		});
+	}
+
+	@Test(timeout = 60000, expected = ConcurrentModificationException.class)
+	public void testFlipDuringQuery() {
+		final DoubleBufferedSpatialIndex<Object> index = new DoubleBufferedSpatialIndex<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.flip();
+
+		index.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				index.flip();
+				return true;
+			}
+		});
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentQueries() throws InterruptedException {
+		final DoubleBufferedSpatialIndex<Object> index = new DoubleBufferedSpatialIndex<>();
+		final List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			index.insert(objects.get(i), new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		index.flip();
+
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AABB world = new AABB2(-10, -10, 120, 120);
+
+		Thread[] threads = new Thread[THREADS];
+
+		for (int t = 0; t < THREADS; t++) {
+			final boolean writer = t == 0;
+
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random();
+
+						if (writer) {
+							for (int k = 0; k < 200; k++) {
+								for (Object o : objects) {
+									index.update(o, new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+								}
+
+								index.flip();
+							}
+						} else {
+							while (!done.get()) {
+								assertEquals(ENTITIES, getVisited(index, new IntersectionQuery(world)).size());
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						if (writer) {
+							done.set(true);
+						}
+					}
+				}
+			};
+
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+	}
+
+	private <T> List<T> getVisited(DoubleBufferedSpatialIndex<T> index, Query query) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o);
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(DoubleBufferedSpatialIndex<T> index, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index.query(query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Eric Fritz
+ */
+public class DynamicAABBTreeTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	@Test
+	public void testQuery() {
+		Random random = new Random(1);
+		DynamicAABBTree<Object> index = new DynamicAABBTree<>();
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			index.insert(o, volume);
+			expected.insert(o, volume);
+		}
+
+		assertEquals(ENTITIES, index.size());
+		assertTrue(index.getHeight() < ENTITIES / 10);
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(index, new ContainsQuery(query)), getVisited(expected, new ContainsQuery(query)));
+		}
+
+		ensureSame(getVisited(index, new AllQuery()), getVisited(expected, new AllQuery()));
+	}
+
+	@Test
+	public void testQueryEarlyExit() {
+		DynamicAABBTree<Object> index = new DynamicAABBTree<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i, 0, 1, 1));
+		}
+
+		assertEquals(10, getVisited(index, new AllQuery(), 10).size());
+		assertEquals(10, getVisited(index, new IntersectionQuery(new AABB2(0, 0, ENTITIES, 1)), 10).size());
+	}
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+
+		DynamicAABBTree<Object> index1 = new DynamicAABBTree<>();
+		DynamicAABBTree<Object> index2 = new DynamicAABBTree<>(1);
+		SpatialIndex<Object> expected1 = new SpatialIndex<>();
+		SpatialIndex<Object> expected2 = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			index1.insert(o, volume);
+			expected1.insert(o, volume);
+		}
+
+		for (int i = 0; i < ENTITIES / 3; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 10);
+
+			index2.insert(o, volume);
+			expected2.insert(o, volume);
+		}
+
+		ensureSameSymmetric(getVisited(index1, index1, new IntersectionJoinQuery()), getVisited(expected1, expected1, new IntersectionJoinQuery()));
+		ensureSame(getVisited(index1, index1, new ContainsJoinQuery()), getVisited(expected1, expected1, new ContainsJoinQuery()));
+		ensureSame(getVisited(index1, index2, new DistanceJoinQuery(1)), getVisited(expected1, expected2, new DistanceJoinQuery(1)));
+		ensureSame(getVisited(index2, index1, new ContainedJoinQuery()), getVisited(expected2, expected1, new ContainedJoinQuery()));
+	}
+
+	@Test
+	public void testUpdate() {
+		DynamicAABBTree<Object> index = new DynamicAABBTree<>(0.5f);
+
+		List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			index.insert(objects.get(i), new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.update(objects.get(i), new AABB2(i + (i % 2 == 0 ? 0.25f : ENTITIES), 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			List<Object> expected = new ArrayList<>();
+
+			if (i % 2 == 0) {
+				expected.add(objects.get(i));
+			}
+
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1.5f, 1))), expected);
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i + ENTITIES, 0, 1, 1))), i % 2 == 0 ? new ArrayList<Object>() : Arrays.asList(objects.get(i)));
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		DynamicAABBTree<Object> index = new DynamicAABBTree<>();
+
+		List<Object> set1 = new ArrayList<>();
+		List<Object> set2 = new ArrayList<>();
+
+		Object o1, o2;
+		for (int i = 0; i < ENTITIES; i++) {
+			set1.add(o1 = new Object());
+			set2.add(o2 = new Object());
+
+			index.insert(o1, new AABB2(i, 0, 1, 1));
+			index.insert(o2, new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.remove(set2.get(i));
+		}
+
+		assertEquals(ENTITIES, index.size());
+
+		for (int i = 0; i < ENTITIES; i++) {
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), Arrays.asList(set1.get(i)));
+		}
+
+		index.clear();
+
+		assertEquals(0, index.size());
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+		assertEquals(0, getVisited(index, index, new AllJoinQuery()).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateInsert() {
+		DynamicAABBTree<Object> index = new DynamicAABBTree<>();
+		Object o = new Object();
+
+		index.insert(o, new AABB2(0, 0, 1, 1));
+		index.insert(o, new AABB2(0, 0, 1, 1));
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testModificationDuringTraversal() {
+		final DynamicAABBTree<Object> index = new DynamicAABBTree<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				index.insert(new Object(), new AABB2(0, 0, 1, 1));
+				return true;
+			}
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		DynamicAABBTree<Object> index = new DynamicAABBTree<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+	}
+
+	private <T> List<T> getVisited(DynamicAABBTree<T> index, Query query) {
+		return getVisited(index, query, Integer.MAX_VALUE);
+	}
+
+	private <T> List<T> getVisited(DynamicAABBTree<T> index, Query query, final int limit) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o) && visited.size() < limit;
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(DynamicAABBTree<T> index1, DynamicAABBTree<T> index2, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.Random;
+
+/**
+ * Measures the cost of insertions, updates, and queries for a range of node fanouts.
+ * <p>
+ * This is not a unit test. After <tt>mvn test-compile</tt>, run it with <tt>java -cp
+ * target/classes:target/test-classes com.kauridev.scout.FanoutBenchmark [entities]</tt>. Each
+ * fanout is measured over several rounds and the last round is reported, allowing the earlier
+ * rounds to warm up the JIT.
+ *
+ * @author Eric Fritz
+ */
+public class FanoutBenchmark
+{
+	private static final int[] FANOUTS = {4, 8, 16, 32, 64, 128};
+
+	private static final int ROUNDS = 4;
+
+	private static final int QUERIES = 10000;
+
+	private static final float WORLD_SIZE = 10000;
+
+	private static final float OBJECT_SIZE = 2;
+
+	private static final float QUERY_SIZE = 100;
+
+	private static final float STEP_SIZE = 1;
+
+	public static void main(String[] args) {
+		int entities = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		System.out.println(String.format("%d entities", entities));
+		System.out.println(String.format("%8s %14s %14s %14s", "fanout", "insert ns/op", "update ns/op", "query ns/op"));
+
+		for (int fanout : FANOUTS) {
+			long[] result = null;
+
+			for (int round = 0; round < ROUNDS; round++) {
+				result = run(new SpatialIndexConfig().setMaxEntries(fanout).setMinEntries(Math.max(1, fanout * 3 / 8)), entities);
+			}
+
+			System.out.println(String.format("%8d %14d %14d %14d", fanout, result[0] / entities, result[1] / entities, result[2] / QUERIES));
+		}
+	}
+
+	private static long[] run(SpatialIndexConfig config, int entities) {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>(config);
+
+		Object[] objects = new Object[entities];
+		float[] x = new float[entities];
+		float[] y = new float[entities];
+
+		for (int i = 0; i < entities; i++) {
+			objects[i] = new Object();
+			x[i] = random.nextFloat() * WORLD_SIZE;
+			y[i] = random.nextFloat() * WORLD_SIZE;
+		}
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < entities; i++) {
+			index.insert(objects[i], new AABB2(x[i], y[i], OBJECT_SIZE, OBJECT_SIZE));
+		}
+
+		long insert = System.nanoTime() - start;
+
+		for (int i = 0; i < entities; i++) {
+			x[i] += (random.nextFloat() - 0.5f) * 2 * STEP_SIZE;
+			y[i] += (random.nextFloat() - 0.5f) * 2 * STEP_SIZE;
+		}
+
+		start = System.nanoTime();
+
+		for (int i = 0; i < entities; i++) {
+			index.update(objects[i], new AABB2(x[i], y[i], OBJECT_SIZE, OBJECT_SIZE));
+		}
+
+		long update = System.nanoTime() - start;
+
+		final int[] matches = new int[1];
+		QueryResultHandler<Object> handler = new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object object) {
+				matches[0]++;
+				return true;
+			}
+		};
+
+		start = System.nanoTime();
+
+		for (int i = 0; i < QUERIES; i++) {
+			float qx = random.nextFloat() * WORLD_SIZE;
+			float qy = random.nextFloat() * WORLD_SIZE;
+
+			index.query(new IntersectionQuery(new AABB2(qx, qy, QUERY_SIZE, QUERY_SIZE)), handler);
+		}
+
+		long query = System.nanoTime() - start;
+
+		if (matches[0] < 0) {
+			throw new IllegalStateException();
+		}
+
+		return new long[] {insert, update, query};
+	}
+}
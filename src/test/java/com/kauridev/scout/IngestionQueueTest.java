@@ -0,0 +1,238 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Eric Fritz
+ */
+public class IngestionQueueTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final int THREADS = 4;
+
+	@Test
+	public void testApply() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		IngestionQueue<Object> queue = new IngestionQueue<>(index);
+
+		for (int i = 0; i < ENTITIES; i++) {
+			queue.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+		assertEquals(ENTITIES, queue.apply());
+		assertEquals(ENTITIES, getVisited(index, new AllQuery()).size());
+		assertEquals(0, queue.apply());
+	}
+
+	@Test
+	public void testCoalescing() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		IngestionQueue<Object> queue = new IngestionQueue<>(index);
+
+		Object o1 = new Object();
+		Object o2 = new Object();
+		Object o3 = new Object();
+		Object o4 = new Object();
+		Object o5 = new Object();
+
+		index.insert(o2, new AABB2(0, 0, 1, 1));
+		index.insert(o4, new AABB2(0, 0, 1, 1));
+		index.insert(o5, new AABB2(0, 0, 1, 1));
+
+		queue.insert(o1, new AABB2(0, 0, 1, 1));
+		queue.update(o1, new AABB2(10, 0, 1, 1));
+		queue.update(o1, new AABB2(20, 0, 1, 1));
+
+		queue.update(o2, new AABB2(10, 0, 1, 1));
+		queue.remove(o2);
+		queue.update(o2, new AABB2(20, 0, 1, 1));
+
+		queue.insert(o3, new AABB2(20, 0, 1, 1));
+		queue.remove(o3);
+
+		queue.remove(o4);
+		queue.insert(o4, new AABB2(20, 0, 1, 1));
+
+		queue.update(o5, new AABB2(10, 0, 1, 1));
+		queue.insert(o5, new AABB2(20, 0, 1, 1));
+
+		assertEquals(12, queue.apply());
+
+		ensureSame(getVisited(index, new AllQuery()), Arrays.asList(o1, o4, o5));
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(20, 0, 1, 1))), Arrays.asList(o1, o4, o5));
+	}
+
+	@Test
+	public void testReinsert() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		IngestionQueue<Object> queue = new IngestionQueue<>(index);
+		Object o = new Object();
+
+		queue.insert(o, new AABB2(0, 0, 1, 1));
+		queue.apply();
+		queue.insert(o, new AABB2(20, 0, 1, 1));
+		queue.apply();
+
+		ensureSame(getVisited(index, new AllQuery()), Arrays.asList(o));
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(0, 0, 1, 1))), new ArrayList<Object>());
+
+		queue.remove(o);
+		queue.apply();
+
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+	}
+
+	@Test
+	public void testApplyLimit() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		IngestionQueue<Object> queue = new IngestionQueue<>(index);
+
+		for (int i = 0; i < 10; i++) {
+			queue.insert(new Object(), new AABB2(i, 0, 1, 1));
+		}
+
+		assertEquals(4, queue.apply(4));
+		assertEquals(4, getVisited(index, new AllQuery()).size());
+		assertEquals(6, queue.apply());
+		assertEquals(10, getVisited(index, new AllQuery()).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		IngestionQueue<Object> queue = new IngestionQueue<>(new SpatialIndex<Object>());
+
+		queue.insert(new Object(), new AABB2(0, 0, 1, 1));
+		queue.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedIndexDimensions() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		index.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+
+		new IngestionQueue<Object>(index).insert(new Object(), new AABB2(0, 0, 1, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDisplacement() {
+		IngestionQueue<Object> queue = new IngestionQueue<>(new SpatialIndex<Object>());
+		queue.update(new Object(), new AABB2(0, 0, 1, 1), new float[] { 1, 1, 1 });
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentProducers() throws InterruptedException {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		final IngestionQueue<Object> queue = new IngestionQueue<>(index);
+		final List<Map<Object, AABB>> states = new ArrayList<>();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		Thread[] threads = new Thread[THREADS];
+
+		for (int t = 0; t < THREADS; t++) {
+			final Map<Object, AABB> state = new HashMap<>();
+			states.add(state);
+
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random();
+						List<Object> objects = new ArrayList<>();
+
+						for (int i = 0; i < ENTITIES / THREADS; i++) {
+							objects.add(new Object());
+						}
+
+						for (int k = 0; k < 20 * ENTITIES; k++) {
+							Object o = objects.get(random.nextInt(objects.size()));
+							AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1);
+
+							if (!state.containsKey(o)) {
+								queue.insert(o, volume);
+								state.put(o, volume);
+							} else if (random.nextInt(4) == 0) {
+								queue.remove(o);
+								state.remove(o);
+							} else {
+								queue.update(o, volume);
+								state.put(o, volume);
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+
+			threads[t].start();
+		}
+
+		boolean running = true;
+
+		while (running) {
+			running = false;
+
+			for (Thread thread : threads) {
+				running |= thread.isAlive();
+			}
+
+			queue.apply(ENTITIES);
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		queue.apply();
+		assertNull(failure.get());
+
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (Map<Object, AABB> state : states) {
+			for (Map.Entry<Object, AABB> entry : state.entrySet()) {
+				expected.insert(entry.getKey(), entry.getValue());
+			}
+		}
+
+		ensureSame(getVisited(index, new AllQuery()), getVisited(expected, new AllQuery()));
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Eric Fritz
+ */
+public class IntSpatialIndexTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	@Test
+	public void testQuery() {
+		IntSpatialIndex index = new IntSpatialIndex();
+		List<Integer> expected = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(2 * i + 0, new AABB2(10 * i, 0, 10, 5));
+			index.insert(2 * i + 1, new AABB2(10 * i, 5, 10, 5));
+
+			if (i < ENTITIES / 4) {
+				expected.add(2 * i + 0);
+				expected.add(2 * i + 1);
+			}
+		}
+
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(1, 1, ENTITIES / 4 * 10 - 2, 8))), expected);
+	}
+
+	@Test
+	public void testQueryEarlyExit() {
+		IntSpatialIndex index = new IntSpatialIndex();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(i, new AABB2(i, 0, 1, 1));
+		}
+
+		assertEquals(10, getVisited(index, new AllQuery(), 10).size());
+	}
+
+	@Test
+	public void testJoin() {
+		IntSpatialIndex index = new IntSpatialIndex();
+		List<Pair<Integer>> expected = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(i, new AABB2(5 * i, 0, 5, 5));
+
+			if (i > 0) {
+				expected.add(new Pair<>(i - 1, i));
+			}
+		}
+
+		final List<Pair<Integer>> visited = new ArrayList<>();
+
+		index.query(new DistanceJoinQuery(1), new IntJoinQueryResultHandler() {
+			@Override
+			public boolean handle(int id1, int id2) {
+				return visited.add(new Pair<>(id1, id2));
+			}
+		});
+
+		ensureSameSymmetric(visited, expected);
+	}
+
+	@Test
+	public void testUpdate() {
+		IntSpatialIndex index = new IntSpatialIndex();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(3 * i + 0, new AABB2(3 * i + 0, 0, 1, 1));
+			index.insert(3 * i + 1, new AABB2(3 * i + 1, 0, 1, 1));
+			index.insert(3 * i + 2, new AABB2(3 * i + 2, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.update(3 * i + 0, new AABB2(3 * i + 0, 0, 1, 1)); // Moves none
+			index.update(3 * i + 1, new AABB2(3 * i + 2, 0, 1, 1)); // Moves within leaf (likely)
+			index.update(3 * i + 2, new AABB2(3 * i + 2, 1, 1, 1)); // Moves out of leaf
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(3 * i + 0, 0, 1, 1))), Arrays.asList(3 * i + 0));
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(3 * i + 2, 0, 1, 1))), Arrays.asList(3 * i + 1));
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(3 * i + 2, 1, 1, 1))), Arrays.asList(3 * i + 2));
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		IntSpatialIndex index = new IntSpatialIndex();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(2 * i + 0, new AABB2(i, 0, 1, 1));
+			index.insert(2 * i + 1, new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.remove(2 * i + 1);
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			assertTrue(index.contains(2 * i + 0));
+			assertFalse(index.contains(2 * i + 1));
+
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), Arrays.asList(2 * i + 0));
+		}
+	}
+
+	@Test
+	public void testSiblingMerging() {
+		IntSpatialIndex index = new IntSpatialIndex(new SpatialIndexConfig().setSiblingMerging(true).setMaxEntries(4).setMinEntries(2));
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(i, new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			if (i % 10 != 0) {
+				index.remove(i);
+			}
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			assertEquals(i % 10 == 0, index.contains(i));
+
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), i % 10 == 0 ? Arrays.asList(i) : new ArrayList<Integer>());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateInsert() {
+		IntSpatialIndex index = new IntSpatialIndex();
+
+		index.insert(1, new AABB2(0, 0, 1, 1));
+		index.insert(1, new AABB2(0, 0, 1, 1));
+	}
+
+	private List<Integer> getVisited(IntSpatialIndex index, Query query) {
+		return getVisited(index, query, Integer.MAX_VALUE);
+	}
+
+	private List<Integer> getVisited(IntSpatialIndex index, Query query, final int limit) {
+		final List<Integer> visited = new ArrayList<>();
+
+		index.query(query, new IntQueryResultHandler() {
+			@Override
+			public boolean handle(int id) {
+				return visited.add(id) && visited.size() < limit;
+			}
+		});
+
+		return visited;
+	}
+}
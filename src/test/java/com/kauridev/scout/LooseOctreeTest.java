@@ -0,0 +1,129 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Eric Fritz
+ */
+public class LooseOctreeTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final AABB3 WORLD = new AABB3(0, 0, 0, 100, 100, 100);
+
+	@Test
+	public void testQuery() {
+		Random random = new Random(1);
+		LooseOctree<Object> index = new LooseOctree<>(WORLD, 5);
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = getVolume(random, i % 10 == 0 ? 40 : 5);
+
+			index.insert(o, volume);
+			expected.insert(o, volume);
+		}
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB3(k * 10, k * 5, k * 2, 30, 30, 30);
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(index, new ContainsQuery(query)), getVisited(expected, new ContainsQuery(query)));
+			ensureSame(getVisited(index, new DistanceQuery(query, 3)), getVisited(expected, new DistanceQuery(query, 3)));
+		}
+	}
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+
+		LooseOctree<Object> index1 = new LooseOctree<>(WORLD, 5);
+		LooseOctree<Object> index2 = new LooseOctree<>(WORLD, 3);
+		SpatialIndex<Object> expected1 = new SpatialIndex<>();
+		SpatialIndex<Object> expected2 = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = getVolume(random, 10);
+
+			index1.insert(o, volume);
+			expected1.insert(o, volume);
+		}
+
+		for (int i = 0; i < ENTITIES / 3; i++) {
+			Object o = new Object();
+			AABB volume = getVolume(random, 20);
+
+			index2.insert(o, volume);
+			expected2.insert(o, volume);
+		}
+
+		ensureSameSymmetric(getVisited(index1, index1, new IntersectionJoinQuery()), getVisited(expected1, expected1, new IntersectionJoinQuery()));
+		ensureSame(getVisited(index1, index2, new ContainsJoinQuery()), getVisited(expected1, expected2, new ContainsJoinQuery()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDepth() {
+		new LooseOctree<Object>(WORLD, -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		new LooseOctree<Object>(WORLD).query(new LooseQuadtree<Object>(new AABB2(0, 0, 100, 100)), new AllJoinQuery(), null);
+	}
+
+	private AABB getVolume(Random random, float size) {
+		return new AABB3(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * size, random.nextFloat() * size, random.nextFloat() * size);
+	}
+
+	private <T> List<T> getVisited(LooseTree<T> index, Query query) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o);
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(LooseTree<T> index1, LooseTree<T> index2, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eric Fritz
+ */
+public class LooseQuadtreeTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final AABB2 WORLD = new AABB2(0, 0, 100, 100);
+
+	@Test
+	public void testQuery() {
+		Random random = new Random(1);
+		LooseQuadtree<Object> index = new LooseQuadtree<>(WORLD);
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			float size = i % 10 == 0 ? 20 : 2;
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * size, random.nextFloat() * size);
+
+			index.insert(o, volume);
+			expected.insert(o, volume);
+		}
+
+		assertEquals(ENTITIES, index.size());
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(index, new ContainsQuery(query)), getVisited(expected, new ContainsQuery(query)));
+			ensureSame(getVisited(index, new ContainedQuery(new AABB2(k * 10, k * 5, 1, 1))), getVisited(expected, new ContainedQuery(new AABB2(k * 10, k * 5, 1, 1))));
+			ensureSame(getVisited(index, new DistanceQuery(query, 3)), getVisited(expected, new DistanceQuery(query, 3)));
+		}
+
+		ensureSame(getVisited(index, new AllQuery()), getVisited(expected, new AllQuery()));
+	}
+
+	@Test
+	public void testQueryPass() {
+		LooseQuadtree<Object> index = new LooseQuadtree<>(WORLD);
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 10, 1, 1));
+		}
+
+		final int[] tests = new int[1];
+
+		List<Object> visited = getVisited(index, new Query() {
+			@Override
+			public QueryResult query(AABB volume, boolean partial) {
+				if (!partial) {
+					tests[0]++;
+				}
+
+				return QueryResult.PASS;
+			}
+		});
+
+		assertEquals(ENTITIES, visited.size());
+		assertEquals(0, tests[0]);
+	}
+
+	@Test
+	public void testOutliers() {
+		LooseQuadtree<Object> index = new LooseQuadtree<>(WORLD);
+
+		Object o1 = new Object();
+		Object o2 = new Object();
+		Object o3 = new Object();
+
+		index.insert(o1, new AABB2(50, 50, 1, 1));
+		index.insert(o2, new AABB2(-50, -50, 200, 200));
+		index.insert(o3, new AABB2(150, 50, 1, 1));
+
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(40, 40, 20, 20))), Arrays.asList(o1, o2));
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(140, 40, 20, 20))), Arrays.asList(o2, o3));
+		ensureSameSymmetric(getVisited(index, index, new IntersectionJoinQuery()), Arrays.asList(new Pair<>(o1, o2), new Pair<>(o2, o3)));
+
+		index.update(o3, new AABB2(50.5f, 50.5f, 1, 1));
+
+		ensureSameSymmetric(getVisited(index, index, new IntersectionJoinQuery()), Arrays.asList(new Pair<>(o1, o2), new Pair<>(o2, o3), new Pair<>(o1, o3)));
+	}
+
+	@Test
+	public void testQueryEarlyExit() {
+		LooseQuadtree<Object> index = new LooseQuadtree<>(WORLD);
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 10, 1, 1));
+		}
+
+		assertEquals(10, getVisited(index, new AllQuery(), 10).size());
+		assertEquals(10, getVisited(index, new IntersectionQuery(new AABB2(0, 0, 100, 1)), 10).size());
+	}
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+
+		LooseQuadtree<Object> index1 = new LooseQuadtree<>(WORLD);
+		LooseQuadtree<Object> index2 = new LooseQuadtree<>(new AABB2(-50, -50, 200, 200), 4);
+		SpatialIndex<Object> expected1 = new SpatialIndex<>();
+		SpatialIndex<Object> expected2 = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			index1.insert(o, volume);
+			expected1.insert(o, volume);
+		}
+
+		for (int i = 0; i < ENTITIES / 3; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 10);
+
+			index2.insert(o, volume);
+			expected2.insert(o, volume);
+		}
+
+		ensureSameSymmetric(getVisited(index1, index1, new IntersectionJoinQuery()), getVisited(expected1, expected1, new IntersectionJoinQuery()));
+		ensureSame(getVisited(index1, index1, new ContainsJoinQuery()), getVisited(expected1, expected1, new ContainsJoinQuery()));
+		ensureSame(getVisited(index1, index2, new DistanceJoinQuery(1)), getVisited(expected1, expected2, new DistanceJoinQuery(1)));
+		ensureSame(getVisited(index2, index1, new ContainedJoinQuery()), getVisited(expected2, expected1, new ContainedJoinQuery()));
+	}
+
+	@Test
+	public void testUpdate() {
+		LooseQuadtree<Object> index = new LooseQuadtree<>(new AABB2(0, 0, ENTITIES, ENTITIES));
+
+		List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			index.insert(objects.get(i), new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.update(objects.get(i), i % 2 == 0 ? new AABB2(i, 0.25f, 1, 1) : new AABB2(i, ENTITIES - 10, 1, 10));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1.5f))), i % 2 == 0 ? Arrays.asList(objects.get(i)) : new ArrayList<Object>());
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, ENTITIES - 10, 1, 10))), i % 2 == 0 ? new ArrayList<Object>() : Arrays.asList(objects.get(i)));
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		LooseQuadtree<Object> index = new LooseQuadtree<>(new AABB2(0, 0, ENTITIES, ENTITIES));
+
+		List<Object> set1 = new ArrayList<>();
+		List<Object> set2 = new ArrayList<>();
+
+		Object o1, o2;
+		for (int i = 0; i < ENTITIES; i++) {
+			set1.add(o1 = new Object());
+			set2.add(o2 = new Object());
+
+			index.insert(o1, new AABB2(i, 0, 1, 1));
+			index.insert(o2, new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.remove(set2.get(i));
+		}
+
+		assertEquals(ENTITIES, index.size());
+
+		for (int i = 0; i < ENTITIES; i++) {
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), Arrays.asList(set1.get(i)));
+		}
+
+		index.clear();
+
+		assertEquals(0, index.size());
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+		assertEquals(0, getVisited(index, index, new AllJoinQuery()).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyWorld() {
+		new LooseQuadtree<Object>(new AABB2(0, 0, 0, 100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		LooseQuadtree<Object> index = new LooseQuadtree<>(WORLD);
+
+		index.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+	}
+
+	private <T> List<T> getVisited(LooseTree<T> index, Query query) {
+		return getVisited(index, query, Integer.MAX_VALUE);
+	}
+
+	private <T> List<T> getVisited(LooseTree<T> index, Query query, final int limit) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o) && visited.size() < limit;
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(LooseTree<T> index1, LooseTree<T> index2, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
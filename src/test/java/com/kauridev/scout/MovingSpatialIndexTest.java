@@ -0,0 +1,174 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * @author Eric Fritz
+ */
+public class MovingSpatialIndexTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	@Test
+	public void testQuery() {
+		MovingSpatialIndex<Object> index = new MovingSpatialIndex<>();
+		List<Object> expected1 = new ArrayList<>();
+		List<Object> expected2 = new ArrayList<>();
+
+		Object o;
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(o = new Object(), new AABB2(i, 0, 1, 1), new float[] { 0, i % 2 }, 0);
+
+			if (i % 2 == 0) {
+				expected1.add(o);
+			} else {
+				expected2.add(o);
+			}
+		}
+
+		ensureSame(getVisited(index, new ContainsQuery(new AABB2(0, 0, ENTITIES, 1)), 10), expected1);
+		ensureSame(getVisited(index, new ContainsQuery(new AABB2(0, 10, ENTITIES, 1)), 10), expected2);
+		ensureSame(getVisited(index, new ContainsQuery(new AABB2(0, -10, ENTITIES, 1)), -10), expected2);
+	}
+
+	@Test
+	public void testMovement() {
+		Random random = new Random(1);
+		MovingSpatialIndex<Object> index = new MovingSpatialIndex<>(new SpatialIndexConfig(), 5);
+
+		Object[] objects = new Object[ENTITIES];
+		float[][] positions = new float[ENTITIES][];
+		float[][] velocities = new float[ENTITIES][];
+		float[] times = new float[ENTITIES];
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects[i] = new Object();
+			positions[i] = new float[] { random.nextFloat() * 100, random.nextFloat() * 100 };
+			velocities[i] = new float[] { random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1 };
+
+			index.insert(objects[i], new AABB2(positions[i][0], positions[i][1], 1, 1), velocities[i], 0);
+		}
+
+		for (int step = 1; step <= 20; step++) {
+			for (int i = step % 3; i < ENTITIES; i += 3) {
+				if (i % 7 == 0) {
+					index.remove(objects[i]);
+					positions[i] = null;
+					continue;
+				}
+
+				if (positions[i] == null) {
+					continue;
+				}
+
+				positions[i] = position(positions[i], velocities[i], step - times[i]);
+				velocities[i] = new float[] { random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1 };
+				times[i] = step;
+
+				index.update(objects[i], new AABB2(positions[i][0], positions[i][1], 1, 1), velocities[i], step);
+			}
+
+			if (step % 5 == 0) {
+				index.rebase(step);
+			}
+
+			for (float time = step - 2; time <= step + 2; time += 1.5f) {
+				AABB query = new AABB2(step * 4, step * 2, 20, 20);
+				List<Object> expected = new ArrayList<>();
+
+				for (int i = 0; i < ENTITIES; i++) {
+					if (positions[i] != null) {
+						float[] p = position(positions[i], velocities[i], time - times[i]);
+
+						if (query.intersects(new AABB2(p[0], p[1], 1, 1))) {
+							expected.add(objects[i]);
+						}
+					}
+				}
+
+				ensureSame(getVisited(index, new IntersectionQuery(query), time), expected);
+			}
+		}
+	}
+
+	@Test
+	public void testJoin() {
+		MovingSpatialIndex<Object> index1 = new MovingSpatialIndex<>();
+		MovingSpatialIndex<Object> index2 = new MovingSpatialIndex<>();
+
+		List<Pair<Object>> expected = new ArrayList<>();
+
+		Object o1, o2;
+		for (int i = 0; i < ENTITIES; i++) {
+			index1.insert(o1 = new Object(), new AABB2(10 * i, 0, 1, 1), new float[] { 0, 1 }, 0);
+			index2.insert(o2 = new Object(), new AABB2(10 * i, 20, 1, 1), new float[] { 0, -1 }, 0);
+
+			expected.add(new Pair<>(o1, o2));
+		}
+
+		ensureSame(getVisited(index1, index2, new IntersectionJoinQuery(), 0), new ArrayList<Pair<Object>>());
+		ensureSame(getVisited(index1, index2, new IntersectionJoinQuery(), 10), expected);
+		ensureSame(getVisited(index1, index1, new IntersectionJoinQuery(), 10), new ArrayList<Pair<Object>>());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedVelocity() {
+		MovingSpatialIndex<Object> index = new MovingSpatialIndex<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1), new float[] { 1, 1, 1 }, 0);
+	}
+
+	private float[] position(float[] position, float[] velocity, float dt) {
+		return new float[] { position[0] + velocity[0] * dt, position[1] + velocity[1] * dt };
+	}
+
+	private <T> List<T> getVisited(MovingSpatialIndex<T> index, Query query, float time) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, time, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o);
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(MovingSpatialIndex<T> index1, MovingSpatialIndex<T> index2, JoinQuery query, float time) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, time, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eric Fritz
+ */
+public class PackedSpatialIndexTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	@Test
+	public void testQuery() {
+		Random random = new Random(1);
+		Map<Object, AABB> objects = new HashMap<>();
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			objects.put(o, volume);
+			expected.insert(o, volume);
+		}
+
+		PackedSpatialIndex<Object> index = new PackedSpatialIndex<>(objects, 4);
+
+		assertEquals(ENTITIES, index.size());
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(index, new ContainsQuery(query)), getVisited(expected, new ContainsQuery(query)));
+		}
+
+		ensureSame(getVisited(index, new AllQuery()), getVisited(expected, new AllQuery()));
+	}
+
+	@Test
+	public void testQueryEarlyExit() {
+		Object[] objects = new Object[ENTITIES];
+		AABB[] volumes = new AABB[ENTITIES];
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects[i] = new Object();
+			volumes[i] = new AABB2(i, 0, 1, 1);
+		}
+
+		PackedSpatialIndex<Object> index = new PackedSpatialIndex<>(objects, volumes);
+
+		assertEquals(10, getVisited(index, new AllQuery(), 10).size());
+		assertEquals(10, getVisited(index, new IntersectionQuery(new AABB2(0, 0, ENTITIES, 1)), 10).size());
+	}
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+		Object[] objects1 = new Object[ENTITIES];
+		Object[] objects2 = new Object[ENTITIES / 3];
+		AABB[] volumes1 = new AABB[objects1.length];
+		AABB[] volumes2 = new AABB[objects2.length];
+
+		SpatialIndex<Object> expected1 = new SpatialIndex<>();
+		SpatialIndex<Object> expected2 = new SpatialIndex<>();
+
+		for (int i = 0; i < objects1.length; i++) {
+			objects1[i] = new Object();
+			volumes1[i] = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+			expected1.insert(objects1[i], volumes1[i]);
+		}
+
+		for (int i = 0; i < objects2.length; i++) {
+			objects2[i] = new Object();
+			volumes2[i] = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 10);
+			expected2.insert(objects2[i], volumes2[i]);
+		}
+
+		PackedSpatialIndex<Object> index1 = new PackedSpatialIndex<>(objects1, volumes1, 4);
+		PackedSpatialIndex<Object> index2 = new PackedSpatialIndex<>(objects2, volumes2);
+
+		ensureSameSymmetric(getVisited(index1, index1, new IntersectionJoinQuery()), getVisited(expected1, expected1, new IntersectionJoinQuery()));
+		ensureSame(getVisited(index1, index1, new ContainsJoinQuery()), getVisited(expected1, expected1, new ContainsJoinQuery()));
+		ensureSame(getVisited(index1, index2, new DistanceJoinQuery(1)), getVisited(expected1, expected2, new DistanceJoinQuery(1)));
+		ensureSame(getVisited(index2, index1, new ContainedJoinQuery()), getVisited(expected2, expected1, new ContainedJoinQuery()));
+	}
+
+	@Test
+	public void testThreeDimensions() {
+		Object[] objects = new Object[ENTITIES];
+		AABB[] volumes = new AABB[ENTITIES];
+		List<Object> expected = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects[i] = new Object();
+			volumes[i] = new AABB3(i, 0, i % 2, 1, 1, 1);
+
+			if (i % 2 == 0) {
+				expected.add(objects[i]);
+			}
+		}
+
+		PackedSpatialIndex<Object> index = new PackedSpatialIndex<>(objects, volumes);
+
+		ensureSame(getVisited(index, new ContainsQuery(new AABB3(0, 0, 0, ENTITIES, 1, 1))), expected);
+	}
+
+	@Test
+	public void testEmpty() {
+		PackedSpatialIndex<Object> index = new PackedSpatialIndex<>(new HashMap<Object, AABB>());
+
+		assertEquals(0, index.size());
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+		assertEquals(0, getVisited(index, index, new AllJoinQuery()).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		new PackedSpatialIndex<>(new Object[] { new Object(), new Object() }, new AABB[] { new AABB2(0, 0, 1, 1), new AABB3(0, 0, 0, 1, 1, 1) });
+	}
+
+	private <T> List<T> getVisited(PackedSpatialIndex<T> index, Query query) {
+		return getVisited(index, query, Integer.MAX_VALUE);
+	}
+
+	private <T> List<T> getVisited(PackedSpatialIndex<T> index, Query query, final int limit) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o) && visited.size() < limit;
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(PackedSpatialIndex<T> index1, PackedSpatialIndex<T> index2, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Eric Fritz
+ */
+public class ShardedSpatialIndexTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void testQuery() {
+		Random random = new Random(1);
+		ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+
+			// Some objects lie partly or entirely outside of the world.
+			AABB volume = new AABB2(random.nextFloat() * 120 - 10, random.nextFloat() * 120 - 10, random.nextFloat() * 10, random.nextFloat() * 10);
+
+			index.insert(o, volume);
+			expected.insert(o, volume);
+		}
+
+		assertEquals(16, index.getShardCount());
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(index, new ContainedQuery(query)), getVisited(expected, new ContainedQuery(query)));
+			ensureSame(getVisited(index, new DistanceQuery(query, 3)), getVisited(expected, new DistanceQuery(query, 3)));
+		}
+
+		ensureSame(getVisited(index, new AllQuery()), getVisited(expected, new AllQuery()));
+	}
+
+	@Test
+	public void testQueryEarlyExit() {
+		ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 10, 1, 1));
+		}
+
+		final List<Object> visited = new ArrayList<>();
+
+		index.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				return visited.add(o) && visited.size() < 10;
+			}
+		});
+
+		assertEquals(10, visited.size());
+	}
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+		ShardedSpatialIndex<Object> index1 = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 3);
+		ShardedSpatialIndex<Object> index2 = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 2);
+		SpatialIndex<Object> expected1 = new SpatialIndex<>();
+		SpatialIndex<Object> expected2 = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			index1.insert(o, volume);
+			expected1.insert(o, volume);
+		}
+
+		for (int i = 0; i < ENTITIES / 3; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 10);
+
+			index2.insert(o, volume);
+			expected2.insert(o, volume);
+		}
+
+		ensureSameSymmetric(getVisited(index1, index1, new IntersectionJoinQuery()), getVisited(expected1, expected1, new IntersectionJoinQuery()));
+		ensureSame(getVisited(index1, index1, new ContainsJoinQuery()), getVisited(expected1, expected1, new ContainsJoinQuery()));
+		ensureSame(getVisited(index1, index2, new DistanceJoinQuery(1)), getVisited(expected1, expected2, new DistanceJoinQuery(1)));
+		ensureSame(getVisited(index2, index1, new ContainedJoinQuery()), getVisited(expected2, expected1, new ContainedJoinQuery()));
+	}
+
+	@Test
+	public void testMigration() {
+		ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+		Object o = new Object();
+
+		index.insert(o, new AABB2(10, 10, 1, 1));
+		index.update(o, new AABB2(90, 90, 1, 1), new float[] { 1, 1 });
+
+		assertEquals(1, getVisited(index, new AllQuery()).size());
+		assertEquals(0, getVisited(index, new IntersectionQuery(new AABB2(0, 0, 50, 50))).size());
+		assertEquals(1, getVisited(index, new IntersectionQuery(new AABB2(50, 50, 50, 50))).size());
+
+		index.update(o, new AABB2(-50, 10, 1, 1));
+		assertEquals(1, getVisited(index, new IntersectionQuery(new AABB2(-60, 0, 20, 20))).size());
+
+		index.remove(o);
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+	}
+
+	@Test
+	public void testClear() {
+		ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 10, 1, 1));
+		}
+
+		index.clear();
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		assertEquals(1, getVisited(index, new AllQuery()).size());
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testModificationDuringQuery() {
+		final ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+
+		index.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				index.remove(o);
+				return true;
+			}
+		});
+	}
+
+	@Test(timeout = 60000)
+	public void testNestedQueryDuringMigration() throws InterruptedException {
+		final ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+		final Object moving = new Object();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 10, 1, 1));
+		}
+
+		index.insert(moving, new AABB2(10, 10, 1, 1));
+
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AtomicBoolean done = new AtomicBoolean();
+
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; !done.get(); i++) {
+						index.update(moving, i % 2 == 0 ? new AABB2(90, 90, 1, 1) : new AABB2(10, 10, 1, 1));
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			}
+		};
+
+		writer.start();
+
+		try {
+			for (int i = 0; i < 1000; i++) {
+				final int[] rejected = new int[1];
+
+				index.query(new AllQuery(), new QueryResultHandler<Object>() {
+					@Override
+					public boolean handle(Object o) {
+						try {
+							index.query(new IntersectionQuery(new AABB2(0, 0, 100, 100)), new QueryResultHandler<Object>() {
+								@Override
+								public boolean handle(Object o) {
+									return true;
+								}
+							});
+						} catch (ConcurrentModificationException e) {
+							rejected[0]++;
+						}
+
+						return false;
+					}
+				});
+
+				assertEquals(1, rejected[0]);
+			}
+		} finally {
+			done.set(true);
+			writer.join();
+		}
+
+		assertNull(failure.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+		index.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentWriters() throws InterruptedException {
+		final ShardedSpatialIndex<Object> index = new ShardedSpatialIndex<>(new AABB2(0, 0, 100, 100), 4);
+		final List<List<Object>> objects = new ArrayList<>();
+
+		for (int t = 0; t < THREADS / 2; t++) {
+			objects.add(new ArrayList<Object>());
+
+			for (int i = 0; i < ENTITIES / (THREADS / 2); i++) {
+				Object o = new Object();
+				objects.get(t).add(o);
+				index.insert(o, new AABB2(i % 100, i / 10, 1, 1));
+			}
+		}
+
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AABB world = new AABB2(-10, -10, 120, 120);
+
+		Thread[] threads = new Thread[THREADS];
+
+		for (int t = 0; t < THREADS; t++) {
+			final List<Object> owned = t < THREADS / 2 ? objects.get(t) : null;
+
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random();
+
+						for (int k = 0; k < 100; k++) {
+							if (owned != null) {
+								// Objects migrate between shards, but never leave the world, so every
+								// query of the world should see each of them exactly once.
+
+								for (Object o : owned) {
+									index.update(o, new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+								}
+							} else {
+								assertEquals(ENTITIES, getVisited(index, new IntersectionQuery(world)).size());
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		assertEquals(ENTITIES, getVisited(index, new AllQuery()).size());
+	}
+
+	private <T> List<T> getVisited(ShardedSpatialIndex<T> index, Query query) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o);
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(ShardedSpatialIndex<T> index1, ShardedSpatialIndex<T> index2, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Eric Fritz
+ */
+public class SnapshotTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void testIsolation() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+		List<SpatialIndex.Handle<Object>> handles = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			handles.add(index.insert(o, volume));
+			expected.insert(o, volume);
+		}
+
+		SpatialIndex.Snapshot<Object> snapshot = index.snapshot();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			if (i % 3 == 0) {
+				index.remove(handles.get(i));
+			} else {
+				index.update(handles.get(i), new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+			}
+
+			index.insert(new Object(), new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+		}
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+
+			ensureSame(getVisited(snapshot, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(snapshot, new ContainedQuery(query)), getVisited(expected, new ContainedQuery(query)));
+		}
+
+		ensureSameSymmetric(getVisited(snapshot, new IntersectionJoinQuery()), getVisited(expected, expected, new IntersectionJoinQuery()));
+
+		index.clear();
+		assertEquals(ENTITIES, getVisited(snapshot, new AllQuery()).size());
+		snapshot.release();
+	}
+
+	@Test
+	public void testLazyDeletion() {
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setLazyDeletion(true));
+		List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			objects.add(o);
+			index.insert(o, new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		SpatialIndex.Snapshot<Object> snapshot = index.snapshot();
+
+		for (int i = 0; i < ENTITIES; i += 2) {
+			index.remove(objects.get(i));
+		}
+
+		assertEquals(ENTITIES, getVisited(snapshot, new AllQuery()).size());
+		assertEquals(ENTITIES / 2, getVisited(index, new AllQuery()).size());
+
+		index.compact();
+
+		assertEquals(ENTITIES, getVisited(snapshot, new AllQuery()).size());
+		assertEquals(ENTITIES / 2, getVisited(index, new AllQuery()).size());
+		snapshot.release();
+	}
+
+	@Test
+	public void testModificationDuringQuery() {
+		final SpatialIndex<Object> index = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		SpatialIndex.Snapshot<Object> snapshot = index.snapshot();
+
+		final List<Object> visited = new ArrayList<>();
+
+		snapshot.query(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				index.remove(o);
+				return visited.add(o);
+			}
+		});
+
+		assertEquals(ENTITIES, visited.size());
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+		snapshot.release();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testQueryAfterRelease() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+
+		SpatialIndex.Snapshot<Object> snapshot = index.snapshot();
+		snapshot.release();
+		snapshot.release();
+
+		getVisited(snapshot, new AllQuery());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testJoinSnapshotsOfSameIndex() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+
+		index.snapshot().query(index.snapshot(), new IntersectionJoinQuery(), new JoinQueryResultHandler<Object, Object>() {
+			@Override
+			public boolean handle(Object o1, Object o2) {
+				return true;
+			}
+		});
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentQueries() throws InterruptedException {
+		final SpatialIndex<Object> index = new SpatialIndex<>();
+		final List<SpatialIndex.Handle<Object>> handles = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			handles.add(index.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1)));
+		}
+
+		final List<SpatialIndex.Snapshot<Object>> snapshots = new ArrayList<>();
+		final AtomicReference<SpatialIndex.Snapshot<Object>> current = new AtomicReference<>(index.snapshot());
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AABB world = new AABB2(-10, -10, 120, 120);
+
+		snapshots.add(current.get());
+
+		Thread[] threads = new Thread[THREADS];
+
+		for (int t = 0; t < THREADS; t++) {
+			final boolean writer = t == 0;
+
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random();
+
+						for (int k = 0; k < 200; k++) {
+							if (writer) {
+								// Readers may still hold the previous snapshots, so they are only
+								// released once every thread has finished.
+
+								for (SpatialIndex.Handle<Object> handle : handles) {
+									index.update(handle, new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+								}
+
+								snapshots.add(index.snapshot());
+								current.set(snapshots.get(snapshots.size() - 1));
+							} else {
+								assertEquals(ENTITIES, getVisited(current.get(), new IntersectionQuery(world)).size());
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+
+		for (SpatialIndex.Snapshot<Object> snapshot : snapshots) {
+			snapshot.release();
+		}
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		assertEquals(ENTITIES + 1, getVisited(index, new AllQuery()).size());
+	}
+
+	private <T> List<T> getVisited(SpatialIndex.Snapshot<T> snapshot, Query query) {
+		final List<T> visited = new ArrayList<>();
+
+		snapshot.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o);
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(SpatialIndex.Snapshot<T> snapshot, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		snapshot.query(query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eric Fritz
+ */
+public class SpatialHashIndexTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	@Test
+	public void testQuery() {
+		Random random = new Random(1);
+		SpatialHashIndex<Object> index = new SpatialHashIndex<>(4);
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * (i % 10 == 0 ? 20 : 5), random.nextFloat() * 5);
+
+			index.insert(o, volume);
+			expected.insert(o, volume);
+		}
+
+		assertEquals(ENTITIES, index.size());
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), getVisited(expected, new IntersectionQuery(query)));
+			ensureSame(getVisited(index, new ContainsQuery(query)), getVisited(expected, new ContainsQuery(query)));
+			ensureSame(getVisited(index, new ContainedQuery(new AABB2(k * 10, k * 5, 1, 1))), getVisited(expected, new ContainedQuery(new AABB2(k * 10, k * 5, 1, 1))));
+			ensureSame(getVisited(index, new DistanceQuery(query, 3)), getVisited(expected, new DistanceQuery(query, 3)));
+		}
+
+		ensureSame(getVisited(index, new AllQuery()), getVisited(expected, new AllQuery()));
+	}
+
+	@Test
+	public void testSpanningObjects() {
+		SpatialHashIndex<Object> index = new SpatialHashIndex<>(1);
+
+		Object o1 = new Object();
+		Object o2 = new Object();
+
+		index.insert(o1, new AABB2(0.5f, 0.5f, 1, 1));
+		index.insert(o2, new AABB2(-50, -50, 100, 100));
+
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(-10, -10, 20, 20))), Arrays.asList(o1, o2));
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(1.25f, 1.25f, 1, 1))), Arrays.asList(o1, o2));
+		ensureSameSymmetric(getVisited(index, index, new IntersectionJoinQuery()), Arrays.asList(new Pair<>(o1, o2)));
+	}
+
+	@Test
+	public void testQueryEarlyExit() {
+		SpatialHashIndex<Object> index = new SpatialHashIndex<>(2);
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i, 0, 1, 1));
+		}
+
+		assertEquals(10, getVisited(index, new AllQuery(), 10).size());
+		assertEquals(10, getVisited(index, new IntersectionQuery(new AABB2(0, 0, ENTITIES, 1)), 10).size());
+	}
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+
+		SpatialHashIndex<Object> index1 = new SpatialHashIndex<>(5);
+		SpatialHashIndex<Object> index2 = new SpatialHashIndex<>(3);
+		SpatialIndex<Object> expected1 = new SpatialIndex<>();
+		SpatialIndex<Object> expected2 = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5);
+
+			index1.insert(o, volume);
+			expected1.insert(o, volume);
+		}
+
+		for (int i = 0; i < ENTITIES / 3; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 10);
+
+			index2.insert(o, volume);
+			expected2.insert(o, volume);
+		}
+
+		ensureSameSymmetric(getVisited(index1, index1, new IntersectionJoinQuery()), getVisited(expected1, expected1, new IntersectionJoinQuery()));
+		ensureSame(getVisited(index1, index1, new ContainsJoinQuery()), getVisited(expected1, expected1, new ContainsJoinQuery()));
+		ensureSame(getVisited(index1, index2, new DistanceJoinQuery(1)), getVisited(expected1, expected2, new DistanceJoinQuery(1)));
+		ensureSame(getVisited(index2, index1, new ContainedJoinQuery()), getVisited(expected2, expected1, new ContainedJoinQuery()));
+	}
+
+	@Test
+	public void testUpdate() {
+		SpatialHashIndex<Object> index = new SpatialHashIndex<>(2);
+
+		List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			index.insert(objects.get(i), new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.update(objects.get(i), new AABB2(i, i % 2 == 0 ? 0.25f : ENTITIES, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1.5f))), i % 2 == 0 ? Arrays.asList(objects.get(i)) : new ArrayList<Object>());
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, ENTITIES, 1, 1))), i % 2 == 0 ? new ArrayList<Object>() : Arrays.asList(objects.get(i)));
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		SpatialHashIndex<Object> index = new SpatialHashIndex<>(1);
+
+		List<Object> set1 = new ArrayList<>();
+		List<Object> set2 = new ArrayList<>();
+
+		Object o1, o2;
+		for (int i = 0; i < ENTITIES; i++) {
+			set1.add(o1 = new Object());
+			set2.add(o2 = new Object());
+
+			index.insert(o1, new AABB2(i, 0, 1, 1));
+			index.insert(o2, new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.remove(set2.get(i));
+		}
+
+		assertEquals(ENTITIES, index.size());
+
+		for (int i = 0; i < ENTITIES; i++) {
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), Arrays.asList(set1.get(i)));
+		}
+
+		index.clear();
+
+		assertEquals(0, index.size());
+		assertEquals(0, getVisited(index, new AllQuery()).size());
+		assertEquals(0, getVisited(index, index, new AllJoinQuery()).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCellSize() {
+		new SpatialHashIndex<Object>(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		SpatialHashIndex<Object> index = new SpatialHashIndex<>(1);
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+	}
+
+	private <T> List<T> getVisited(SpatialHashIndex<T> index, Query query) {
+		return getVisited(index, query, Integer.MAX_VALUE);
+	}
+
+	private <T> List<T> getVisited(SpatialHashIndex<T> index, Query query, final int limit) {
+		final List<T> visited = new ArrayList<>();
+
+		index.query(query, new QueryResultHandler<T>() {
+			@Override
+			public boolean handle(T o) {
+				return visited.add(o) && visited.size() < limit;
+			}
+		});
+
+		return visited;
+	}
+
+	private <T> List<Pair<T>> getVisited(SpatialHashIndex<T> index1, SpatialHashIndex<T> index2, JoinQuery query) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index1.query(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		});
+
+		return visited;
+	}
+}
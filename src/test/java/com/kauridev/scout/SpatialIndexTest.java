@@ -23,10 +23,19 @@ package com.kauridev.scout;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Eric Fritz
@@ -115,4 +124,565 @@ public class SpatialIndexTest extends QueryTest
 			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), Arrays.asList(set1.get(i)));
 		}
 	}
+
+	@Test
+	public void testHandles() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+
+		List<SpatialIndex.Handle<Object>> handles = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			handles.add(index.insert(new Object(), new AABB2(i, 0, 1, 1)));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			if (i % 2 == 0) {
+				index.remove(handles.get(i));
+			} else {
+				index.update(handles.get(i), new AABB2(i, i % 3, 1, 1));
+			}
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			List<Object> expected = new ArrayList<>();
+
+			if (i % 2 != 0) {
+				expected.add(handles.get(i).getObject());
+			}
+
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, i % 3, 1, 1))), expected);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForeignHandle() {
+		SpatialIndex<Object> index1 = new SpatialIndex<>();
+		SpatialIndex<Object> index2 = new SpatialIndex<>();
+
+		index2.remove(index1.insert(new Object(), new AABB2(0, 0, 1, 1)));
+	}
+
+	@Test
+	public void testFanout() {
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setMaxEntries(32).setMinEntries(12));
+
+		List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			index.insert(objects.get(i), new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i += 2) {
+			index.remove(objects.get(i));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			List<Object> expected = new ArrayList<>();
+
+			if (i % 2 != 0) {
+				expected.add(objects.get(i));
+			}
+
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), expected);
+		}
+	}
+
+	@Test
+	public void testForcedReinsertion() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setForcedReinsertion(true).setSplitStrategy(new RStarSplitStrategy()));
+
+		List<Object> objects = new ArrayList<>();
+		List<AABB> volumes = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			volumes.add(new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+
+			index.insert(objects.get(i), volumes.get(i));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			if (i % 3 == 0) {
+				index.remove(objects.get(i));
+			} else {
+				volumes.set(i, new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+				index.update(objects.get(i), volumes.get(i));
+			}
+		}
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+			List<Object> expected = new ArrayList<>();
+
+			for (int i = 0; i < ENTITIES; i++) {
+				if (i % 3 != 0 && query.intersects(volumes.get(i))) {
+					expected.add(objects.get(i));
+				}
+			}
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), expected);
+		}
+	}
+
+	@Test
+	public void testBulkLoad() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>();
+
+		Object[] objects = new Object[ENTITIES];
+		AABB[] volumes = new AABB[ENTITIES];
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects[i] = new Object();
+			volumes[i] = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1);
+
+			if (i % 2 == 0) {
+				index.insert(objects[i], volumes[i]);
+			}
+		}
+
+		Map<Object, AABB> remaining = new LinkedHashMap<>();
+
+		for (int i = 1; i < ENTITIES; i += 2) {
+			remaining.put(objects[i], volumes[i]);
+		}
+
+		List<SpatialIndex.Handle<Object>> handles = index.bulkLoad(remaining);
+
+		for (int i = 1; i < ENTITIES; i += 2) {
+			assertEquals(objects[i], handles.get(i / 2).getObject());
+		}
+
+		for (int i = 0; i < ENTITIES; i += 4) {
+			index.remove(objects[i]);
+			index.remove(handles.get(i / 2));
+		}
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+			List<Object> expected = new ArrayList<>();
+
+			for (int i = 0; i < ENTITIES; i++) {
+				if (i % 4 > 1 && query.intersects(volumes[i])) {
+					expected.add(objects[i]);
+				}
+			}
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), expected);
+		}
+
+		index.clear();
+		index.bulkLoad(objects, volumes);
+
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(0, 0, 101, 101))), Arrays.asList(objects));
+	}
+
+	@Test
+	public void testClear() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		SpatialIndex.Handle<Object> handle = index.insert(new Object(), new AABB2(0, 0, 1, 1));
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i, 0, 1, 1));
+		}
+
+		index.clear();
+		index.update(handle, new AABB2(0, 0, 1, 1));
+
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(0, 0, ENTITIES, 1))), new ArrayList<Object>());
+	}
+
+	@Test
+	public void testMargin() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setMargin(2));
+
+		List<SpatialIndex.Handle<Object>> handles = new ArrayList<>();
+		List<AABB> volumes = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			volumes.add(new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+			handles.add(index.insert(new Object(), volumes.get(i)));
+		}
+
+		for (int step = 0; step < 10; step++) {
+			for (int i = 0; i < ENTITIES; i++) {
+				float[] displacement = new float[] { random.nextFloat() - 0.5f, random.nextFloat() - 0.5f };
+
+				AABB volume = volumes.get(i);
+				volumes.set(i, new AABB2(volume.getMinimum(0) + displacement[0], volume.getMinimum(1) + displacement[1], 1, 1));
+				index.update(handles.get(i), volumes.get(i), displacement);
+			}
+		}
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+			List<Object> expected = new ArrayList<>();
+
+			for (int i = 0; i < ENTITIES; i++) {
+				if (query.intersects(volumes.get(i))) {
+					expected.add(handles.get(i).getObject());
+				}
+			}
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), expected);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDisplacement() {
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setMargin(2));
+		SpatialIndex.Handle<Object> handle = index.insert(new Object(), new AABB2(0, 0, 1, 1));
+
+		index.update(handle, new AABB2(1, 1, 1, 1), new float[] { 1, 1, 1 });
+	}
+
+	@Test
+	public void testRefit() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>();
+
+		List<Object> objects = new ArrayList<>();
+		List<AABB> volumes = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			volumes.add(new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+
+			index.insert(objects.get(i), volumes.get(i));
+		}
+
+		for (int step = 0; step < 10; step++) {
+			for (AABB volume : volumes) {
+				float dx = random.nextFloat() * 10 - 5;
+				volume.setBounds(0, volume.getMinimum(0) + dx, volume.getMaximum(0) + dx);
+			}
+
+			index.refit();
+		}
+
+		assertTrue(index.rebuildIfDegraded(0));
+		assertFalse(index.rebuildIfDegraded(Float.POSITIVE_INFINITY));
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+			List<Object> expected = new ArrayList<>();
+
+			for (int i = 0; i < ENTITIES; i++) {
+				if (query.intersects(volumes.get(i))) {
+					expected.add(objects.get(i));
+				}
+			}
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), expected);
+		}
+	}
+
+	@Test
+	public void testBatch() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>();
+
+		List<SpatialIndex.Handle<Object>> handles = new ArrayList<>();
+		List<AABB> volumes = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			volumes.add(new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+			handles.add(index.insert(new Object(), volumes.get(i)));
+		}
+
+		index.beginBatch();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			AABB volume = volumes.get(i);
+
+			if (i % 2 == 0) {
+				volumes.set(i, new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, 1, 1));
+				index.update(handles.get(i), new AABB2(-10, -10, 1, 1));
+			} else {
+				volumes.set(i, new AABB2(volume.getMinimum(0) + 0.1f, volume.getMinimum(1), 1, 1));
+			}
+
+			index.update(handles.get(i), volumes.get(i));
+		}
+
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(-10, -10, 1, 1))), new ArrayList<Object>());
+
+		index.remove(handles.get(0));
+		index.commit();
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+			List<Object> expected = new ArrayList<>();
+
+			for (int i = 1; i < ENTITIES; i++) {
+				if (query.intersects(volumes.get(i))) {
+					expected.add(handles.get(i).getObject());
+				}
+			}
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), expected);
+		}
+
+		assertEquals(ENTITIES - 1, getVisited(index, new AllQuery()).size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCommitWithoutBatch() {
+		new SpatialIndex<Object>().commit();
+	}
+
+	@Test
+	public void testSiblingMerging() {
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setSiblingMerging(true).setMaxEntries(4).setMinEntries(2));
+
+		List<Object> objects = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			index.insert(objects.get(i), new AABB2(i, 0, 1, 1));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			if (i % 10 != 0) {
+				index.remove(objects.get(i));
+			}
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			ensureSame(getVisited(index, new ContainsQuery(new AABB2(i, 0, 1, 1))), i % 10 == 0 ? Arrays.asList(objects.get(i)) : new ArrayList<Object>());
+		}
+	}
+
+	@Test
+	public void testLazyDeletion() {
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setLazyDeletion(true));
+
+		List<SpatialIndex.Handle<Object>> handles = new ArrayList<>();
+		List<Object> expected = new ArrayList<>();
+		List<Pair<Object>> expectedPairs = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			handles.add(index.insert(new Object(), new AABB2(i, 0, 1, 1)));
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			if (i % 4 != 0) {
+				index.remove(handles.get(i));
+				index.update(handles.get(i), new AABB2(i, 5, 1, 1));
+			} else {
+				expected.add(handles.get(i).getObject());
+			}
+		}
+
+		for (int i = 0; i < ENTITIES; i++) {
+			if (i % 4 == 0 && i + 4 < ENTITIES) {
+				expectedPairs.add(new Pair<>(handles.get(i).getObject(), handles.get(i + 4).getObject()));
+			}
+		}
+
+		assertEquals(3 * ENTITIES / 4, index.getTombstoneCount());
+
+		ensureSame(getVisited(index, new IntersectionQuery(new AABB2(0, 0, ENTITIES, 1))), expected);
+		ensureSame(getVisited(index, new AllQuery()), expected);
+		ensureSameSymmetric(getVisited(index, index, new DistanceJoinQuery(3)), expectedPairs);
+
+		assertFalse(index.compact(0));
+		assertEquals(3 * ENTITIES / 4 - 1, index.getTombstoneCount());
+
+		index.compact();
+		assertEquals(0, index.getTombstoneCount());
+
+		ensureSame(getVisited(index, new AllQuery()), expected);
+	}
+
+	@Test
+	public void testParallelQuery() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setMaxEntries(4).setMinEntries(2).setLazyDeletion(true));
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		for (int i = 0; i < 20 * ENTITIES; i++) {
+			Object o = new Object();
+			index.insert(o, new AABB2(random.nextFloat() * 1000, random.nextFloat() * 1000, random.nextFloat() * 5, random.nextFloat() * 5));
+
+			if (i % 7 == 0) {
+				index.remove(o);
+			}
+		}
+
+		for (Query query : new Query[] { new AllQuery(), new IntersectionQuery(new AABB2(100, 200, 600, 500)), new DistanceQuery(new AABB2(500, 500, 0, 0), 300) }) {
+			final List<Object> visited = Collections.synchronizedList(new ArrayList<Object>());
+
+			index.parallelQuery(query, new QueryResultHandler<Object>() {
+				@Override
+				public boolean handle(Object o) {
+					return visited.add(o);
+				}
+			}, pool);
+
+			ensureSame(visited, getVisited(index, query));
+		}
+
+		pool.shutdown();
+	}
+
+	@Test
+	public void testParallelQueryEarlyExit() {
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setMaxEntries(4).setMinEntries(2));
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		for (int i = 0; i < 20 * ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+
+		index.parallelQuery(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				return count.incrementAndGet() < 10;
+			}
+		}, pool);
+
+		// Each thread may have started a call before the handler first returned false.
+		assertTrue(count.get() < 10 + pool.getParallelism());
+		pool.shutdown();
+	}
+
+	@Test
+	public void testParallelQueryLargeFanout() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setMaxEntries(4096).setMinEntries(3));
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		for (int i = 0; i < 20 * ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(random.nextFloat() * 1000, random.nextFloat() * 1000, random.nextFloat() * 5, random.nextFloat() * 5));
+
+			// The root is a leaf at first, and later the parent of several leaves.
+
+			if (i == 10 || i == 20 * ENTITIES - 1) {
+				final List<Object> visited = Collections.synchronizedList(new ArrayList<Object>());
+
+				index.parallelQuery(new AllQuery(), new QueryResultHandler<Object>() {
+					@Override
+					public boolean handle(Object o) {
+						return visited.add(o);
+					}
+				}, pool);
+
+				ensureSame(visited, getVisited(index, new AllQuery()));
+			}
+		}
+
+		pool.shutdown();
+	}
+
+	@Test
+	public void testParallelJoin() {
+		Random random = new Random(1);
+		SpatialIndex<Object> index1 = new SpatialIndex<>(new SpatialIndexConfig().setMaxEntries(4).setMinEntries(2));
+		SpatialIndex<Object> index2 = new SpatialIndex<>(new SpatialIndexConfig().setMaxEntries(6).setMinEntries(2));
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		for (int i = 0; i < 10 * ENTITIES; i++) {
+			index1.insert(new Object(), new AABB2(random.nextFloat() * 1000, random.nextFloat() * 1000, random.nextFloat() * 5, random.nextFloat() * 5));
+		}
+
+		for (int i = 0; i < 2 * ENTITIES; i++) {
+			index2.insert(new Object(), new AABB2(random.nextFloat() * 1000, random.nextFloat() * 1000, random.nextFloat() * 20, random.nextFloat() * 20));
+		}
+
+		for (JoinQuery query : new JoinQuery[] { new IntersectionJoinQuery(), new ContainsJoinQuery(), new DistanceJoinQuery(2) }) {
+			ensureSame(getVisitedInParallel(index1, index1, query, pool), getVisited(index1, index1, query));
+			ensureSame(getVisitedInParallel(index1, index2, query, pool), getVisited(index1, index2, query));
+			ensureSame(getVisitedInParallel(index2, index1, query, pool), getVisited(index2, index1, query));
+		}
+
+		pool.shutdown();
+	}
+
+	@Test
+	public void testParallelJoinEarlyExit() {
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setMaxEntries(4).setMinEntries(2));
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		for (int i = 0; i < 20 * ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+
+		index.parallelQuery(new IntersectionJoinQuery(), new JoinQueryResultHandler<Object, Object>() {
+			@Override
+			public boolean handle(Object o1, Object o2) {
+				return count.incrementAndGet() < 10;
+			}
+		}, pool);
+
+		assertTrue(count.get() < 10 + pool.getParallelism());
+		pool.shutdown();
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testParallelQueryModification() {
+		final SpatialIndex<Object> index = new SpatialIndex<>();
+
+		for (int i = 0; i < 20 * ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i % 100, i / 100, 1, 1));
+		}
+
+		index.parallelQuery(new AllQuery(), new QueryResultHandler<Object>() {
+			@Override
+			public boolean handle(Object o) {
+				index.remove(o);
+				return true;
+			}
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidConfig() {
+		new SpatialIndex<Object>(new SpatialIndexConfig().setMaxEntries(8).setMinEntries(5));
+	}
+
+	@Test
+	public void testThreeDimensions() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		List<Object> expected = new ArrayList<>();
+
+		Object o;
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(o = new Object(), new AABB3(i, 0, i % 2, 1, 1, 1));
+
+			if (i % 2 == 0) {
+				expected.add(o);
+			}
+		}
+
+		ensureSame(getVisited(index, new ContainsQuery(new AABB3(0, 0, 0, ENTITIES, 1, 1))), expected);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		SpatialIndex<Object> index = new SpatialIndex<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+	}
+
+	private <T> List<Pair<T>> getVisitedInParallel(SpatialIndex<T> index1, SpatialIndex<T> index2, JoinQuery query, ForkJoinPool pool) {
+		final List<Pair<T>> visited = Collections.synchronizedList(new ArrayList<Pair<T>>());
+
+		index1.parallelQuery(index2, query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2));
+			}
+		}, pool);
+
+		return visited;
+	}
 }
@@ -0,0 +1,120 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Eric Fritz
+ */
+public class SplitStrategyTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	private static final int TRIALS = 100;
+
+	@Test
+	public void testMinimumEntries() {
+		ensureMinimumEntries(new QuadraticSplitStrategy());
+		ensureMinimumEntries(new LinearSplitStrategy());
+		ensureMinimumEntries(new RStarSplitStrategy());
+	}
+
+	@Test
+	public void testQueries() {
+		ensureQueries(new KMeansSplitStrategy());
+		ensureQueries(new QuadraticSplitStrategy());
+		ensureQueries(new LinearSplitStrategy());
+		ensureQueries(new RStarSplitStrategy());
+	}
+
+	private void ensureMinimumEntries(SplitStrategy strategy) {
+		Random random = new Random(1);
+
+		for (int trial = 0; trial < TRIALS; trial++) {
+			int count = 9;
+			int minEntries = 1 + random.nextInt(4);
+
+			float[] volumes = new float[count * 4];
+			boolean[] assignment = new boolean[count];
+
+			for (int i = 0; i < count; i++) {
+				float x = random.nextFloat() * 100;
+				float y = random.nextFloat() * 100;
+
+				volumes[4 * i + 0] = x;
+				volumes[4 * i + 1] = x + random.nextFloat() * 10;
+				volumes[4 * i + 2] = y;
+				volumes[4 * i + 3] = y + random.nextFloat() * 10;
+			}
+
+			strategy.split(volumes, count, 2, minEntries, assignment);
+
+			int moved = 0;
+			for (int i = 0; i < count; i++) {
+				if (assignment[i]) {
+					moved++;
+				}
+			}
+
+			assertTrue(moved >= minEntries);
+			assertTrue(count - moved >= minEntries);
+		}
+	}
+
+	private void ensureQueries(SplitStrategy strategy) {
+		Random random = new Random(1);
+		SpatialIndex<Object> index = new SpatialIndex<>(new SpatialIndexConfig().setSplitStrategy(strategy));
+
+		List<Object> objects = new ArrayList<>();
+		List<AABB> volumes = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			objects.add(new Object());
+			volumes.add(new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 5, random.nextFloat() * 5));
+
+			index.insert(objects.get(i), volumes.get(i));
+		}
+
+		for (int i = 0; i < ENTITIES; i += 3) {
+			index.remove(objects.get(i));
+		}
+
+		for (int k = 0; k < 10; k++) {
+			AABB query = new AABB2(k * 10, k * 5, 20, 20);
+			List<Object> expected = new ArrayList<>();
+
+			for (int i = 0; i < ENTITIES; i++) {
+				if (i % 3 != 0 && query.intersects(volumes.get(i))) {
+					expected.add(objects.get(i));
+				}
+			}
+
+			ensureSame(getVisited(index, new IntersectionQuery(query)), expected);
+		}
+	}
+}
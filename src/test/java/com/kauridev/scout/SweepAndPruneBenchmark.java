@@ -0,0 +1,204 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauridev.scout;
+
+import java.util.Random;
+
+/**
+ * Compares the per-frame cost of the self join of moving objects in {@link SweepAndPrune},
+ * {@link SpatialIndex}, and {@link DynamicAABBTree}, as the amount each object moves per frame
+ * grows.
+ * <p>
+ * This is not a unit test. After <tt>mvn test-compile</tt>, run it with <tt>java -cp
+ * target/classes:target/test-classes com.kauridev.scout.SweepAndPruneBenchmark [entities [world
+ * size]]</tt>. Each frame moves every object by up to the step size along each axis, updates its
+ * bounds, and joins the index with itself. Each backend is measured over several rounds and the
+ * last round is reported, allowing the earlier rounds to warm up the JIT.
+ *
+ * @author Eric Fritz
+ */
+public class SweepAndPruneBenchmark
+{
+	private static final int ROUNDS = 4;
+
+	private static final int FRAMES = 20;
+
+	private static final float DEFAULT_WORLD_SIZE = 2000;
+
+	private static final float OBJECT_SIZE = 2;
+
+	private static final float[] STEP_SIZES = {0.1f, 1, 10};
+
+	private static final String[] BACKENDS = {"SweepAndPrune", "SpatialIndex", "DynamicAABBTree"};
+
+	public static void main(String[] args) {
+		int entities = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		float worldSize = args.length > 1 ? Float.parseFloat(args[1]) : DEFAULT_WORLD_SIZE;
+
+		System.out.println(String.format("%d entities, %d frames, world size %.0f", entities, FRAMES, worldSize));
+		System.out.println(String.format("%18s %10s %14s %14s", "backend", "step", "update ns/op", "join ms/frame"));
+
+		for (int backend = 0; backend < BACKENDS.length; backend++) {
+			for (float step : STEP_SIZES) {
+				long[] result = null;
+
+				for (int round = 0; round < ROUNDS; round++) {
+					result = run(create(backend), entities, worldSize, step);
+				}
+
+				System.out.println(String.format("%18s %10.1f %14d %14d", BACKENDS[backend], step, result[0] / (entities * FRAMES), result[1] / (1000000L * FRAMES)));
+			}
+		}
+	}
+
+	private static Backend create(int backend) {
+		switch (backend) {
+			case 0:
+				final SweepAndPrune<Object> sweep = new SweepAndPrune<>();
+
+				return new Backend() {
+					@Override
+					public void insert(Object object, AABB volume) {
+						sweep.insert(object, volume);
+					}
+
+					@Override
+					public void update(Object object, AABB volume) {
+						sweep.update(object, volume);
+					}
+
+					@Override
+					public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler) {
+						sweep.query(query, handler);
+					}
+				};
+
+			case 1:
+				final SpatialIndex<Object> index = new SpatialIndex<>();
+
+				return new Backend() {
+					@Override
+					public void insert(Object object, AABB volume) {
+						index.insert(object, volume);
+					}
+
+					@Override
+					public void update(Object object, AABB volume) {
+						index.update(object, volume);
+					}
+
+					@Override
+					public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler) {
+						index.query(query, handler);
+					}
+				};
+
+			default:
+				final DynamicAABBTree<Object> tree = new DynamicAABBTree<>();
+
+				return new Backend() {
+					@Override
+					public void insert(Object object, AABB volume) {
+						tree.insert(object, volume);
+					}
+
+					@Override
+					public void update(Object object, AABB volume) {
+						tree.update(object, volume);
+					}
+
+					@Override
+					public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler) {
+						tree.query(query, handler);
+					}
+				};
+		}
+	}
+
+	private static long[] run(Backend index, int entities, float worldSize, float step) {
+		Random random = new Random(1);
+
+		Object[] objects = new Object[entities];
+		float[] x = new float[entities];
+		float[] y = new float[entities];
+
+		for (int i = 0; i < entities; i++) {
+			objects[i] = new Object();
+			x[i] = random.nextFloat() * worldSize;
+			y[i] = random.nextFloat() * worldSize;
+
+			index.insert(objects[i], new AABB2(x[i], y[i], OBJECT_SIZE, OBJECT_SIZE));
+		}
+
+		final int[] pairs = new int[1];
+		JoinQueryResultHandler<Object, Object> handler = new JoinQueryResultHandler<Object, Object>() {
+			@Override
+			public boolean handle(Object object1, Object object2) {
+				pairs[0]++;
+				return true;
+			}
+		};
+
+		// The first join of the sweep and prune sorts from scratch, and is not counted.
+
+		index.join(new IntersectionJoinQuery(), handler);
+
+		long update = 0;
+		long join = 0;
+
+		for (int frame = 0; frame < FRAMES; frame++) {
+			for (int i = 0; i < entities; i++) {
+				x[i] += (random.nextFloat() - 0.5f) * 2 * step;
+				y[i] += (random.nextFloat() - 0.5f) * 2 * step;
+			}
+
+			long start = System.nanoTime();
+
+			for (int i = 0; i < entities; i++) {
+				index.update(objects[i], new AABB2(x[i], y[i], OBJECT_SIZE, OBJECT_SIZE));
+			}
+
+			update += System.nanoTime() - start;
+			start = System.nanoTime();
+
+			index.join(new IntersectionJoinQuery(), handler);
+
+			join += System.nanoTime() - start;
+		}
+
+		if (pairs[0] < 0) {
+			throw new IllegalStateException();
+		}
+
+		return new long[] {update, join};
+	}
+
+	private interface Backend
+	{
+		public void insert(Object object, AABB volume);
+
+		public void update(Object object, AABB volume);
+
+		public void join(JoinQuery query, JoinQueryResultHandler<Object, Object> handler);
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * This file is part of the scout package.
+ *
+ * Copyright (c) 2014 Eric Fritz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT.  IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kauridev.scout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Eric Fritz
+ */
+public class SweepAndPruneTest extends QueryTest
+{
+	private static final int ENTITIES = 1000;
+
+	@Test
+	public void testJoin() {
+		Random random = new Random(1);
+		SweepAndPrune<Object> index = new SweepAndPrune<>();
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			Object o = new Object();
+			AABB volume = new AABB2(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * (i % 10 == 0 ? 20 : 5), random.nextFloat() * 5);
+
+			index.insert(o, volume);
+			expected.insert(o, volume);
+		}
+
+		assertEquals(ENTITIES, index.size());
+
+		ensureSameSymmetric(getVisited(index, new IntersectionJoinQuery()), getVisited(expected, expected, new IntersectionJoinQuery()));
+		ensureSameSymmetric(getVisited(index, new AllJoinQuery()), getVisited(expected, expected, new IntersectionJoinQuery()));
+		ensureSame(getVisited(index, new ContainsJoinQuery()), getVisited(expected, expected, new ContainsJoinQuery()));
+	}
+
+	@Test
+	public void testCoherentUpdates() {
+		Random random = new Random(1);
+		SweepAndPrune<Object> index = new SweepAndPrune<>();
+		SpatialIndex<Object> expected = new SpatialIndex<>();
+
+		List<Object> objects = new ArrayList<>();
+		List<AABB> volumes = new ArrayList<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			AABB volume = new AABB3(random.nextFloat() * 50, random.nextFloat() * 50, random.nextFloat() * 50, random.nextFloat() * 4, random.nextFloat() * 4, random.nextFloat() * 4);
+
+			objects.add(new Object());
+			volumes.add(volume);
+			index.insert(objects.get(i), volume);
+			expected.insert(objects.get(i), volume);
+		}
+
+		for (int frame = 0; frame < 20; frame++) {
+			for (int i = 0; i < objects.size(); i++) {
+				AABB volume = volumes.get(i);
+
+				for (int j = 0; j < 3; j++) {
+					float d = random.nextFloat() - 0.5f;
+					volume.setBounds(j, volume.getMinimum(j) + d, volume.getMaximum(j) + d);
+				}
+
+				index.update(objects.get(i), volume);
+				expected.update(objects.get(i), volume);
+			}
+
+			for (int i = 0; i < 5; i++) {
+				int k = random.nextInt(objects.size());
+
+				index.remove(objects.get(k));
+				expected.remove(objects.get(k));
+
+				objects.set(k, new Object());
+				index.insert(objects.get(k), volumes.get(k));
+				expected.insert(objects.get(k), volumes.get(k));
+			}
+
+			ensureSameSymmetric(getVisited(index, new IntersectionJoinQuery()), getVisited(expected, expected, new IntersectionJoinQuery()));
+		}
+	}
+
+	@Test
+	public void testTouchingObjects() {
+		SweepAndPrune<Object> index = new SweepAndPrune<>();
+
+		Object o1 = new Object();
+		Object o2 = new Object();
+
+		index.insert(o1, new AABB2(0, 0, 1, 1));
+		index.insert(o2, new AABB2(1, 1, 1, 1));
+
+		ensureSameSymmetric(getVisited(index, new IntersectionJoinQuery()), Arrays.asList(new Pair<>(o1, o2)));
+
+		index.update(o2, new AABB2(1.5f, 1, 1, 1));
+		assertEquals(0, getVisited(index, new IntersectionJoinQuery()).size());
+
+		index.update(o1, new AABB2(0.5f, 0, 1, 1));
+		ensureSameSymmetric(getVisited(index, new IntersectionJoinQuery()), Arrays.asList(new Pair<>(o1, o2)));
+	}
+
+	@Test
+	public void testJoinEarlyExit() {
+		SweepAndPrune<Object> index = new SweepAndPrune<>();
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.insert(new Object(), new AABB2(i, 0, 2, 1));
+		}
+
+		assertEquals(ENTITIES - 1 + ENTITIES - 2, getVisited(index, new IntersectionJoinQuery()).size());
+		assertEquals(10, getVisited(index, new IntersectionJoinQuery(), 10).size());
+	}
+
+	@Test
+	public void testRemove() {
+		SweepAndPrune<Object> index = new SweepAndPrune<>();
+
+		List<Object> set1 = new ArrayList<>();
+		List<Object> set2 = new ArrayList<>();
+
+		Object o1, o2;
+		for (int i = 0; i < ENTITIES; i++) {
+			set1.add(o1 = new Object());
+			set2.add(o2 = new Object());
+
+			index.insert(o1, new AABB2(i, 0, 0.5f, 1));
+			index.insert(o2, new AABB2(i, 0, 0.5f, 1));
+		}
+
+		assertEquals(ENTITIES, getVisited(index, new IntersectionJoinQuery()).size());
+
+		for (int i = 0; i < ENTITIES; i++) {
+			index.remove(set2.get(i));
+		}
+
+		assertEquals(ENTITIES, index.size());
+		assertEquals(0, getVisited(index, new IntersectionJoinQuery()).size());
+
+		index.insert(set2.get(0), new AABB2(0, 0, 0.5f, 1));
+		ensureSameSymmetric(getVisited(index, new IntersectionJoinQuery()), Arrays.asList(new Pair<>(set1.get(0), set2.get(0))));
+
+		index.clear();
+
+		assertEquals(0, index.size());
+		assertEquals(0, getVisited(index, new AllJoinQuery()).size());
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testModificationDuringJoin() {
+		final SweepAndPrune<Object> index = new SweepAndPrune<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+
+		index.query(new IntersectionJoinQuery(), new JoinQueryResultHandler<Object, Object>() {
+			@Override
+			public boolean handle(Object o1, Object o2) {
+				index.remove(o1);
+				return true;
+			}
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateInsert() {
+		SweepAndPrune<Object> index = new SweepAndPrune<>();
+		Object o = new Object();
+
+		index.insert(o, new AABB2(0, 0, 1, 1));
+		index.insert(o, new AABB2(0, 0, 1, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedDimensions() {
+		SweepAndPrune<Object> index = new SweepAndPrune<>();
+
+		index.insert(new Object(), new AABB2(0, 0, 1, 1));
+		index.insert(new Object(), new AABB3(0, 0, 0, 1, 1, 1));
+	}
+
+	private <T> List<Pair<T>> getVisited(SweepAndPrune<T> index, JoinQuery query) {
+		return getVisited(index, query, Integer.MAX_VALUE);
+	}
+
+	private <T> List<Pair<T>> getVisited(SweepAndPrune<T> index, JoinQuery query, final int limit) {
+		final List<Pair<T>> visited = new ArrayList<>();
+
+		index.query(query, new JoinQueryResultHandler<T, T>() {
+			@Override
+			public boolean handle(T o1, T o2) {
+				return visited.add(new Pair<>(o1, o2)) && visited.size() < limit;
+			}
+		});
+
+		return visited;
+	}
+}